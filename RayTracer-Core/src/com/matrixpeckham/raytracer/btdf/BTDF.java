@@ -88,6 +88,17 @@ public abstract class BTDF {
         return Utility.BLACK;
     }
 
+    /**
+     * relative index of refraction for the ray of sr, the index on the side
+     * the ray is transmitted into over the index on the side it comes from.
+     *
+     * @param sr
+     * @return
+     */
+    public double eta(ShadeRec sr) {
+        return 1;
+    }
+
     /**
      * Rho function. not used for transparency.
      *
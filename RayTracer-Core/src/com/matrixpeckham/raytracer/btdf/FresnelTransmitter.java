@@ -120,6 +120,17 @@ public class FresnelTransmitter extends BTDF {
         iorOut = fresnelBTDF.iorOut;
     }
 
+    /**
+     * relative index of refraction
+     *
+     * @param sr
+     * @return
+     */
+    @Override
+    public double eta(ShadeRec sr) {
+        return sr.normal.dot(sr.ray.d) > 0 ? iorOut / iorIn : iorIn / iorOut;
+    }
+
     /**
      * total internal reflection test
      *
@@ -99,6 +99,17 @@ public class PerfectTransmitter extends BTDF {
         return this;
     }
 
+    /**
+     * relative index of refraction
+     *
+     * @param sr
+     * @return
+     */
+    @Override
+    public double eta(ShadeRec sr) {
+        return sr.normal.dot(sr.ray.d) > 0 ? 1 / ior : ior;
+    }
+
     /**
      * total internal reflection test
      *
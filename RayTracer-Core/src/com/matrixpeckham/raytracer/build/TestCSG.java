@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.build;
+
+import com.matrixpeckham.raytracer.cameras.Pinhole;
+import com.matrixpeckham.raytracer.geometricobjects.Instance;
+import com.matrixpeckham.raytracer.geometricobjects.csg.CSGDifference;
+import com.matrixpeckham.raytracer.geometricobjects.csg.CSGIntersection;
+import com.matrixpeckham.raytracer.geometricobjects.csg.CSGUnion;
+import com.matrixpeckham.raytracer.geometricobjects.primitives.Box;
+import com.matrixpeckham.raytracer.geometricobjects.primitives.CutCube;
+import com.matrixpeckham.raytracer.geometricobjects.primitives.Plane;
+import com.matrixpeckham.raytracer.geometricobjects.primitives.Sphere;
+import com.matrixpeckham.raytracer.lights.Directional;
+import com.matrixpeckham.raytracer.materials.Phong;
+import com.matrixpeckham.raytracer.materials.Matte;
+import com.matrixpeckham.raytracer.tracers.RayCast;
+import com.matrixpeckham.raytracer.util.Normal;
+import com.matrixpeckham.raytracer.util.Point3D;
+import com.matrixpeckham.raytracer.util.RGBColor;
+import com.matrixpeckham.raytracer.util.Utility;
+import com.matrixpeckham.raytracer.world.BuildWorldFunction;
+import com.matrixpeckham.raytracer.world.World;
+
+/**
+ * CSG test, a CutCube next to the same shape made from a box and a sphere,
+ * and a union and an intersection of two spheres with a different material
+ * on each.
+ *
+ * @author William Matrix Peckham
+ */
+public class TestCSG implements BuildWorldFunction {
+
+    @Override
+    public void build(World w) {
+        int numSamples = 16;
+
+        w.vp.setHres(400);
+        w.vp.setVres(400);
+        w.vp.setSamples(numSamples);
+
+        w.backgroundColor = new RGBColor(0.15);
+
+        w.tracer = new RayCast(w);
+
+        Pinhole pinhole = new Pinhole();
+        pinhole.setEye(10, 12, 20);
+        pinhole.setLookat(0, 0, 0);
+        pinhole.setViewDistance(800);
+        pinhole.computeUVW();
+        w.setCamera(pinhole);
+
+        Directional light = new Directional();
+        light.setDirection(10, 15, 12);
+        light.scaleRadiance(3);
+        light.setShadows(true);
+        w.addLight(light);
+
+        Phong red = new Phong();
+        red.setCd(Utility.RED);
+        red.setKa(0.25);
+        red.setKd(0.65);
+        red.setKs(0.1);
+        red.setExp(20);
+
+        Phong yellow = new Phong();
+        yellow.setCd(Utility.YELLOW);
+        yellow.setKa(0.25);
+        yellow.setKd(0.65);
+        yellow.setKs(0.1);
+        yellow.setExp(20);
+
+        //the old cut cube and the same solid from csg
+        CutCube cube = new CutCube(-1, 1, -1, 1, -1, 1, 1.5);
+        cube.setMaterial(red);
+        Instance c1 = new Instance(cube);
+        c1.translate(-3, 0, 0);
+        w.addObject(c1);
+
+        CSGDifference cut = new CSGDifference(new Box(new Point3D(-1),
+                new Point3D(1)), new Sphere(new Point3D(1), 1.5));
+        cut.setMaterial(red);
+        Instance c2 = new Instance(cut);
+        c2.translate(3, 0, 0);
+        w.addObject(c2);
+
+        //no material on the csg objects, each surface has its solid's
+        Sphere a = new Sphere(new Point3D(-0.5, 0, 0), 1);
+        a.setMaterial(red);
+        Sphere b = new Sphere(new Point3D(0.5, 0, 0), 1);
+        b.setMaterial(yellow);
+        Instance u = new Instance(new CSGUnion(a, b));
+        u.translate(-3, 0, -4);
+        w.addObject(u);
+        Instance i = new Instance(new CSGIntersection(a, b));
+        i.translate(3, 0, -4);
+        w.addObject(i);
+
+        Matte matte = new Matte();
+        matte.setCd(Utility.WHITE);
+        matte.setKa(0.25);
+        matte.setKd(0.75);
+        Plane plane = new Plane(new Point3D(0, -1, 0), new Normal(0, 1, 0));
+        plane.setMaterial(matte);
+        w.addObject(plane);
+    }
+
+}
@@ -19,6 +19,7 @@ package com.matrixpeckham.raytracer.cameras;
 
 import com.matrixpeckham.raytracer.util.Point3D;
 import com.matrixpeckham.raytracer.util.Vector3D;
+import com.matrixpeckham.raytracer.world.ViewPlane;
 import com.matrixpeckham.raytracer.world.World;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 
@@ -85,6 +86,11 @@ public abstract class Camera {
      */
     protected double exposureTime = 1;
 
+    /**
+     * times the view has changed, see getViewChanges
+     */
+    private int viewChanges = 0;
+
     /**
      * Sets defaults.
      */
@@ -145,6 +151,7 @@ public abstract class Camera {
 		    setTo(Vector3D.rotateAAroundB(new Vector3D(1, 0, 0), w,
 			    rollAngle));
 	}
+	viewChanged();
     }
 
     /**
@@ -154,6 +161,7 @@ public abstract class Camera {
      */
     public void setEye(Point3D p) {
 	eye.setTo(p);
+	viewChanged();
     }
 
     /**
@@ -167,6 +175,7 @@ public abstract class Camera {
 	eye.x = x;
 	eye.y = y;
 	eye.z = z;
+	viewChanged();
     }
 
     /**
@@ -176,6 +185,7 @@ public abstract class Camera {
      */
     public void setLookat(Point3D p) {
 	lookat.setTo(p);
+	viewChanged();
     }
 
     /**
@@ -189,6 +199,7 @@ public abstract class Camera {
 	lookat.x = x;
 	lookat.y = y;
 	lookat.z = z;
+	viewChanged();
     }
 
     /**
@@ -198,6 +209,7 @@ public abstract class Camera {
      */
     public void setViewDirection(Vector3D vd) {
 	lookat.setTo(eye.add(vd));
+	viewChanged();
     }
 
     /**
@@ -210,6 +222,7 @@ public abstract class Camera {
      */
     public void setViewDirection(double x, double y, double z) {
 	lookat.setTo(eye.add(new Vector3D(x, y, z)));
+	viewChanged();
     }
 
     /**
@@ -219,6 +232,7 @@ public abstract class Camera {
      */
     public void setUp(Vector3D p) {
 	up.setTo(p);
+	viewChanged();
     }
 
     /**
@@ -232,6 +246,7 @@ public abstract class Camera {
 	up.x = x;
 	up.y = y;
 	up.z = z;
+	viewChanged();
     }
 
     /**
@@ -241,6 +256,7 @@ public abstract class Camera {
      */
     public void setRoll(double r) {
 	rollAngle = r;
+	viewChanged();
     }
 
     /**
@@ -291,6 +307,49 @@ public abstract class Camera {
      */
     public void setUpVector(int i, int i0, int i1) {
 	up.setTo(i, i0, i1);
+	viewChanged();
+    }
+
+    /**
+     * number of times the view has changed. things made for one view of this
+     * camera keep it to tell when the camera has moved since.
+     *
+     * @return
+     */
+    public int getViewChanges() {
+	return viewChanges;
+    }
+
+    /**
+     * called by setters that change what the pixels see
+     */
+    protected void viewChanged() {
+	viewChanges++;
+    }
+
+    /**
+     * size in world units of a pixel of the view plane at point p, used to
+     * make geometry as fine as the image needs. Cameras that don't know their
+     * projection treat pixels as vp.s units everywhere.
+     *
+     * @param vp
+     * @param p
+     * @return
+     */
+    public double getPixelFootprint(ViewPlane vp, Point3D p) {
+	return vp.s;
+    }
+
+    /**
+     * angle in radians a pixel of the view plane covers, so a pixel is this
+     * times the distance wide at that distance from the eye. 0 for cameras
+     * whose pixels don't grow with distance.
+     *
+     * @param vp
+     * @return
+     */
+    public double getPixelAngle(ViewPlane vp) {
+	return 0;
     }
 
 }
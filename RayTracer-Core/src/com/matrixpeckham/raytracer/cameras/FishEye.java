@@ -91,6 +91,7 @@ public class FishEye extends Camera {
 		    pp.x = s * (c - 0.5 * hres + sp.x);
 		    pp.y = s * (r - 0.5 * vres + sp.y);
 		    ray.d.setTo(rayDirection(pp, hres, vres, s, r_squared));
+		    setDifferentials(ray, pp, hres, vres, s);
 
 		    if (rectangular || r_squared.d <= 1.0) {
 			L.addLocal(w.tracer.traceRay(ray, depth));
@@ -141,6 +142,7 @@ public class FishEye extends Camera {
 		    pp.x = s * (c - 0.5 * hres + sp.x);
 		    pp.y = s * (r - 0.5 * vres + sp.y);
 		    ray.d.setTo(rayDirection(pp, hres, vres, s, r_squared));
+		    setDifferentials(ray, pp, hres, vres, s);
 
 		    if (rectangular || r_squared.d <= 1.0) {
 			L.addLocal(w.tracer.traceRay(ray, depth));
@@ -197,6 +199,24 @@ public class FishEye extends Camera {
 	}
     }
 
+    /**
+     * sets the differentials of a ray through pixel point pp to the rays
+     * through the points one pixel of size s over and up from it.
+     *
+     * @param ray
+     * @param pp
+     * @param hres
+     * @param vres
+     * @param s
+     */
+    private void setDifferentials(Ray ray, Point2D pp, int hres, int vres,
+	    double s) {
+	DoubleRef r_squared = new DoubleRef();
+	ray.setDifferentials(eye, rayDirection(new Point2D(pp.x + s, pp.y),
+		hres, vres, s, r_squared), eye, rayDirection(new Point2D(pp.x,
+			pp.y + s), hres, vres, s, r_squared));
+    }
+
     /**
      * sets field of view
      *
@@ -247,6 +267,7 @@ public class FishEye extends Camera {
 			    pp.y = s * (r - 0.5 * vres + sp.y);
 			    ray.d.setTo(rayDirection(pp, hres, vres, s,
 				    r_squared));
+			    setDifferentials(ray, pp, hres, vres, s);
 
 			    if (rectangular || r_squared.d <= 1.0) {
 				L.addLocal(w.tracer.traceRay(ray, depth));
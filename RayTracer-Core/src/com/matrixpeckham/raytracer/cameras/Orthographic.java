@@ -72,6 +72,18 @@ public class Orthographic extends Camera {
 	return dir;
     }
 
+    /**
+     * sets the differentials of a ray to the parallel rays one pixel of size
+     * s over and up from it, call after the ray is set.
+     *
+     * @param ray
+     * @param s
+     */
+    private void setDifferentials(Ray ray, double s) {
+	ray.setDifferentials(ray.o.add(u.mul(s)), ray.d, ray.o.add(v.mul(s)),
+		ray.d);
+    }
+
     /**
      * Render scene.
      *
@@ -111,6 +123,7 @@ public class Orthographic extends Camera {
 		    ray.d.setTo(getDirection(pp));
 		    //set ray origin, eyepoint + pixel location
 		    ray.o.setTo(eye.add(u.mul(pp.x).add(v.mul(pp.y))));
+		    setDifferentials(ray, vp.s);
 		    //sum up samples.
 		    L.addLocal(w.tracer.traceRay(ray, depth));
 		}
@@ -168,6 +181,7 @@ public class Orthographic extends Camera {
 			    ray.d.setTo(getDirection(pp));
 			    //set ray origin, eyepoint + pixel location
 			    ray.o.setTo(eye.add(u.mul(pp.x).add(v.mul(pp.y))));
+			    setDifferentials(ray, vp.s);
 			    //sum up samples.
 			    L.addLocal(w.tracer.traceRay(ray, depth));
 			}
@@ -233,6 +247,7 @@ public class Orthographic extends Camera {
 		    ray.d.setTo(getDirection(pp));
 		    //set ray origin, eyepoint + pixel location
 		    ray.o.setTo(eye.add(u.mul(pp.x).add(v.mul(pp.y))));
+		    setDifferentials(ray, vp.s);
 		    //sum up samples.
 		    L.addLocal(w.tracer.traceRay(ray, depth));
 		}
@@ -20,8 +20,10 @@ package com.matrixpeckham.raytracer.cameras;
 import static java.util.logging.Level.SEVERE;
 
 import com.matrixpeckham.raytracer.util.Point2D;
+import com.matrixpeckham.raytracer.util.Point3D;
 import com.matrixpeckham.raytracer.util.RGBColor;
 import com.matrixpeckham.raytracer.util.Ray;
+import com.matrixpeckham.raytracer.util.RayPacket;
 import com.matrixpeckham.raytracer.util.Vector3D;
 import com.matrixpeckham.raytracer.world.ViewPlane;
 import com.matrixpeckham.raytracer.world.World;
@@ -40,6 +42,8 @@ public class Pinhole extends Camera {
 
     private double zoom;//zoom factor
 
+    private int packetSize;//width of the square tiles traced as packets
+
     /**
      * Default constructor.
      */
@@ -47,6 +51,7 @@ public class Pinhole extends Camera {
         super();
         d = 500;
         zoom = 1.0f;
+        packetSize = 4;
     }
 
     /**
@@ -58,6 +63,7 @@ public class Pinhole extends Camera {
         super(c);
         d = c.d;
         zoom = c.zoom;
+        packetSize = c.packetSize;
     }
 
     /**
@@ -84,6 +90,19 @@ public class Pinhole extends Camera {
         return dir;
     }
 
+    /**
+     * sets the differentials of a ray through the view plane point p to the
+     * rays through the points one pixel of size s over and up from it.
+     *
+     * @param ray
+     * @param p
+     * @param s
+     */
+    private void setDifferentials(Ray ray, Point2D p, double s) {
+        ray.setDifferentials(eye, getDirection(new Point2D(p.x + s, p.y)), eye,
+                getDirection(new Point2D(p.x, p.y + s)));
+    }
+
     /**
      * Render scene.
      *
@@ -91,6 +110,10 @@ public class Pinhole extends Camera {
      */
     @Override
     public void renderScene(World w) {
+        if (usePackets(w)) {
+            renderScenePackets(w);
+            return;
+        }
         //color
         RGBColor L = new RGBColor();
         //clone the viewport, we'll manipulate it later
@@ -122,6 +145,7 @@ public class Pinhole extends Camera {
                     pp.y = vp.s * (r - 0.5f * vp.vRes + sp.y);
                     //compute direction
                     ray.d.setTo(getDirection(pp));
+                    setDifferentials(ray, pp, vp.s);
                     //add color
                     L.addLocal(w.tracer.traceRay(ray, depth));
                 }
@@ -138,6 +162,148 @@ public class Pinhole extends Camera {
 
     }
 
+    /**
+     * Render scene in square tiles of packetSize pixels, each sample of a tile
+     * is intersected with the world as one packet of rays.
+     *
+     * @param w
+     */
+    private void renderScenePackets(World w) {
+        //clone the viewport, we'll manipulate it later
+        ViewPlane vp = new ViewPlane(w.vp);
+        //change the pixel size for the zoom
+        vp.s /= zoom;
+        RayPacket packet = new RayPacket(w, packetSize * packetSize);
+        RGBColor[] L = newTileColors();
+        int pixRendered = 0;
+        double pixToRender = vp.vRes * vp.hRes;
+        w.startRender(vp.vRes, vp.hRes);
+
+        //loop through all tiles
+        for (int r = 0; r < vp.vRes; r += packetSize) {
+            for (int c = 0; c < vp.hRes; c += packetSize) {
+                pixRendered += renderTile(w, vp, packet, L, r, c);
+            }
+            w.updateProgress(pixRendered / pixToRender);
+        }
+        w.finishRender();
+    }
+
+    /**
+     * traces and displays the tile with top left pixel r, c.
+     *
+     * @param w
+     * @param vp
+     * @param packet
+     * @param L one color per pixel of the tile
+     * @param r0
+     * @param c0
+     * @return number of pixels displayed
+     */
+    private int renderTile(World w, ViewPlane vp, RayPacket packet,
+            RGBColor[] L, int r0, int c0) {
+        int r1 = Math.min(r0 + packetSize, vp.vRes);
+        int c1 = Math.min(c0 + packetSize, vp.hRes);
+        //ray
+        Ray ray = new Ray();
+        //depth
+        int depth = 0;
+        //pixel point
+        Point2D pp = new Point2D();
+        //pixel point of each lane, for the ray differentials
+        Point2D[] lanes = new Point2D[packet.records.length];
+        //reset colors
+        for (RGBColor l : L) {
+            l.setTo(0, 0, 0);
+        }
+        //all the samples of one pixel are drawn together, the sampler hands
+        //out a stratified set per numSamples calls
+        Point2D[][] samples = new Point2D[(r1 - r0) * (c1 - c0)][];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = new Point2D[vp.numSamples];
+            for (int p = 0; p < vp.numSamples; p++) {
+                samples[i][p] = new Point2D(vp.sampler.sampleUnitSquare());
+            }
+        }
+        //for all samples
+        for (int p = 0; p < vp.numSamples; p++) {
+            packet.clear();
+            for (int r = r0; r < r1; r++) {
+                for (int c = c0; c < c1; c++) {
+                    //get sample point on pixel.
+                    Point2D sp = samples[packet.size][p];
+                    pp.x = vp.s * (c - 0.5f * vp.hRes + sp.x);
+                    pp.y = vp.s * (r - 0.5f * vp.vRes + sp.y);
+                    lanes[packet.size] = new Point2D(pp);
+                    //the origin of the ray will always be the eye point.
+                    packet.addRay(eye, getDirection(pp));
+                }
+            }
+            //closest hits for the whole tile at once
+            w.hitObjects(packet);
+            for (int i = 0; i < packet.size; i++) {
+                packet.getRay(i, ray);
+                setDifferentials(ray, lanes[i], vp.s);
+                //add color
+                L[i].addLocal(w.tracer.traceRay(ray, packet.records[i],
+                        depth));
+            }
+        }
+        int i = 0;
+        for (int r = r0; r < r1; r++) {
+            for (int c = c0; c < c1; c++) {
+                //normalize color and expose
+                L[i].divLocal(vp.numSamples);
+                L[i].mulLocal(exposureTime);
+                //display
+                w.displayPixel(r, c, L[i]);
+                i++;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * true if tiles should be traced as packets. the packet hits are only
+     * worth finding when the tracer shades them instead of intersecting each
+     * ray again.
+     *
+     * @param w
+     * @return
+     */
+    private boolean usePackets(World w) {
+        return packetSize > 1 && w.tracer.usesHits();
+    }
+
+    /**
+     * one color for each pixel in a tile
+     *
+     * @return
+     */
+    private RGBColor[] newTileColors() {
+        RGBColor[] L = new RGBColor[packetSize * packetSize];
+        for (int i = 0; i < L.length; i++) {
+            L[i] = new RGBColor();
+        }
+        return L;
+    }
+
+    /**
+     * sets the width of the square tiles of pixels that are traced together
+     * as packets, 1 traces every ray on its own. defaults to 4, at most 8
+     * since a packet holds at most RayPacket.MAX_SIZE rays. tracers that don't
+     * use the hits of the packet always trace rays on their own.
+     *
+     * @param packetSize
+     */
+    public void setPacketSize(int packetSize) {
+        if (packetSize < 1 || packetSize * packetSize > RayPacket.MAX_SIZE) {
+            throw new IllegalArgumentException("packet size must be from 1 to "
+                    + (int) Math.sqrt(RayPacket.MAX_SIZE));
+        }
+        this.packetSize = packetSize;
+    }
+
     /**
      * sets the view distance
      *
@@ -145,6 +311,7 @@ public class Pinhole extends Camera {
      */
     public void setViewDistance(double d) {
         this.d = d;
+        viewChanged();
     }
 
     /**
@@ -154,6 +321,35 @@ public class Pinhole extends Camera {
      */
     public void setZoom(double zoom) {
         this.zoom = zoom;
+        viewChanged();
+    }
+
+    /**
+     * a pixel grows with the distance in front of the eye
+     *
+     * @param vp
+     * @param p
+     * @return
+     */
+    @Override
+    public double getPixelFootprint(ViewPlane vp, Point3D p) {
+        double depth = (eye.x - p.x) * w.x + (eye.y - p.y) * w.y + (eye.z
+                - p.z) * w.z;
+        if (depth <= 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return vp.s / zoom * depth / d;
+    }
+
+    /**
+     * the view plane pixel seen from the eye
+     *
+     * @param vp
+     * @return
+     */
+    @Override
+    public double getPixelAngle(ViewPlane vp) {
+        return vp.s / zoom / d;
     }
 
     /**
@@ -196,6 +392,7 @@ public class Pinhole extends Camera {
                     pp.y = vp.s * (r - 0.5f * vp.vRes + sp.y);
                     //compute direction
                     ray.d.setTo(getDirection(pp));
+                    setDifferentials(ray, pp, vp.s);
                     //add color
                     L.addLocal(w.tracer.traceRay(ray, depth));
                 }
@@ -213,6 +410,10 @@ public class Pinhole extends Camera {
 
     @Override
     public void multiThreadRenderScene(World w) {
+        if (usePackets(w)) {
+            multiThreadRenderScenePackets(w);
+            return;
+        }
         //clone the viewport, we'll manipulate it later
         final ViewPlane vp = new ViewPlane(w.vp);
         //change the pixel size for the zoom
@@ -249,6 +450,7 @@ public class Pinhole extends Camera {
                                 pp.y = vp.s * (r - 0.5f * vp.vRes + sp.y);
                                 //compute direction
                                 ray.d.setTo(getDirection(pp));
+                                setDifferentials(ray, pp, vp.s);
                                 //add color
                                 L.addLocal(w.tracer.traceRay(ray, depth));
                             }
@@ -281,4 +483,54 @@ public class Pinhole extends Camera {
         w.finishRender();
     }
 
+    /**
+     * multi threaded version of renderScenePackets, one task per tile.
+     *
+     * @param w
+     */
+    private void multiThreadRenderScenePackets(World w) {
+        //clone the viewport, we'll manipulate it later
+        final ViewPlane vp = new ViewPlane(w.vp);
+        //change the pixel size for the zoom
+        vp.s /= zoom;
+        w.startRender(vp.vRes, vp.hRes);
+        int tileRows = (vp.vRes + packetSize - 1) / packetSize;
+        int tileCols = (vp.hRes + packetSize - 1) / packetSize;
+        CountDownLatch cdl = new CountDownLatch(tileRows * tileCols);
+
+        //loop through all tiles
+        for (int ri = 0; ri < vp.vRes; ri += packetSize) {
+            for (int ci = 0; ci < vp.hRes; ci += packetSize) {
+                final int r = ri;
+                final int c = ci;
+                Runnable tile = new Runnable() {
+
+                    public void run() {
+                        try {
+                            renderTile(w, vp, new RayPacket(w, packetSize
+                                    * packetSize), newTileColors(), r, c);
+                            w.updateProgress(((double) cdl.getCount())
+                                    / ((double) (tileRows * tileCols)));
+                            cdl.countDown();
+                        } catch (Throwable t) {
+                            Logger.getGlobal().log(SEVERE, "ERROR RENDERING: ",
+                                    t);
+                        }
+                    }
+
+                };
+                EXEC.submit(tile);
+
+            }
+        }
+
+        try {
+            cdl.await();
+        } catch (InterruptedException ex) {
+            Logger.getLogger(Pinhole.class.getName()).
+                    log(Level.SEVERE, null, ex);
+        }
+        w.finishRender();
+    }
+
 }
@@ -19,6 +19,7 @@ package com.matrixpeckham.raytracer.cameras;
 
 import com.matrixpeckham.raytracer.samplers.Sampler;
 import com.matrixpeckham.raytracer.util.Point2D;
+import com.matrixpeckham.raytracer.util.Point3D;
 import com.matrixpeckham.raytracer.util.RGBColor;
 import com.matrixpeckham.raytracer.util.Ray;
 import com.matrixpeckham.raytracer.util.Utility;
@@ -99,6 +100,7 @@ public class ThinLens extends Camera {
      */
     public void setViewDistance(double d) {
 	this.d = d;
+	viewChanged();
     }
 
     /**
@@ -117,6 +119,35 @@ public class ThinLens extends Camera {
      */
     public void setZoom(double zoom) {
 	this.zoom = zoom;
+	viewChanged();
+    }
+
+    /**
+     * a pixel grows with the distance in front of the lens
+     *
+     * @param vp
+     * @param p
+     * @return
+     */
+    @Override
+    public double getPixelFootprint(ViewPlane vp, Point3D p) {
+	double depth = (eye.x - p.x) * w.x + (eye.y - p.y) * w.y + (eye.z
+		- p.z) * w.z;
+	if (depth <= 0) {
+	    return Double.POSITIVE_INFINITY;
+	}
+	return vp.s / zoom * depth / d;
+    }
+
+    /**
+     * the view plane pixel seen from the lens
+     *
+     * @param vp
+     * @return
+     */
+    @Override
+    public double getPixelAngle(ViewPlane vp) {
+	return vp.s / zoom / d;
     }
 
     /**
@@ -144,6 +175,23 @@ public class ThinLens extends Camera {
 	return dir;
     }
 
+    /**
+     * sets the differentials of a ray through the lens point to the rays
+     * through the same lens point and the pixel points one pixel of size s
+     * over and up from pixelPoint.
+     *
+     * @param ray
+     * @param pixelPoint
+     * @param lensPoint
+     * @param s
+     */
+    private void setDifferentials(Ray ray, Point2D pixelPoint,
+	    Point2D lensPoint, double s) {
+	ray.setDifferentials(ray.o, rayDirection(new Point2D(pixelPoint.x + s,
+		pixelPoint.y), lensPoint), ray.o, rayDirection(new Point2D(
+		pixelPoint.x, pixelPoint.y + s), lensPoint));
+    }
+
     /**
      * Default constructor
      */
@@ -215,6 +263,7 @@ public class ThinLens extends Camera {
 		    ray.o.setTo(eye.add(u.mul(lp.x)).add(v.mul(lp.y)));
 		    //calc direction and add to color
 		    ray.d.setTo(rayDirection(pp, lp));
+		    setDifferentials(ray, pp, lp, vp.s);
 		    L.addLocal(w.tracer.traceRay(ray, depth));
 		}
 		//normalize expose, and display pixel
@@ -289,6 +338,7 @@ public class ThinLens extends Camera {
 		    ray.o.setTo(eye.add(u.mul(lp.x)).add(v.mul(lp.y)));
 		    //calc direction and add to color
 		    ray.d.setTo(rayDirection(pp, lp));
+		    setDifferentials(ray, pp, lp, vp.s);
 		    L.addLocal(w.tracer.traceRay(ray, depth));
 		}
 		//normalize expose, and display pixel
@@ -348,6 +398,7 @@ public class ThinLens extends Camera {
 			    ray.o.setTo(eye.add(u.mul(lp.x)).add(v.mul(lp.y)));
 			    //calc direction and add to color
 			    ray.d.setTo(rayDirection(pp, lp));
+			    setDifferentials(ray, pp, lp, vp.s);
 			    L.addLocal(w.tracer.traceRay(ray, depth));
 			}
 			//normalize expose, and display pixel
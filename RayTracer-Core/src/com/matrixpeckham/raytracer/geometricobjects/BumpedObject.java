@@ -18,18 +18,42 @@
 package com.matrixpeckham.raytracer.geometricobjects;
 
 import com.matrixpeckham.raytracer.geometricobjects.csg.CSGShadeRec;
+import com.matrixpeckham.raytracer.textures.BakedTexture;
 import com.matrixpeckham.raytracer.textures.Texture;
+import com.matrixpeckham.raytracer.textures.procedural.FBMBump;
 import com.matrixpeckham.raytracer.util.*;
 import com.matrixpeckham.raytracer.world.World;
 import java.util.ArrayList;
 
 /**
  * Special class for an object that will be bump mapped.
+ * <p>
+ * The normal is bent in place, FBMBump maps are sampled without allocating,
+ * and setBumpCache bakes the bump map into a cached displacement volume so
+ * heavily bumped surfaces don't pay the full noise cost on every hit.
  *
  * @author William Matrix Peckham
  */
 public class BumpedObject extends GeometricObject {
 
+    //per thread displacement scratch space
+    private static final ThreadLocal<double[]> SCRATCH
+            = new ThreadLocal<double[]>() {
+        @Override
+        protected double[] initialValue() {
+            return new double[3];
+        }
+    };
+
+    //per thread shaderec for getNormal lookups of general bump maps
+    private static final ThreadLocal<ShadeRec> NORMAL_REC
+            = new ThreadLocal<ShadeRec>() {
+        @Override
+        protected ShadeRec initialValue() {
+            return new ShadeRec((World) null);
+        }
+    };
+
     /**
      * object to bump map
      */
@@ -41,6 +65,21 @@ public class BumpedObject extends GeometricObject {
      */
     Texture bumpMap = null;
 
+    /**
+     * texture that is sampled, the bump map or the baked copy of it
+     */
+    private Texture lookup = null;
+
+    /**
+     * samples per unit of the baked bump map, 0 for none
+     */
+    private double cacheResolution = 0;
+
+    /**
+     * most tiles the baked bump map keeps
+     */
+    private int cacheTiles = 0;
+
     /**
      * default constructor
      */
@@ -56,6 +95,11 @@ public class BumpedObject extends GeometricObject {
         super(aThis);
         obj = aThis.obj.cloneGeometry();
         bumpMap = aThis.bumpMap.cloneTexture();
+        cacheResolution = aThis.cacheResolution;
+        cacheTiles = aThis.cacheTiles;
+        //a baked copy shares the baked tiles
+        lookup = aThis.lookup == aThis.bumpMap ? bumpMap : aThis.lookup.
+                cloneTexture();
     }
 
     /**
@@ -74,6 +118,31 @@ public class BumpedObject extends GeometricObject {
      */
     public void setBumpMap(Texture fBmBumpPtr) {
         this.bumpMap = fBmBumpPtr.cloneTexture();
+        updateLookup();
+    }
+
+    /**
+     * bakes the bump map into a volume of displacements with resolution
+     * samples per unit, trilinearly interpolated and cached in at most
+     * maxTiles tiles (see BakedTexture). The resolution should be a few
+     * samples across the finest octave of the bump map, lower trades detail
+     * for speed. A resolution of 0 turns the cache off.
+     *
+     * @param resolution
+     * @param maxTiles
+     */
+    public void setBumpCache(double resolution, int maxTiles) {
+        cacheResolution = resolution;
+        cacheTiles = maxTiles;
+        updateLookup();
+    }
+
+    private void updateLookup() {
+        if (bumpMap != null && cacheResolution > 0) {
+            lookup = new BakedTexture(bumpMap, cacheResolution, cacheTiles);
+        } else {
+            lookup = bumpMap;
+        }
     }
 
     /**
@@ -100,17 +169,7 @@ public class BumpedObject extends GeometricObject {
         boolean hit = obj.hit(ray, s);
         //if we have a hit we need to augment the normal
         if (hit) {
-            //we get the color from the texture and the default normal
-            Normal n = new Normal(s.normal);
-            RGBColor c = bumpMap.getColor(s);
-            //now we add the offset.
-            n.addLocal(new Normal(c.r, c.g, c.b));
-            //offset in range -1-1 so in theory we could double the normal so we average it then renormalize
-            n.x /= 2;
-            n.y /= 2;
-            n.z /= 2;
-            n.normalize();
-            s.normal.setTo(n);
+            bump(s.normal, s.localHitPosition, s);
         }
         return hit;
     }
@@ -125,25 +184,19 @@ public class BumpedObject extends GeometricObject {
      */
     @Override
     public boolean hit(Ray ray, ArrayList<CSGShadeRec> hits, ShadeRec sr) {
-        //differ to sub object
-        ArrayList<CSGShadeRec> nhits = new ArrayList<>();
-        boolean hit = obj.hit(ray, nhits, sr);
-        //if we have a hit we need to augment the normal
-        if (hit) {
-            for (CSGShadeRec s : nhits) {
-                //we get the color from the texture and the default normal
-                Normal n = new Normal(s.normal);
-                RGBColor c = bumpMap.getColor(s);
-                //now we add the offset.
-                n.addLocal(new Normal(c.r, c.g, c.b));
-                //offset in range -1-1 so in theory we could double the normal so we average it then renormalize
-                n.x /= 2;
-                n.y /= 2;
-                n.z /= 2;
-                n.normalize();
-                s.normal.setTo(n);
-                hits.add(s);
+        //differ to sub object, bumping only the hits it adds
+        int first = hits.size();
+        boolean hit = obj.hit(ray, hits, sr);
+        if (!hit) {
+            while (hits.size() > first) {
+                hits.remove(hits.size() - 1);
             }
+            return false;
+        }
+        //if we have a hit we need to augment the normal
+        for (int i = first; i < hits.size(); i++) {
+            CSGShadeRec s = hits.get(i);
+            bump(s.normal, s.localHitPosition, s);
         }
         return hit;
     }
@@ -172,17 +225,33 @@ public class BumpedObject extends GeometricObject {
     @Override
     public Normal getNormal(Point3D p) {
         Normal n = new Normal(obj.getNormal(p));
-        ShadeRec r = new ShadeRec((World) null);
-        r.localHitPosition.setTo(p);
-        RGBColor c = bumpMap.getColor(r);
-        n.addLocal(new Normal(c.r, c.g, c.b));
-        n.x /= 2;
-        n.y /= 2;
-        n.z /= 2;
-        n.normalize();
+        bump(n, p, null);
         return n;
     }
 
+    //adds the displacement at p to the normal, the offset is in the range
+    //-1 to 1 so in theory we could double the normal, so we average them and
+    //renormalize. sr is the shaderec of the hit, null if there isn't one.
+    private void bump(Normal n, Point3D p, ShadeRec sr) {
+        double[] d = SCRATCH.get();
+        if (lookup instanceof FBMBump) {
+            ((FBMBump) lookup).getDisplacement(p.x, p.y, p.z, d);
+        } else {
+            if (sr == null) {
+                sr = NORMAL_REC.get();
+                sr.localHitPosition.setTo(p);
+            }
+            RGBColor c = lookup.getColor(sr);
+            d[0] = c.r;
+            d[1] = c.g;
+            d[2] = c.b;
+        }
+        n.x = (n.x + d[0]) / 2;
+        n.y = (n.y + d[1]) / 2;
+        n.z = (n.z + d[2]) / 2;
+        n.normalize();
+    }
+
     /* @Override
      * public Material getMaterial() {
      * return obj.getMaterial(); //To change body of generated methods, choose
@@ -194,4 +263,9 @@ public class BumpedObject extends GeometricObject {
         return obj.getBoundingBox(); //To change body of generated methods, choose Tools | Templates.
     }
 
+    @Override
+    public boolean isBounded() {
+        return obj.isBounded();
+    }
+
 }
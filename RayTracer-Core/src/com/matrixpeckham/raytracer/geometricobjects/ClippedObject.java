@@ -172,9 +172,19 @@ public class ClippedObject extends GeometricObject {
         return obj.getMaterial(); //To change body of generated methods, choose Tools | Templates.
     }
 
+    @Override
+    public Material getMaterial(ShadeRec s) {
+        return obj.getMaterial(s);
+    }
+
     @Override
     public BBox getBoundingBox() {
         return obj.getBoundingBox(); //To change body of generated methods, choose Tools | Templates.
     }
 
+    @Override
+    public boolean isBounded() {
+        return obj.isBounded();
+    }
+
 }
@@ -113,6 +113,76 @@ public abstract class GeometricObject {
      */
     public abstract boolean hit(Ray ray, ArrayList<CSGShadeRec> hits, ShadeRec s);
 
+    /**
+     * true if the object splits hit in two, intersect and fillShadeRec. World
+     * and compounds then only intersect it, and fill in the shade rec once, for
+     * whichever object is closest.
+     *
+     * @return
+     */
+    public boolean splitsHit() {
+        return false;
+    }
+
+    /**
+     * first half of hit, for objects that split it. the ray parameter of the
+     * hit that hit would find, without computing normals, hit points or
+     * texture coordinates.
+     *
+     * @param ray
+     *
+     * @return ray parameter, NaN if there is no hit
+     */
+    public double intersect(Ray ray) {
+        return Double.NaN;
+    }
+
+    /**
+     * second half of hit, for objects that split it. fills in the shade rec
+     * the way hit does for a hit at t found by intersect with the same ray.
+     *
+     * @param ray
+     * @param t
+     * @param s
+     */
+    public void fillShadeRec(Ray ray, double t, ShadeRec s) {
+    }
+
+    /**
+     * Packet hit function. Intersects every active ray in the packet and keeps
+     * the hit in the packet's record for that ray when it is closer than the
+     * one already there. The default just calls hit for each ray, objects that
+     * can do better with a whole packet at once (compounds, grids, mesh
+     * triangles) override this.
+     *
+     * @param packet
+     *
+     * @return true if any ray got a closer hit
+     */
+    public boolean hitPacket(RayPacket packet) {
+        return hitEachRay(packet);
+    }
+
+    /**
+     * intersects the active rays of a packet one at a time with hit, for
+     * objects that have no packet specific version.
+     *
+     * @param packet
+     *
+     * @return true if any ray got a closer hit
+     */
+    protected final boolean hitEachRay(RayPacket packet) {
+        boolean hit = false;
+        for (long m = packet.active; m != 0; m &= m - 1) {
+            int i = Long.numberOfTrailingZeros(m);
+            ShadeRec sr = packet.scratch();
+            if (hit(packet.getRay(i, packet.ray), sr)) {
+                hit |= packet.record(i, sr, getMaterial(sr));
+            }
+        }
+        return hit;
+    }
+
     /**
      * sets the color of the object, only used for chapter five.
      *
@@ -142,6 +212,18 @@ public abstract class GeometricObject {
         return material;
     }
 
+    /**
+     * gets the material for a hit that hit just filled into s. objects whose
+     * material depends on which part was hit put it on s.material instead of
+     * keeping it themselves, so one object can be hit from many threads.
+     *
+     * @param s
+     * @return
+     */
+    public Material getMaterial(ShadeRec s) {
+        return getMaterial();
+    }
+
     /**
      * sets the material for this object
      *
@@ -205,6 +287,17 @@ public abstract class GeometricObject {
         return new BBox();
     }
 
+    /**
+     * true if the bounding box holds the whole object. objects that go on
+     * forever, like planes, return false so compounds don't cull with their
+     * box.
+     *
+     * @return
+     */
+    public boolean isBounded() {
+        return true;
+    }
+
     /**
      * Shadow hit function, also checks an object for hit with a ray, but this
      * one doesn't need to compute hit point, or normal, so can sometimes be
@@ -18,6 +18,7 @@
 package com.matrixpeckham.raytracer.geometricobjects;
 
 import com.matrixpeckham.raytracer.geometricobjects.csg.CSGShadeRec;
+import com.matrixpeckham.raytracer.materials.Material;
 import com.matrixpeckham.raytracer.util.*;
 import java.util.ArrayList;
 
@@ -58,6 +59,18 @@ public class Instance extends GeometricObject {
      */
     private boolean transformTexture = false;
 
+    /**
+     * flag for if bbox matches the current object and transform, cleared by
+     * every transform so getBoundingBox can recompute it.
+     */
+    private volatile boolean bboxValid = false;
+
+    /**
+     * flat copy of the matrices that rays, normals and derivatives go
+     * through, null when the matrices changed since it was made.
+     */
+    private volatile Transform transform = null;
+
     /**
      * default constructor
      */
@@ -103,6 +116,8 @@ public class Instance extends GeometricObject {
         }
         forwardMatrix.setTo(i.forwardMatrix);
         bbox = new BBox(i.bbox);
+        bboxValid = i.bboxValid;
+        transform = i.transform;
 
     }
 
@@ -113,6 +128,7 @@ public class Instance extends GeometricObject {
      */
     public void setObject(GeometricObject obj) {
         object = obj;
+        bboxValid = false;
     }
 
     /**
@@ -121,7 +137,10 @@ public class Instance extends GeometricObject {
      * transform the bounds of the original object, and then compute the
      * bounding box of the new points.
      */
-    public void computeBoundingBox() {
+    public synchronized void computeBoundingBox() {
+        if (object == null) {
+            return;
+        }
         BBox objBBox = object.getBoundingBox();
 
         // Now apply the affine transformations to the box.
@@ -222,18 +241,33 @@ public class Instance extends GeometricObject {
         bbox.x1 = x1;
         bbox.y1 = y1;
         bbox.z1 = z1;
+        bboxValid = true;
     }
 
     /**
-     * returns the bounding box
+     * returns the bounding box, computes it first if the object or transform
+     * changed since it was last computed
      *
      * @return
      */
     @Override
     public BBox getBoundingBox() {
+        if (!bboxValid) {
+            computeBoundingBox();
+        }
         return bbox;
     }
 
+    /**
+     * bounded if the instanced object is
+     *
+     * @return
+     */
+    @Override
+    public boolean isBounded() {
+        return object == null || object.isBounded();
+    }
+
     /**
      * sets the texture transform flag
      *
@@ -253,6 +287,20 @@ public class Instance extends GeometricObject {
         return new Instance(this);
     }
 
+    /**
+     * transform made from the matrices, rebuilt after they change
+     *
+     * @return
+     */
+    private Transform transform() {
+        Transform t = transform;
+        if (t == null) {
+            t = new Transform(forwardMatrix, invMatrix);
+            transform = t;
+        }
+        return t;
+    }
+
     /**
      * hit function
      *
@@ -263,24 +311,24 @@ public class Instance extends GeometricObject {
      */
     @Override
     public boolean hit(Ray ray, ShadeRec s) {
-        //we transform the ray by the inverse transform matrix, then differ to original object's hit function
-        Ray invRay = new Ray(ray);
-        invRay.o.setTo(Point3D.mul(invMatrix, invRay.o));
-        invRay.d.setTo(Vector3D.mul(invMatrix, invRay.d));
-
-        if (object.hit(invRay, s)) {
-
-            //we have to transform the hit normal to world coordinates
-            s.normal.setTo(Normal.mul(invMatrix, s.normal));
-            s.normal.normalize();
+        //we transform the ray by the inverse transform matrix in place, then
+        //differ to original object's hit function and put the ray back
+        Transform t = transform();
+        double ox = ray.o.x, oy = ray.o.y, oz = ray.o.z;
+        double dx = ray.d.x, dy = ray.d.y, dz = ray.d.z;
+        boolean hit;
+        try {
+            hit = object.hit(t.inverseRay(ray), s);
+        } finally {
+            ray.o.setTo(ox, oy, oz);
+            ray.d.setTo(dx, dy, dz);
+        }
+        if (hit) {
+            toWorld(t, ray, s);
             //use object material
-            if (object.getMaterial() != null) {
-                material = object.getMaterial();
-            }
-
-            //if we don't transform the texture we use world texture coordinates, otherwise use local texture coordinates
-            if (!transformTexture) {
-                s.localHitPosition.setTo(ray.o.add(ray.d.mul(s.lastT)));
+            Material m = object.getMaterial(s);
+            if (m != null) {
+                material = m;
             }
             return true;
         }
@@ -289,30 +337,51 @@ public class Instance extends GeometricObject {
 
     @Override
     public boolean hit(Ray ray, ArrayList<CSGShadeRec> hits, ShadeRec s) {
-        //we transform the ray by the inverse transform matrix, then differ to original object's hit function
-        Ray invRay = new Ray(ray);
-        invRay.o.setTo(Point3D.mul(invMatrix, invRay.o));
-        invRay.d.setTo(Vector3D.mul(invMatrix, invRay.d));
-        ArrayList<CSGShadeRec> nhits = new ArrayList<>();
-        if (object.hit(invRay, nhits, s)) {
-            for (CSGShadeRec s2 : nhits) {
-                //we have to transform the hit normal to world coordinates
-                s2.normal.setTo(Normal.mul(invMatrix, s2.normal));
-                s2.normal.normalize();
-                //use object material
-                if (object.getMaterial() != null) {
-                    s2.material = object.getMaterial();
-                }
-
-                //if we don't transform the texture we use world texture coordinates, otherwise use local texture coordinates
-                if (!transformTexture) {
-                    s2.localHitPosition.setTo(ray.o.add(ray.d.mul(s.lastT)));
-                }
-                hits.add(s2);
+        //we transform the ray by the inverse transform matrix in place, then
+        //differ to original object's hit function and put the ray back
+        Transform t = transform();
+        double ox = ray.o.x, oy = ray.o.y, oz = ray.o.z;
+        double dx = ray.d.x, dy = ray.d.y, dz = ray.d.z;
+        int start = hits.size();
+        boolean hit;
+        try {
+            hit = object.hit(t.inverseRay(ray), hits, s);
+        } finally {
+            ray.o.setTo(ox, oy, oz);
+            ray.d.setTo(dx, dy, dz);
+        }
+        if (!hit) {
+            while (hits.size() > start) {
+                hits.remove(hits.size() - 1);
             }
-            return true;
+            return false;
+        }
+        for (int i = start; i < hits.size(); i++) {
+            CSGShadeRec s2 = hits.get(i);
+            toWorld(t, ray, s2);
+            //use object material
+            if (object.getMaterial() != null) {
+                s2.material = object.getMaterial();
+            }
+        }
+        return true;
+    }
+
+    //takes the normal, surface derivatives and, if textures aren't
+    //transformed, the hit position of a hit back to world coordinates
+    private void toWorld(Transform t, Ray ray, ShadeRec s) {
+        t.transformNormal(s.normal);
+        s.normal.normalize();
+        //and the surface derivatives, for the ray differentials
+        if (s.dpdu.x != 0 || s.dpdu.y != 0 || s.dpdu.z != 0) {
+            t.transformVector(s.dpdu);
+            t.transformVector(s.dpdv);
+        }
+        //if we don't transform the texture we use world texture coordinates, otherwise use local texture coordinates
+        if (!transformTexture) {
+            s.localHitPosition.setTo(ray.o.x + ray.d.x * s.lastT, ray.o.y
+                    + ray.d.y * s.lastT, ray.o.z + ray.d.z * s.lastT);
         }
-        return false;
     }
 
     /**
@@ -330,11 +399,15 @@ public class Instance extends GeometricObject {
             return false;
         }
         //inverse transform the ray then hit with object
-        Ray invRay = new Ray(ray);
-        invRay.o.setTo(Point3D.mul(invMatrix, invRay.o));
-        invRay.d.setTo(Vector3D.mul(invMatrix, invRay.d));
-
-        return object.shadowHit(invRay, tr);
+        Transform t = transform();
+        double ox = ray.o.x, oy = ray.o.y, oz = ray.o.z;
+        double dx = ray.d.x, dy = ray.d.y, dz = ray.d.z;
+        try {
+            return object.shadowHit(t.inverseRay(ray), tr);
+        } finally {
+            ray.o.setTo(ox, oy, oz);
+            ray.d.setTo(dx, dy, dz);
+        }
     }
 
     /**
@@ -368,6 +441,8 @@ public class Instance extends GeometricObject {
         scaling_matrix.m[2][2] = s.z;
 
         forwardMatrix = scaling_matrix.mul(forwardMatrix);
+        bboxValid = false;
+        transform = null;
     }
 
     /**
@@ -394,6 +469,8 @@ public class Instance extends GeometricObject {
         scaling_matrix.m[2][2] = c;
 
         forwardMatrix = scaling_matrix.mul(forwardMatrix);
+        bboxValid = false;
+        transform = null;
     }
 
     /**
@@ -418,6 +495,8 @@ public class Instance extends GeometricObject {
         translation_matrix.m[2][3] = trans.z;
 
         forwardMatrix = translation_matrix.mul(forwardMatrix);
+        bboxValid = false;
+        transform = null;
     }
 
     /**
@@ -444,6 +523,8 @@ public class Instance extends GeometricObject {
         translation_matrix.m[2][3] = dz;
 
         forwardMatrix = translation_matrix.mul(forwardMatrix);
+        bboxValid = false;
+        transform = null;
     }
 
     /**
@@ -473,6 +554,8 @@ public class Instance extends GeometricObject {
         x_rotation_matrix.m[2][2] = cos_theta;
 
         forwardMatrix = x_rotation_matrix.mul(forwardMatrix);
+        bboxValid = false;
+        transform = null;
     }
 
     /**
@@ -502,6 +585,8 @@ public class Instance extends GeometricObject {
         y_rotation_matrix.m[2][2] = cos_theta;
 
         forwardMatrix = y_rotation_matrix.mul(forwardMatrix);
+        bboxValid = false;
+        transform = null;
     }
 
     /**
@@ -530,6 +615,8 @@ public class Instance extends GeometricObject {
         z_rotation_matrix.m[1][1] = cos_theta;
 
         forwardMatrix = z_rotation_matrix.mul(forwardMatrix);
+        bboxValid = false;
+        transform = null;
     }
 
     /**
@@ -572,6 +659,8 @@ public class Instance extends GeometricObject {
         invMatrix = invMatrix.mul(inverse_shearing_matrix);
 
         forwardMatrix = s.mul(forwardMatrix);
+        bboxValid = false;
+        transform = null;
     }
 
 }
@@ -23,32 +23,46 @@ import com.matrixpeckham.raytracer.materials.Material;
 import com.matrixpeckham.raytracer.materials.SV_Matte;
 import com.matrixpeckham.raytracer.textures.ConstantColor;
 import com.matrixpeckham.raytracer.textures.Texture;
-import com.matrixpeckham.raytracer.textures.image.Image;
-import com.matrixpeckham.raytracer.textures.image.ImageTexture;
+import com.matrixpeckham.raytracer.textures.image.GlyphAtlas;
 import com.matrixpeckham.raytracer.util.Utility.Greek;
 import com.matrixpeckham.raytracer.util.*;
 import com.matrixpeckham.raytracer.world.World;
-import java.awt.Color;
 import java.awt.Font;
 import java.awt.FontMetrics;
-import java.awt.Graphics2D;
-import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
+ * Quad showing a string, the quad is cut away everywhere the text isn't
+ * inked. The glyphs come from the shared GlyphAtlas of the font, so quads
+ * only keep where each of their glyphs sits.
  *
  * @author William Matrix Peckham
  */
 public class TextQuad extends GeometricObject {
 
+    /**
+     * font text is drawn in
+     */
+    private static final Font FONT = new Font("monospaced", Font.BOLD, 100);
+
+    //record for shadow rays that can't take the fast path
+    private static final ThreadLocal<ShadeRec> SHADOW_REC
+            = new ThreadLocal<ShadeRec>() {
+        @Override
+        protected ShadeRec initialValue() {
+            return new ShadeRec((World) null);
+        }
+    };
+
     /**
      * object to bump map
      */
     GeometricObject obj = null;
 
     /**
-     * texture for bump mapping (texture colors are interpreted as vector
-     * displacements to normals)
+     * texture to clip with, when it is set the text is ignored and the quad
+     * is clipped where the texture is light
      */
     Texture clipMap = null;
 
@@ -57,6 +71,55 @@ public class TextQuad extends GeometricObject {
      */
     String text;
 
+    /**
+     * glyphs of the text's font
+     */
+    private GlyphAtlas atlas;
+
+    /**
+     * glyphs of each line
+     */
+    private GlyphAtlas.Glyph[][] glyphs;
+
+    /**
+     * pen position of each glyph in its line
+     */
+    private int[][] pens;
+
+    /**
+     * advance of every glyph of each line, 0 if they don't all match
+     */
+    private int[] advances;
+
+    /**
+     * true if some glyph reaches into the line above or below its own
+     */
+    private boolean spillUp;
+
+    private boolean spillDown;
+
+    /**
+     * size of the text in atlas texels
+     */
+    private int width;
+
+    private int height;
+
+    private int lineHeight;
+
+    /**
+     * size of the quad
+     */
+    private double quadWidth;
+
+    private double quadHeight;
+
+    /**
+     * the rectangle made by the constructor, while it is still the clipped
+     * object shadow rays intersect its plane directly
+     */
+    private GeometricObject quad;
+
     public static final String DEFAULT_STRING = "Unintentionally Left Blank\n"
             + "THE QUICK BROWN FOX JUMPED OVER THE LAZY DOG\n"
             + "the quick brown fox jumped over the lazy dog\n"
@@ -128,52 +191,45 @@ public class TextQuad extends GeometricObject {
     }
 
     public TextQuad(String text, double scale, RGBColor color) {
-        BufferedImage temp = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
-        Font font = new Font("monospaced", Font.BOLD, 100);
+        this.text = text;
+        GlyphAtlas atlas = GlyphAtlas.get(FONT);
+        FontMetrics metrics = atlas.getMetrics();
         String[] lines = text.split("\n");
-        Graphics2D tempG = temp.createGraphics();
-        tempG.setFont(font);
-        FontMetrics metrics = tempG.getFontMetrics();
-        int ascent = metrics.getAscent();
-        int lineHeight = metrics.getHeight();
-        int height = lineHeight * lines.length;
-        int width = Integer.MIN_VALUE;
-        for (String line : lines) {
-            int twid = (int) metrics.getStringBounds(line, tempG).getWidth();
-            if (twid > width) {
-                width = twid;
+        lineHeight = atlas.getLineHeight();
+        height = lineHeight * lines.length;
+        int w = Integer.MIN_VALUE;
+        glyphs = new GlyphAtlas.Glyph[lines.length][];
+        pens = new int[lines.length][];
+        advances = new int[lines.length];
+        int pad = atlas.getPad();
+        for (int l = 0; l < lines.length; l++) {
+            String line = lines[l];
+            int twid = (int) metrics.getStringBounds(line, null).getWidth();
+            if (twid > w) {
+                w = twid;
+            }
+            glyphs[l] = new GlyphAtlas.Glyph[line.length()];
+            pens[l] = new int[line.length()];
+            int pen = 0;
+            for (int i = 0; i < line.length(); i++) {
+                GlyphAtlas.Glyph g = atlas.getGlyph(line.charAt(i));
+                glyphs[l][i] = g;
+                pens[l][i] = pen;
+                pen += g.advance;
+                if (i == 0) {
+                    advances[l] = g.advance;
+                } else if (advances[l] != g.advance) {
+                    advances[l] = 0;
+                }
+                spillUp |= g.inkTop < pad;
+                spillDown |= g.inkBottom >= pad + lineHeight;
             }
         }
-        temp = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        tempG = temp.createGraphics();
-        tempG.setFont(font);
-        tempG.setColor(Color.WHITE);
-        tempG.fillRect(0, 0, width, height);
-        tempG.setColor(Color.BLACK);
-        int x = 0;
-        int y = ascent;
-        for (String line : lines) {
-            tempG.drawString(line, x, y);
-            y += lineHeight;
-        }
-        tempG.dispose();
-        Image image = new Image();
-        image.loadFromBufferedImage(temp);
-
-        int tw = image.getHres();
-        int th = image.getVres();
-
-        //File file = new File("TEST_TEXT.png");
-        //System.out.println(file.getAbsolutePath());
-        //try {
-        //ImageIO.write(temp, "PNG", file);
-        //} catch (IOException ex) {
-        //  Logger.getLogger(TextQuad.class.getName()).log(Level.SEVERE, null,
-        //        ex);
-        //}
-        ImageTexture texture = new ImageTexture(image);
-        double quadWidth = 1.0 * scale;
-        double quadHeight = ((double) height / (double) width);
+        width = w;
+        this.atlas = atlas;
+
+        quadWidth = 1.0 * scale;
+        quadHeight = ((double) height / (double) width);
         quadHeight *= scale;
         Rectangle rect = new Rectangle(new Point3D(),
                 new Vector3D(0, quadHeight,
@@ -187,7 +243,7 @@ public class TextQuad extends GeometricObject {
         rect.setMaterial(matt);
         this.material = matt;
         this.obj = rect;
-        this.clipMap = texture;
+        this.quad = rect;
     }
 
     /**
@@ -197,6 +253,27 @@ public class TextQuad extends GeometricObject {
      */
     private TextQuad(TextQuad aThis) {
         super(aThis);
+        text = aThis.text;
+        atlas = aThis.atlas;
+        glyphs = aThis.glyphs;
+        pens = aThis.pens;
+        advances = aThis.advances;
+        spillUp = aThis.spillUp;
+        spillDown = aThis.spillDown;
+        width = aThis.width;
+        height = aThis.height;
+        lineHeight = aThis.lineHeight;
+        quadWidth = aThis.quadWidth;
+        quadHeight = aThis.quadHeight;
+        if (aThis.obj != null) {
+            obj = aThis.obj.cloneGeometry();
+        }
+        if (aThis.clipMap != null) {
+            clipMap = aThis.clipMap.cloneTexture();
+        }
+        if (aThis.obj == aThis.quad) {
+            quad = obj;
+        }
     }
 
     /**
@@ -206,6 +283,7 @@ public class TextQuad extends GeometricObject {
      */
     public void setObject(GeometricObject obj) {
         this.obj = obj.cloneGeometry();
+        this.quad = null;
     }
 
     /**
@@ -240,11 +318,8 @@ public class TextQuad extends GeometricObject {
         //differ to sub object
         boolean hit = obj.hit(ray, s);
         //if we have a hit we need to augment the normal
-        if (hit) {
-            RGBColor c = clipMap.getColor(s);
-            if (c.average() > 0.5) {
-                return false;
-            }
+        if (hit && clipped(s)) {
+            return false;
         }
         return hit;
     }
@@ -259,18 +334,19 @@ public class TextQuad extends GeometricObject {
      */
     @Override
     public boolean hit(Ray ray, ArrayList<CSGShadeRec> hits, ShadeRec sr) {
-        //differ to sub object
-        ArrayList<CSGShadeRec> nhit = new ArrayList<>();
-        boolean hit = obj.hit(ray, nhit, sr);
-        //if we have a hit we need to augment the normal
-        if (hit) {
-            for (CSGShadeRec s : nhit) {
-                RGBColor c = clipMap.getColor(s);
-                if (!(c.average() > 0.5)) {
-                    hits.add(s);
-                }
+        //differ to sub object, then drop the clipped hits it added
+        int start = hits.size();
+        boolean hit = obj.hit(ray, hits, sr);
+        int n = start;
+        for (int i = start; i < hits.size(); i++) {
+            CSGShadeRec s = hits.get(i);
+            if (!clipped(s)) {
+                hits.set(n++, s);
             }
         }
+        while (hits.size() > n) {
+            hits.remove(hits.size() - 1);
+        }
         return hit;
     }
 
@@ -285,12 +361,82 @@ public class TextQuad extends GeometricObject {
      */
     @Override
     public boolean shadowHit(Ray ray, DoubleRef t) {
-        ShadeRec rec = new ShadeRec((World) null);
+        if (!shadows) {
+            return false;
+        }
+        if (obj == quad && clipMap == null) {
+            //the quad is in the z = 0 plane with a corner at the origin
+            if (ray.d.z == 0) {
+                return false;
+            }
+            double tt = -ray.o.z / ray.d.z;
+            if (tt <= Utility.EPSILON) {
+                return false;
+            }
+            double u = (ray.o.x + tt * ray.d.x) / quadWidth;
+            double v = (ray.o.y + tt * ray.d.y) / quadHeight;
+            if (u < 0 || u > 1 || v < 0 || v > 1 || !inked(u, v)) {
+                return false;
+            }
+            t.d = tt;
+            return true;
+        }
+        ShadeRec rec = SHADOW_REC.get();
         boolean hit = hit(ray, rec);
         t.d = rec.lastT;
         return hit;
     }
 
+    //true if the hit is on a part of the quad that is cut away
+    private boolean clipped(ShadeRec s) {
+        if (clipMap != null) {
+            return clipMap.getColor(s).average() > 0.5;
+        }
+        return !inked(s.u, s.v);
+    }
+
+    //true if the text covers (u, v), u runs along the lines and v up the quad
+    private boolean inked(double u, double v) {
+        int x = (int) (u * (width - 1));
+        //text rows run down from the top of the quad
+        int y = height - 1 - (int) (v * (height - 1));
+        int line = y / lineHeight;
+        if (inked(line, x, y)) {
+            return true;
+        }
+        //glyphs that hang past their own line
+        if (spillDown && line > 0 && inked(line - 1, x, y)) {
+            return true;
+        }
+        return spillUp && line < glyphs.length - 1 && inked(line + 1, x, y);
+    }
+
+    //true if a glyph of a line covers text texel (x, y)
+    private boolean inked(int line, int x, int y) {
+        int[] pen = pens[line];
+        if (pen.length == 0) {
+            return false;
+        }
+        int i;
+        if (advances[line] > 0) {
+            i = Math.min(x / advances[line], pen.length - 1);
+        } else {
+            i = Arrays.binarySearch(pen, x);
+            if (i < 0) {
+                i = -i - 2;
+            }
+        }
+        GlyphAtlas.Glyph[] g = glyphs[line];
+        int pad = atlas.getPad();
+        int ly = y - line * lineHeight + pad;
+        //glyphs may also hang into the ones next to them
+        return atlas.coverage(g[i], x - pen[i] + pad, ly) >= 0.5
+                || i > 0 && atlas.coverage(g[i - 1], x - pen[i - 1] + pad, ly)
+                >= 0.5
+                || i < pen.length - 1 && atlas.coverage(g[i + 1], x - pen[i
+                        + 1] + pad, ly) >= 0.5;
+    }
+
     /**
      * Here we call the sub-object's method then augment the normal.
      *
@@ -308,9 +454,19 @@ public class TextQuad extends GeometricObject {
         return obj.getMaterial(); //To change body of generated methods, choose Tools | Templates.
     }
 
+    @Override
+    public Material getMaterial(ShadeRec s) {
+        return obj.getMaterial(s);
+    }
+
     @Override
     public BBox getBoundingBox() {
         return obj.getBoundingBox(); //To change body of generated methods, choose Tools | Templates.
     }
 
+    @Override
+    public boolean isBounded() {
+        return obj.isBounded();
+    }
+
 }
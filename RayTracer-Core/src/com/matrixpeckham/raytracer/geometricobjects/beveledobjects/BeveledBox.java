@@ -18,28 +18,64 @@
 package com.matrixpeckham.raytracer.geometricobjects.beveledobjects;
 
 import com.matrixpeckham.raytracer.geometricobjects.GeometricObject;
-import com.matrixpeckham.raytracer.geometricobjects.Instance;
-import com.matrixpeckham.raytracer.geometricobjects.compound.Compound;
-import com.matrixpeckham.raytracer.geometricobjects.primitives.OpenCylinder;
-import com.matrixpeckham.raytracer.geometricobjects.primitives.Rectangle;
-import com.matrixpeckham.raytracer.geometricobjects.primitives.Sphere;
+import com.matrixpeckham.raytracer.geometricobjects.csg.CSGHitList;
+import com.matrixpeckham.raytracer.geometricobjects.csg.CSGShadeRec;
+import com.matrixpeckham.raytracer.geometricobjects.csg.CSGSolid;
+import com.matrixpeckham.raytracer.materials.Material;
 import com.matrixpeckham.raytracer.util.BBox;
 import com.matrixpeckham.raytracer.util.DoubleRef;
-import com.matrixpeckham.raytracer.util.Normal;
 import com.matrixpeckham.raytracer.util.Point3D;
 import com.matrixpeckham.raytracer.util.Ray;
 import com.matrixpeckham.raytracer.util.ShadeRec;
-import com.matrixpeckham.raytracer.util.Vector3D;
+import com.matrixpeckham.raytracer.util.Utility;
+import java.util.ArrayList;
 import java.util.logging.Logger;
 
 /**
- * Beveled box that uses full cylinders and spheres, doesn't play well with
- * transparency, but we have beveled box shell that does, so we won't bother
- * changing this to do that
+ * Beveled box, the points within the bevel radius of a smaller inner box.
+ * <p>
+ * It's a single object instead of a compound of faces, edge cylinders and
+ * corner spheres. The ray is clipped to the box, then cut where it crosses
+ * the planes of the inner box's faces. In each piece the closest point of the
+ * inner box is on the same face, edge or corner, so the surface there is a
+ * plane, cylinder or sphere around it, all of which come out of the same
+ * quadratic for the distance to the inner box. The pieces are done in order,
+ * so the first crossing found is the nearest.
+ * <p>
+ * The surface is closed and has nothing inside, so it also works with
+ * transparency and CSG. The parts can still have their own materials, with
+ * the same indices as the faces, edges and corners of the compound this used
+ * to be.
  *
  * @author William Matrix Peckham
  */
-public class BeveledBox extends Compound {
+public class BeveledBox extends GeometricObject implements CSGSolid {
+
+    //piece ends and crossings, (t, entering, normal) for each crossing
+    private static final ThreadLocal<double[]> SCRATCH
+            = new ThreadLocal<double[]>() {
+        @Override
+        protected double[] initialValue() {
+            return new double[CROSSINGS + 2 * CROSSING_SIZE];
+        }
+    };
+
+    private static final int CROSSINGS = 8;
+
+    private static final int CROSSING_SIZE = 6;
+
+    /**
+     * number of parts
+     */
+    private static final int PARTS = 26;
+
+    //part for the side of the inner box the hit is on in x, y and z, -1
+    //below, 0 in its range and 1 above
+    private static final int[] PART = {
+        18, 7, 17, 10, 24, 9, 14, 3, 13,
+        5, 20, 4, 22, -1, 23, 1, 21, 0,
+        19, 6, 16, 11, 25, 8, 15, 2, 12
+    };
 
     /**
      * low point
@@ -61,12 +97,21 @@ public class BeveledBox extends Compound {
      */
     private BBox bBox = new BBox(p0, p1);
 
+    /**
+     * materials of the parts, null if none have been set
+     */
+    private Material[] parts = null;
+
+    /**
+     * part of the last hit
+     */
+    private int hitPart = -1;
+
     /**
      * default constructor
      */
     public BeveledBox() {
         super();
-        buildCompound();
     }
 
     /**
@@ -82,7 +127,6 @@ public class BeveledBox extends Compound {
         p1.setTo(maxCorner);
         rb = bevelRadius;
         bBox = new BBox(p0, p1);
-        buildCompound();
     }
 
     /**
@@ -96,6 +140,14 @@ public class BeveledBox extends Compound {
         p1.setTo(bb.p1);
         rb = bb.rb;
         bBox = new BBox(bb.bBox);
+        if (bb.parts != null) {
+            parts = new Material[PARTS];
+            for (int i = 0; i < PARTS; i++) {
+                if (bb.parts[i] != null) {
+                    parts[i] = bb.parts[i].cloneMaterial();
+                }
+            }
+        }
     }
 
     /**
@@ -119,227 +171,248 @@ public class BeveledBox extends Compound {
     }
 
     /**
-     * shadow hit, overridden to use cached box
+     * number of parts that can have their own material
      *
-     * @param ray
-     * @param t
      * @return
      */
+    public int getNumObjects() {
+        return PARTS;
+    }
+
+    /**
+     * sets the material of every part
+     *
+     * @param mat
+     */
     @Override
-    public boolean shadowHit(Ray ray, DoubleRef t) {
-        if (!shadows) {
-            return false;
-        }
-        if (bBox.hit(ray)) {
-            return super.shadowHit(ray, t);
-        } else {
-            return false;
+    public void setMaterial(Material mat) {
+        super.setMaterial(mat);
+        parts = null;
+    }
+
+    /**
+     * sets the material of a part. 0 to 11 are the edges, 12 to 19 the
+     * corners and 20 to 25 the faces.
+     *
+     * @param mat
+     * @param i
+     */
+    public void setMaterial(Material mat, int i) {
+        if (parts == null) {
+            parts = new Material[PARTS];
         }
+        parts[i] = mat.cloneMaterial();
     }
 
     /**
-     * override hit function to use cached box
+     * material of the part that was hit last if it has one
      *
-     * @param ray
-     * @param s
      * @return
      */
     @Override
-    public boolean hit(Ray ray, ShadeRec s) {
-        if (bBox.hit(ray)) {
-            return super.hit(ray, s);
-        } else {
+    public Material getMaterial() {
+        if (parts != null && hitPart >= 0 && parts[hitPart] != null) {
+            return parts[hitPart];
+        }
+        return material;
+    }
+
+    @Override
+    public boolean hit(Ray ray, ShadeRec sr) {
+        double[] s = SCRATCH.get();
+        if (crossings(ray, Utility.EPSILON, true, s) == 0) {
             return false;
         }
+        double t = s[CROSSINGS];
+        sr.lastT = t;
+        sr.normal.setTo(s[CROSSINGS + 2], s[CROSSINGS + 3], s[CROSSINGS + 4]);
+        sr.normal.normalize();
+        sr.localHitPosition.setTo(ray.o.x + t * ray.d.x, ray.o.y + t
+                * ray.d.y, ray.o.z + t * ray.d.z);
+        hitPart = (int) s[CROSSINGS + 5];
+        return true;
     }
 
-    /**
-     * builds the components
-     */
-    private void buildCompound() {
-        Instance top_front_edge = new Instance(new OpenCylinder(-(p1.x - p0.x
-                - 2 * rb) / 2, (p1.x - p0.x - 2 * rb) / 2, rb));	// top front edge
-        top_front_edge.rotateZ(90);
-        top_front_edge.translate((p0.x + p1.x) / 2, p1.y - rb, p1.z - rb);
-        top_front_edge.setTransformTexture(false);
-        objects.add(top_front_edge);
-
-        // top back (-ve z)
-        Instance top_back_edge = new Instance(new OpenCylinder(-(p1.x - p0.x - 2
-                * rb) / 2, (p1.x - p0.x - 2 * rb) / 2, rb));	// top back edge
-        top_back_edge.rotateZ(90);
-        top_back_edge.translate((p0.x + p1.x) / 2, p1.y - rb, p0.z + rb);
-        top_back_edge.setTransformTexture(false);
-        objects.add(top_back_edge);
-
-        // top right (+ve x)
-        Instance top_right_edge = new Instance(new OpenCylinder(-(p1.z - p0.z
-                - 2 * rb) / 2, (p1.z - p0.z - 2 * rb) / 2, rb)); // top right edge
-        top_right_edge.rotateX(90);
-        top_right_edge.translate(p1.x - rb, p1.y - rb, (p0.z + p1.z) / 2);
-        top_right_edge.setTransformTexture(false);
-        objects.add(top_right_edge);
-
-        // top left (-ve x)
-        Instance top_left_edge = new Instance(new OpenCylinder(-(p1.z - p0.z - 2
-                * rb) / 2, (p1.z - p0.z - 2 * rb) / 2, rb)); // top left edge
-        top_left_edge.rotateX(90);
-        top_left_edge.translate(p0.x + rb, p1.y - rb, (p0.z + p1.z) / 2);
-        top_left_edge.setTransformTexture(false);
-        objects.add(top_left_edge);
-
-        // bottom edges  (-ve y)
-        // bottom front  (+ve z)
-        Instance bottom_front_edge = new Instance(new OpenCylinder(-(p1.x - p0.x
-                - 2 * rb) / 2, (p1.x - p0.x - 2 * rb) / 2, rb));	// bottom fromt edge
-        bottom_front_edge.rotateZ(90);
-        bottom_front_edge.translate((p0.x + p1.x) / 2, p0.y + rb, p1.z - rb);
-        bottom_front_edge.setTransformTexture(false);
-        objects.add(bottom_front_edge);
-
-        // bottom back  (-ve z)
-        Instance bottom_back_edge = new Instance(new OpenCylinder(-(p1.x - p0.x
-                - 2 * rb) / 2, (p1.x - p0.x - 2 * rb) / 2, rb));	// bottom back edge
-        bottom_back_edge.rotateZ(90);
-        bottom_back_edge.translate((p0.x + p1.x) / 2, p0.y + rb, p0.z + rb);
-        bottom_back_edge.setTransformTexture(false);
-        objects.add(bottom_back_edge);
-
-        // bottom right (-ve x, -ve y)
-        Instance bottom_right_edge = new Instance(new OpenCylinder(-(p1.z - p0.z
-                - 2 * rb) / 2, (p1.z - p0.z - 2 * rb) / 2, rb)); // bottom right edge
-        bottom_right_edge.rotateX(90);
-        bottom_right_edge.translate(p1.x - rb, p0.y + rb, (p0.z + p1.z) / 2);
-        bottom_right_edge.setTransformTexture(false);
-        objects.add(bottom_right_edge);
-
-        // bottom left (-ve x, -ve y)
-        Instance bottom_left_edge = new Instance(new OpenCylinder(-(p1.z - p0.z
-                - 2 * rb) / 2, (p1.z - p0.z - 2 * rb) / 2, rb)); // bottom left edge
-        bottom_left_edge.rotateX(90);
-        bottom_left_edge.translate(p0.x + rb, p0.y + rb, (p0.z + p1.z) / 2);
-        bottom_left_edge.setTransformTexture(false);
-        objects.add(bottom_left_edge);
-
-        // vertical edges
-        // vertical right front  (+ve x, +ve z)
-        Instance vertical_right_front_edge = new Instance(new OpenCylinder(p0.y
-                + rb, p1.y - rb, rb));
-        vertical_right_front_edge.translate(p1.x - rb, 0, p1.z - rb);
-        vertical_right_front_edge.setTransformTexture(false);
-        objects.add(vertical_right_front_edge);
-
-        // vertical left front  (-ve x, +ve z)
-        Instance vertical_left_front_edge = new Instance(new OpenCylinder(p0.y
-                + rb, p1.y - rb, rb));
-        vertical_left_front_edge.translate(p0.x + rb, 0, p1.z - rb);
-        vertical_left_front_edge.setTransformTexture(false);
-        objects.add(vertical_left_front_edge);
-
-        // vertical left back  (-ve x, -ve z)
-        Instance vertical_left_back_edge = new Instance(new OpenCylinder(p0.y
-                + rb, p1.y - rb, rb));
-        vertical_left_back_edge.translate(p0.x + rb, 0, p0.z + rb);
-        vertical_left_back_edge.setTransformTexture(false);
-        objects.add(vertical_left_back_edge);
-
-        // vertical right back  (+ve x, -ve z)
-        Instance vertical_right_back_edge = new Instance(new OpenCylinder(p0.y
-                + rb, p1.y - rb, rb));
-        vertical_right_back_edge.translate(p1.x - rb, 0, p0.z + rb);
-        vertical_right_back_edge.setTransformTexture(false);
-        objects.add(vertical_right_back_edge);
-
-        // corner spheres
-        // top right front
-        Sphere top_right_front_corner = new Sphere(new Point3D(p1.x - rb, p1.y
-                - rb, p1.z - rb), rb);
-        objects.add(top_right_front_corner);
-
-        // top left front  (-ve x)
-        Sphere top_left_front_corner = new Sphere(new Point3D(p0.x + rb, p1.y
-                - rb, p1.z - rb), rb);
-        objects.add(top_left_front_corner);
-
-        // top left back
-        Sphere top_left_back_corner = new Sphere(new Point3D(p0.x + rb, p1.y
-                - rb, p0.z + rb), rb);
-        objects.add(top_left_back_corner);
-
-        // top right back
-        Sphere top_right_back_corner = new Sphere(new Point3D(p1.x - rb, p1.y
-                - rb, p0.z + rb), rb);
-        objects.add(top_right_back_corner);
-
-        // bottom right front
-        Sphere bottom_right_front_corner = new Sphere(new Point3D(p1.x - rb,
-                p0.y + rb, p1.z - rb), rb);
-        objects.add(bottom_right_front_corner);
-
-        // bottom left front
-        Sphere bottom_left_front_corner = new Sphere(new Point3D(p0.x + rb, p0.y
-                + rb, p1.z - rb), rb);
-        objects.add(bottom_left_front_corner);
-
-        // bottom left back
-        Sphere bottom_left_back_corner = new Sphere(new Point3D(p0.x + rb, p0.y
-                + rb, p0.z + rb), rb);
-        objects.add(bottom_left_back_corner);
-
-        // bottom right back
-        Sphere bottom_right_back_corner = new Sphere(new Point3D(p1.x - rb, p0.y
-                + rb, p0.z + rb), rb);
-        objects.add(bottom_right_back_corner);
-
-        // the faces
-        // bottom face: -ve y
-        Rectangle bottom_face = new Rectangle(new Point3D(p0.x + rb, p0.y, p0.z
-                + rb),
-                new Vector3D(0, 0, (p1.z - rb) - (p0.z + rb)),
-                new Vector3D((p1.x - rb) - (p0.x + rb), 0, 0),
-                new Normal(0, -1, 0));
-        objects.add(bottom_face);
-
-        // bottom face: +ve y
-        Rectangle top_face = new Rectangle(new Point3D(p0.x + rb, p1.y, p0.z
-                + rb),
-                new Vector3D(0, 0, (p1.z - rb) - (p0.z + rb)),
-                new Vector3D((p1.x - rb) - (p0.x + rb), 0, 0),
-                new Normal(0, 1, 0));
-        objects.add(top_face);
-
-        // back face: -ve z
-        Rectangle back_face = new Rectangle(new Point3D(p0.x + rb, p0.y + rb,
-                p0.z),
-                new Vector3D((p1.x - rb) - (p0.x + rb), 0, 0),
-                new Vector3D(0, (p1.y - rb) - (p0.y + rb), 0),
-                new Normal(0, 0, -1));
-        objects.add(back_face);
-
-        // front face: +ve z
-        Rectangle front_face = new Rectangle(new Point3D(p0.x + rb, p0.y + rb,
-                p1.z),
-                new Vector3D((p1.x - rb) - (p0.x + rb), 0, 0),
-                new Vector3D(0, (p1.y - rb) - (p0.y + rb), 0),
-                new Normal(0, 0, 1));
-        objects.add(front_face);
-
-        // left face: -ve x
-        Rectangle left_face = new Rectangle(new Point3D(p0.x, p0.y + rb, p0.z
-                + rb),
-                new Vector3D(0, 0, (p1.z - rb) - (p0.z + rb)),
-                new Vector3D(0, (p1.y - rb) - (p0.y + rb), 0),
-                new Normal(-1, 0, 0));
-        objects.add(left_face);
-
-        // right face: +ve x
-        Rectangle right_face = new Rectangle(new Point3D(p1.x, p0.y + rb, p0.z
-                + rb),
-                new Vector3D(0, 0, (p1.z - rb) - (p0.z + rb)),
-                new Vector3D(0, (p1.y - rb) - (p0.y + rb), 0),
-                new Normal(1, 0, 0));
-        objects.add(right_face);
+    @Override
+    public boolean hit(Ray ray, ArrayList<CSGShadeRec> hits, ShadeRec sr) {
+        double[] s = SCRATCH.get();
+        int n = crossings(ray, -Utility.HUGE_VALUE, false, s);
+        for (int i = 0; i < n; i++) {
+            int k = CROSSINGS + i * CROSSING_SIZE;
+            CSGShadeRec r = new CSGShadeRec(sr);
+            r.lastT = s[k];
+            r.entering = s[k + 1] != 0;
+            r.normal.setTo(s[k + 2], s[k + 3], s[k + 4]);
+            r.normal.normalize();
+            r.localHitPosition.setTo(ray.o.x + s[k] * ray.d.x, ray.o.y
+                    + s[k] * ray.d.y, ray.o.z + s[k] * ray.d.z);
+            hits.add(r);
+        }
+        return n > 0;
+    }
 
+    @Override
+    public void addCSGHits(Ray ray, CSGHitList hits) {
+        double[] s = SCRATCH.get();
+        int n = crossings(ray, -Utility.HUGE_VALUE, false, s);
+        for (int i = 0; i < n; i++) {
+            int k = CROSSINGS + i * CROSSING_SIZE;
+            hits.add(s[k], s[k + 1] != 0, s[k + 2], s[k + 3], s[k + 4], this);
+        }
+    }
+
+    @Override
+    public boolean shadowHit(Ray ray, DoubleRef tr) {
+        if (!shadows) {
+            return false;
+        }
+        double[] s = SCRATCH.get();
+        if (crossings(ray, Utility.EPSILON, true, s) == 0) {
+            return false;
+        }
+        tr.d = s[CROSSINGS];
+        return true;
+    }
+
+    //finds the crossings after tmin, in order, and puts them in s after the
+    //piece ends, only the first one if first is true. returns how many
+    private int crossings(Ray ray, double tmin, boolean first, double[] s) {
+        double ox = ray.o.x;
+        double oy = ray.o.y;
+        double oz = ray.o.z;
+        double dx = ray.d.x;
+        double dy = ray.d.y;
+        double dz = ray.d.z;
+
+        //clip to the box
+        double tx0 = (p0.x - ox) / dx;
+        double tx1 = (p1.x - ox) / dx;
+        double ty0 = (p0.y - oy) / dy;
+        double ty1 = (p1.y - oy) / dy;
+        double tz0 = (p0.z - oz) / dz;
+        double tz1 = (p1.z - oz) / dz;
+        double lo = Math.max(tmin, Math.max(Math.min(tx0, tx1), Math.max(
+                Math.min(ty0, ty1), Math.min(tz0, tz1))));
+        double hi = Math.min(Math.max(tx0, tx1), Math.min(Math.max(ty0, ty1),
+                Math.max(tz0, tz1)));
+        if (!(lo <= hi)) {
+            return 0;
+        }
+
+        //the inner box
+        double x0 = p0.x + rb;
+        double y0 = p0.y + rb;
+        double z0 = p0.z + rb;
+        double x1 = p1.x - rb;
+        double y1 = p1.y - rb;
+        double z1 = p1.z - rb;
+
+        //pieces between the inner box's planes, in order
+        int n = 0;
+        s[n++] = lo;
+        n = cut(s, n, (x0 - ox) / dx, lo, hi);
+        n = cut(s, n, (x1 - ox) / dx, lo, hi);
+        n = cut(s, n, (y0 - oy) / dy, lo, hi);
+        n = cut(s, n, (y1 - oy) / dy, lo, hi);
+        n = cut(s, n, (z0 - oz) / dz, lo, hi);
+        n = cut(s, n, (z1 - oz) / dz, lo, hi);
+        s[n++] = hi;
+
+        //crossings closer than this are the same one found in both pieces
+        double tol = 1e-9 * (hi - lo + rb);
+        int found = 0;
+        for (int i = 0; i + 1 < n; i++) {
+            double a = s[i];
+            double len = s[i + 1] - a;
+            double m = a + 0.5 * len;
+
+            //closest point of the inner box to the middle of the piece, the
+            //offsets are from it at the start of the piece
+            double ex = ox + a * dx;
+            double ey = oy + a * dy;
+            double ez = oz + a * dz;
+            double cx = Utility.clamp(ox + m * dx, x0, x1);
+            double cy = Utility.clamp(oy + m * dy, y0, y1);
+            double cz = Utility.clamp(oz + m * dz, z0, z1);
+            boolean outX = cx != ox + m * dx;
+            boolean outY = cy != oy + m * dy;
+            boolean outZ = cz != oz + m * dz;
+            if (!outX && !outY && !outZ) {
+                //inside the inner box
+                continue;
+            }
+            ex = outX ? ex - cx : 0;
+            ey = outY ? ey - cy : 0;
+            ez = outZ ? ez - cz : 0;
+            double ddx = outX ? dx : 0;
+            double ddy = outY ? dy : 0;
+            double ddz = outZ ? dz : 0;
+
+            //squared distance minus the squared radius along the piece
+            double qa = ddx * ddx + ddy * ddy + ddz * ddz;
+            double qb = 2 * (ex * ddx + ey * ddy + ez * ddz);
+            double qc = ex * ex + ey * ey + ez * ez - rb * rb;
+            double disc = qb * qb - 4 * qa * qc;
+            if (qa == 0 || disc < 0) {
+                continue;
+            }
+            double q = -0.5 * (qb + Math.copySign(Math.sqrt(disc), qb));
+            double r0 = q / qa;
+            double r1 = qc / q;
+            if (r0 > r1) {
+                double tmp = r0;
+                r0 = r1;
+                r1 = tmp;
+            }
+            for (int j = 0; j < 2; j++) {
+                double r = j == 0 ? r0 : r1;
+                double t = a + r;
+                if (r < -tol || r > len + tol || t <= tmin) {
+                    continue;
+                }
+                boolean entering = 2 * qa * r + qb < 0;
+                if (found > 0) {
+                    int k = CROSSINGS + (found - 1) * CROSSING_SIZE;
+                    if ((s[k + 1] != 0) == entering) {
+                        //same crossing on the end of the last piece
+                        continue;
+                    }
+                }
+                int k = CROSSINGS + found * CROSSING_SIZE;
+                s[k] = t;
+                s[k + 1] = entering ? 1 : 0;
+                s[k + 2] = ex + r * ddx;
+                s[k + 3] = ey + r * ddy;
+                s[k + 4] = ez + r * ddz;
+                s[k + 5] = PART[side(outX, cx, x0) * 9 + side(outY, cy, y0)
+                        * 3 + side(outZ, cz, z0)];
+                found++;
+                if (first || found == 2) {
+                    return found;
+                }
+            }
+        }
+        return found;
+    }
+
+    //index of the side of the inner box, 0 below, 1 in range, 2 above
+    private static int side(boolean out, double c, double low) {
+        return out ? (c == low ? 0 : 2) : 1;
+    }
+
+    //inserts a piece end, keeping them in order
+    private static int cut(double[] s, int n, double t, double lo,
+            double hi) {
+        if (!(t > lo && t < hi)) {
+            return n;
+        }
+        int i = n;
+        while (i > 1 && s[i - 1] > t) {
+            s[i] = s[i - 1];
+            i--;
+        }
+        s[i] = t;
+        return n + 1;
     }
 
     private static final Logger LOG
@@ -17,22 +17,16 @@
  */
 package com.matrixpeckham.raytracer.geometricobjects.beveledobjects;
 
-import com.matrixpeckham.raytracer.geometricobjects.Instance;
-import com.matrixpeckham.raytracer.geometricobjects.compound.Compound;
-import com.matrixpeckham.raytracer.geometricobjects.parametric.Torus;
-import com.matrixpeckham.raytracer.geometricobjects.primitives.Disk;
-import com.matrixpeckham.raytracer.geometricobjects.primitives.OpenCylinder;
-import com.matrixpeckham.raytracer.util.Normal;
-import com.matrixpeckham.raytracer.util.Point3D;
+import com.matrixpeckham.raytracer.geometricobjects.GeometricObject;
+import java.util.logging.Logger;
 
 /**
- * Beveled torus class, doesn't play well with transparency.
- *
- * TODO: implement using part torus to play well with transparency
+ * Beveled cylinder class, a solid cylinder around the y axis with rounded
+ * edges. A single closed surface, so it works with transparency.
  *
  * @author William Matrix Peckham
  */
-public class BeveledCylinder extends Compound {
+public class BeveledCylinder extends BeveledSolidOfRevolution {
 
     /**
      *
@@ -43,32 +37,29 @@ public class BeveledCylinder extends Compound {
      */
     public BeveledCylinder(double bottom, double top, double radius,
             double bevelRadius) {
-        super();
-
-        //bottom disk
-        addObject(new Disk(new Point3D(0, bottom, 0), new Normal(0, -1, 0),
-                radius - bevelRadius));
-        //top disk
-        addObject(new Disk(new Point3D(0, top, 0), new Normal(0, 1, 0), radius
-                - bevelRadius));
-        //cylinder
-        addObject(new OpenCylinder(bottom + bevelRadius, top - bevelRadius,
-                radius));
+        super(bottom, top, 0, radius, bevelRadius, false);
+    }
 
-        //bottom torus
-        Instance botTorus = new Instance(new Torus(radius - bevelRadius,
-                bevelRadius));
-        botTorus.translate(0, bottom + bevelRadius, 0);
-        botTorus.setTransformTexture(false);
-//        botTorus.setTransformTexture(true);
-        addObject(botTorus);
+    /**
+     * copy constructor
+     *
+     * @param c
+     */
+    public BeveledCylinder(BeveledCylinder c) {
+        super(c);
+    }
 
-        //top torus
-        Instance topTorus = new Instance(new Torus(radius - bevelRadius,
-                bevelRadius));
-        topTorus.translate(0, top - bevelRadius, 0);
-        topTorus.setTransformTexture(false);
-//        topTorus.setTransformTexture(true);
-        addObject(topTorus);
+    /**
+     * clone
+     *
+     * @return
+     */
+    @Override
+    public GeometricObject cloneGeometry() {
+        return new BeveledCylinder(this);
     }
+
+    private static final Logger LOG
+            = Logger.getLogger(BeveledCylinder.class.getName());
+
 }
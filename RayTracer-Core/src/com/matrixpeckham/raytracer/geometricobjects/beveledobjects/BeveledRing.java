@@ -17,24 +17,24 @@
  */
 package com.matrixpeckham.raytracer.geometricobjects.beveledobjects;
 
-import com.matrixpeckham.raytracer.geometricobjects.Instance;
-import com.matrixpeckham.raytracer.geometricobjects.compound.Compound;
-import com.matrixpeckham.raytracer.geometricobjects.parametric.Torus;
-import com.matrixpeckham.raytracer.geometricobjects.partobjects.ConcavePartCylinder;
-import com.matrixpeckham.raytracer.geometricobjects.partobjects.ConvexPartCylinder;
-import com.matrixpeckham.raytracer.geometricobjects.primitives.Ring;
+import com.matrixpeckham.raytracer.geometricobjects.GeometricObject;
+import com.matrixpeckham.raytracer.materials.Material;
 import com.matrixpeckham.raytracer.materials.Matte;
-import com.matrixpeckham.raytracer.util.Normal;
-import com.matrixpeckham.raytracer.util.Point3D;
+import java.util.logging.Logger;
 
 /**
- * Beveled Ring class. uses full tori so doesn't work for transparency
- *
- * TODO: make use of part torus to make this play well with transparency
+ * Beveled Ring class, a thick ring around the y axis with rounded edges. A
+ * single closed surface, so it works with transparency. The ends and walls
+ * can have their own materials.
  *
  * @author William Matrix Peckham
  */
-public class BeveledRing extends Compound {
+public class BeveledRing extends BeveledSolidOfRevolution {
+
+    /**
+     * materials of the parts, null where the ring's material is used
+     */
+    private final Material[] parts = new Material[OUTER_BOTTOM_BEVEL + 1];
 
     /**
      * default constructor
@@ -54,46 +54,57 @@ public class BeveledRing extends Compound {
      */
     public BeveledRing(double bottom, double top, double innerRadius,
             double outerRadius, double bevelRadius) {
+        super(bottom, top, innerRadius, outerRadius, bevelRadius, true);
+    }
+
+    /**
+     * copy constructor
+     *
+     * @param r
+     */
+    public BeveledRing(BeveledRing r) {
+        super(r);
+        for (int i = 0; i < parts.length; i++) {
+            if (r.parts[i] != null) {
+                parts[i] = r.parts[i].cloneMaterial();
+            }
+        }
+    }
+
+    /**
+     * clone
+     *
+     * @return
+     */
+    @Override
+    public GeometricObject cloneGeometry() {
+        return new BeveledRing(this);
+    }
+
+    /**
+     * sets the material for every part
+     *
+     * @param mat
+     */
+    @Override
+    public void setMaterial(Material mat) {
+        super.setMaterial(mat);
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = null;
+        }
+    }
 
-        //top face
-        Ring topd = new Ring(new Point3D(0, top, 0), new Normal(0, 1,
-                0), innerRadius + bevelRadius, outerRadius - bevelRadius);
-        //bottom face
-        Ring bottomd = new Ring(new Point3D(0, bottom, 0), new Normal(0, -1,
-                0), innerRadius + bevelRadius, outerRadius - bevelRadius);
-        //inner cylinder
-        ConcavePartCylinder innercyl = new ConcavePartCylinder(bottom
-                + bevelRadius, top - bevelRadius, innerRadius, 0, 360);
-        /**
-         * outer cylinder
-         */
-        ConvexPartCylinder outercyl = new ConvexPartCylinder(bottom
-                + bevelRadius, top - bevelRadius, outerRadius, 0, 360);
-        //inner torus bevel
-        Torus inTor = new Torus(innerRadius + bevelRadius, bevelRadius);
-        //outer torus bevel
-        Torus outTor = new Torus(outerRadius - bevelRadius, bevelRadius);
-        addObject(topd);
-        addObject(bottomd);
-        addObject(innercyl);
-        addObject(outercyl);
-
-        //top inner instance
-        Instance inUp = new Instance(inTor);
-        inUp.translate(0, top - bevelRadius, 0);
-        addObject(inUp);
-        //bottom inner instance
-        Instance inDown = new Instance(inTor);
-        inDown.translate(0, bottom + bevelRadius, 0);
-        addObject(inDown);
-        //top outer instance
-        Instance outUp = new Instance(outTor);
-        outUp.translate(0, top - bevelRadius, 0);
-        addObject(outUp);
-        //top outer instance
-        Instance outDown = new Instance(outTor);
-        outDown.translate(0, bottom + bevelRadius, 0);
-        addObject(outDown);
+    /**
+     * material of the part that was hit last if it has one
+     *
+     * @return
+     */
+    @Override
+    public Material getMaterial() {
+        if (hitPart >= 0 && parts[hitPart] != null) {
+            return parts[hitPart];
+        }
+        return material;
     }
 
     /**
@@ -102,7 +113,7 @@ public class BeveledRing extends Compound {
      * @param mattePtr1
      */
     public void setBottomMaterial(Matte mattePtr1) {
-        objects.get(1).setMaterial(mattePtr1);
+        parts[BOTTOM] = mattePtr1.cloneMaterial();
     }
 
     /**
@@ -111,7 +122,7 @@ public class BeveledRing extends Compound {
      * @param mattePtr1
      */
     public void setTopMaterial(Matte mattePtr1) {
-        objects.get(0).setMaterial(mattePtr1);
+        parts[TOP] = mattePtr1.cloneMaterial();
     }
 
     /**
@@ -120,8 +131,8 @@ public class BeveledRing extends Compound {
      * @param mattePtr2
      */
     public void setWallMaterial(Matte mattePtr2) {
-        objects.get(2).setMaterial(mattePtr2);
-        objects.get(3).setMaterial(mattePtr2);
+        parts[INNER_WALL] = mattePtr2.cloneMaterial();
+        parts[OUTER_WALL] = mattePtr2.cloneMaterial();
     }
 
     /**
@@ -130,7 +141,7 @@ public class BeveledRing extends Compound {
      * @param mattePtr2
      */
     public void setInnerWallMaterial(Matte mattePtr2) {
-        objects.get(2).setMaterial(mattePtr2);
+        parts[INNER_WALL] = mattePtr2.cloneMaterial();
     }
 
     /**
@@ -139,7 +150,10 @@ public class BeveledRing extends Compound {
      * @param mattePtr3
      */
     public void setOuterWallMaterial(Matte mattePtr3) {
-        objects.get(3).setMaterial(mattePtr3);
+        parts[OUTER_WALL] = mattePtr3.cloneMaterial();
     }
 
+    private static final Logger LOG
+            = Logger.getLogger(BeveledRing.class.getName());
+
 }
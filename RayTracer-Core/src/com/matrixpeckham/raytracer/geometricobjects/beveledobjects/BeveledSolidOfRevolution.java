@@ -0,0 +1,396 @@
+/*
+ * Copyright (C) 2015 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.geometricobjects.beveledobjects;
+
+import com.matrixpeckham.raytracer.geometricobjects.GeometricObject;
+import com.matrixpeckham.raytracer.geometricobjects.csg.CSGHitList;
+import com.matrixpeckham.raytracer.geometricobjects.csg.CSGShadeRec;
+import com.matrixpeckham.raytracer.geometricobjects.csg.CSGSolid;
+import com.matrixpeckham.raytracer.geometricobjects.primitives.Torus;
+import com.matrixpeckham.raytracer.util.BBox;
+import com.matrixpeckham.raytracer.util.DoubleRef;
+import com.matrixpeckham.raytracer.util.Ray;
+import com.matrixpeckham.raytracer.util.ShadeRec;
+import com.matrixpeckham.raytracer.util.Utility;
+import java.util.ArrayList;
+import java.util.logging.Logger;
+
+/**
+ * Beveled cylinder or ring around the y axis, the points within the bevel
+ * radius of a smaller solid cylinder or ring.
+ * <p>
+ * Works like BeveledBox, the ray is cut where it crosses the planes of the
+ * smaller solid's ends and the cylinders of its walls, and in each piece the
+ * surface is a plane, a cylinder or a torus around the nearest end, wall or
+ * edge. The tori are intersected in place, so there are no instances, and
+ * only the outside half of each is part of the surface, so the surface is
+ * closed and works with transparency.
+ *
+ * @author William Matrix Peckham
+ */
+abstract class BeveledSolidOfRevolution extends GeometricObject implements
+        CSGSolid {
+
+    /**
+     * parts, in the order of the compound BeveledRing used to be
+     */
+    static final int TOP = 0;
+
+    static final int BOTTOM = 1;
+
+    static final int INNER_WALL = 2;
+
+    static final int OUTER_WALL = 3;
+
+    static final int INNER_TOP_BEVEL = 4;
+
+    static final int INNER_BOTTOM_BEVEL = 5;
+
+    static final int OUTER_TOP_BEVEL = 6;
+
+    static final int OUTER_BOTTOM_BEVEL = 7;
+
+    //piece ends and crossings, (t, entering, normal, part) for each crossing
+    private static final ThreadLocal<double[]> SCRATCH
+            = new ThreadLocal<double[]>() {
+        @Override
+        protected double[] initialValue() {
+            return new double[CROSSINGS + MAX_CROSSINGS * CROSSING_SIZE];
+        }
+    };
+
+    //roots in a piece
+    private static final ThreadLocal<double[]> ROOTS
+            = new ThreadLocal<double[]>() {
+        @Override
+        protected double[] initialValue() {
+            return new double[8];
+        }
+    };
+
+    private static final int CROSSINGS = 8;
+
+    private static final int CROSSING_SIZE = 6;
+
+    //a ray can go through a ring and its hole
+    private static final int MAX_CROSSINGS = 4;
+
+    /**
+     * bottom and top
+     */
+    private final double y0;
+
+    private final double y1;
+
+    /**
+     * inner and outer radius, no inner wall if hollow is false
+     */
+    private final double ri;
+
+    private final double ro;
+
+    private final boolean hollow;
+
+    /**
+     * bevel radius
+     */
+    private final double rb;
+
+    private final BBox bbox;
+
+    /**
+     * part of the last hit
+     */
+    protected int hitPart = -1;
+
+    /**
+     * initializing constructor
+     *
+     * @param bottom
+     * @param top
+     * @param innerRadius
+     * @param outerRadius
+     * @param bevelRadius
+     * @param hollow
+     */
+    BeveledSolidOfRevolution(double bottom, double top, double innerRadius,
+            double outerRadius, double bevelRadius, boolean hollow) {
+        y0 = bottom;
+        y1 = top;
+        ri = innerRadius;
+        ro = outerRadius;
+        rb = bevelRadius;
+        this.hollow = hollow;
+        bbox = new BBox(-ro, ro, y0, y1, -ro, ro);
+    }
+
+    /**
+     * copy constructor
+     *
+     * @param b
+     */
+    BeveledSolidOfRevolution(BeveledSolidOfRevolution b) {
+        super(b);
+        y0 = b.y0;
+        y1 = b.y1;
+        ri = b.ri;
+        ro = b.ro;
+        rb = b.rb;
+        hollow = b.hollow;
+        bbox = new BBox(b.bbox);
+    }
+
+    @Override
+    public BBox getBoundingBox() {
+        return bbox;
+    }
+
+    @Override
+    public boolean hit(Ray ray, ShadeRec sr) {
+        double[] s = SCRATCH.get();
+        if (crossings(ray, Utility.EPSILON, true, s) == 0) {
+            return false;
+        }
+        double t = s[CROSSINGS];
+        sr.lastT = t;
+        sr.normal.setTo(s[CROSSINGS + 2], s[CROSSINGS + 3], s[CROSSINGS + 4]);
+        sr.normal.normalize();
+        sr.localHitPosition.setTo(ray.o.x + t * ray.d.x, ray.o.y + t
+                * ray.d.y, ray.o.z + t * ray.d.z);
+        hitPart = (int) s[CROSSINGS + 5];
+        return true;
+    }
+
+    @Override
+    public boolean hit(Ray ray, ArrayList<CSGShadeRec> hits, ShadeRec sr) {
+        double[] s = SCRATCH.get();
+        int n = crossings(ray, -Utility.HUGE_VALUE, false, s);
+        for (int i = 0; i < n; i++) {
+            int k = CROSSINGS + i * CROSSING_SIZE;
+            CSGShadeRec r = new CSGShadeRec(sr);
+            r.lastT = s[k];
+            r.entering = s[k + 1] != 0;
+            r.normal.setTo(s[k + 2], s[k + 3], s[k + 4]);
+            r.normal.normalize();
+            r.localHitPosition.setTo(ray.o.x + s[k] * ray.d.x, ray.o.y
+                    + s[k] * ray.d.y, ray.o.z + s[k] * ray.d.z);
+            hits.add(r);
+        }
+        return n > 0;
+    }
+
+    @Override
+    public void addCSGHits(Ray ray, CSGHitList hits) {
+        double[] s = SCRATCH.get();
+        int n = crossings(ray, -Utility.HUGE_VALUE, false, s);
+        for (int i = 0; i < n; i++) {
+            int k = CROSSINGS + i * CROSSING_SIZE;
+            hits.add(s[k], s[k + 1] != 0, s[k + 2], s[k + 3], s[k + 4], this);
+        }
+    }
+
+    @Override
+    public boolean shadowHit(Ray ray, DoubleRef tr) {
+        if (!shadows) {
+            return false;
+        }
+        double[] s = SCRATCH.get();
+        if (crossings(ray, Utility.EPSILON, true, s) == 0) {
+            return false;
+        }
+        tr.d = s[CROSSINGS];
+        return true;
+    }
+
+    //finds the crossings after tmin, in order, and puts them in s after the
+    //piece ends, only the first one if first is true. returns how many
+    private int crossings(Ray ray, double tmin, boolean first, double[] s) {
+        double ox = ray.o.x;
+        double oy = ray.o.y;
+        double oz = ray.o.z;
+        double dx = ray.d.x;
+        double dy = ray.d.y;
+        double dz = ray.d.z;
+
+        //clip to the box
+        double tx0 = (-ro - ox) / dx;
+        double tx1 = (ro - ox) / dx;
+        double ty0 = (y0 - oy) / dy;
+        double ty1 = (y1 - oy) / dy;
+        double tz0 = (-ro - oz) / dz;
+        double tz1 = (ro - oz) / dz;
+        double lo = Math.max(tmin, Math.max(Math.min(tx0, tx1), Math.max(
+                Math.min(ty0, ty1), Math.min(tz0, tz1))));
+        double hi = Math.min(Math.max(tx0, tx1), Math.min(Math.max(ty0, ty1),
+                Math.max(tz0, tz1)));
+        if (!(lo <= hi)) {
+            return 0;
+        }
+
+        //the smaller solid
+        double cy0 = y0 + rb;
+        double cy1 = y1 - rb;
+        double cr0 = ri + rb;
+        double cr1 = ro - rb;
+
+        //pieces between its end planes and wall cylinders, in order
+        int n = 0;
+        s[n++] = lo;
+        n = cut(s, n, (cy0 - oy) / dy, lo, hi);
+        n = cut(s, n, (cy1 - oy) / dy, lo, hi);
+        double qa = dx * dx + dz * dz;
+        double qb = 2 * (ox * dx + oz * dz);
+        double qc = ox * ox + oz * oz;
+        n = cutCylinder(s, n, qa, qb, qc - cr1 * cr1, lo, hi);
+        if (hollow) {
+            n = cutCylinder(s, n, qa, qb, qc - cr0 * cr0, lo, hi);
+        }
+        s[n++] = hi;
+
+        //crossings closer than this are the same one found in both pieces
+        double tol = 1e-9 * (hi - lo + rb);
+        double[] roots = ROOTS.get();
+        int found = 0;
+        for (int i = 0; i + 1 < n; i++) {
+            double a = s[i];
+            double len = s[i + 1] - a;
+            double m = a + 0.5 * len;
+
+            //nearest end, wall or edge of the smaller solid to the middle of
+            //the piece, the offsets are from it at the start of the piece
+            double xm = ox + m * dx;
+            double ym = oy + m * dy;
+            double zm = oz + m * dz;
+            double rm = Math.sqrt(xm * xm + zm * zm);
+            boolean outY = ym < cy0 || ym > cy1;
+            boolean outer = rm > cr1;
+            boolean outR = outer || (hollow && rm < cr0);
+            if (!outY && !outR) {
+                continue;
+            }
+            boolean top = ym > cy1;
+            double cy = top ? cy1 : cy0;
+            double cr = outer ? cr1 : cr0;
+            double ex = ox + a * dx;
+            double ey = oy + a * dy - cy;
+            double ez = oz + a * dz;
+            int count;
+            int part;
+            if (outY && outR) {
+                //torus around the edge
+                count = Torus.intersect(cr, rb, ex, ey, ez, dx, dy, dz, -tol,
+                        len + tol, roots);
+                part = outer ? (top ? OUTER_TOP_BEVEL : OUTER_BOTTOM_BEVEL)
+                        : (top ? INNER_TOP_BEVEL : INNER_BOTTOM_BEVEL);
+            } else if (outY) {
+                //end plane
+                count = quadratic(dy * dy, 2 * ey * dy, ey * ey - rb * rb,
+                        roots);
+                part = top ? TOP : BOTTOM;
+            } else {
+                //wall
+                double w = outer ? ro : ri;
+                count = quadratic(qa, 2 * (ex * dx + ez * dz), ex * ex + ez
+                        * ez - w * w, roots);
+                part = outer ? OUTER_WALL : INNER_WALL;
+            }
+            for (int j = 0; j < count; j++) {
+                double r = roots[j];
+                double t = a + r;
+                if (r < -tol || r > len + tol || t <= tmin) {
+                    continue;
+                }
+
+                //from the nearest point of the smaller solid
+                double x = ex + r * dx;
+                double y = ey + r * dy;
+                double z = ez + r * dz;
+                double rho = Math.sqrt(x * x + z * z);
+                double k = outR && rho > 0 ? 1 - cr / rho : 0;
+                double nx = x * k;
+                double ny = outY ? y : 0;
+                double nz = z * k;
+                boolean entering = nx * dx + ny * dy + nz * dz < 0;
+                if (found > 0) {
+                    int l = CROSSINGS + (found - 1) * CROSSING_SIZE;
+                    if ((s[l + 1] != 0) == entering) {
+                        //same crossing on the end of the last piece
+                        continue;
+                    }
+                }
+                int l = CROSSINGS + found * CROSSING_SIZE;
+                s[l] = t;
+                s[l + 1] = entering ? 1 : 0;
+                s[l + 2] = nx;
+                s[l + 3] = ny;
+                s[l + 4] = nz;
+                s[l + 5] = part;
+                found++;
+                if (first || found == MAX_CROSSINGS) {
+                    return found;
+                }
+            }
+        }
+        return found;
+    }
+
+    //roots of a quadratic in increasing order
+    private static int quadratic(double a, double b, double c, double[] r) {
+        double disc = b * b - 4 * a * c;
+        if (a == 0 || disc < 0) {
+            return 0;
+        }
+        double q = -0.5 * (b + Math.copySign(Math.sqrt(disc), b));
+        double r0 = q / a;
+        double r1 = c / q;
+        r[0] = Math.min(r0, r1);
+        r[1] = Math.max(r0, r1);
+        return 2;
+    }
+
+    //cuts where the ray crosses a cylinder around the y axis
+    private static int cutCylinder(double[] s, int n, double a, double b,
+            double c, double lo, double hi) {
+        double disc = b * b - 4 * a * c;
+        if (a == 0 || disc <= 0) {
+            return n;
+        }
+        double q = -0.5 * (b + Math.copySign(Math.sqrt(disc), b));
+        n = cut(s, n, q / a, lo, hi);
+        return cut(s, n, c / q, lo, hi);
+    }
+
+    //inserts a piece end, keeping them in order
+    private static int cut(double[] s, int n, double t, double lo,
+            double hi) {
+        if (!(t > lo && t < hi)) {
+            return n;
+        }
+        int i = n;
+        while (i > 1 && s[i - 1] > t) {
+            s[i] = s[i - 1];
+            i--;
+        }
+        s[i] = t;
+        return n + 1;
+    }
+
+    private static final Logger LOG
+            = Logger.getLogger(BeveledSolidOfRevolution.class.getName());
+
+}
@@ -27,10 +27,7 @@ import com.matrixpeckham.raytracer.geometricobjects.primitives.OpenCylinder;
 import com.matrixpeckham.raytracer.geometricobjects.primitives.Rectangle;
 import com.matrixpeckham.raytracer.geometricobjects.primitives.Sphere;
 import com.matrixpeckham.raytracer.util.BBox;
-import com.matrixpeckham.raytracer.util.DoubleRef;
 import com.matrixpeckham.raytracer.util.Point3D;
-import com.matrixpeckham.raytracer.util.Ray;
-import com.matrixpeckham.raytracer.util.ShadeRec;
 import com.matrixpeckham.raytracer.util.Utility;
 import com.matrixpeckham.raytracer.util.Vector3D;
 import static java.lang.Math.max;
@@ -407,7 +404,7 @@ public class BeveledWedge extends Compound {
             bbox.x0 = -r1;
             bbox.z0 = -r1;
             bbox.x1 = r1;
-            bbox.z1 = max(zc2, zc4);
+            bbox.z1 = max(zc2, zc4) + rb;
         } else if (spans90 && spans180) {
             bbox.x0 = xc4 - rb;
             bbox.z0 = -r1;
@@ -419,7 +416,7 @@ public class BeveledWedge extends Compound {
             bbox.x1 = xc2 + rb;
             bbox.z1 = zc4 + rb;
         } else if (spans90) {
-            bbox.x0 = min(xc1, xc3);
+            bbox.x0 = min(xc1, xc3) - rb;
             bbox.z0 = zc4 - rb;
             bbox.x1 = r1;
             bbox.z1 = zc2 + rb;
@@ -427,11 +424,11 @@ public class BeveledWedge extends Compound {
             bbox.x0 = xc4 - rb;
             bbox.z0 = -r1;
             bbox.x1 = xc2 + rb;
-            bbox.z1 = max(zc1, zc3);
+            bbox.z1 = max(zc1, zc3) + rb;
         } else if (spans270) {
             bbox.x0 = -r1;
             bbox.z0 = zc2 - rb;
-            bbox.x1 = max(xc1, xc3);
+            bbox.x1 = max(xc1, xc3) + rb;
             bbox.z1 = zc4 + rb;
         }
     }
@@ -446,39 +443,6 @@ public class BeveledWedge extends Compound {
         return (bbox);
     }
 
-    /**
-     * shadow hit function overrides to use cached bounding box for early out
-     *
-     * @param ray
-     * @param sr
-     * @return
-     */
-    @Override
-    public boolean hit(Ray ray, ShadeRec sr) {
-        if (bbox.hit(ray)) {
-            return (super.hit(ray, sr));
-        } else {
-            return (false);
-        }
-
-    }
-
-    /**
-     * hit function overrides to use cached bounding box for early out
-     *
-     * @param ray
-     * @param r
-     * @return
-     */
-    @Override
-    public boolean shadowHit(Ray ray, DoubleRef r) {
-        if (bbox.hit(ray)) {
-            return super.shadowHit(ray, r);
-        } else {
-            return (false);
-        }
-    }
-
     private static final Logger LOG
             = Logger.getLogger(BeveledWedge.class.getName());
 
@@ -5,20 +5,60 @@ import com.matrixpeckham.raytracer.geometricobjects.csg.CSGShadeRec;
 import com.matrixpeckham.raytracer.materials.Material;
 import com.matrixpeckham.raytracer.util.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 
 /**
  * Compound class, geometric object constructed of multiple other geometric
  * objects
+ * <p>
+ * The bounds of the sub objects are cached the first time they are needed and
+ * thrown away when an object is added. Every hit function tests the cached box
+ * before touching the sub objects. Once there are more than BVH_THRESHOLD sub
+ * objects a small bounding volume hierarchy is built over them as well, so
+ * like grid, sub objects need to override getBoundingBox. If any sub object
+ * isn't bounded, like a plane, neither the box test nor the hierarchy is used.
  *
  * @author William Matrix Peckham
  */
 public class Compound extends GeometricObject {
 
+    /**
+     * number of sub objects a compound needs before it builds a hierarchy
+     */
+    public static final int BVH_THRESHOLD = 8;
+
+    /**
+     * max number of sub objects in a leaf of the hierarchy
+     */
+    private static final int MAX_LEAF_SIZE = 4;
+
     /**
      * list of sub objects
      */
     protected ArrayList<GeometricObject> objects = new ArrayList<>();
 
+    /**
+     * cached bounds of the sub objects, null when it needs to be recomputed
+     */
+    private volatile BBox bounds = null;
+
+    /**
+     * cached isBounded, null when it needs to be recomputed
+     */
+    private volatile Boolean bounded = null;
+
+    /**
+     * root of the hierarchy, null when it needs to be rebuilt or we don't use
+     * one
+     */
+    private volatile BVHNode root = null;
+
+    /**
+     * if we're allowed to build a hierarchy at all
+     */
+    private boolean useBVH = true;
+
     /**
      * default constructor
      */
@@ -33,6 +73,7 @@ public class Compound extends GeometricObject {
      */
     public Compound(Compound c) {
         copyObjects(c.objects);
+        useBVH = c.useBVH;
     }
 
     /**
@@ -52,6 +93,28 @@ public class Compound extends GeometricObject {
      */
     public void addObject(GeometricObject obj) {
         objects.add(obj);
+        invalidateBounds();
+    }
+
+    /**
+     * throws away the cached bounds and hierarchy, call this if a sub object
+     * changes shape after the compound has been rendered or put into a grid.
+     */
+    public void invalidateBounds() {
+        bounds = null;
+        bounded = null;
+        root = null;
+    }
+
+    /**
+     * sets if this compound may build a hierarchy over its sub objects,
+     * compounds holding unbounded objects like planes never build one.
+     *
+     * @param b
+     */
+    public void setUseBVH(boolean b) {
+        useBVH = b;
+        root = null;
     }
 
     /**
@@ -87,35 +150,101 @@ public class Compound extends GeometricObject {
      */
     @Override
     public boolean hit(Ray ray, ShadeRec s) {
+        //early out on the cached bounds
+        if (isBounded() && !getBoundingBox().hit(ray)) {
+            return false;
+        }
 
         //temporary storage for keeping lowest distance hit.
-        Normal n = new Normal();
-        Point3D localHitPoint = new Point3D();
-        boolean hit = false;
+        ClosestHit closest = new ClosestHit();
         double tmin = Utility.HUGE_VALUE;
-        int numObjects = objects.size();
 
-        for (int j = 0; j < numObjects; j++) {
-            if (objects.get(j).hit(ray, s) && s.lastT < tmin) {
-                hit = true;
-                tmin = s.lastT;
-                material = objects.get(j).getMaterial();
-                n.setTo(s.normal);
-                localHitPoint.setTo(s.localHitPosition);
+        BVHNode node = getRoot();
+        if (node != null) {
+            tmin = hitNode(node, ray, s, tmin, closest);
+        } else {
+            int numObjects = objects.size();
+            for (int j = 0; j < numObjects; j++) {
+                tmin = hitObject(objects.get(j), ray, s, tmin, closest);
             }
         }
 
+        boolean hit = tmin < Utility.HUGE_VALUE;
         if (hit) {
-            //s.t=tmin;
-            s.lastT = tmin;
-            s.normal.setTo(n);
-            s.localHitPosition.setTo(localHitPoint);
+            if (closest.object != null) {
+                //only the closest object fills in the shade rec
+                closest.object.fillShadeRec(ray, tmin, s);
+                material = closest.object.getMaterial();
+            } else {
+                //s.t=tmin;
+                s.lastT = tmin;
+                s.normal.setTo(closest.normal);
+                s.localHitPosition.setTo(closest.localHitPoint);
+            }
         }
 
         return hit;
 
     }
 
+    /**
+     * hits a single sub object, keeps its values if it is closer than tmin.
+     * objects that split their hit are only intersected, hit fills in the
+     * closest one at the end.
+     *
+     * @param obj
+     * @param ray
+     * @param s
+     * @param tmin
+     * @param closest
+     * @return new closest distance
+     */
+    private double hitObject(GeometricObject obj, Ray ray, ShadeRec s,
+            double tmin, ClosestHit closest) {
+        if (obj.splitsHit()) {
+            double t = obj.intersect(ray);
+            if (t < tmin) {
+                closest.object = obj;
+                return t;
+            }
+            return tmin;
+        }
+        if (obj.hit(ray, s) && s.lastT < tmin) {
+            material = obj.getMaterial(s);
+            closest.object = null;
+            closest.normal.setTo(s.normal);
+            closest.localHitPoint.setTo(s.localHitPosition);
+            return s.lastT;
+        }
+        return tmin;
+    }
+
+    /**
+     * recursive closest hit through the hierarchy, skips nodes that start
+     * behind the closest hit so far
+     *
+     * @param node
+     * @param ray
+     * @param s
+     * @param tmin
+     * @param closest
+     * @return new closest distance
+     */
+    private double hitNode(BVHNode node, Ray ray, ShadeRec s, double tmin,
+            ClosestHit closest) {
+        if (!node.box.hit(ray, tmin)) {
+            return tmin;
+        }
+        if (node.objects != null) {
+            for (GeometricObject obj : node.objects) {
+                tmin = hitObject(obj, ray, s, tmin, closest);
+            }
+            return tmin;
+        }
+        tmin = hitNode(node.left, ray, s, tmin, closest);
+        return hitNode(node.right, ray, s, tmin, closest);
+    }
+
     /**
      * hit function, works the same way as World.hitObjects does.
      *
@@ -126,6 +255,14 @@ public class Compound extends GeometricObject {
      */
     @Override
     public boolean hit(Ray ray, ArrayList<CSGShadeRec> hits, ShadeRec sr) {
+        if (isBounded() && !getBoundingBox().hit(ray)) {
+            return false;
+        }
+
+        BVHNode node = getRoot();
+        if (node != null) {
+            return hitNode(node, ray, hits, sr);
+        }
 
         boolean hit = false;
         int numObjects = objects.size();
@@ -140,6 +277,34 @@ public class Compound extends GeometricObject {
 
     }
 
+    /**
+     * recursive all-hits version for the csg hit function, can't skip
+     * anything but boxes the ray misses
+     *
+     * @param node
+     * @param ray
+     * @param hits
+     * @param sr
+     * @return
+     */
+    private boolean hitNode(BVHNode node, Ray ray, ArrayList<CSGShadeRec> hits,
+            ShadeRec sr) {
+        if (!node.box.hit(ray)) {
+            return false;
+        }
+        boolean hit = false;
+        if (node.objects != null) {
+            for (GeometricObject obj : node.objects) {
+                if (obj.hit(ray, hits, sr)) {
+                    hit = true;
+                }
+            }
+            return hit;
+        }
+        hit = hitNode(node.left, ray, hits, sr);
+        return hitNode(node.right, ray, hits, sr) || hit;
+    }
+
     /**
      * shadow hit function works same way as hit function
      *
@@ -154,17 +319,24 @@ public class Compound extends GeometricObject {
         if (!shadows) {
             return false;
         }
-        boolean hit = false;
+        if (isBounded() && !getBoundingBox().hit(ray)) {
+            return false;
+        }
         double tmin = Utility.HUGE_VALUE;
-        int numObjects = objects.size();
 
-        for (int j = 0; j < numObjects; j++) {
-            if (objects.get(j).shadowHit(ray, t) && t.d < tmin) {
-                hit = true;
-                tmin = t.d;
+        BVHNode node = getRoot();
+        if (node != null) {
+            tmin = shadowHitNode(node, ray, t, tmin);
+        } else {
+            int numObjects = objects.size();
+            for (int j = 0; j < numObjects; j++) {
+                if (objects.get(j).shadowHit(ray, t) && t.d < tmin) {
+                    tmin = t.d;
+                }
             }
         }
 
+        boolean hit = tmin < Utility.HUGE_VALUE;
         if (hit) {
             t.d = tmin;
         }
@@ -172,11 +344,97 @@ public class Compound extends GeometricObject {
         return hit;
     }
 
+    /**
+     * recursive closest shadow hit through the hierarchy
+     *
+     * @param node
+     * @param ray
+     * @param t
+     * @param tmin
+     * @return new closest distance
+     */
+    private double shadowHitNode(BVHNode node, Ray ray, DoubleRef t,
+            double tmin) {
+        if (!node.box.hit(ray, tmin)) {
+            return tmin;
+        }
+        if (node.objects != null) {
+            for (GeometricObject obj : node.objects) {
+                if (obj.shadowHit(ray, t) && t.d < tmin) {
+                    tmin = t.d;
+                }
+            }
+            return tmin;
+        }
+        tmin = shadowHitNode(node.left, ray, t, tmin);
+        return shadowHitNode(node.right, ray, t, tmin);
+    }
+
+    /**
+     * packet hit, only the lanes that hit the cached bounds, and the boxes of
+     * the hierarchy, are passed on to the sub objects.
+     *
+     * @param packet
+     *
+     * @return
+     */
+    @Override
+    public boolean hitPacket(RayPacket packet) {
+        long saved = packet.active;
+        if (isBounded()) {
+            packet.active = packet.cull(getBoundingBox());
+        }
+        if (packet.active == 0) {
+            packet.active = saved;
+            return false;
+        }
+
+        boolean hit = false;
+        BVHNode node = getRoot();
+        if (node != null) {
+            hit = hitNode(node, packet);
+        } else {
+            int numObjects = objects.size();
+            for (int j = 0; j < numObjects; j++) {
+                hit |= objects.get(j).hitPacket(packet);
+            }
+        }
+        packet.active = saved;
+        return hit;
+    }
+
+    /**
+     * recursive packet hit through the hierarchy, each node only gets the
+     * lanes that hit its box in front of their closest hit
+     *
+     * @param node
+     * @param packet
+     * @return
+     */
+    private boolean hitNode(BVHNode node, RayPacket packet) {
+        long saved = packet.active;
+        packet.active = packet.cull(node.box);
+        boolean hit = false;
+        if (packet.active != 0) {
+            if (node.objects != null) {
+                for (GeometricObject obj : node.objects) {
+                    hit |= obj.hitPacket(packet);
+                }
+            } else {
+                hit = hitNode(node.left, packet);
+                hit |= hitNode(node.right, packet);
+            }
+        }
+        packet.active = saved;
+        return hit;
+    }
+
     /**
      * clears sub objects
      */
     private void deleteObjects() {
         objects.clear();
+        invalidateBounds();
     }
 
     /**
@@ -202,18 +460,173 @@ public class Compound extends GeometricObject {
     }
 
     /**
-     * expands an empty bounding box to hold each sub object
+     * expands an empty bounding box to hold each sub object, the box is cached
+     * until invalidateBounds or addObject is called
      *
      * @return
      */
     @Override
     public BBox getBoundingBox() {
-        BBox box = new BBox(0, 0, 0, 0, 0, 0);
-        objects.stream().
-                forEach((obj) -> {
-                    box.expandToFit(obj.getBoundingBox());
-                });
+        BBox box = bounds;
+        if (box == null) {
+            box = BBox.empty();
+            for (GeometricObject obj : objects) {
+                box.expandToFit(obj.getBoundingBox());
+            }
+            bounds = box;
+        }
         return box;
     }
 
+    /**
+     * bounded only if every sub object is, cached like the bounds
+     *
+     * @return
+     */
+    @Override
+    public boolean isBounded() {
+        Boolean b = bounded;
+        if (b == null) {
+            b = Boolean.TRUE;
+            for (GeometricObject obj : objects) {
+                if (!obj.isBounded()) {
+                    b = Boolean.FALSE;
+                    break;
+                }
+            }
+            bounded = b;
+        }
+        return b;
+    }
+
+    /**
+     * gets the hierarchy, building it the first time if we have enough
+     * objects to need one.
+     *
+     * @return root node or null if we just loop over the objects
+     */
+    private BVHNode getRoot() {
+        if (!useBVH || objects.size() <= BVH_THRESHOLD || !isBounded()) {
+            return null;
+        }
+        BVHNode node = root;
+        if (node == null) {
+            GeometricObject[] objs = objects.toArray(
+                    new GeometricObject[objects.size()]);
+            BBox[] boxes = new BBox[objs.length];
+            for (int i = 0; i < objs.length; i++) {
+                boxes[i] = new BBox(objs[i].getBoundingBox());
+            }
+            node = new BVHNode(objs, boxes, 0, objs.length);
+            root = node;
+        }
+        return node;
+    }
+
+    /**
+     * closest hit found so far by hit
+     */
+    private static class ClosestHit {
+
+        /**
+         * closest object if it splits its hit, null otherwise
+         */
+        GeometricObject object = null;
+
+        /**
+         * normal and hit point of the closest hit if its object doesn't split
+         * its hit
+         */
+        final Normal normal = new Normal();
+
+        final Point3D localHitPoint = new Point3D();
+
+    }
+
+    /**
+     * node of the hierarchy over the sub objects. leaves hold a few objects,
+     * inner nodes split their objects in half along the longest axis of the
+     * object centers.
+     */
+    private static class BVHNode {
+
+        /**
+         * bounds of every object under this node
+         */
+        final BBox box = BBox.empty();
+
+        /**
+         * objects for leaf nodes, null for inner nodes
+         */
+        GeometricObject[] objects = null;
+
+        /**
+         * children for inner nodes
+         */
+        BVHNode left = null;
+
+        /**
+         * children for inner nodes
+         */
+        BVHNode right = null;
+
+        /**
+         * builds the node for objects in [start,end), sorts that part of the
+         * arrays in place
+         *
+         * @param objs
+         * @param boxes
+         * @param start
+         * @param end
+         */
+        BVHNode(GeometricObject[] objs, BBox[] boxes, int start, int end) {
+            BBox centers = BBox.empty();
+            for (int i = start; i < end; i++) {
+                box.expandToFit(boxes[i]);
+                double cx = (boxes[i].x0 + boxes[i].x1) * 0.5;
+                double cy = (boxes[i].y0 + boxes[i].y1) * 0.5;
+                double cz = (boxes[i].z0 + boxes[i].z1) * 0.5;
+                centers.expandToFit(new BBox(cx, cx, cy, cy, cz, cz));
+            }
+            if (end - start <= MAX_LEAF_SIZE) {
+                objects = Arrays.copyOfRange(objs, start, end);
+                return;
+            }
+
+            //split on the longest axis of the centers
+            double wx = centers.x1 - centers.x0;
+            double wy = centers.y1 - centers.y0;
+            double wz = centers.z1 - centers.z0;
+            Comparator<Integer> cmp;
+            if (wx >= wy && wx >= wz) {
+                cmp = Comparator.comparingDouble((i) -> boxes[i].x0
+                        + boxes[i].x1);
+            } else if (wy >= wz) {
+                cmp = Comparator.comparingDouble((i) -> boxes[i].y0
+                        + boxes[i].y1);
+            } else {
+                cmp = Comparator.comparingDouble((i) -> boxes[i].z0
+                        + boxes[i].z1);
+            }
+            Integer[] order = new Integer[end - start];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = start + i;
+            }
+            Arrays.sort(order, cmp);
+            GeometricObject[] sortedObjs = new GeometricObject[order.length];
+            BBox[] sortedBoxes = new BBox[order.length];
+            for (int i = 0; i < order.length; i++) {
+                sortedObjs[i] = objs[order[i]];
+                sortedBoxes[i] = boxes[order[i]];
+            }
+            System.arraycopy(sortedObjs, 0, objs, start, order.length);
+            System.arraycopy(sortedBoxes, 0, boxes, start, order.length);
+
+            int mid = start + (end - start) / 2;
+            left = new BVHNode(objs, boxes, start, mid);
+            right = new BVHNode(objs, boxes, mid, end);
+        }
+
+    }
+
 }
@@ -22,8 +22,6 @@ import com.matrixpeckham.raytracer.geometricobjects.partobjects.ConcavePartSpher
 import com.matrixpeckham.raytracer.geometricobjects.partobjects.ConvexPartCylinder;
 import com.matrixpeckham.raytracer.util.BBox;
 import com.matrixpeckham.raytracer.util.Point3D;
-import com.matrixpeckham.raytracer.util.Ray;
-import com.matrixpeckham.raytracer.util.ShadeRec;
 import com.matrixpeckham.raytracer.util.Utility;
 import java.util.logging.Logger;
 
@@ -137,7 +135,9 @@ public class ConcaveLens extends Compound {
     }
 
     /**
-     * bounding box
+     * bounding box, we compute a tighter bounds than compound would because
+     * partsphere returns the whole spheres box and we know we only need enough
+     * to cover the cut part. compound uses this box for its early out.
      *
      * @return
      */
@@ -146,24 +146,6 @@ public class ConcaveLens extends Compound {
         return bbox;
     }
 
-    /**
-     * override hit to do our bounds check, we compute a tighter bounds than
-     * compound would because partsphere returns the whole spheres box and we
-     * know we only need enough to cover the cut part and how much the cut part
-     * is
-     *
-     * @param ray
-     * @param s
-     * @return
-     */
-    @Override
-    public boolean hit(Ray ray, ShadeRec s) {
-        if (bbox.hit(ray)) {
-            return super.hit(ray, s);
-        }
-        return false;
-    }
-
     private static final Logger LOG
             = Logger.getLogger(ConcaveLens.class.getName());
 
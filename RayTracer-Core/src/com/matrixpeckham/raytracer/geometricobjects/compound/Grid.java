@@ -70,10 +70,15 @@ public class Grid extends Compound {
      */
     protected int ny = 0;
 
+    /**
+     * multiplier setupCells builds the cells with
+     */
+    public static final double DEFAULT_MULTIPLIER = 2.0;
+
     /**
      *
      */
-    protected double multiplier = 2;
+    protected double multiplier = DEFAULT_MULTIPLIER;
 
     public double getMultiplier() {
         return multiplier;
@@ -335,7 +340,7 @@ public class Grid extends Compound {
             if (txNext < tyNext && txNext < tzNext) {
                 if (objectPtr != null && objectPtr.hit(ray, sr) && sr.lastT
                         < txNext) {
-                    material = objectPtr.getMaterial();
+                    material = objectPtr.getMaterial(sr);
                     return true;
                 }
                 txNext += dtx;
@@ -347,7 +352,7 @@ public class Grid extends Compound {
                 if (tyNext < tzNext) {
                     if (objectPtr != null && objectPtr.hit(ray, sr) && sr.lastT
                             < tyNext) {
-                        material = objectPtr.getMaterial();
+                        material = objectPtr.getMaterial(sr);
                         return true;
                     }
                     tyNext += dty;
@@ -358,7 +363,7 @@ public class Grid extends Compound {
                 } else {
                     if (objectPtr != null && objectPtr.hit(ray, sr) && sr.lastT
                             < tzNext) {
-                        material = objectPtr.getMaterial();
+                        material = objectPtr.getMaterial(sr);
                         return true;
                     }
                     tzNext += dtz;
@@ -566,9 +571,221 @@ public class Grid extends Compound {
     }
 
     /**
-     * sets up the cells for the grid
+     * Packet hit function.
+     * <p>
+     * Walks the grid one slice of cells at a time along the axis the rays
+     * cross the most cells in. In each slice every cell a ray crosses is
+     * intersected once, with all the rays that cross it, and a ray is dropped
+     * once its closest hit is in a slice already walked.
+     * Packets whose directions don't share signs use the normal hit for each
+     * ray.
+     *
+     * @param packet
+     *
+     * @return
+     */
+    @Override
+    public boolean hitPacket(RayPacket packet) {
+        if (!packet.isCoherent()) {
+            return hitEachRay(packet);
+        }
+        long saved = packet.active;
+        long live = packet.cull(bbox);
+        if (live == 0) {
+            return false;
+        }
+        int size = packet.size;
+        double[][] o = {packet.ox, packet.oy, packet.oz};
+        double[][] d = {packet.dx, packet.dy, packet.dz};
+        double[] lo = {bbox.x0, bbox.y0, bbox.z0};
+        double[] hi = {bbox.x1, bbox.y1, bbox.z1};
+        int[] n = {nx, ny, nz};
+
+        double[] tIn = new double[size];
+        double[] tOut = new double[size];
+        double[] tExit = new double[size];
+        int[] aLo = new int[size];
+        int[] aHi = new int[size];
+        int[] bLo = new int[size];
+        int[] bHi = new int[size];
+
+        //clip each ray to the grid, and pick the slicing axis as the one the
+        //rays cross the most cells along, so they cross few cells per slice
+        double[] len = new double[3];
+        for (long m = live; m != 0; m &= m - 1) {
+            int i = Long.numberOfTrailingZeros(m);
+            double t0 = 0;
+            double t1 = Utility.HUGE_VALUE;
+            for (int a = 0; a < 3; a++) {
+                double inv = 1.0 / d[a][i];
+                double ta = (lo[a] - o[a][i]) * inv;
+                double tb = (hi[a] - o[a][i]) * inv;
+                t0 = Math.max(t0, Math.min(ta, tb));
+                t1 = Math.min(t1, Math.max(ta, tb));
+                len[a] += Math.abs(d[a][i]) * n[a] / (hi[a] - lo[a]);
+            }
+            tIn[i] = t0;
+            tOut[i] = t1;
+        }
+        int k = len[0] >= len[1] ? (len[0] >= len[2] ? 0 : 2) : (len[1]
+                >= len[2] ? 1 : 2);
+        int a = (k + 1) % 3;
+        int b = (k + 2) % 3;
+        int step = d[k][Long.numberOfTrailingZeros(live)] > 0 ? 1 : -1;
+        double width = (hi[k] - lo[k]) / n[k];
+        int[] idx = new int[3];
+
+        //only walk the slices between the first entry and last exit
+        int first = step > 0 ? n[k] - 1 : 0;
+        int last = step > 0 ? 0 : n[k] - 1;
+        for (long m = live; m != 0; m &= m - 1) {
+            int i = Long.numberOfTrailingZeros(m);
+            int s0 = cellIndex(o[k][i] + d[k][i] * tIn[i], lo[k], hi[k], n[k]);
+            int s1 = cellIndex(o[k][i] + d[k][i] * tOut[i], lo[k], hi[k],
+                    n[k]);
+            first = step > 0 ? Math.min(first, s0) : Math.max(first, s0);
+            last = step > 0 ? Math.max(last, s1) : Math.min(last, s1);
+        }
+
+        boolean hit = false;
+        for (int slice = first; slice != last + step && live != 0; slice
+                += step) {
+            double sLo = lo[k] + slice * width;
+            double sHi = slice == n[k] - 1 ? hi[k] : lo[k] + (slice + 1)
+                    * width;
+            long inSlice = 0;
+            //cells each ray crosses in this slice
+            for (long m = live; m != 0; m &= m - 1) {
+                int i = Long.numberOfTrailingZeros(m);
+                double inv = 1.0 / d[k][i];
+                double ta = (sLo - o[k][i]) * inv;
+                double tb = (sHi - o[k][i]) * inv;
+                double t0 = Math.max(tIn[i], Math.min(ta, tb));
+                double t1 = Math.min(tOut[i], Math.max(ta, tb));
+                if (t0 > t1) {
+                    continue;
+                }
+                inSlice |= 1L << i;
+                tExit[i] = t1;
+                int a0 = cellIndex(o[a][i] + d[a][i] * t0, lo[a], hi[a], n[a]);
+                int a1 = cellIndex(o[a][i] + d[a][i] * t1, lo[a], hi[a], n[a]);
+                int b0 = cellIndex(o[b][i] + d[b][i] * t0, lo[b], hi[b], n[b]);
+                int b1 = cellIndex(o[b][i] + d[b][i] * t1, lo[b], hi[b], n[b]);
+                aLo[i] = Math.min(a0, a1);
+                aHi[i] = Math.max(a0, a1);
+                bLo[i] = Math.min(b0, b1);
+                bHi[i] = Math.max(b0, b1);
+            }
+            idx[k] = slice;
+            //intersect each of those cells once, with every ray crossing it
+            for (long m = inSlice; m != 0; m &= m - 1) {
+                int i = Long.numberOfTrailingZeros(m);
+                for (int ib = bLo[i]; ib <= bHi[i]; ib++) {
+                    idx[b] = ib;
+                    for (int ia = aLo[i]; ia <= aHi[i]; ia++) {
+                        idx[a] = ia;
+                        GeometricObject objectPtr = cells.get(idx[0] + nx
+                                * idx[1] + nx * ny * idx[2]);
+                        if (objectPtr == null) {
+                            continue;
+                        }
+                        long cell = cellLanes(inSlice, i, ia, ib, aLo, aHi,
+                                bLo, bHi);
+                        if (cell != 0) {
+                            packet.active = cell;
+                            hit |= objectPtr.hitPacket(packet);
+                        }
+                    }
+                }
+            }
+            //drop rays that have their hit, or that left the grid
+            for (long m = inSlice; m != 0; m &= m - 1) {
+                int i = Long.numberOfTrailingZeros(m);
+                if (packet.records[i].lastT <= tExit[i] || tExit[i]
+                        >= tOut[i]) {
+                    live &= ~(1L << i);
+                }
+            }
+        }
+
+        packet.active = saved;
+        return hit;
+    }
+
+    /**
+     * lanes, starting at lane first, whose cell ranges hold cell a, b. returns
+     * 0 if a lane before first holds the cell, it was already intersected.
+     *
+     * @param lanes
+     * @param first
+     * @param a
+     * @param b
+     * @param aLo
+     * @param aHi
+     * @param bLo
+     * @param bHi
+     * @return
+     */
+    private static long cellLanes(long lanes, int first, int a, int b,
+            int[] aLo, int[] aHi, int[] bLo, int[] bHi) {
+        long cell = 0;
+        for (long m = lanes; m != 0; m &= m - 1) {
+            int i = Long.numberOfTrailingZeros(m);
+            if (a >= aLo[i] && a <= aHi[i] && b >= bLo[i] && b <= bHi[i]) {
+                if (i < first) {
+                    return 0;
+                }
+                cell |= 1L << i;
+            }
+        }
+        return cell;
+    }
+
+    /**
+     * index of the cell containing coordinate x along one axis
+     *
+     * @param x
+     * @param lo
+     * @param hi
+     * @param n
+     * @return
+     */
+    private static int cellIndex(double x, double lo, double hi, int n) {
+        return (int) Utility.clamp((x - lo) * n / (hi - lo), 0, n - 1);
+    }
+
+    /**
+     * sets up the cells for the grid, unless restoreCells can put back cells
+     * that were built before
      */
     public final void setupCells() {
+        if (!restoreCells()) {
+            buildCells();
+            cellsBuilt();
+        }
+    }
+
+    /**
+     * called by setupCells before building the cells, subclasses that keep
+     * built cells around (like TriangleMesh with its cache) can install them
+     * here and return true to skip building.
+     *
+     * @return true if the cells were restored
+     */
+    protected boolean restoreCells() {
+        return false;
+    }
+
+    /**
+     * called by setupCells after the cells have been built
+     */
+    protected void cellsBuilt() {
+    }
+
+    /**
+     * builds the cells from the bounding boxes of the objects
+     */
+    private void buildCells() {
         Point3D p0 = findMinBounds();
         Point3D p1 = findMaxBounds();
         bbox.x0 = p0.x;
@@ -583,7 +800,7 @@ public class Grid extends Compound {
         double wx = p1.x - p0.x;
         double wy = p1.y - p0.y;
         double wz = p1.z - p0.z;
-        multiplier = 2.0; // multiplyer scales the number of grid cells relative to the number of objects
+        multiplier = DEFAULT_MULTIPLIER; // multiplyer scales the number of grid cells relative to the number of objects
         double s = Math.pow(wx * wy * wz / numObjects, 0.3333333);
         nx = (int) (multiplier * wx / s + 1);
         ny = (int) (multiplier * wy / s + 1);
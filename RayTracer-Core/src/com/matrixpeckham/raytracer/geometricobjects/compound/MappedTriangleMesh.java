@@ -0,0 +1,612 @@
+/*
+ * Copyright (C) 2015 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.geometricobjects.compound;
+
+import com.matrixpeckham.raytracer.geometricobjects.GeometricObject;
+import com.matrixpeckham.raytracer.geometricobjects.csg.CSGShadeRec;
+import com.matrixpeckham.raytracer.geometricobjects.triangles.TriangleKernel;
+import com.matrixpeckham.raytracer.util.BBox;
+import com.matrixpeckham.raytracer.util.DoubleRef;
+import com.matrixpeckham.raytracer.util.MappedMesh;
+import com.matrixpeckham.raytracer.util.Ray;
+import com.matrixpeckham.raytracer.util.ShadeRec;
+import com.matrixpeckham.raytracer.util.Utility;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.logging.Logger;
+
+/**
+ * Triangle mesh for meshes too large for the heap. Works like TriangleMesh
+ * with a uniform grid, but there is no object per triangle. The mesh data is
+ * in a MappedMesh, the grid cells hold triangle indices, and the cells are
+ * kept in a memory mapped temporary file as well. Triangles are intersected
+ * straight from the mapped buffers.
+ * <p>
+ * Build the MappedMesh with MappedMesh.create, or with
+ * TriangleMesh.writeMapped for a mesh that was loaded normally, then call
+ * setupCells before rendering. Triangles are smooth if the mesh has normals,
+ * and textured if it has uvs.
+ *
+ * @author William Matrix Peckham
+ */
+public class MappedTriangleMesh extends GeometricObject {
+
+    /**
+     * mesh data
+     */
+    private final MappedMesh mesh;
+
+    /**
+     * reverse the flat normals
+     */
+    private boolean reverseNormal = false;
+
+    /**
+     * bounds of the grid
+     */
+    private final BBox bbox = new BBox();
+
+    /**
+     * number of cells in each direction
+     */
+    private int nx = 0;
+
+    private int ny = 0;
+
+    private int nz = 0;
+
+    /**
+     * triangles in cell c are cellTris[cellStart[c]..cellStart[c+1]-1]
+     */
+    private IntBuffer cellStart = null;
+
+    private IntBuffer cellTris = null;
+
+    /**
+     * creates a mesh object for a mapped mesh
+     *
+     * @param mesh
+     */
+    public MappedTriangleMesh(MappedMesh mesh) {
+        this.mesh = mesh;
+    }
+
+    /**
+     * copy constructor, shares the mesh and the cells, they are only read
+     *
+     * @param m
+     */
+    public MappedTriangleMesh(MappedTriangleMesh m) {
+        super(m);
+        mesh = m.mesh;
+        reverseNormal = m.reverseNormal;
+        bbox.setTo(m.bbox);
+        nx = m.nx;
+        ny = m.ny;
+        nz = m.nz;
+        cellStart = m.cellStart;
+        cellTris = m.cellTris;
+    }
+
+    /**
+     * clone
+     *
+     * @return
+     */
+    @Override
+    public GeometricObject cloneGeometry() {
+        return new MappedTriangleMesh(this);
+    }
+
+    /**
+     * sets flag to reverse flat normals to true, smooth normals are reversed
+     * when they're computed, see MappedMesh.computeNormals
+     */
+    public void reverseNormal() {
+        reverseNormal = true;
+    }
+
+    /**
+     * bounding box of the grid
+     *
+     * @return
+     */
+    @Override
+    public BBox getBoundingBox() {
+        return bbox;
+    }
+
+    /**
+     * builds the grid, same cell counts as Grid.setupCells. The cells are
+     * counted first, then filled, so the only memory needed is the mapped
+     * cell file.
+     *
+     * @throws IOException
+     */
+    public void setupCells() throws IOException {
+        double[] lo = {Utility.HUGE_VALUE, Utility.HUGE_VALUE,
+            Utility.HUGE_VALUE};
+        double[] hi = {-Utility.HUGE_VALUE, -Utility.HUGE_VALUE,
+            -Utility.HUGE_VALUE};
+        for (int i = 0; i < 3 * mesh.numVertices; i++) {
+            lo[i % 3] = Math.min(lo[i % 3], mesh.vertex(i));
+            hi[i % 3] = Math.max(hi[i % 3], mesh.vertex(i));
+        }
+        //same padding as the triangle boxes and Grid bounds
+        double pad = TRIANGLE_DELTA + Utility.EPSILON;
+        bbox.x0 = lo[0] - pad;
+        bbox.y0 = lo[1] - pad;
+        bbox.z0 = lo[2] - pad;
+        bbox.x1 = hi[0] + pad;
+        bbox.y1 = hi[1] + pad;
+        bbox.z1 = hi[2] + pad;
+        double wx = bbox.x1 - bbox.x0;
+        double wy = bbox.y1 - bbox.y0;
+        double wz = bbox.z1 - bbox.z0;
+        double s = Math.pow(wx * wy * wz / mesh.numTriangles, 0.3333333);
+        nx = (int) (Grid.DEFAULT_MULTIPLIER * wx / s + 1);
+        ny = (int) (Grid.DEFAULT_MULTIPLIER * wy / s + 1);
+        nz = (int) (Grid.DEFAULT_MULTIPLIER * wz / s + 1);
+        long numCells = (long) nx * ny * nz;
+        if (numCells >= Integer.MAX_VALUE / 4) {
+            throw new IOException("too many grid cells: " + numCells);
+        }
+
+        File f = File.createTempFile("mesh", ".cells");
+        f.deleteOnExit();
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            FileChannel ch = raf.getChannel();
+            long startBytes = (numCells + 1) * 4;
+            IntBuffer start = ch.map(FileChannel.MapMode.READ_WRITE, 0,
+                    startBytes).order(ByteOrder.nativeOrder()).asIntBuffer();
+            int[] r = new int[6];
+            //count the triangles in each cell
+            for (int t = 0; t < mesh.numTriangles; t++) {
+                cellRange(t, r);
+                for (int iz = r[4]; iz <= r[5]; iz++) {
+                    for (int iy = r[2]; iy <= r[3]; iy++) {
+                        for (int ix = r[0]; ix <= r[1]; ix++) {
+                            int c = ix + nx * iy + nx * ny * iz;
+                            start.put(c, start.get(c) + 1);
+                        }
+                    }
+                }
+            }
+            //turn the counts into the first index of each cell
+            long total = 0;
+            for (int c = 0; c < numCells; c++) {
+                int count = start.get(c);
+                start.put(c, (int) total);
+                total += count;
+            }
+            if (total * 4 > Integer.MAX_VALUE) {
+                throw new IOException("too many grid cell entries: " + total);
+            }
+            IntBuffer tris = ch.map(FileChannel.MapMode.READ_WRITE,
+                    startBytes, total * 4).order(ByteOrder.nativeOrder()).
+                    asIntBuffer();
+            //fill the cells, start[c] ends up at the end of cell c
+            for (int t = 0; t < mesh.numTriangles; t++) {
+                cellRange(t, r);
+                for (int iz = r[4]; iz <= r[5]; iz++) {
+                    for (int iy = r[2]; iy <= r[3]; iy++) {
+                        for (int ix = r[0]; ix <= r[1]; ix++) {
+                            int c = ix + nx * iy + nx * ny * iz;
+                            int k = start.get(c);
+                            tris.put(k, t);
+                            start.put(c, k + 1);
+                        }
+                    }
+                }
+            }
+            //shift back so start[c] is the start of cell c again
+            for (int c = (int) numCells; c > 0; c--) {
+                start.put(c, start.get(c - 1));
+            }
+            start.put(0, 0);
+            cellStart = start;
+            cellTris = tris;
+        }
+    }
+
+    /**
+     * range of cells the bounding box of triangle t overlaps, as x min, x
+     * max, y min, y max, z min, z max
+     *
+     * @param t
+     * @param r
+     */
+    private void cellRange(int t, int[] r) {
+        int i0 = 3 * mesh.index(3 * t);
+        int i1 = 3 * mesh.index(3 * t + 1);
+        int i2 = 3 * mesh.index(3 * t + 2);
+        double[] lo = {bbox.x0, bbox.y0, bbox.z0};
+        double[] hi = {bbox.x1, bbox.y1, bbox.z1};
+        int[] n = {nx, ny, nz};
+        for (int a = 0; a < 3; a++) {
+            double a0 = mesh.vertex(i0 + a);
+            double a1 = mesh.vertex(i1 + a);
+            double a2 = mesh.vertex(i2 + a);
+            double min = Math.min(Math.min(a0, a1), a2) - TRIANGLE_DELTA;
+            double max = Math.max(Math.max(a0, a1), a2) + TRIANGLE_DELTA;
+            r[2 * a] = (int) Utility.clamp((min - lo[a]) * n[a] / (hi[a]
+                    - lo[a]), 0, n[a] - 1);
+            r[2 * a + 1] = (int) Utility.clamp((max - lo[a]) * n[a] / (hi[a]
+                    - lo[a]), 0, n[a] - 1);
+        }
+    }
+
+    /**
+     * hit function
+     *
+     * @param ray
+     * @param sr
+     * @return
+     */
+    @Override
+    public boolean hit(Ray ray, ShadeRec sr) {
+        return walk(ray, sr, null, null);
+    }
+
+    /**
+     * CSG hit function, adds every triangle hit along the ray
+     *
+     * @param ray
+     * @param hits
+     * @param sr
+     * @return
+     */
+    @Override
+    public boolean hit(Ray ray, ArrayList<CSGShadeRec> hits, ShadeRec sr) {
+        return walk(ray, sr, null, hits);
+    }
+
+    /**
+     * shadow hit
+     *
+     * @param ray
+     * @param t
+     * @return
+     */
+    @Override
+    public boolean shadowHit(Ray ray, DoubleRef t) {
+        if (!shadows) {
+            return false;
+        }
+        return walk(ray, null, t, null);
+    }
+
+    /**
+     * walks the cells the ray passes through, the same traversal as Grid.hit.
+     * sr is filled for normal hits, t for shadow hits, and hits gets every hit
+     * for CSG, in which case the walk doesn't stop at the first hit.
+     *
+     * @param ray
+     * @param sr
+     * @param t
+     * @param hits
+     * @return
+     */
+    private boolean walk(Ray ray, ShadeRec sr, DoubleRef t,
+            ArrayList<CSGShadeRec> hits) {
+        if (cellStart == null) {
+            return false;
+        }
+        double ox = ray.o.x;
+        double oy = ray.o.y;
+        double oz = ray.o.z;
+        double dx = ray.d.x;
+        double dy = ray.d.y;
+        double dz = ray.d.z;
+        double x0 = bbox.x0;
+        double y0 = bbox.y0;
+        double z0 = bbox.z0;
+        double x1 = bbox.x1;
+        double y1 = bbox.y1;
+        double z1 = bbox.z1;
+        double txMin;
+        double tyMin;
+        double tzMin;
+        double txMax;
+        double tyMax;
+        double tzMax;
+        double a = 1.0 / dx;
+        if (a >= 0) {
+            txMin = (x0 - ox) * a;
+            txMax = (x1 - ox) * a;
+        } else {
+            txMin = (x1 - ox) * a;
+            txMax = (x0 - ox) * a;
+        }
+        double b = 1.0 / dy;
+        if (b >= 0) {
+            tyMin = (y0 - oy) * b;
+            tyMax = (y1 - oy) * b;
+        } else {
+            tyMin = (y1 - oy) * b;
+            tyMax = (y0 - oy) * b;
+        }
+        double c = 1.0 / dz;
+        if (c >= 0) {
+            tzMin = (z0 - oz) * c;
+            tzMax = (z1 - oz) * c;
+        } else {
+            tzMin = (z1 - oz) * c;
+            tzMax = (z0 - oz) * c;
+        }
+        double t0 = Math.max(Math.max(txMin, tyMin), tzMin);
+        double t1 = Math.min(Math.min(txMax, tyMax), tzMax);
+        if (t0 > t1) {
+            return false;
+        }
+        // initial cell coordinates
+        double px = ox;
+        double py = oy;
+        double pz = oz;
+        if (!bbox.inside(ray.o)) {
+            px += dx * t0;
+            py += dy * t0;
+            pz += dz * t0;
+        }
+        int ix = (int) Utility.clamp((px - x0) * nx / (x1 - x0), 0, nx - 1);
+        int iy = (int) Utility.clamp((py - y0) * ny / (y1 - y0), 0, ny - 1);
+        int iz = (int) Utility.clamp((pz - z0) * nz / (z1 - z0), 0, nz - 1);
+        double dtx = (txMax - txMin) / nx;
+        double dty = (tyMax - tyMin) / ny;
+        double dtz = (tzMax - tzMin) / nz;
+        double txNext;
+        double tyNext;
+        double tzNext;
+        int ixStep;
+        int iyStep;
+        int izStep;
+        int ixStop;
+        int iyStop;
+        int izStop;
+        if (dx > 0) {
+            txNext = txMin + (ix + 1) * dtx;
+            ixStep = +1;
+            ixStop = nx;
+        } else {
+            txNext = txMin + (nx - ix) * dtx;
+            ixStep = -1;
+            ixStop = -1;
+        }
+        if (dx == 0.0) {
+            txNext = Utility.HUGE_VALUE;
+            ixStep = -1;
+            ixStop = -1;
+        }
+        if (dy > 0) {
+            tyNext = tyMin + (iy + 1) * dty;
+            iyStep = +1;
+            iyStop = ny;
+        } else {
+            tyNext = tyMin + (ny - iy) * dty;
+            iyStep = -1;
+            iyStop = -1;
+        }
+        if (dy == 0.0) {
+            tyNext = Utility.HUGE_VALUE;
+            iyStep = -1;
+            iyStop = -1;
+        }
+        if (dz > 0) {
+            tzNext = tzMin + (iz + 1) * dtz;
+            izStep = +1;
+            izStop = nz;
+        } else {
+            tzNext = tzMin + (nz - iz) * dtz;
+            izStep = -1;
+            izStop = -1;
+        }
+        if (dz == 0.0) {
+            tzNext = Utility.HUGE_VALUE;
+            izStep = -1;
+            izStop = -1;
+        }
+        double[] bg = new double[2];
+        double tEnter = t0;
+        boolean any = false;
+        while (true) {
+            double tExit = Math.min(Math.min(txNext, tyNext), tzNext);
+            int cell = ix + nx * iy + nx * ny * iz;
+            if (hits != null) {
+                any |= cellHits(cell, ray, tEnter, tExit, sr, hits, bg);
+            } else if (cellHit(cell, ray, tExit, sr, t, bg)) {
+                return true;
+            }
+            tEnter = tExit;
+            if (txNext < tyNext && txNext < tzNext) {
+                txNext += dtx;
+                ix += ixStep;
+                if (ix == ixStop) {
+                    return any;
+                }
+            } else if (tyNext < tzNext) {
+                tyNext += dty;
+                iy += iyStep;
+                if (iy == iyStop) {
+                    return any;
+                }
+            } else {
+                tzNext += dtz;
+                iz += izStep;
+                if (iz == izStop) {
+                    return any;
+                }
+            }
+        }
+    }
+
+    /**
+     * closest hit of the triangles in a cell, like a Compound in a Grid cell.
+     * only counts if it's before the ray leaves the cell.
+     *
+     * @param cell
+     * @param ray
+     * @param tExit
+     * @param sr filled in if not null
+     * @param tr set if sr is null
+     * @param bg scratch for the barycentric coordinates
+     * @return
+     */
+    private boolean cellHit(int cell, Ray ray, double tExit, ShadeRec sr,
+            DoubleRef tr, double[] bg) {
+        int end = cellStart.get(cell + 1);
+        double tMin = Utility.HUGE_VALUE;
+        int best = -1;
+        double beta = 0;
+        double gamma = 0;
+        for (int k = cellStart.get(cell); k < end; k++) {
+            int tri = cellTris.get(k);
+            double t = intersect(tri, ray, bg);
+            if (t >= Utility.EPSILON && t < tMin) {
+                tMin = t;
+                best = tri;
+                beta = bg[0];
+                gamma = bg[1];
+            }
+        }
+        if (best < 0 || tMin >= tExit) {
+            return false;
+        }
+        if (sr == null) {
+            tr.d = tMin;
+        } else {
+            fill(best, ray, tMin, beta, gamma, sr);
+        }
+        return true;
+    }
+
+    /**
+     * adds the hits of the triangles in a cell for CSG. a triangle can be in
+     * many cells, so only hits inside this cell are added, that way each hit
+     * is added once.
+     *
+     * @param cell
+     * @param ray
+     * @param tEnter
+     * @param tExit
+     * @param si
+     * @param hits
+     * @param bg
+     * @return
+     */
+    private boolean cellHits(int cell, Ray ray, double tEnter, double tExit,
+            ShadeRec si, ArrayList<CSGShadeRec> hits, double[] bg) {
+        int end = cellStart.get(cell + 1);
+        boolean any = false;
+        for (int k = cellStart.get(cell); k < end; k++) {
+            int tri = cellTris.get(k);
+            double t = intersect(tri, ray, bg);
+            if (!Double.isNaN(t) && t >= tEnter && t < tExit) {
+                CSGShadeRec sr = new CSGShadeRec(si);
+                fill(tri, ray, t, bg[0], bg[1], sr);
+                hits.add(sr);
+                any = true;
+            }
+        }
+        return any;
+    }
+
+    /**
+     * intersects a ray with a triangle with TriangleKernel, reading the
+     * vertices from the mapped buffer
+     *
+     * @param tri
+     * @param ray
+     * @param bg gets the barycentric coordinates beta and gamma
+     * @return ray parameter of the hit, NaN if there isn't one
+     */
+    private double intersect(int tri, Ray ray, double[] bg) {
+        int i0 = 3 * mesh.index(3 * tri);
+        int i1 = 3 * mesh.index(3 * tri + 1);
+        int i2 = 3 * mesh.index(3 * tri + 2);
+        return TriangleKernel.intersect(mesh.vertex(i0), mesh.vertex(i0 + 1),
+                mesh.vertex(i0 + 2), mesh.vertex(i1), mesh.vertex(i1 + 1),
+                mesh.vertex(i1 + 2), mesh.vertex(i2), mesh.vertex(i2 + 1),
+                mesh.vertex(i2 + 2), ray.o.x, ray.o.y, ray.o.z, ray.d.x,
+                ray.d.y, ray.d.z, bg);
+    }
+
+    /**
+     * fills in a shaderec for a hit on a triangle, interpolating the normal
+     * and uvs if the mesh has them
+     *
+     * @param tri
+     * @param ray
+     * @param t
+     * @param beta
+     * @param gamma
+     * @param sr
+     */
+    private void fill(int tri, Ray ray, double t, double beta, double gamma,
+            ShadeRec sr) {
+        int i0 = mesh.index(3 * tri);
+        int i1 = mesh.index(3 * tri + 1);
+        int i2 = mesh.index(3 * tri + 2);
+        double alpha = 1 - beta - gamma;
+        sr.lastT = t;
+        sr.localHitPosition.setTo(ray.o.x + ray.d.x * t, ray.o.y + ray.d.y * t,
+                ray.o.z + ray.d.z * t);
+        if (mesh.hasNormals()) {
+            sr.normal.setTo(
+                    alpha * mesh.normal(3 * i0) + beta * mesh.normal(3 * i1)
+                    + gamma * mesh.normal(3 * i2),
+                    alpha * mesh.normal(3 * i0 + 1) + beta * mesh.normal(3 * i1
+                            + 1) + gamma * mesh.normal(3 * i2 + 1),
+                    alpha * mesh.normal(3 * i0 + 2) + beta * mesh.normal(3 * i1
+                            + 2) + gamma * mesh.normal(3 * i2 + 2));
+            sr.normal.normalize();
+        } else {
+            double ax = mesh.vertex(3 * i1) - mesh.vertex(3 * i0);
+            double ay = mesh.vertex(3 * i1 + 1) - mesh.vertex(3 * i0 + 1);
+            double az = mesh.vertex(3 * i1 + 2) - mesh.vertex(3 * i0 + 2);
+            double bx = mesh.vertex(3 * i2) - mesh.vertex(3 * i0);
+            double by = mesh.vertex(3 * i2 + 1) - mesh.vertex(3 * i0 + 1);
+            double bz = mesh.vertex(3 * i2 + 2) - mesh.vertex(3 * i0 + 2);
+            sr.normal.setTo(ay * bz - az * by, az * bx - ax * bz, ax * by - ay
+                    * bx);
+            sr.normal.normalize();
+            if (reverseNormal) {
+                sr.normal.setTo(-sr.normal.x, -sr.normal.y, -sr.normal.z);
+            }
+        }
+        if (mesh.hasUVs()) {
+            sr.u = alpha * mesh.uv(2 * i0) + beta * mesh.uv(2 * i1) + gamma
+                    * mesh.uv(2 * i2);
+            sr.v = alpha * mesh.uv(2 * i0 + 1) + beta * mesh.uv(2 * i1 + 1)
+                    + gamma * mesh.uv(2 * i2 + 1);
+        }
+    }
+
+    /**
+     * padding MeshTriangle adds to its bounding box
+     */
+    private static final double TRIANGLE_DELTA = 0.0001;
+
+    private static final Logger LOG
+            = Logger.getLogger(MappedTriangleMesh.class.getName());
+
+}
@@ -0,0 +1,571 @@
+/*
+ * Copyright (C) 2015 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.geometricobjects.compound;
+
+import com.matrixpeckham.raytracer.geometricobjects.GeometricObject;
+import com.matrixpeckham.raytracer.geometricobjects.triangles.FlatMeshTriangle;
+import com.matrixpeckham.raytracer.geometricobjects.triangles.FlatUVMeshTriangle;
+import com.matrixpeckham.raytracer.geometricobjects.triangles.MeshTriangle;
+import com.matrixpeckham.raytracer.geometricobjects.triangles.SmoothMeshTriangle;
+import com.matrixpeckham.raytracer.geometricobjects.triangles.SmoothUVMeshTriangle;
+import com.matrixpeckham.raytracer.util.BBox;
+import com.matrixpeckham.raytracer.util.Mesh;
+import com.matrixpeckham.raytracer.util.Normal;
+import com.matrixpeckham.raytracer.util.Point3D;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * On disk cache of loaded triangle meshes. An entry holds the mesh vertices,
+ * normals and uvs, the triangles, and the grid cells built over them, so a
+ * scene that loads the same model again can skip parsing the PLY file,
+ * computing the normals and building the grid. Entries are named by a hash of
+ * the PLY file contents and the settings that change the result (triangle
+ * type, uvs, reversed normals) and are memory mapped when read. Levels of
+ * detail made from a mesh are kept as entries of their own, named after the
+ * entry of the mesh they were made from.
+ * <p>
+ * The cache is off unless a directory is set, with setDirectory or the
+ * raytracer.meshcache system property. Problems with the cache are logged and
+ * the mesh is loaded the normal way.
+ *
+ * @author William Matrix Peckham
+ */
+public final class MeshCache {
+
+    /**
+     * first int of every cache file
+     */
+    private static final int MAGIC = 0x52544d43;
+
+    /**
+     * bumped whenever the layout changes, old files are then ignored
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * triangle type codes stored in the file
+     */
+    static final int FLAT = 0;
+
+    static final int SMOOTH = 1;
+
+    static final int FLAT_UV = 2;
+
+    static final int SMOOTH_UV = 3;
+
+    /**
+     * directory holding the cache files, null when the cache is off
+     */
+    private static volatile File directory = initialDirectory();
+
+    /**
+     * no instances
+     */
+    private MeshCache() {
+    }
+
+    /**
+     * sets the directory for the cache files, null turns the cache off.
+     *
+     * @param dir
+     */
+    public static void setDirectory(File dir) {
+        directory = dir;
+    }
+
+    /**
+     * directory of the cache files, null if the cache is off
+     *
+     * @return
+     */
+    public static File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * cache directory from the raytracer.meshcache system property
+     *
+     * @return
+     */
+    private static File initialDirectory() {
+        String dir = System.getProperty("raytracer.meshcache");
+        return dir == null || dir.isEmpty() ? null : new File(dir);
+    }
+
+    /**
+     * reads a whole stream, we need the bytes to hash them before parsing
+     *
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1 << 16];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * cache key for a source file and the settings it is loaded with
+     *
+     * @param source contents of the PLY file
+     * @param type triangle type code
+     * @param reverseNormal
+     * @return hex string used as the file name
+     */
+    static String key(byte[] source, int type, boolean reverseNormal) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(source);
+            md.update((byte) type);
+            md.update((byte) (reverseNormal ? 1 : 0));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : md.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            //every java platform has SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * cache key for a level of detail made from the entry with key source
+     *
+     * @param source
+     * @param count levels that were asked for
+     * @param level 1 for the finest
+     * @return
+     */
+    static String levelKey(String source, int count, int level) {
+        return source + "-" + count + "-" + level;
+    }
+
+    /**
+     * type code of a mesh triangle
+     *
+     * @param tri
+     * @return
+     */
+    static int type(MeshTriangle tri) {
+        //the uv triangles are subclasses of the others
+        if (tri instanceof SmoothUVMeshTriangle) {
+            return SMOOTH_UV;
+        }
+        if (tri instanceof FlatUVMeshTriangle) {
+            return FLAT_UV;
+        }
+        if (tri instanceof SmoothMeshTriangle) {
+            return SMOOTH;
+        }
+        return FLAT;
+    }
+
+    /**
+     * makes a mesh triangle of a type
+     *
+     * @param type
+     * @param mesh
+     * @param i0
+     * @param i1
+     * @param i2
+     * @return
+     */
+    static MeshTriangle newTriangle(int type, Mesh mesh, int i0, int i1,
+            int i2) {
+        switch (type) {
+            case FLAT:
+                return new FlatMeshTriangle(mesh, i0, i1, i2);
+            case SMOOTH:
+                return new SmoothMeshTriangle(mesh, i0, i1, i2);
+            case FLAT_UV:
+                return new FlatUVMeshTriangle(mesh, i0, i1, i2);
+            default:
+                return new SmoothUVMeshTriangle(mesh, i0, i1, i2);
+        }
+    }
+
+    /**
+     * the file for a key
+     *
+     * @param dir
+     * @param key
+     * @return
+     */
+    private static File file(File dir, String key) {
+        return new File(dir, key + ".mesh");
+    }
+
+    /**
+     * grid cells read from a cache file, kept until setupCells is called
+     */
+    static final class Cells {
+
+        final double multiplier;
+
+        final BBox bbox;
+
+        final int nx;
+
+        final int ny;
+
+        final int nz;
+
+        final int[][] contents;
+
+        /**
+         * error of a level of detail, 0 for a mesh read from a file
+         */
+        final double error;
+
+        Cells(double multiplier, BBox bbox, int nx, int ny, int nz,
+                int[][] contents, double error) {
+            this.multiplier = multiplier;
+            this.bbox = bbox;
+            this.nx = nx;
+            this.ny = ny;
+            this.nz = nz;
+            this.contents = contents;
+            this.error = error;
+        }
+
+        /**
+         * puts the cells into a grid, cells with more than one triangle get a
+         * compound the same way setupCells makes them.
+         *
+         * @param g
+         */
+        void install(Grid g) {
+            g.bbox.setTo(bbox);
+            g.nx = nx;
+            g.ny = ny;
+            g.nz = nz;
+            g.multiplier = multiplier;
+            g.cells.clear();
+            g.cells.ensureCapacity(contents.length);
+            for (int[] cell : contents) {
+                if (cell.length == 0) {
+                    g.cells.add(null);
+                } else if (cell.length == 1) {
+                    g.cells.add(g.objects.get(cell[0]));
+                } else {
+                    Compound c = new Compound();
+                    for (int j : cell) {
+                        c.addObject(g.objects.get(j));
+                    }
+                    g.cells.add(c);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * loads the entry for key into an empty mesh, the mesh object is filled
+     * in place because other objects may share it.
+     *
+     * @param key
+     * @param type triangle type the entry must have
+     * @param m triangle mesh to fill, with an empty mesh and no objects
+     * @return the grid cells of the entry, or null if there is no usable
+     * entry, m is left empty then
+     */
+    static Cells load(String key, int type, TriangleMesh m) {
+        File dir = directory;
+        if (dir == null) {
+            return null;
+        }
+        File f = file(dir, key);
+        if (!f.isFile()) {
+            return null;
+        }
+        try (FileChannel ch = FileChannel.open(f.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.
+                    size());
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION || buf.
+                    getInt() != type) {
+                return null;
+            }
+            ArrayList<GeometricObject> tris = new ArrayList<>();
+            Cells cells = read(buf, type, m.mesh, tris);
+            m.objects.addAll(tris);
+            return cells;
+        } catch (IOException | BufferUnderflowException
+                | IndexOutOfBoundsException ex) {
+            LOG.log(Level.WARNING, "ignoring bad mesh cache file " + f, ex);
+            //put the mesh back the way it was, it gets read from the PLY file
+            m.mesh.vertices.clear();
+            m.mesh.normals.clear();
+            m.mesh.u.clear();
+            m.mesh.v.clear();
+            m.mesh.vertexFaces.clear();
+            m.mesh.numVertices = 0;
+            m.mesh.numTriangles = 0;
+            return null;
+        }
+    }
+
+    /**
+     * reads the body of a cache file. Counts and indices are checked against
+     * the rest of the file, so a corrupt or cut off file can't make us
+     * allocate huge or negative arrays or build triangles out of range.
+     *
+     * @param buf
+     * @param type
+     * @param mesh
+     * @param tris
+     * @return
+     * @throws IOException if a count or index can't be right
+     */
+    private static Cells read(ByteBuffer buf, int type, Mesh mesh,
+            ArrayList<GeometricObject> tris) throws IOException {
+        boolean smooth = type == SMOOTH || type == SMOOTH_UV;
+        boolean uv = type == FLAT_UV || type == SMOOTH_UV;
+        mesh.numVertices = count(buf, 24 + (smooth ? 24 : 0) + (uv ? 16 : 0));
+        mesh.numTriangles = count(buf, 36);
+        mesh.vertices.ensureCapacity(mesh.numVertices);
+        for (int i = 0; i < mesh.numVertices; i++) {
+            mesh.vertices.add(new Point3D(buf.getDouble(), buf.getDouble(),
+                    buf.getDouble()));
+            mesh.vertexFaces.add(new ArrayList<>());
+        }
+        if (smooth) {
+            mesh.normals.ensureCapacity(mesh.numVertices);
+            for (int i = 0; i < mesh.numVertices; i++) {
+                mesh.normals.add(new Normal(buf.getDouble(), buf.getDouble(),
+                        buf.getDouble()));
+            }
+        }
+        if (uv) {
+            mesh.u.ensureCapacity(mesh.numVertices);
+            mesh.v.ensureCapacity(mesh.numVertices);
+            for (int i = 0; i < mesh.numVertices; i++) {
+                mesh.u.add(buf.getDouble());
+                mesh.v.add(buf.getDouble());
+            }
+        }
+        tris.ensureCapacity(mesh.numTriangles);
+        for (int i = 0; i < mesh.numTriangles; i++) {
+            int i0 = index(buf, mesh.numVertices);
+            int i1 = index(buf, mesh.numVertices);
+            int i2 = index(buf, mesh.numVertices);
+            MeshTriangle tri = newTriangle(type, mesh, i0, i1, i2);
+            tri.normal.setTo(buf.getDouble(), buf.getDouble(), buf.
+                    getDouble());
+            tris.add(tri);
+            if (smooth) {
+                //same connectivity the PLY reader builds
+                mesh.vertexFaces.get(i0).add(i);
+                mesh.vertexFaces.get(i1).add(i);
+                mesh.vertexFaces.get(i2).add(i);
+            }
+        }
+        double multiplier = buf.getDouble();
+        BBox bbox = new BBox(buf.getDouble(), buf.getDouble(), buf.getDouble(),
+                buf.getDouble(), buf.getDouble(), buf.getDouble());
+        int nx = buf.getInt();
+        int ny = buf.getInt();
+        int nz = buf.getInt();
+        //every cell takes at least its count
+        long numCells = (long) nx * ny * nz;
+        if (nx < 0 || ny < 0 || nz < 0 || numCells * 4 > buf.remaining()) {
+            throw new IOException("bad grid size " + nx + "x" + ny + "x" + nz);
+        }
+        int[][] contents = new int[(int) numCells][];
+        for (int c = 0; c < contents.length; c++) {
+            int[] cell = new int[count(buf, 4)];
+            for (int j = 0; j < cell.length; j++) {
+                cell[j] = index(buf, mesh.numTriangles);
+            }
+            contents[c] = cell;
+        }
+        double error = buf.getDouble();
+        return new Cells(multiplier, bbox, nx, ny, nz, contents, error);
+    }
+
+    /**
+     * reads a count of things that take bytesEach bytes each
+     *
+     * @param buf
+     * @param bytesEach
+     * @return
+     * @throws IOException if the count is negative or there aren't that many
+     * bytes left
+     */
+    private static int count(ByteBuffer buf, int bytesEach) throws
+            IOException {
+        int n = buf.getInt();
+        if (n < 0 || (long) n * bytesEach > buf.remaining()) {
+            throw new IOException("bad count " + n);
+        }
+        return n;
+    }
+
+    /**
+     * reads an index into something with size things
+     *
+     * @param buf
+     * @param size
+     * @return
+     * @throws IOException if the index is out of range
+     */
+    private static int index(ByteBuffer buf, int size) throws IOException {
+        int i = buf.getInt();
+        if (i < 0 || i >= size) {
+            throw new IOException("bad index " + i + " of " + size);
+        }
+        return i;
+    }
+
+    /**
+     * writes the entry for key, from a mesh whose cells have been built. the
+     * file is written next to its final name and moved into place, so readers
+     * never see half a file.
+     *
+     * @param key
+     * @param type
+     * @param m
+     */
+    static void save(String key, int type, TriangleMesh m) {
+        File dir = directory;
+        if (dir == null) {
+            return;
+        }
+        File tmp = null;
+        try {
+            Files.createDirectories(dir.toPath());
+            tmp = File.createTempFile(key, ".tmp", dir);
+            try (OutputStream os = Files.newOutputStream(tmp.toPath())) {
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(os, 1 << 16));
+                write(out, type, m);
+                out.flush();
+            }
+            Files.move(tmp.toPath(), file(dir, key).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "could not write mesh cache file", ex);
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * writes the mesh, triangles, cells and level of detail error, in the
+     * order read reads them
+     *
+     * @param out
+     * @param type
+     * @param m
+     * @throws IOException
+     */
+    private static void write(DataOutputStream out, int type, TriangleMesh m)
+            throws IOException {
+        Mesh mesh = m.mesh;
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(type);
+        out.writeInt(mesh.numVertices);
+        out.writeInt(mesh.numTriangles);
+        for (Point3D p : mesh.vertices) {
+            out.writeDouble(p.x);
+            out.writeDouble(p.y);
+            out.writeDouble(p.z);
+        }
+        if (type == SMOOTH || type == SMOOTH_UV) {
+            for (Normal n : mesh.normals) {
+                out.writeDouble(n.x);
+                out.writeDouble(n.y);
+                out.writeDouble(n.z);
+            }
+        }
+        if (type == FLAT_UV || type == SMOOTH_UV) {
+            for (int i = 0; i < mesh.numVertices; i++) {
+                out.writeDouble(mesh.u.get(i));
+                out.writeDouble(mesh.v.get(i));
+            }
+        }
+        IdentityHashMap<GeometricObject, Integer> index
+                = new IdentityHashMap<>();
+        for (int i = 0; i < m.objects.size(); i++) {
+            MeshTriangle tri = (MeshTriangle) m.objects.get(i);
+            index.put(tri, i);
+            out.writeInt(tri.index0);
+            out.writeInt(tri.index1);
+            out.writeInt(tri.index2);
+            out.writeDouble(tri.normal.x);
+            out.writeDouble(tri.normal.y);
+            out.writeDouble(tri.normal.z);
+        }
+        out.writeDouble(m.multiplier);
+        out.writeDouble(m.bbox.x0);
+        out.writeDouble(m.bbox.x1);
+        out.writeDouble(m.bbox.y0);
+        out.writeDouble(m.bbox.y1);
+        out.writeDouble(m.bbox.z0);
+        out.writeDouble(m.bbox.z1);
+        out.writeInt(m.nx);
+        out.writeInt(m.ny);
+        out.writeInt(m.nz);
+        for (GeometricObject cell : m.cells) {
+            if (cell == null) {
+                out.writeInt(0);
+            } else if (cell instanceof Compound) {
+                ArrayList<GeometricObject> objs = ((Compound) cell).objects;
+                out.writeInt(objs.size());
+                for (GeometricObject obj : objs) {
+                    out.writeInt(index.get(obj));
+                }
+            } else {
+                out.writeInt(1);
+                out.writeInt(index.get(cell));
+            }
+        }
+        out.writeDouble(m.lodError);
+    }
+
+    private static final Logger LOG
+            = Logger.getLogger(MeshCache.class.getName());
+
+}
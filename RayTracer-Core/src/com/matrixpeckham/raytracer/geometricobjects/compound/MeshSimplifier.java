@@ -0,0 +1,620 @@
+/*
+ * Copyright (C) 2016 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.geometricobjects.compound;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.logging.Logger;
+
+/**
+ * Makes coarser versions of a triangle mesh by collapsing edges, cheapest
+ * first, where the cost of moving a vertex is its summed squared distance to
+ * the planes of the triangles that were merged into it (Garland and Heckbert's
+ * quadric error metric). Edges on holes in the mesh also get planes through
+ * them across the surface, so holes keep their shape.
+ * <p>
+ * A collapse keeps one end of the edge or moves it to the middle, whichever
+ * costs least, and is skipped if it would flip a triangle over or pinch the
+ * surface into something that isn't a manifold. Levels are snapshots of one
+ * simplification, each with a quarter of the triangles of the one before,
+ * and their error is the largest distance any collapse made so far moved a
+ * vertex away from its planes.
+ *
+ * @author William Matrix Peckham
+ */
+final class MeshSimplifier {
+
+    /**
+     * levels aren't made with fewer triangles than this
+     */
+    static final int MIN_TRIANGLES = 256;
+
+    /**
+     * each level has this many times fewer triangles than the one before
+     */
+    static final int REDUCTION = 4;
+
+    /**
+     * one simplified mesh, vertex indices are into its own vertices
+     */
+    static final class Level {
+
+        /**
+         * x, y and z of each vertex
+         */
+        final double[] positions;
+
+        /**
+         * u and v of each vertex, null if the mesh has none
+         */
+        final double[] uvs;
+
+        /**
+         * three vertex indices for each triangle
+         */
+        final int[] triangles;
+
+        /**
+         * how far the surface may be from the original, in mesh units
+         */
+        final double error;
+
+        Level(double[] positions, double[] uvs, int[] triangles,
+                double error) {
+            this.positions = positions;
+            this.uvs = uvs;
+            this.triangles = triangles;
+            this.error = error;
+        }
+
+    }
+
+    //where a collapse puts the vertex
+    private static final int KEEP_A = 0;
+
+    private static final int KEEP_B = 1;
+
+    private static final int MIDDLE = 2;
+
+    /**
+     * a possible collapse of b into a, stale once either end has changed
+     */
+    private static final class Edge implements Comparable<Edge> {
+
+        final int a;
+
+        final int b;
+
+        final int stampA;
+
+        final int stampB;
+
+        final double cost;
+
+        final int place;
+
+        Edge(int a, int b, int stampA, int stampB, double cost, int place) {
+            this.a = a;
+            this.b = b;
+            this.stampA = stampA;
+            this.stampB = stampB;
+            this.cost = cost;
+            this.place = place;
+        }
+
+        @Override
+        public int compareTo(Edge o) {
+            return Double.compare(cost, o.cost);
+        }
+
+    }
+
+    private final double[] p;
+
+    private final double[] uv;
+
+    //ten coefficients of the symmetric 4x4 quadric of each vertex
+    private final double[] q;
+
+    private final int[] tri;
+
+    private final boolean[] deadTri;
+
+    private final boolean[] deadVertex;
+
+    //vertices on a hole
+    private final boolean[] border;
+
+    //bumped when a vertex moves, so edges to it can be told to be stale
+    private final int[] stamp;
+
+    //triangles around each vertex, dead ones are dropped lazily
+    private final int[][] faces;
+
+    private final int[] faceCount;
+
+    //for collecting neighbors without duplicates
+    private final int[] mark;
+
+    private int markStamp = 0;
+
+    private final PriorityQueue<Edge> heap = new PriorityQueue<>();
+
+    private int live;
+
+    private double error = 0;
+
+    /**
+     * simplifies a mesh into up to count levels, fewer if it gets down to
+     * MIN_TRIANGLES first or runs out of edges that can be collapsed.
+     *
+     * @param positions x, y and z of each vertex
+     * @param uvs u and v of each vertex, or null
+     * @param triangles three vertex indices for each triangle
+     * @param count
+     * @return the levels, coarser ones later
+     */
+    static ArrayList<Level> simplify(double[] positions, double[] uvs,
+            int[] triangles, int count) {
+        ArrayList<Level> levels = new ArrayList<>();
+        MeshSimplifier s = new MeshSimplifier(positions, uvs, triangles);
+        int target = s.live / REDUCTION;
+        while (levels.size() < count && target >= MIN_TRIANGLES) {
+            int before = s.live;
+            boolean reached = s.collapseTo(target);
+            if (s.live == before) {
+                break;
+            }
+            levels.add(s.level());
+            if (!reached) {
+                break;
+            }
+            target = s.live / REDUCTION;
+        }
+        return levels;
+    }
+
+    private MeshSimplifier(double[] positions, double[] uvs,
+            int[] triangles) {
+        int n = positions.length / 3;
+        int m = triangles.length / 3;
+        p = positions.clone();
+        uv = uvs == null ? null : uvs.clone();
+        tri = triangles.clone();
+        q = new double[n * 10];
+        deadTri = new boolean[m];
+        deadVertex = new boolean[n];
+        border = new boolean[n];
+        stamp = new int[n];
+        mark = new int[n];
+        faceCount = new int[n];
+        for (int v : tri) {
+            faceCount[v]++;
+        }
+        faces = new int[n][];
+        for (int v = 0; v < n; v++) {
+            faces[v] = new int[Math.max(faceCount[v], 4)];
+            faceCount[v] = 0;
+        }
+        for (int f = 0; f < m; f++) {
+            for (int k = 0; k < 3; k++) {
+                int v = tri[f * 3 + k];
+                faces[v][faceCount[v]++] = f;
+            }
+        }
+        live = m;
+        double[] nrm = new double[3];
+        for (int f = 0; f < m; f++) {
+            int a = tri[f * 3];
+            int b = tri[f * 3 + 1];
+            int c = tri[f * 3 + 2];
+            if (!normal(a, b, c, nrm)) {
+                continue;
+            }
+            double d = -(nrm[0] * p[a * 3] + nrm[1] * p[a * 3 + 1] + nrm[2]
+                    * p[a * 3 + 2]);
+            addPlane(a, nrm[0], nrm[1], nrm[2], d);
+            addPlane(b, nrm[0], nrm[1], nrm[2], d);
+            addPlane(c, nrm[0], nrm[1], nrm[2], d);
+            //edges with only this triangle get a plane across the surface
+            for (int k = 0; k < 3; k++) {
+                int u = tri[f * 3 + k];
+                int w = tri[f * 3 + (k + 1) % 3];
+                if (shared(u, w) == 1) {
+                    border[u] = true;
+                    border[w] = true;
+                    borderPlane(u, w, nrm);
+                }
+            }
+        }
+        for (int f = 0; f < m; f++) {
+            for (int k = 0; k < 3; k++) {
+                int u = tri[f * 3 + k];
+                int w = tri[f * 3 + (k + 1) % 3];
+                //interior edges are in two triangles, push them once
+                if (u < w || shared(u, w) == 1) {
+                    push(u, w);
+                }
+            }
+        }
+    }
+
+    /**
+     * collapses edges until there are target triangles left
+     *
+     * @param target
+     * @return false if it ran out of edges first
+     */
+    private boolean collapseTo(int target) {
+        while (live > target) {
+            Edge e = heap.poll();
+            if (e == null) {
+                return false;
+            }
+            if (deadVertex[e.a] || deadVertex[e.b] || stamp[e.a] != e.stampA
+                    || stamp[e.b] != e.stampB) {
+                continue;
+            }
+            collapse(e);
+        }
+        return true;
+    }
+
+    /**
+     * collapses b into a, if it doesn't break the surface
+     *
+     * @param e
+     */
+    private void collapse(Edge e) {
+        int a = e.a;
+        int b = e.b;
+        double x, y, z;
+        if (e.place == KEEP_A) {
+            x = p[a * 3];
+            y = p[a * 3 + 1];
+            z = p[a * 3 + 2];
+        } else if (e.place == KEEP_B) {
+            x = p[b * 3];
+            y = p[b * 3 + 1];
+            z = p[b * 3 + 2];
+        } else {
+            x = (p[a * 3] + p[b * 3]) / 2;
+            y = (p[a * 3 + 1] + p[b * 3 + 1]) / 2;
+            z = (p[a * 3 + 2] + p[b * 3 + 2]) / 2;
+        }
+        int shared = shared(a, b);
+        if (shared == 0 || !linkOk(a, b, shared)
+                || (border[a] && border[b] && shared != 1)
+                || flips(a, b, x, y, z) || flips(b, a, x, y, z)) {
+            return;
+        }
+        //triangles on the edge go away, the rest of b's move to a
+        for (int i = 0; i < faceCount[b]; i++) {
+            int f = faces[b][i];
+            if (deadTri[f]) {
+                continue;
+            }
+            int k = corner(f, a);
+            if (k >= 0) {
+                deadTri[f] = true;
+                live--;
+            } else {
+                tri[f * 3 + corner(f, b)] = a;
+                addFace(a, f);
+            }
+        }
+        int count = 0;
+        for (int i = 0; i < faceCount[a]; i++) {
+            if (!deadTri[faces[a][i]]) {
+                faces[a][count++] = faces[a][i];
+            }
+        }
+        faceCount[a] = count;
+        faceCount[b] = 0;
+        p[a * 3] = x;
+        p[a * 3 + 1] = y;
+        p[a * 3 + 2] = z;
+        if (uv != null) {
+            if (e.place == KEEP_B) {
+                uv[a * 2] = uv[b * 2];
+                uv[a * 2 + 1] = uv[b * 2 + 1];
+            } else if (e.place == MIDDLE) {
+                uv[a * 2] = (uv[a * 2] + uv[b * 2]) / 2;
+                uv[a * 2 + 1] = (uv[a * 2 + 1] + uv[b * 2 + 1]) / 2;
+            }
+        }
+        for (int i = 0; i < 10; i++) {
+            q[a * 10 + i] += q[b * 10 + i];
+        }
+        border[a] |= border[b];
+        deadVertex[b] = true;
+        stamp[a]++;
+        error = Math.max(error, Math.sqrt(Math.max(e.cost, 0)));
+        //new costs for the edges around a
+        markStamp++;
+        for (int i = 0; i < faceCount[a]; i++) {
+            int f = faces[a][i];
+            for (int k = 0; k < 3; k++) {
+                int c = tri[f * 3 + k];
+                if (c != a && mark[c] != markStamp) {
+                    mark[c] = markStamp;
+                    push(a, c);
+                }
+            }
+        }
+    }
+
+    /**
+     * true if moving v to (x, y, z) turns over one of its triangles that
+     * doesn't also have other
+     */
+    private boolean flips(int v, int other, double x, double y, double z) {
+        double[] before = new double[3];
+        double[] after = new double[3];
+        for (int i = 0; i < faceCount[v]; i++) {
+            int f = faces[v][i];
+            if (deadTri[f] || corner(f, other) >= 0) {
+                continue;
+            }
+            int k = corner(f, v);
+            int b = tri[f * 3 + (k + 1) % 3];
+            int c = tri[f * 3 + (k + 2) % 3];
+            double bx = p[b * 3];
+            double by = p[b * 3 + 1];
+            double bz = p[b * 3 + 2];
+            double cx = p[c * 3];
+            double cy = p[c * 3 + 1];
+            double cz = p[c * 3 + 2];
+            if (!cross(bx - p[v * 3], by - p[v * 3 + 1], bz - p[v * 3 + 2], cx
+                    - p[v * 3], cy - p[v * 3 + 1], cz - p[v * 3 + 2], before)) {
+                continue;
+            }
+            if (!cross(bx - x, by - y, bz - z, cx - x, cy - y, cz - z, after)
+                    || before[0] * after[0] + before[1] * after[1] + before[2]
+                    * after[2] <= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * unit normal of triangle (a, b, c)
+     *
+     * @return false if the triangle has no area
+     */
+    private boolean normal(int a, int b, int c, double[] out) {
+        double ax = p[a * 3];
+        double ay = p[a * 3 + 1];
+        double az = p[a * 3 + 2];
+        return cross(p[b * 3] - ax, p[b * 3 + 1] - ay, p[b * 3 + 2] - az,
+                p[c * 3] - ax, p[c * 3 + 1] - ay, p[c * 3 + 2] - az, out);
+    }
+
+    /**
+     * unit cross product of u and v
+     *
+     * @return false if it is zero
+     */
+    private static boolean cross(double ux, double uy, double uz, double vx,
+            double vy, double vz, double[] out) {
+        double x = uy * vz - uz * vy;
+        double y = uz * vx - ux * vz;
+        double z = ux * vy - uy * vx;
+        double len = Math.sqrt(x * x + y * y + z * z);
+        if (len == 0) {
+            return false;
+        }
+        out[0] = x / len;
+        out[1] = y / len;
+        out[2] = z / len;
+        return true;
+    }
+
+    /**
+     * number of live triangles with both u and w
+     */
+    private int shared(int u, int w) {
+        int n = 0;
+        for (int i = 0; i < faceCount[u]; i++) {
+            int f = faces[u][i];
+            if (!deadTri[f] && corner(f, w) >= 0) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * true if a and b have no neighbors in common besides the corners of the
+     * triangles on their edge, otherwise collapsing them pinches the surface
+     */
+    private boolean linkOk(int a, int b, int shared) {
+        markStamp++;
+        int first = markStamp;
+        for (int i = 0; i < faceCount[a]; i++) {
+            int f = faces[a][i];
+            if (deadTri[f]) {
+                continue;
+            }
+            for (int k = 0; k < 3; k++) {
+                int c = tri[f * 3 + k];
+                if (c != a) {
+                    mark[c] = first;
+                }
+            }
+        }
+        markStamp++;
+        int common = 0;
+        for (int i = 0; i < faceCount[b]; i++) {
+            int f = faces[b][i];
+            if (deadTri[f]) {
+                continue;
+            }
+            for (int k = 0; k < 3; k++) {
+                int c = tri[f * 3 + k];
+                if (c != b && mark[c] == first) {
+                    mark[c] = markStamp;
+                    common++;
+                }
+            }
+        }
+        return common == shared;
+    }
+
+    /**
+     * which corner of triangle f is v, -1 if none
+     */
+    private int corner(int f, int v) {
+        for (int k = 0; k < 3; k++) {
+            if (tri[f * 3 + k] == v) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    private void addFace(int v, int f) {
+        if (faceCount[v] == faces[v].length) {
+            faces[v] = Arrays.copyOf(faces[v], faces[v].length * 2);
+        }
+        faces[v][faceCount[v]++] = f;
+    }
+
+    /**
+     * adds the plane n.p + d = 0 to the quadric of v
+     */
+    private void addPlane(int v, double a, double b, double c, double d) {
+        int i = v * 10;
+        q[i] += a * a;
+        q[i + 1] += a * b;
+        q[i + 2] += a * c;
+        q[i + 3] += a * d;
+        q[i + 4] += b * b;
+        q[i + 5] += b * c;
+        q[i + 6] += b * d;
+        q[i + 7] += c * c;
+        q[i + 8] += c * d;
+        q[i + 9] += d * d;
+    }
+
+    /**
+     * adds the plane through edge (u, w) that is square to the triangle with
+     * normal n to both ends
+     */
+    private void borderPlane(int u, int w, double[] n) {
+        double[] m = new double[3];
+        if (!cross(p[w * 3] - p[u * 3], p[w * 3 + 1] - p[u * 3 + 1], p[w * 3
+                + 2] - p[u * 3 + 2], n[0], n[1], n[2], m)) {
+            return;
+        }
+        double d = -(m[0] * p[u * 3] + m[1] * p[u * 3 + 1] + m[2] * p[u * 3
+                + 2]);
+        addPlane(u, m[0], m[1], m[2], d);
+        addPlane(w, m[0], m[1], m[2], d);
+    }
+
+    /**
+     * squared distance of (x, y, z) to the planes of quadric v
+     */
+    private double error(int v, double x, double y, double z) {
+        int i = v * 10;
+        return q[i] * x * x + 2 * q[i + 1] * x * y + 2 * q[i + 2] * x * z + 2
+                * q[i + 3] * x + q[i + 4] * y * y + 2 * q[i + 5] * y * z + 2
+                * q[i + 6] * y + q[i + 7] * z * z + 2 * q[i + 8] * z + q[i
+                + 9];
+    }
+
+    /**
+     * queues the collapse of edge (a, b) at its cheapest place. a vertex on a
+     * hole stays where it is when the other end isn't on one.
+     */
+    private void push(int a, int b) {
+        double ax = p[a * 3];
+        double ay = p[a * 3 + 1];
+        double az = p[a * 3 + 2];
+        double bx = p[b * 3];
+        double by = p[b * 3 + 1];
+        double bz = p[b * 3 + 2];
+        double best = Double.POSITIVE_INFINITY;
+        int place = MIDDLE;
+        if (border[a] == border[b]) {
+            double mx = (ax + bx) / 2;
+            double my = (ay + by) / 2;
+            double mz = (az + bz) / 2;
+            best = error(a, mx, my, mz) + error(b, mx, my, mz);
+        }
+        if (!border[b] || border[a]) {
+            double cost = error(a, ax, ay, az) + error(b, ax, ay, az);
+            if (cost < best) {
+                best = cost;
+                place = KEEP_A;
+            }
+        }
+        if (!border[a] || border[b]) {
+            double cost = error(a, bx, by, bz) + error(b, bx, by, bz);
+            if (cost < best) {
+                best = cost;
+                place = KEEP_B;
+            }
+        }
+        heap.add(new Edge(a, b, stamp[a], stamp[b], best, place));
+    }
+
+    /**
+     * the live part of the mesh, with the vertices renumbered
+     */
+    private Level level() {
+        int n = deadVertex.length;
+        int[] index = new int[n];
+        Arrays.fill(index, -1);
+        int[] tris = new int[live * 3];
+        int vertices = 0;
+        int t = 0;
+        for (int f = 0; f < deadTri.length; f++) {
+            if (deadTri[f]) {
+                continue;
+            }
+            for (int k = 0; k < 3; k++) {
+                int v = tri[f * 3 + k];
+                if (index[v] < 0) {
+                    index[v] = vertices++;
+                }
+                tris[t++] = index[v];
+            }
+        }
+        double[] pos = new double[vertices * 3];
+        double[] uvs = uv == null ? null : new double[vertices * 2];
+        for (int v = 0; v < n; v++) {
+            int i = index[v];
+            if (i < 0) {
+                continue;
+            }
+            System.arraycopy(p, v * 3, pos, i * 3, 3);
+            if (uvs != null) {
+                System.arraycopy(uv, v * 2, uvs, i * 2, 2);
+            }
+        }
+        return new Level(pos, uvs, tris, error);
+    }
+
+    private static final Logger LOG
+            = Logger.getLogger(MeshSimplifier.class.getName());
+
+}
@@ -17,6 +17,7 @@
  */
 package com.matrixpeckham.raytracer.geometricobjects.compound;
 
+import com.matrixpeckham.raytracer.cameras.Camera;
 import com.matrixpeckham.raytracer.geometricobjects.triangles.FlatMeshTriangle;
 import com.matrixpeckham.raytracer.geometricobjects.triangles.FlatUVMeshTriangle;
 import com.matrixpeckham.raytracer.geometricobjects.triangles.MeshTriangle;
@@ -24,17 +25,27 @@ import com.matrixpeckham.raytracer.geometricobjects.triangles.SmoothMeshTriangle
 import com.matrixpeckham.raytracer.geometricobjects.triangles.SmoothTriangle;
 import com.matrixpeckham.raytracer.geometricobjects.triangles.SmoothUVMeshTriangle;
 import com.matrixpeckham.raytracer.geometricobjects.triangles.Triangle;
+import com.matrixpeckham.raytracer.materials.Material;
+import com.matrixpeckham.raytracer.util.DoubleRef;
+import com.matrixpeckham.raytracer.util.MappedMesh;
 import com.matrixpeckham.raytracer.util.Mesh;
 import com.matrixpeckham.raytracer.util.Normal;
 import com.matrixpeckham.raytracer.util.Point3D;
+import com.matrixpeckham.raytracer.util.Ray;
+import com.matrixpeckham.raytracer.util.RayPacket;
+import com.matrixpeckham.raytracer.util.ShadeRec;
 import com.matrixpeckham.raytracer.util.Utility;
 import com.matrixpeckham.raytracer.util.ply.PLYElement;
 import com.matrixpeckham.raytracer.util.ply.PLYFile;
+import com.matrixpeckham.raytracer.world.World;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.logging.Logger;
 
 /**
@@ -43,6 +54,14 @@ import java.util.logging.Logger;
  *
  * Extends grid because we'll have many child triangles and they need to be
  * efficiently culled from hit tests
+ * <p>
+ * Meshes of mesh triangles can have levels of detail, coarser versions made
+ * with MeshSimplifier. With setLevelOfDetail each ray is tested against the
+ * coarsest level whose error is within a tolerance of the size of a pixel
+ * where the ray gets to the mesh. Rays without differentials (glossy and
+ * diffuse rays) and shadow rays have their own, usually looser, tolerances.
+ * Rays that start on the mesh use the level they start on, so they don't hit
+ * a finer level just below it.
  *
  * @author William Matrix Peckham
  */
@@ -55,7 +74,7 @@ public class TriangleMesh extends Grid {
      * @throws IOException
      */
     public void readFlatUVTriangles(File fileName) throws IOException {
-        readPLYFileUV(fileName, TriangleType.FLAT);
+        read(new FileInputStream(fileName), TriangleType.FLAT, true);
     }
 
     /**
@@ -65,8 +84,7 @@ public class TriangleMesh extends Grid {
      * @throws IOException
      */
     public void readSmoothUvTriangles(File fileName) throws IOException {
-        readPLYFileUV(new FileInputStream(fileName), TriangleType.SMOOTH);
-        computeMeshNormals();
+        read(new FileInputStream(fileName), TriangleType.SMOOTH, true);
     }
 
     /**
@@ -76,8 +94,7 @@ public class TriangleMesh extends Grid {
      * @throws IOException
      */
     public void readSmoothUvTriangles(InputStream fileName) throws IOException {
-        readPLYFileUV(fileName, TriangleType.SMOOTH);
-        computeMeshNormals();
+        read(fileName, TriangleType.SMOOTH, true);
     }
 
     /**
@@ -106,6 +123,101 @@ public class TriangleMesh extends Grid {
      */
     protected boolean reverseNomral = false;
 
+    /**
+     * cache key of the last file read, if it wasn't in the mesh cache, the
+     * mesh and cells are saved under it once the cells are built
+     */
+    private String cacheKey = null;
+
+    /**
+     * mesh cache type code that goes with cacheKey
+     */
+    private int cacheType = 0;
+
+    /**
+     * cells read from the mesh cache, used instead of building them
+     */
+    private MeshCache.Cells cachedCells = null;
+
+    /**
+     * cache key of the file the mesh was read from, when the mesh cache is on,
+     * levels of detail are cached under keys made from it
+     */
+    private String sourceKey = null;
+
+    /**
+     * levels setLevelOfDetail makes if buildLevels wasn't called
+     */
+    public static final int DEFAULT_LEVELS = 4;
+
+    /**
+     * coarser versions of the mesh, finest first, null if there are none
+     */
+    private TriangleMesh[] levels = null;
+
+    /**
+     * true once setLevelOfDetail has been called
+     */
+    private boolean levelOfDetail = false;
+
+    /**
+     * how far a level of detail may be from the mesh it was made from
+     */
+    double lodError = 0;
+
+    /**
+     * size of a pixel at distance 0 and how much it grows with distance, from
+     * the camera
+     */
+    private double pixelSize = 0;
+
+    private double pixelAngle = 0;
+
+    /**
+     * error allowed, in pixels, for rays with differentials, rays without
+     * them, and shadow rays
+     */
+    private double tolerance = 1;
+
+    private double secondaryTolerance = 4;
+
+    private double shadowTolerance = 4;
+
+    /**
+     * how close, as a fraction of the bounding box, a ray has to start to a
+     * recent hit to be leaving from it
+     */
+    private static final double SAME_POINT = 1e-6;
+
+    /**
+     * recent hits on the mesh on each thread
+     */
+    private final ThreadLocal<RecentHits> recentHits = ThreadLocal.
+            withInitial(RecentHits::new);
+
+    /**
+     * where the last few hits were and the level they were on, enough for a
+     * packet, so the rays that leave from them can use the same level
+     */
+    private static final class RecentHits {
+
+        static final int SIZE = RayPacket.MAX_SIZE;
+
+        final double[] points = new double[SIZE * 3];
+
+        final int[] levels = new int[SIZE];
+
+        //closest hits of a packet before it is tested
+        final double[] lastT = new double[SIZE];
+
+        int next = 0;
+
+        RecentHits() {
+            Arrays.fill(points, Double.NaN);
+        }
+
+    }
+
     /**
      * default constructor, empty mesh
      */
@@ -131,6 +243,15 @@ public class TriangleMesh extends Grid {
         super(m);
         this.mesh = m.mesh;
         reverseNomral = m.reverseNomral;
+        sourceKey = m.sourceKey;
+        levels = m.levels;
+        levelOfDetail = m.levelOfDetail;
+        lodError = m.lodError;
+        pixelSize = m.pixelSize;
+        pixelAngle = m.pixelAngle;
+        tolerance = m.tolerance;
+        secondaryTolerance = m.secondaryTolerance;
+        shadowTolerance = m.shadowTolerance;
     }
 
     /**
@@ -157,7 +278,7 @@ public class TriangleMesh extends Grid {
      * @throws IOException
      */
     public void readFlatTriangles(File f) throws IOException {
-        readPLYFile(new FileInputStream(f), TriangleType.FLAT);
+        read(new FileInputStream(f), TriangleType.FLAT, false);
     }
 
     /**
@@ -167,12 +288,11 @@ public class TriangleMesh extends Grid {
      * @throws IOException
      */
     public void readFlatTriangles(InputStream f) throws IOException {
-        readPLYFile(f, TriangleType.FLAT);
+        read(f, TriangleType.FLAT, false);
     }
 
     public void readSmoothTriangles(InputStream f) throws IOException {
-        readPLYFile(f, TriangleType.SMOOTH);
-        computeMeshNormals();
+        read(f, TriangleType.SMOOTH, false);
     }
 
     /**
@@ -182,12 +302,91 @@ public class TriangleMesh extends Grid {
      * @throws IOException
      */
     public void readSmoothTriangles(File f) throws IOException {
-        readPLYFile(f, TriangleType.SMOOTH);
-        computeMeshNormals();
+        read(new FileInputStream(f), TriangleType.SMOOTH, false);
     }
 
-    private void readPLYFile(File f, TriangleType t) throws IOException {
-        readPLYFile(new FileInputStream(f), t);
+    /**
+     * reads a PLY file, from the mesh cache if it's enabled and has the file,
+     * computes the vertex normals for smooth meshes.
+     *
+     * @param f
+     * @param t
+     * @param uv true if the vertices have uv coordinates
+     * @throws IOException
+     */
+    private void read(InputStream f, TriangleType t, boolean uv) throws
+            IOException {
+        //the cache only holds whole meshes, so only use it for the first file
+        if (MeshCache.getDirectory() != null && objects.isEmpty()
+                && mesh.numVertices == 0) {
+            byte[] bytes = MeshCache.readAll(f);
+            int type = typeCode(t, uv);
+            String key = MeshCache.key(bytes, type, reverseNomral);
+            sourceKey = key;
+            MeshCache.Cells cells = MeshCache.load(key, type, this);
+            if (cells != null) {
+                cachedCells = cells;
+                return;
+            }
+            cacheKey = key;
+            cacheType = type;
+            f = new ByteArrayInputStream(bytes);
+        }
+        if (uv) {
+            readPLYFileUV(f, t);
+        } else {
+            readPLYFile(f, t);
+        }
+        if (t == TriangleType.SMOOTH) {
+            computeMeshNormals();
+        }
+    }
+
+    /**
+     * type code for the mesh cache
+     *
+     * @param t
+     * @param uv
+     * @return
+     */
+    private static int typeCode(TriangleType t, boolean uv) {
+        if (t == TriangleType.FLAT) {
+            return uv ? MeshCache.FLAT_UV : MeshCache.FLAT;
+        }
+        return uv ? MeshCache.SMOOTH_UV : MeshCache.SMOOTH;
+    }
+
+    /**
+     * puts in the cells read from the mesh cache, if the objects are still
+     * the triangles that were read
+     *
+     * @return
+     */
+    @Override
+    protected boolean restoreCells() {
+        //called from the grid copy constructor before our fields are set
+        MeshCache.Cells cells = cachedCells;
+        if (cells == null) {
+            return false;
+        }
+        cachedCells = null;
+        if (objects.size() != mesh.numTriangles) {
+            return false;
+        }
+        cells.install(this);
+        return true;
+    }
+
+    /**
+     * saves the mesh and cells to the mesh cache if the file that was read
+     * wasn't in it
+     */
+    @Override
+    protected void cellsBuilt() {
+        if (cacheKey != null && objects.size() == mesh.numTriangles) {
+            MeshCache.save(cacheKey, cacheType, this);
+        }
+        cacheKey = null;
     }
 
     /**
@@ -246,10 +445,6 @@ public class TriangleMesh extends Grid {
         }
     }
 
-    private void readPLYFileUV(File f, TriangleType t) throws IOException {
-        readPLYFileUV(new FileInputStream(f), t);
-    }
-
     /**
      * Reads a ply file with per vertex uv coordinates with the specified
      * triangle type
@@ -299,6 +494,57 @@ public class TriangleMesh extends Grid {
         }
     }
 
+    /**
+     * writes the mesh to a mapped mesh file, so it can be rendered with
+     * MappedTriangleMesh. Only meshes read from PLY files can be written, the
+     * objects have to be mesh triangles.
+     *
+     * @param f
+     * @return the mapped mesh
+     * @throws IOException
+     */
+    public MappedMesh writeMapped(File f) throws IOException {
+        return writeMapped(f, false);
+    }
+
+    /**
+     * writes the mesh to a mapped mesh file, optionally with the compact
+     * encoding, see MappedMesh.
+     *
+     * @param f
+     * @param compact
+     * @return the mapped mesh
+     * @throws IOException
+     */
+    public MappedMesh writeMapped(File f, boolean compact) throws IOException {
+        boolean normals = !mesh.normals.isEmpty();
+        boolean uv = !mesh.u.isEmpty();
+        MappedMesh mapped = MappedMesh.create(f, mesh.numVertices, objects.
+                size(), normals, uv, compact);
+        if (uv) {
+            mapped.setUVRange(Collections.min(mesh.u), Collections.max(mesh.u),
+                    Collections.min(mesh.v), Collections.max(mesh.v));
+        }
+        for (int i = 0; i < mesh.numVertices; i++) {
+            mapped.setVertex(i, mesh.vertices.get(i));
+            if (normals) {
+                mapped.setNormal(i, mesh.normals.get(i));
+            }
+            if (uv) {
+                mapped.setUV(i, mesh.u.get(i), mesh.v.get(i));
+            }
+        }
+        for (int t = 0; t < objects.size(); t++) {
+            if (!(objects.get(t) instanceof MeshTriangle)) {
+                throw new IllegalStateException(
+                        "only meshes of mesh triangles can be mapped");
+            }
+            MeshTriangle tri = (MeshTriangle) objects.get(t);
+            mapped.setTriangle(t, tri.index0, tri.index1, tri.index2);
+        }
+        return mapped;
+    }
+
     /**
      * computes the normals for the mesh from the stored adjacency information
      */
@@ -319,6 +565,378 @@ public class TriangleMesh extends Grid {
         }
     }
 
+    /**
+     * makes up to count levels of detail, each with a quarter of the
+     * triangles of the one before, fewer if the mesh gets small. with the
+     * mesh cache on they are read from it, or saved to it once made. the
+     * objects have to be mesh triangles, like meshes read from PLY files.
+     *
+     * @param count
+     */
+    public void buildLevels(int count) {
+        levels = null;
+        if (objects.isEmpty() || count <= 0) {
+            return;
+        }
+        for (int i = 0; i < objects.size(); i++) {
+            if (!(objects.get(i) instanceof MeshTriangle)) {
+                throw new IllegalStateException(
+                        "only meshes of mesh triangles have levels of detail");
+            }
+        }
+        int type = MeshCache.type((MeshTriangle) objects.get(0));
+        ArrayList<TriangleMesh> list = new ArrayList<>();
+        if (sourceKey != null) {
+            for (int i = 1; i <= count; i++) {
+                TriangleMesh level = new TriangleMesh();
+                level.reverseNomral = reverseNomral;
+                MeshCache.Cells cells = MeshCache.load(MeshCache.levelKey(
+                        sourceKey, count, i), type, level);
+                if (cells == null) {
+                    break;
+                }
+                level.lodError = cells.error;
+                level.cachedCells = cells;
+                level.setupCells();
+                list.add(level);
+            }
+        }
+        //the simplifier would have stopped at the last cached level if it
+        //is small enough, otherwise make them all again
+        if (list.size() < count && (list.isEmpty() || list.get(list.size()
+                - 1).objects.size() >= MeshSimplifier.MIN_TRIANGLES
+                * MeshSimplifier.REDUCTION)) {
+            ArrayList<MeshSimplifier.Level> made = simplify(type, count);
+            for (int i = list.size(); i < made.size(); i++) {
+                TriangleMesh level = level(made.get(i), type);
+                if (sourceKey != null) {
+                    level.cacheKey = MeshCache.levelKey(sourceKey, count, i
+                            + 1);
+                    level.cacheType = type;
+                }
+                level.setupCells();
+                list.add(level);
+            }
+        }
+        Material mat = objects.get(0).getMaterial();
+        if (mat != null) {
+            for (TriangleMesh level : list) {
+                level.setMaterial(mat);
+            }
+        }
+        if (!list.isEmpty()) {
+            levels = list.toArray(new TriangleMesh[list.size()]);
+        }
+    }
+
+    /**
+     * number of levels of detail
+     *
+     * @return
+     */
+    public int getNumLevels() {
+        return levels == null ? 0 : levels.length;
+    }
+
+    /**
+     * runs the simplifier on the mesh
+     *
+     * @param type
+     * @param count
+     * @return
+     */
+    private ArrayList<MeshSimplifier.Level> simplify(int type, int count) {
+        double[] positions = new double[mesh.numVertices * 3];
+        for (int i = 0; i < mesh.numVertices; i++) {
+            Point3D p = mesh.vertices.get(i);
+            positions[i * 3] = p.x;
+            positions[i * 3 + 1] = p.y;
+            positions[i * 3 + 2] = p.z;
+        }
+        double[] uvs = null;
+        if (type == MeshCache.FLAT_UV || type == MeshCache.SMOOTH_UV) {
+            uvs = new double[mesh.numVertices * 2];
+            for (int i = 0; i < mesh.numVertices; i++) {
+                uvs[i * 2] = mesh.u.get(i);
+                uvs[i * 2 + 1] = mesh.v.get(i);
+            }
+        }
+        int[] triangles = new int[objects.size() * 3];
+        for (int i = 0; i < objects.size(); i++) {
+            MeshTriangle tri = (MeshTriangle) objects.get(i);
+            triangles[i * 3] = tri.index0;
+            triangles[i * 3 + 1] = tri.index1;
+            triangles[i * 3 + 2] = tri.index2;
+        }
+        return MeshSimplifier.simplify(positions, uvs, triangles, count);
+    }
+
+    /**
+     * makes a mesh for a simplified level, with the same triangle type
+     *
+     * @param l
+     * @param type
+     * @return
+     */
+    private TriangleMesh level(MeshSimplifier.Level l, int type) {
+        boolean smooth = type == MeshCache.SMOOTH || type
+                == MeshCache.SMOOTH_UV;
+        TriangleMesh m = new TriangleMesh();
+        m.reverseNomral = reverseNomral;
+        m.multiplier = multiplier;
+        m.lodError = l.error;
+        Mesh lm = m.mesh;
+        lm.numVertices = l.positions.length / 3;
+        lm.numTriangles = l.triangles.length / 3;
+        for (int i = 0; i < lm.numVertices; i++) {
+            lm.vertices.add(new Point3D(l.positions[i * 3], l.positions[i * 3
+                    + 1], l.positions[i * 3 + 2]));
+            lm.vertexFaces.add(new ArrayList<>());
+            if (l.uvs != null) {
+                lm.u.add(l.uvs[i * 2]);
+                lm.v.add(l.uvs[i * 2 + 1]);
+            }
+        }
+        for (int i = 0; i < lm.numTriangles; i++) {
+            int i0 = l.triangles[i * 3];
+            int i1 = l.triangles[i * 3 + 1];
+            int i2 = l.triangles[i * 3 + 2];
+            MeshTriangle tri = MeshCache.newTriangle(type, lm, i0, i1, i2);
+            tri.computeNormal(reverseNomral);
+            m.objects.add(tri);
+            if (smooth) {
+                lm.vertexFaces.get(i0).add(i);
+                lm.vertexFaces.get(i1).add(i);
+                lm.vertexFaces.get(i2).add(i);
+            }
+        }
+        if (smooth) {
+            m.computeMeshNormals();
+        }
+        return m;
+    }
+
+    /**
+     * turns on the levels of detail, making DEFAULT_LEVELS of them if
+     * buildLevels wasn't called. rays use the coarsest level within tolerance
+     * pixels of the mesh, other rays and shadow rays 4 times that. call once
+     * the camera and view plane of the world are set.
+     *
+     * @param w
+     * @param tolerance
+     */
+    public void setLevelOfDetail(World w, double tolerance) {
+        setLevelOfDetail(w, tolerance, 4 * tolerance, 4 * tolerance);
+    }
+
+    /**
+     * turns on the levels of detail with a tolerance in pixels for rays with
+     * differentials (camera, mirror and glass rays), one for rays without
+     * them and one for shadow rays
+     *
+     * @param w
+     * @param tolerance
+     * @param secondary
+     * @param shadow
+     */
+    public void setLevelOfDetail(World w, double tolerance, double secondary,
+            double shadow) {
+        if (levels == null) {
+            buildLevels(DEFAULT_LEVELS);
+        }
+        Camera camera = w.camera;
+        pixelAngle = camera == null ? 0 : camera.getPixelAngle(w.vp);
+        pixelSize = pixelAngle > 0 ? 0 : w.vp.s;
+        this.tolerance = tolerance;
+        this.secondaryTolerance = secondary;
+        this.shadowTolerance = shadow;
+        levelOfDetail = true;
+    }
+
+    /**
+     * sets the material of the mesh and its levels of detail
+     *
+     * @param mat
+     */
+    @Override
+    public void setMaterial(Material mat) {
+        super.setMaterial(mat);
+        if (levels != null) {
+            for (TriangleMesh level : levels) {
+                level.setMaterial(mat);
+            }
+        }
+    }
+
+    /**
+     * hits the level of detail for the ray
+     *
+     * @param ray
+     * @param sr
+     * @return
+     */
+    @Override
+    public boolean hit(Ray ray, ShadeRec sr) {
+        if (!levelOfDetail || levels == null) {
+            return super.hit(ray, sr);
+        }
+        int level = select(ray.o.x, ray.o.y, ray.o.z, ray.d.x, ray.d.y,
+                ray.d.z, ray.differential == null ? secondaryTolerance
+                        : tolerance);
+        boolean hit;
+        if (level == 0) {
+            hit = super.hit(ray, sr);
+        } else {
+            hit = levels[level - 1].hit(ray, sr);
+            if (hit) {
+                material = levels[level - 1].getMaterial();
+            }
+        }
+        if (hit && level > 0) {
+            remember(ray.o.x + sr.lastT * ray.d.x, ray.o.y + sr.lastT
+                    * ray.d.y, ray.o.z + sr.lastT * ray.d.z, level);
+        }
+        return hit;
+    }
+
+    /**
+     * shadow hit on the level of detail for the ray
+     *
+     * @param ray
+     * @param t
+     * @return
+     */
+    @Override
+    public boolean shadowHit(Ray ray, DoubleRef t) {
+        if (!levelOfDetail || levels == null) {
+            return super.shadowHit(ray, t);
+        }
+        int level = select(ray.o.x, ray.o.y, ray.o.z, ray.d.x, ray.d.y,
+                ray.d.z, shadowTolerance);
+        if (level == 0) {
+            return super.shadowHit(ray, t);
+        }
+        return levels[level - 1].shadowHit(ray, t);
+    }
+
+    /**
+     * packets are camera rays, the packet uses the finest level any of them
+     * needs
+     *
+     * @param packet
+     * @return
+     */
+    @Override
+    public boolean hitPacket(RayPacket packet) {
+        if (!levelOfDetail || levels == null) {
+            return super.hitPacket(packet);
+        }
+        long lanes = packet.active;
+        int level = levels.length;
+        for (long m = lanes; m != 0 && level > 0; m &= m - 1) {
+            int i = Long.numberOfTrailingZeros(m);
+            level = Math.min(level, select(packet.ox[i], packet.oy[i],
+                    packet.oz[i], packet.dx[i], packet.dy[i], packet.dz[i],
+                    tolerance));
+        }
+        if (level == 0) {
+            return super.hitPacket(packet);
+        }
+        double[] before = recentHits.get().lastT;
+        for (long m = lanes; m != 0; m &= m - 1) {
+            int i = Long.numberOfTrailingZeros(m);
+            before[i] = packet.records[i].lastT;
+        }
+        boolean hit = levels[level - 1].hitPacket(packet);
+        if (hit) {
+            for (long m = lanes; m != 0; m &= m - 1) {
+                int i = Long.numberOfTrailingZeros(m);
+                double t = packet.records[i].lastT;
+                if (t < before[i]) {
+                    remember(packet.ox[i] + t * packet.dx[i], packet.oy[i] + t
+                            * packet.dy[i], packet.oz[i] + t * packet.dz[i],
+                            level);
+                }
+            }
+        }
+        return hit;
+    }
+
+    /**
+     * the level for a ray, 0 for the mesh itself. the coarsest level whose
+     * error is within tol pixels where the ray enters the bounding box, or,
+     * for rays starting inside it, the level of the hit they start from.
+     *
+     * @return
+     */
+    private int select(double ox, double oy, double oz, double dx, double dy,
+            double dz, double tol) {
+        //nan when the ray is in the plane of a side, it doesn't limit t
+        double ix = 1.0 / dx;
+        double iy = 1.0 / dy;
+        double iz = 1.0 / dz;
+        double tx0 = (bbox.x0 - ox) * ix;
+        double tx1 = (bbox.x1 - ox) * ix;
+        double ty0 = (bbox.y0 - oy) * iy;
+        double ty1 = (bbox.y1 - oy) * iy;
+        double tz0 = (bbox.z0 - oz) * iz;
+        double tz1 = (bbox.z1 - oz) * iz;
+        double t0 = Math.max(Math.max(Math.min(tx0, tx1), Math.min(ty0, ty1)),
+                Math.min(tz0, tz1));
+        double t1 = Math.min(Math.min(Math.max(tx0, tx1), Math.max(ty0, ty1)),
+                Math.max(tz0, tz1));
+        if (!(t0 <= t1) || t1 < Utility.EPSILON) {
+            //misses, the grid finds that out on any level
+            return 0;
+        }
+        if (t0 <= 0) {
+            return recentLevel(ox, oy, oz);
+        }
+        double distance = t0 * Math.sqrt(dx * dx + dy * dy + dz * dz);
+        double allowed = tol * (pixelSize + pixelAngle * distance);
+        int level = levels.length;
+        while (level > 0 && levels[level - 1].lodError > allowed) {
+            level--;
+        }
+        return level;
+    }
+
+    /**
+     * keeps a hit point on a level of detail, hits on the mesh itself aren't
+     * kept as rays that don't start from a level use the mesh
+     */
+    private void remember(double x, double y, double z, int level) {
+        RecentHits recent = recentHits.get();
+        int i = recent.next;
+        recent.points[i * 3] = x;
+        recent.points[i * 3 + 1] = y;
+        recent.points[i * 3 + 2] = z;
+        recent.levels[i] = level;
+        recent.next = (i + 1) % RecentHits.SIZE;
+    }
+
+    /**
+     * level of the recent hit at a point, 0 if there isn't one
+     */
+    private int recentLevel(double x, double y, double z) {
+        RecentHits recent = recentHits.get();
+        double size = Math.max(Math.max(bbox.x1 - bbox.x0, bbox.y1
+                - bbox.y0), bbox.z1 - bbox.z0);
+        double best = size * size * SAME_POINT * SAME_POINT;
+        int level = 0;
+        for (int i = 0; i < RecentHits.SIZE; i++) {
+            double dx = recent.points[i * 3] - x;
+            double dy = recent.points[i * 3 + 1] - y;
+            double dz = recent.points[i * 3 + 2] - z;
+            double d = dx * dx + dy * dy + dz * dz;
+            if (d <= best) {
+                best = d;
+                level = recent.levels[i];
+            }
+        }
+        return level;
+    }
+
     /**
      *
      * @param horizontalSteps
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.geometricobjects.csg;
+
+import com.matrixpeckham.raytracer.geometricobjects.GeometricObject;
+
+/**
+ * Light weight record of a ray crossing the surface of a solid, for the CSG
+ * objects. Holds only what's needed to combine solids and shade the nearest
+ * crossing: the ray parameter, whether the ray goes into the solid, the
+ * outward normal and the object whose surface it is. Records live in
+ * CSGHitLists and are reused, so don't keep references to them.
+ *
+ * @author William Matrix Peckham
+ */
+public final class CSGHit {
+
+    /**
+     * ray parameter
+     */
+    public double t;
+
+    /**
+     * true if the ray goes into the solid here
+     */
+    public boolean entering;
+
+    /**
+     * outward normal
+     */
+    public double nx;
+
+    public double ny;
+
+    public double nz;
+
+    /**
+     * object the surface belongs to, for its material
+     */
+    public GeometricObject object;
+
+    CSGHit() {
+    }
+
+    /**
+     * sets all the fields
+     *
+     * @param t
+     * @param entering
+     * @param nx
+     * @param ny
+     * @param nz
+     * @param object
+     */
+    public void set(double t, boolean entering, double nx, double ny,
+            double nz, GeometricObject object) {
+        this.t = t;
+        this.entering = entering;
+        this.nx = nx;
+        this.ny = ny;
+        this.nz = nz;
+        this.object = object;
+    }
+
+}
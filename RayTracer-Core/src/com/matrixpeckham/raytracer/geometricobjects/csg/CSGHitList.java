@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2016 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.geometricobjects.csg;
+
+import com.matrixpeckham.raytracer.geometricobjects.GeometricObject;
+import java.util.ArrayDeque;
+import java.util.logging.Logger;
+
+/**
+ * List of surface crossings for the CSG objects. The records in it are reused
+ * when it is cleared, and the lists themselves come from a pool for each
+ * thread, so combining solids doesn't allocate once the pool has warmed up.
+ * Get a list with acquire and give it back with release when done with it.
+ *
+ * @author William Matrix Peckham
+ */
+public final class CSGHitList {
+
+    //free lists for each thread
+    private static final ThreadLocal<ArrayDeque<CSGHitList>> POOL
+            = new ThreadLocal<ArrayDeque<CSGHitList>>() {
+        @Override
+        protected ArrayDeque<CSGHitList> initialValue() {
+            return new ArrayDeque<>();
+        }
+    };
+
+    /**
+     * records, the ones past size are spares
+     */
+    private CSGHit[] hits = new CSGHit[8];
+
+    private int size = 0;
+
+    private CSGHitList() {
+    }
+
+    /**
+     * gets an empty list from this thread's pool
+     *
+     * @return
+     */
+    public static CSGHitList acquire() {
+        CSGHitList l = POOL.get().poll();
+        if (l == null) {
+            l = new CSGHitList();
+        }
+        return l;
+    }
+
+    /**
+     * clears the list and gives it back to this thread's pool
+     */
+    public void release() {
+        clear();
+        POOL.get().push(this);
+    }
+
+    /**
+     * number of crossings
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * a crossing
+     *
+     * @param i
+     * @return
+     */
+    public CSGHit get(int i) {
+        return hits[i];
+    }
+
+    /**
+     * empties the list, the records are kept for reuse
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            hits[i].object = null;
+        }
+        size = 0;
+    }
+
+    /**
+     * adds a crossing
+     *
+     * @param t
+     * @param entering
+     * @param nx
+     * @param ny
+     * @param nz
+     * @param object
+     */
+    public void add(double t, boolean entering, double nx, double ny,
+            double nz, GeometricObject object) {
+        if (size == hits.length) {
+            CSGHit[] n = new CSGHit[2 * size];
+            System.arraycopy(hits, 0, n, 0, size);
+            hits = n;
+        }
+        CSGHit h = hits[size];
+        if (h == null) {
+            h = new CSGHit();
+            hits[size] = h;
+        }
+        h.set(t, entering, nx, ny, nz, object);
+        size++;
+    }
+
+    /**
+     * sorts the crossings by ray parameter, lists are short so this is an
+     * insertion sort
+     */
+    public void sort() {
+        for (int i = 1; i < size; i++) {
+            CSGHit h = hits[i];
+            int j = i - 1;
+            while (j >= 0 && hits[j].t > h.t) {
+                hits[j + 1] = hits[j];
+                j--;
+            }
+            hits[j + 1] = h;
+        }
+    }
+
+    private static final Logger LOG
+            = Logger.getLogger(CSGHitList.class.getName());
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2016 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.geometricobjects.csg;
+
+import com.matrixpeckham.raytracer.geometricobjects.GeometricObject;
+import java.util.logging.Logger;
+
+/**
+ * CSG intersection, inside both solids.
+ *
+ * @author William Matrix Peckham
+ */
+public class CSGIntersection extends CSGObject {
+
+    /**
+     * initializing constructor
+     *
+     * @param left
+     * @param right
+     */
+    public CSGIntersection(GeometricObject left, GeometricObject right) {
+        super(left, right);
+    }
+
+    /**
+     * copy constructor
+     *
+     * @param c
+     */
+    public CSGIntersection(CSGIntersection c) {
+        super(c);
+    }
+
+    /**
+     * clone
+     *
+     * @return
+     */
+    @Override
+    public CSGIntersection cloneGeometry() {
+        return new CSGIntersection(this);
+    }
+
+    @Override
+    protected boolean inside(boolean inLeft, boolean inRight) {
+        return inLeft && inRight;
+    }
+
+    private static final Logger LOG
+            = Logger.getLogger(CSGIntersection.class.getName());
+
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2016 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.geometricobjects.csg;
+
+import com.matrixpeckham.raytracer.geometricobjects.GeometricObject;
+import com.matrixpeckham.raytracer.materials.Material;
+import com.matrixpeckham.raytracer.util.BBox;
+import com.matrixpeckham.raytracer.util.DoubleRef;
+import com.matrixpeckham.raytracer.util.Ray;
+import com.matrixpeckham.raytracer.util.ShadeRec;
+import com.matrixpeckham.raytracer.util.Utility;
+import com.matrixpeckham.raytracer.world.World;
+import java.util.ArrayList;
+import java.util.logging.Logger;
+
+/**
+ * Base class of the constructive solid geometry objects, a boolean
+ * combination of two solids. Each solid gives the sorted list of places the
+ * ray crosses its surface, and the lists are merged in order while keeping
+ * track of whether the ray is inside each solid, the combination's surface is
+ * where the ray goes in or out of the combination. Subclasses only say which
+ * combinations of inside the left and inside the right solid are inside them.
+ * <p>
+ * Solids that implement CSGSolid, and other CSG objects, add their crossings
+ * to pooled CSGHitLists, other objects go through their CSGShadeRec hit
+ * function. A ray that misses the bounding box of a bounded solid skips it,
+ * and when one side has no crossings and that makes the combination empty,
+ * the other side isn't intersected at all. The nearest hit stops merging at
+ * the first crossing in front of the ray.
+ * <p>
+ * Whether the ray goes in or out at a crossing comes from the outward normal,
+ * and the ray starts inside a solid if its first crossing is on the way out.
+ * The hit reports the normal of the surface and, if this object has no
+ * material, takes the material of the solid the surface belongs to.
+ *
+ * @author William Matrix Peckham
+ */
+public abstract class CSGObject extends GeometricObject {
+
+    //scratch for objects that use the CSGShadeRec hit function
+    private static final ThreadLocal<ArrayList<CSGShadeRec>> RECS
+            = new ThreadLocal<ArrayList<CSGShadeRec>>() {
+        @Override
+        protected ArrayList<CSGShadeRec> initialValue() {
+            return new ArrayList<>();
+        }
+    };
+
+    private static final ThreadLocal<ShadeRec> SHADOW_REC
+            = new ThreadLocal<ShadeRec>() {
+        @Override
+        protected ShadeRec initialValue() {
+            return new ShadeRec((World) null);
+        }
+    };
+
+    /**
+     * the two solids
+     */
+    protected final GeometricObject left;
+
+    protected final GeometricObject right;
+
+    /**
+     * bounding box, only trusted to contain the object if bounded is true
+     */
+    private BBox bbox;
+
+    private boolean bounded;
+
+    /**
+     * combination of two solids
+     *
+     * @param left
+     * @param right
+     */
+    protected CSGObject(GeometricObject left, GeometricObject right) {
+        this.left = left;
+        this.right = right;
+        setBounds();
+    }
+
+    /**
+     * copy constructor, clones the solids
+     *
+     * @param c
+     */
+    protected CSGObject(CSGObject c) {
+        super(c);
+        left = c.left.cloneGeometry();
+        right = c.right.cloneGeometry();
+        setBounds();
+    }
+
+    /**
+     * true if a point inside or outside the left and right solids is inside
+     * the combination
+     *
+     * @param inLeft
+     * @param inRight
+     * @return
+     */
+    protected abstract boolean inside(boolean inLeft, boolean inRight);
+
+    //bounds from the bounds of the solids, the combination is bounded if it
+    //is inside the bounded solids
+    private void setBounds() {
+        boolean lb = isBounded(left);
+        boolean rb = isBounded(right);
+        BBox l = left.getBoundingBox();
+        BBox r = right.getBoundingBox();
+        //a point outside a bounded solid is outside the combination if it is
+        //whatever the other solid says
+        boolean inL = !inside(false, false) && !inside(false, true);
+        boolean inR = !inside(false, false) && !inside(true, false);
+        if (lb && rb && inL && inR) {
+            bbox = new BBox(Math.max(l.x0, r.x0), Math.min(l.x1, r.x1), Math.
+                    max(l.y0, r.y0), Math.min(l.y1, r.y1), Math.max(l.z0,
+                            r.z0), Math.min(l.z1, r.z1));
+            bounded = true;
+        } else if (lb && inL) {
+            bbox = l;
+            bounded = true;
+        } else if (rb && inR) {
+            bbox = r;
+            bounded = true;
+        } else {
+            bbox = new BBox(Math.min(l.x0, r.x0), Math.max(l.x1, r.x1), Math.
+                    min(l.y0, r.y0), Math.max(l.y1, r.y1), Math.min(l.z0,
+                            r.z0), Math.max(l.z1, r.z1));
+            bounded = lb && rb && !inside(false, false);
+        }
+    }
+
+    //true if the object's bounding box is known to contain it
+    private static boolean isBounded(GeometricObject o) {
+        if (o instanceof CSGObject) {
+            return ((CSGObject) o).bounded;
+        }
+        return o instanceof CSGSolid;
+    }
+
+    @Override
+    public BBox getBoundingBox() {
+        return bbox;
+    }
+
+    @Override
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    /**
+     * the material of the solid the surface hit belongs to, unless this has
+     * its own. hit puts it on the shade rec.
+     *
+     * @param s
+     * @return
+     */
+    @Override
+    public Material getMaterial(ShadeRec s) {
+        return material != null ? material : s.material;
+    }
+
+    /**
+     * adds the crossings of the combination's surface, in order. Stops after
+     * the first one past stop.
+     *
+     * @param ray
+     * @param hits
+     * @param stop
+     * @param sr shade rec to copy for objects that need one, may be null
+     */
+    public void addCSGHits(Ray ray, CSGHitList hits, double stop,
+            ShadeRec sr) {
+        if (bounded && !bbox.hit(ray)) {
+            return;
+        }
+        CSGHitList a = CSGHitList.acquire();
+        CSGHitList b = CSGHitList.acquire();
+        try {
+            collect(left, ray, a, sr);
+            if (a.size() == 0 && !inside(false, false) && !inside(false,
+                    true)) {
+                return;
+            }
+            collect(right, ray, b, sr);
+            merge(a, b, hits, stop);
+        } finally {
+            a.release();
+            b.release();
+        }
+    }
+
+    //sorted crossings of a solid
+    private static void collect(GeometricObject o, Ray ray, CSGHitList hits,
+            ShadeRec sr) {
+        if (o instanceof CSGObject) {
+            ((CSGObject) o).addCSGHits(ray, hits, Utility.HUGE_VALUE, sr);
+            return;
+        }
+        if (o instanceof CSGSolid) {
+            if (o.getBoundingBox().hit(ray)) {
+                ((CSGSolid) o).addCSGHits(ray, hits);
+                hits.sort();
+            }
+            return;
+        }
+        ArrayList<CSGShadeRec> recs = RECS.get();
+        recs.clear();
+        o.hit(ray, recs, sr == null ? SHADOW_REC.get() : sr);
+        for (CSGShadeRec r : recs) {
+            double nx = r.normal.x, ny = r.normal.y, nz = r.normal.z;
+            boolean in = ray.d.x * nx + ray.d.y * ny + ray.d.z * nz < 0;
+            hits.add(r.lastT, in, nx, ny, nz, o);
+        }
+        recs.clear();
+        hits.sort();
+    }
+
+    //walks both lists in order and adds the crossings where the ray goes in
+    //or out of the combination
+    private void merge(CSGHitList a, CSGHitList b, CSGHitList out,
+            double stop) {
+        int na = a.size();
+        int nb = b.size();
+        boolean inA = na > 0 && !a.get(0).entering;
+        boolean inB = nb > 0 && !b.get(0).entering;
+        boolean in = inside(inA, inB);
+        int i = 0;
+        int j = 0;
+        while (i < na || j < nb) {
+            CSGHit h;
+            if (j >= nb || (i < na && a.get(i).t <= b.get(j).t)) {
+                h = a.get(i++);
+                inA = h.entering;
+            } else {
+                h = b.get(j++);
+                inB = h.entering;
+            }
+            boolean now = inside(inA, inB);
+            if (now != in) {
+                //the surface of a solid the ray leaves as it goes into the
+                //combination faces the other way
+                double s = h.entering == now ? 1 : -1;
+                out.add(h.t, now, s * h.nx, s * h.ny, s * h.nz, h.object);
+                in = now;
+                if (h.t > stop) {
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean hit(Ray ray, ShadeRec sr) {
+        CSGHitList hits = CSGHitList.acquire();
+        try {
+            addCSGHits(ray, hits, Utility.EPSILON, sr);
+            for (int i = 0; i < hits.size(); i++) {
+                CSGHit h = hits.get(i);
+                if (h.t > Utility.EPSILON) {
+                    sr.lastT = h.t;
+                    sr.normal.setTo(h.nx, h.ny, h.nz);
+                    sr.normal.normalize();
+                    sr.localHitPosition.setTo(ray.o.x + h.t * ray.d.x,
+                            ray.o.y + h.t * ray.d.y, ray.o.z + h.t
+                            * ray.d.z);
+                    sr.material = h.object.getMaterial();
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            hits.release();
+        }
+    }
+
+    @Override
+    public boolean hit(Ray ray, ArrayList<CSGShadeRec> recs, ShadeRec sr) {
+        CSGHitList hits = CSGHitList.acquire();
+        try {
+            addCSGHits(ray, hits, Utility.HUGE_VALUE, sr);
+            for (int i = 0; i < hits.size(); i++) {
+                CSGHit h = hits.get(i);
+                CSGShadeRec r = new CSGShadeRec(sr);
+                r.lastT = h.t;
+                r.entering = h.entering;
+                r.normal.setTo(h.nx, h.ny, h.nz);
+                r.normal.normalize();
+                r.localHitPosition.setTo(ray.o.x + h.t * ray.d.x, ray.o.y
+                        + h.t * ray.d.y, ray.o.z + h.t * ray.d.z);
+                recs.add(r);
+            }
+            return hits.size() > 0;
+        } finally {
+            hits.release();
+        }
+    }
+
+    @Override
+    public boolean shadowHit(Ray ray, DoubleRef tr) {
+        if (!shadows) {
+            return false;
+        }
+        CSGHitList hits = CSGHitList.acquire();
+        try {
+            addCSGHits(ray, hits, Utility.EPSILON, null);
+            for (int i = 0; i < hits.size(); i++) {
+                if (hits.get(i).t > Utility.EPSILON) {
+                    tr.d = hits.get(i).t;
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            hits.release();
+        }
+    }
+
+    private static final Logger LOG
+            = Logger.getLogger(CSGObject.class.getName());
+
+}
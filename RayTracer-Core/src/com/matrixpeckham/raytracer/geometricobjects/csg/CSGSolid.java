@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2016 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.geometricobjects.csg;
+
+import com.matrixpeckham.raytracer.util.Ray;
+
+/**
+ * Closed solid that can add its surface crossings to a CSGHitList directly.
+ * CSG objects use this instead of the ShadeRec based hit function, which
+ * makes a full CSGShadeRec for every crossing. Solids that implement this
+ * also promise that their bounding box contains them, so the CSG objects can
+ * skip them when a ray misses the box.
+ *
+ * @author William Matrix Peckham
+ */
+public interface CSGSolid {
+
+    /**
+     * adds every crossing of the ray with the surface, including the ones
+     * behind the ray origin, with outward normals. They don't need to be in
+     * order.
+     *
+     * @param ray
+     * @param hits
+     */
+    public void addCSGHits(Ray ray, CSGHitList hits);
+
+}
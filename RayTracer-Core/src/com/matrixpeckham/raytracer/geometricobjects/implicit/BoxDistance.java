@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.geometricobjects.implicit;
+
+import com.matrixpeckham.raytracer.util.BBox;
+import com.matrixpeckham.raytracer.util.Point3D;
+import java.util.logging.Logger;
+
+/**
+ * Exact distance to an axis aligned box, optionally with its edges and
+ * corners rounded off. The rounding is inside the corners given.
+ *
+ * @author William Matrix Peckham
+ */
+public class BoxDistance implements DistanceFunction {
+
+    /**
+     * center
+     */
+    private final double cx, cy, cz;
+
+    /**
+     * half size, less the rounding
+     */
+    private final double hx, hy, hz;
+
+    /**
+     * radius of the rounded edges
+     */
+    private final double round;
+
+    /**
+     * constructor for a sharp box
+     *
+     * @param p0
+     * @param p1
+     */
+    public BoxDistance(Point3D p0, Point3D p1) {
+        this(p0, p1, 0);
+    }
+
+    /**
+     * constructor for a box with rounded edges
+     *
+     * @param p0
+     * @param p1
+     * @param round
+     */
+    public BoxDistance(Point3D p0, Point3D p1, double round) {
+        cx = (p0.x + p1.x) * 0.5;
+        cy = (p0.y + p1.y) * 0.5;
+        cz = (p0.z + p1.z) * 0.5;
+        hx = Math.abs(p1.x - p0.x) * 0.5 - round;
+        hy = Math.abs(p1.y - p0.y) * 0.5 - round;
+        hz = Math.abs(p1.z - p0.z) * 0.5 - round;
+        this.round = round;
+    }
+
+    @Override
+    public double distance(double x, double y, double z) {
+        double qx = Math.abs(x - cx) - hx;
+        double qy = Math.abs(y - cy) - hy;
+        double qz = Math.abs(z - cz) - hz;
+        //distance outside, plus how far in for points inside
+        double ox = Math.max(qx, 0);
+        double oy = Math.max(qy, 0);
+        double oz = Math.max(qz, 0);
+        double in = Math.min(Math.max(qx, Math.max(qy, qz)), 0);
+        return Math.sqrt(ox * ox + oy * oy + oz * oz) + in - round;
+    }
+
+    @Override
+    public double getLipschitz() {
+        return 1;
+    }
+
+    @Override
+    public BBox getBoundingBox() {
+        double x = hx + round;
+        double y = hy + round;
+        double z = hz + round;
+        return new BBox(cx - x, cx + x, cy - y, cy + y, cz - z, cz + z);
+    }
+
+    private static final Logger LOG
+            = Logger.getLogger(BoxDistance.class.getName());
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2016 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.geometricobjects.implicit;
+
+import com.matrixpeckham.raytracer.util.BBox;
+
+/**
+ * A surface given by a signed distance: negative inside, positive outside and
+ * zero on the surface. It doesn't have to be the exact distance, as long as it
+ * never changes faster than the Lipschitz bound per unit length, so
+ * distance / bound is always a safe step towards the surface.
+ *
+ * @author William Matrix Peckham
+ */
+public interface DistanceFunction {
+
+    /**
+     * signed distance at a point
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @return
+     */
+    public double distance(double x, double y, double z);
+
+    /**
+     * most the distance changes per unit length, 1 for exact distances
+     *
+     * @return
+     */
+    public double getLipschitz();
+
+    /**
+     * box the surface is inside of
+     *
+     * @return
+     */
+    public BBox getBoundingBox();
+
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 2016 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.geometricobjects.implicit;
+
+import com.matrixpeckham.raytracer.geometricobjects.GeometricObject;
+import com.matrixpeckham.raytracer.geometricobjects.csg.CSGHitList;
+import com.matrixpeckham.raytracer.geometricobjects.csg.CSGShadeRec;
+import com.matrixpeckham.raytracer.geometricobjects.csg.CSGSolid;
+import com.matrixpeckham.raytracer.util.BBox;
+import com.matrixpeckham.raytracer.util.DoubleRef;
+import com.matrixpeckham.raytracer.util.Normal;
+import com.matrixpeckham.raytracer.util.Ray;
+import com.matrixpeckham.raytracer.util.ShadeRec;
+import java.util.ArrayList;
+import java.util.logging.Logger;
+
+/**
+ * Object for a surface given by a DistanceFunction, rendered by sphere
+ * tracing: starting where the ray enters the bounding box, the ray steps
+ * forward by the distance over the Lipschitz bound, which can't pass the
+ * surface, until the distance is under the tolerance or the ray leaves the
+ * box. Normals are the gradient of the distance, from the tetrahedral
+ * differences of four samples around the hit point.
+ * <p>
+ * A ray that starts on the surface, like a reflected or shadow ray, first
+ * steps off it by the tolerance, then marches on whichever side it ended up,
+ * so rays going into the object find where they leave it. Rays that take more
+ * than the max steps miss.
+ *
+ * @author William Matrix Peckham
+ */
+public class DistanceObject extends GeometricObject implements CSGSolid {
+
+    /**
+     * distance to the surface the normal samples are, in tolerances
+     */
+    private static final double NORMAL_DELTA = 10;
+
+    //scratch for the box range, crossing side and normal, so tracing a ray
+    //doesn't allocate
+    private static final ThreadLocal<Scratch> SCRATCH
+            = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    /**
+     * the surface
+     */
+    private final DistanceFunction function;
+
+    /**
+     * bounds of the surface, padded so it starts off the surface
+     */
+    private BBox bbox;
+
+    /**
+     * distance that counts as a hit
+     */
+    private double tolerance = 0.00001;
+
+    /**
+     * steps before giving up on a ray
+     */
+    private int maxSteps = 512;
+
+    /**
+     * constructor for a distance function
+     *
+     * @param function
+     */
+    public DistanceObject(DistanceFunction function) {
+        super();
+        this.function = function;
+        makeBounds();
+    }
+
+    /**
+     * copy constructor
+     *
+     * @param o
+     */
+    public DistanceObject(DistanceObject o) {
+        super(o);
+        function = o.function;
+        bbox = o.bbox;
+        tolerance = o.tolerance;
+        maxSteps = o.maxSteps;
+    }
+
+    /**
+     * clone
+     *
+     * @return
+     */
+    @Override
+    public GeometricObject cloneGeometry() {
+        return new DistanceObject(this);
+    }
+
+    //box of the function, padded by the normal samples
+    private void makeBounds() {
+        BBox b = function.getBoundingBox();
+        double pad = 2 * NORMAL_DELTA * tolerance;
+        bbox = new BBox(b.x0 - pad, b.x1 + pad, b.y0 - pad, b.y1 + pad, b.z0
+                - pad, b.z1 + pad);
+    }
+
+    /**
+     * getter
+     *
+     * @return
+     */
+    public DistanceFunction getFunction() {
+        return function;
+    }
+
+    /**
+     * sets the distance that counts as a hit, also how far normals are
+     * sampled from the hit
+     *
+     * @param tolerance
+     */
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+        makeBounds();
+    }
+
+    /**
+     * getter
+     *
+     * @return
+     */
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * sets the most steps taken along a ray
+     *
+     * @param maxSteps
+     */
+    public void setMaxSteps(int maxSteps) {
+        this.maxSteps = maxSteps;
+    }
+
+    /**
+     * getter
+     *
+     * @return
+     */
+    public int getMaxSteps() {
+        return maxSteps;
+    }
+
+    /**
+     * bounding box of the function
+     *
+     * @return
+     */
+    @Override
+    public BBox getBoundingBox() {
+        return bbox;
+    }
+
+    /**
+     * hit function
+     *
+     * @param ray
+     * @param sr
+     * @return
+     */
+    @Override
+    public boolean hit(Ray ray, ShadeRec sr) {
+        double t = intersect(ray);
+        if (Double.isNaN(t)) {
+            return false;
+        }
+        fillShadeRec(ray, t, sr);
+        return true;
+    }
+
+    /**
+     * splits its hit, marching doesn't make normals
+     *
+     * @return
+     */
+    @Override
+    public boolean splitsHit() {
+        return true;
+    }
+
+    /**
+     * first crossing of the surface in front of the ray
+     *
+     * @param ray
+     * @return
+     */
+    @Override
+    public double intersect(Ray ray) {
+        Scratch s = SCRATCH.get();
+        if (!clip(ray, s) || s.t1 < 0) {
+            return Double.NaN;
+        }
+        return march(ray, Math.max(s.t0, 0), s.t1, s);
+    }
+
+    /**
+     * normal and hit point
+     *
+     * @param ray
+     * @param t
+     * @param sr
+     */
+    @Override
+    public void fillShadeRec(Ray ray, double t, ShadeRec sr) {
+        sr.lastT = t;
+        sr.localHitPosition.setTo(ray.o.x + ray.d.x * t, ray.o.y + ray.d.y * t,
+                ray.o.z + ray.d.z * t);
+        normal(sr.localHitPosition.x, sr.localHitPosition.y,
+                sr.localHitPosition.z, sr.normal);
+    }
+
+    /**
+     * adds every crossing inside the bounding box, including the ones behind
+     * the ray origin
+     *
+     * @param ray
+     * @param hits
+     * @param sr
+     * @return
+     */
+    @Override
+    public boolean hit(Ray ray, ArrayList<CSGShadeRec> hits, ShadeRec sr) {
+        Scratch s = SCRATCH.get();
+        if (!clip(ray, s)) {
+            return false;
+        }
+        double tEnd = s.t1;
+        boolean hit = false;
+        double t = march(ray, s.t0, tEnd, s);
+        while (!Double.isNaN(t)) {
+            CSGShadeRec h = new CSGShadeRec(sr);
+            h.entering = s.side > 0;
+            fillShadeRec(ray, t, h);
+            hits.add(h);
+            hit = true;
+            t = march(ray, t, tEnd, s);
+        }
+        return hit;
+    }
+
+    /**
+     * adds every crossing inside the bounding box with outward normals
+     *
+     * @param ray
+     * @param hits
+     */
+    @Override
+    public void addCSGHits(Ray ray, CSGHitList hits) {
+        Scratch s = SCRATCH.get();
+        if (!clip(ray, s)) {
+            return;
+        }
+        double tEnd = s.t1;
+        Normal n = s.normal;
+        double t = march(ray, s.t0, tEnd, s);
+        while (!Double.isNaN(t)) {
+            normal(ray.o.x + ray.d.x * t, ray.o.y + ray.d.y * t, ray.o.z
+                    + ray.d.z * t, n);
+            hits.add(t, s.side > 0, n.x, n.y, n.z, this);
+            t = march(ray, t, tEnd, s);
+        }
+    }
+
+    /**
+     * shadow hit, the same march as hit
+     *
+     * @param ray
+     * @param tr
+     * @return
+     */
+    @Override
+    public boolean shadowHit(Ray ray, DoubleRef tr) {
+        if (!shadows) {
+            return false;
+        }
+        double t = intersect(ray);
+        if (Double.isNaN(t)) {
+            return false;
+        }
+        tr.d = t;
+        return true;
+    }
+
+    //where the ray enters and leaves the bounding box, put in s.t0 and s.t1,
+    //false if it misses
+    private boolean clip(Ray ray, Scratch s) {
+        double t0 = -Double.MAX_VALUE;
+        double t1 = Double.MAX_VALUE;
+        double a = 1.0 / ray.d.x;
+        double n = (bbox.x0 - ray.o.x) * a;
+        double f = (bbox.x1 - ray.o.x) * a;
+        t0 = Math.max(t0, Math.min(n, f));
+        t1 = Math.min(t1, Math.max(n, f));
+        a = 1.0 / ray.d.y;
+        n = (bbox.y0 - ray.o.y) * a;
+        f = (bbox.y1 - ray.o.y) * a;
+        t0 = Math.max(t0, Math.min(n, f));
+        t1 = Math.min(t1, Math.max(n, f));
+        a = 1.0 / ray.d.z;
+        n = (bbox.z0 - ray.o.z) * a;
+        f = (bbox.z1 - ray.o.z) * a;
+        t0 = Math.max(t0, Math.min(n, f));
+        t1 = Math.min(t1, Math.max(n, f));
+        s.t0 = t0;
+        s.t1 = t1;
+        return t0 <= t1;
+    }
+
+    //next crossing of the surface between t and tEnd, s.side gets the sign
+    //of the distance before the crossing. NaN if there isn't one.
+    private double march(Ray ray, double t, double tEnd, Scratch s) {
+        double ox = ray.o.x, oy = ray.o.y, oz = ray.o.z;
+        double dx = ray.d.x, dy = ray.d.y, dz = ray.d.z;
+        //ray parameter per unit of distance
+        double scale = 1 / (function.getLipschitz() * Math.sqrt(dx * dx + dy
+                * dy + dz * dz));
+        //sign of the side we're on, 0 until we're off the surface
+        double sign = 0;
+        for (int i = 0; i < maxSteps && t <= tEnd; i++) {
+            double d = function.distance(ox + dx * t, oy + dy * t, oz + dz * t);
+            if (sign == 0) {
+                if (Math.abs(d) < tolerance) {
+                    //still on the surface the ray started on
+                    t += tolerance * scale;
+                    continue;
+                }
+                sign = d < 0 ? -1 : 1;
+            }
+            d *= sign;
+            if (d < tolerance) {
+                s.side = sign;
+                return t;
+            }
+            t += d * scale;
+        }
+        return Double.NaN;
+    }
+
+    //outward normal from the tetrahedral differences of the distance
+    private void normal(double x, double y, double z, Normal n) {
+        double h = NORMAL_DELTA * tolerance;
+        double a = function.distance(x + h, y - h, z - h);
+        double b = function.distance(x - h, y - h, z + h);
+        double c = function.distance(x - h, y + h, z - h);
+        double d = function.distance(x + h, y + h, z + h);
+        n.setTo(a - b - c + d, -a - b + c + d, -a + b - c + d);
+        n.normalize();
+    }
+
+    /**
+     * per thread scratch for tracing a ray
+     */
+    private static final class Scratch {
+
+        double t0;
+
+        double t1;
+
+        double side;
+
+        final Normal normal = new Normal();
+
+    }
+
+    private static final Logger LOG
+            = Logger.getLogger(DistanceObject.class.getName());
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2016 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.geometricobjects.implicit;
+
+import com.matrixpeckham.raytracer.util.BBox;
+import java.util.logging.Logger;
+
+/**
+ * Distance to a Menger sponge filling the cube from -1 to 1, a fractal that
+ * would take millions of triangles to mesh. Each iteration cuts the crosses
+ * out of the cubes left by the one before.
+ *
+ * @author William Matrix Peckham
+ */
+public class MengerSponge implements DistanceFunction {
+
+    /**
+     * number of times the cubes are cut
+     */
+    private final int iterations;
+
+    /**
+     * constructor
+     *
+     * @param iterations
+     */
+    public MengerSponge(int iterations) {
+        this.iterations = iterations;
+    }
+
+    @Override
+    public double distance(double x, double y, double z) {
+        //the unit cube
+        double qx = Math.abs(x) - 1;
+        double qy = Math.abs(y) - 1;
+        double qz = Math.abs(z) - 1;
+        double ox = Math.max(qx, 0);
+        double oy = Math.max(qy, 0);
+        double oz = Math.max(qz, 0);
+        double d = Math.sqrt(ox * ox + oy * oy + oz * oz) + Math.min(Math.max(
+                qx, Math.max(qy, qz)), 0);
+        double s = 1;
+        for (int i = 0; i < iterations; i++) {
+            //position in the repeated cell, from -1 to 1
+            double ax = mod2(x * s) - 1;
+            double ay = mod2(y * s) - 1;
+            double az = mod2(z * s) - 1;
+            s *= 3;
+            double rx = Math.abs(1 - 3 * Math.abs(ax));
+            double ry = Math.abs(1 - 3 * Math.abs(ay));
+            double rz = Math.abs(1 - 3 * Math.abs(az));
+            //distance to the cross through the cell
+            double c = (Math.min(Math.max(rx, ry), Math.min(Math.max(ry, rz),
+                    Math.max(rz, rx))) - 1) / s;
+            d = Math.max(d, c);
+        }
+        return d;
+    }
+
+    //x mod 2, always positive
+    private static double mod2(double x) {
+        return x - 2 * Math.floor(x * 0.5);
+    }
+
+    @Override
+    public double getLipschitz() {
+        return 1;
+    }
+
+    @Override
+    public BBox getBoundingBox() {
+        return new BBox(-1, 1, -1, 1, -1, 1);
+    }
+
+    private static final Logger LOG
+            = Logger.getLogger(MengerSponge.class.getName());
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2016 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.geometricobjects.implicit;
+
+import com.matrixpeckham.raytracer.util.BBox;
+import java.util.logging.Logger;
+
+/**
+ * Smooth union of distance functions: the parts are blended together where
+ * they are closer than the blend distance, so a few spheres make blobs. Uses
+ * the polynomial smooth minimum, which never changes faster than its parts
+ * do.
+ *
+ * @author William Matrix Peckham
+ */
+public class SmoothUnion implements DistanceFunction {
+
+    /**
+     * the parts
+     */
+    private final DistanceFunction[] parts;
+
+    /**
+     * blend distance
+     */
+    private final double k;
+
+    /**
+     * constructor
+     *
+     * @param k blend distance, 0 for a plain union
+     * @param parts
+     */
+    public SmoothUnion(double k, DistanceFunction... parts) {
+        this.parts = parts.clone();
+        this.k = k;
+    }
+
+    @Override
+    public double distance(double x, double y, double z) {
+        double d = parts[0].distance(x, y, z);
+        for (int i = 1; i < parts.length; i++) {
+            double e = parts[i].distance(x, y, z);
+            if (k > 0) {
+                double h = Math.max(k - Math.abs(d - e), 0) / k;
+                d = Math.min(d, e) - h * h * k * 0.25;
+            } else {
+                d = Math.min(d, e);
+            }
+        }
+        return d;
+    }
+
+    @Override
+    public double getLipschitz() {
+        double l = 0;
+        for (DistanceFunction p : parts) {
+            l = Math.max(l, p.getLipschitz());
+        }
+        return l;
+    }
+
+    /**
+     * boxes of the parts, grown by the most the blend can add
+     *
+     * @return
+     */
+    @Override
+    public BBox getBoundingBox() {
+        BBox b = BBox.empty();
+        for (DistanceFunction p : parts) {
+            b.expandToFit(p.getBoundingBox());
+        }
+        //each blend lowers the distance by at most k / 4
+        double pad = k * 0.25 * (parts.length - 1);
+        return new BBox(b.x0 - pad, b.x1 + pad, b.y0 - pad, b.y1 + pad, b.z0
+                - pad, b.z1 + pad);
+    }
+
+    private static final Logger LOG
+            = Logger.getLogger(SmoothUnion.class.getName());
+
+}
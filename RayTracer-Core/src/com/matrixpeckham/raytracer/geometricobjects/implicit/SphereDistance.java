@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2016 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.geometricobjects.implicit;
+
+import com.matrixpeckham.raytracer.util.BBox;
+import com.matrixpeckham.raytracer.util.Point3D;
+import java.util.logging.Logger;
+
+/**
+ * Exact distance to a sphere.
+ *
+ * @author William Matrix Peckham
+ */
+public class SphereDistance implements DistanceFunction {
+
+    /**
+     * center
+     */
+    private final Point3D center;
+
+    /**
+     * radius
+     */
+    private final double radius;
+
+    /**
+     * constructor
+     *
+     * @param center
+     * @param radius
+     */
+    public SphereDistance(Point3D center, double radius) {
+        this.center = new Point3D(center);
+        this.radius = radius;
+    }
+
+    @Override
+    public double distance(double x, double y, double z) {
+        x -= center.x;
+        y -= center.y;
+        z -= center.z;
+        return Math.sqrt(x * x + y * y + z * z) - radius;
+    }
+
+    @Override
+    public double getLipschitz() {
+        return 1;
+    }
+
+    @Override
+    public BBox getBoundingBox() {
+        return new BBox(center.x - radius, center.x + radius, center.y - radius,
+                center.y + radius, center.z - radius, center.z + radius);
+    }
+
+    private static final Logger LOG
+            = Logger.getLogger(SphereDistance.class.getName());
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2016 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.geometricobjects.implicit;
+
+import com.matrixpeckham.raytracer.util.BBox;
+import java.util.logging.Logger;
+
+/**
+ * Exact distance to a torus around the y axis, with the same radii as the
+ * Torus primitive: a from the center to the middle of the tube, b of the tube.
+ *
+ * @author William Matrix Peckham
+ */
+public class TorusDistance implements DistanceFunction {
+
+    /**
+     * swept radius
+     */
+    private final double a;
+
+    /**
+     * tube radius
+     */
+    private final double b;
+
+    /**
+     * constructor
+     *
+     * @param a
+     * @param b
+     */
+    public TorusDistance(double a, double b) {
+        this.a = a;
+        this.b = b;
+    }
+
+    @Override
+    public double distance(double x, double y, double z) {
+        double q = Math.sqrt(x * x + z * z) - a;
+        return Math.sqrt(q * q + y * y) - b;
+    }
+
+    @Override
+    public double getLipschitz() {
+        return 1;
+    }
+
+    @Override
+    public BBox getBoundingBox() {
+        double r = a + b;
+        return new BBox(-r, r, -b, b, -r, r);
+    }
+
+    private static final Logger LOG
+            = Logger.getLogger(TorusDistance.class.getName());
+
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) 2016 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.geometricobjects.parametric;
+
+import com.matrixpeckham.raytracer.cameras.Camera;
+import com.matrixpeckham.raytracer.geometricobjects.parametric.ParametricObject.ParametricEquation;
+import com.matrixpeckham.raytracer.util.Mesh;
+import com.matrixpeckham.raytracer.util.Point3D;
+import com.matrixpeckham.raytracer.world.ViewPlane;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Tessellation of a parametric equation that puts triangles where the surface
+ * needs them. The (u, v) range is cut into starting cells, a few steps of the
+ * equation on a side, and each cell is split into quarters until the surface
+ * is within the tolerance of the flat cell, checked at the middle of the cell
+ * and of its edges, and, if there is an edge length, its edges are shorter
+ * than that. With a camera both are in pixels, so parts of the surface far
+ * from the camera get bigger cells.
+ * <p>
+ * Cell corners are on a lattice as fine as the deepest split, and a cell that
+ * borders smaller ones is fanned from its middle through their corners on its
+ * edges, so neighbors always share their vertices and the mesh has no
+ * cracks.
+ * <p>
+ * Tessellations are kept for each equation and shared by every object made
+ * with the same settings.
+ *
+ * @author William Matrix Peckham
+ */
+final class AdaptiveTessellation {
+
+    //times a starting cell may be split
+    private static final int MAX_DEPTH = 6;
+
+    //starting cells on a side, at least, and steps of the equation in one
+    private static final int MIN_CELLS = 4;
+
+    private static final int MAX_CELLS = 64;
+
+    private static final int STEPS_PER_CELL = 8;
+
+    //tessellations made so far for each equation
+    private static final Map<ParametricEquation, ArrayList<AdaptiveTessellation>> CACHE
+            = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * vertices and normals
+     */
+    final Mesh mesh = new Mesh();
+
+    /**
+     * vertex indices, three for each triangle
+     */
+    final int[] triangles;
+
+    //settings the tessellation was made with
+    private final double tolerance;
+
+    private final double edgeLength;
+
+    private final Camera camera;
+
+    private final int viewChanges;
+
+    private final double pixel;
+
+    //used while building
+    private ParametricEquation eq;
+
+    private ViewPlane vp;
+
+    private int nu;
+
+    private int nv;
+
+    private HashMap<Long, Integer> lattice;
+
+    private ArrayList<int[]> leaves;
+
+    /**
+     * gets the tessellation of an equation, making it if there isn't one with
+     * the same settings yet. Without a camera the tolerance and edge length
+     * are in world units, with one they are in pixels of the view plane.
+     * Edge length 0 doesn't limit the edges. Tessellations for a view the
+     * camera has since moved away from are dropped.
+     *
+     * @param p
+     * @param tolerance
+     * @param edgeLength
+     * @param camera
+     * @param vp
+     * @return
+     */
+    static AdaptiveTessellation get(ParametricEquation p, double tolerance,
+            double edgeLength, Camera camera, ViewPlane vp) {
+        double pixel = vp == null ? 0 : vp.s;
+        int changes = camera == null ? 0 : camera.getViewChanges();
+        ArrayList<AdaptiveTessellation> list;
+        synchronized (CACHE) {
+            list = CACHE.get(p);
+            if (list == null) {
+                list = new ArrayList<>();
+                CACHE.put(p, list);
+            }
+        }
+        synchronized (list) {
+            for (Iterator<AdaptiveTessellation> it = list.iterator(); it.
+                    hasNext();) {
+                AdaptiveTessellation t = it.next();
+                if (t.camera == camera && t.viewChanges != changes) {
+                    it.remove();
+                } else if (t.tolerance == tolerance && t.edgeLength
+                        == edgeLength && t.camera == camera && t.pixel
+                        == pixel) {
+                    return t;
+                }
+            }
+            AdaptiveTessellation t = new AdaptiveTessellation(p, tolerance,
+                    edgeLength, camera, vp);
+            list.add(t);
+            return t;
+        }
+    }
+
+    private AdaptiveTessellation(ParametricEquation p, double tolerance,
+            double edgeLength, Camera camera, ViewPlane vp) {
+        this.tolerance = tolerance;
+        this.edgeLength = edgeLength;
+        this.camera = camera;
+        this.viewChanges = camera == null ? 0 : camera.getViewChanges();
+        this.pixel = vp == null ? 0 : vp.s;
+        eq = p;
+        this.vp = vp;
+        lattice = new HashMap<>();
+        leaves = new ArrayList<>();
+        nu = cells(p.getMaxU() - p.getMinU(), p.getUStep());
+        nv = cells(p.getMaxV() - p.getMinV(), p.getVStep());
+        int size = 1 << MAX_DEPTH;
+        for (int i = 0; i < nu; i++) {
+            for (int j = 0; j < nv; j++) {
+                split(i * size, j * size, size);
+            }
+        }
+        ArrayList<Integer> tris = new ArrayList<>();
+        ArrayList<Integer> ring = new ArrayList<>();
+        for (int[] leaf : leaves) {
+            triangulate(leaf[0], leaf[1], leaf[2], ring, tris);
+        }
+        triangles = new int[tris.size()];
+        for (int i = 0; i < triangles.length; i++) {
+            triangles[i] = tris.get(i);
+        }
+        mesh.numVertices = mesh.vertices.size();
+        mesh.numTriangles = triangles.length / 3;
+        eq = null;
+        this.vp = null;
+        lattice = null;
+        leaves = null;
+    }
+
+    //starting cells along a side of the range
+    private static int cells(double range, double step) {
+        int n = (int) Math.ceil(range / (STEPS_PER_CELL * step));
+        return Math.min(MAX_CELLS, Math.max(MIN_CELLS, n));
+    }
+
+    //splits the cell with corner (i, j) on the lattice until it is flat
+    //enough, and keeps its leaves and their corners
+    private void split(int i, int j, int size) {
+        if (size > 1 && !flat(i, j, size)) {
+            int h = size / 2;
+            split(i, j, h);
+            split(i + h, j, h);
+            split(i, j + h, h);
+            split(i + h, j + h, h);
+            return;
+        }
+        leaves.add(new int[]{i, j, size});
+        vertex(i, j);
+        vertex(i + size, j);
+        vertex(i, j + size);
+        vertex(i + size, j + size);
+    }
+
+    //true if the cell doesn't need splitting
+    private boolean flat(int i, int j, int size) {
+        int h = size / 2;
+        Point3D p00 = point(i, j);
+        Point3D p10 = point(i + size, j);
+        Point3D p01 = point(i, j + size);
+        Point3D p11 = point(i + size, j + size);
+        Point3D c = point(i + h, j + h);
+        double scale = 1;
+        if (camera != null) {
+            scale = camera.getPixelFootprint(vp, c);
+            if (Double.isInfinite(scale)) {
+                //behind the camera
+                return true;
+            }
+        }
+        double tol = tolerance * scale;
+        double err = deviation(c, p00, p10, p01, p11);
+        err = Math.max(err, deviation(point(i + h, j), p00, p10));
+        err = Math.max(err, deviation(point(i + h, j + size), p01, p11));
+        err = Math.max(err, deviation(point(i, j + h), p00, p01));
+        err = Math.max(err, deviation(point(i + size, j + h), p10, p11));
+        if (err > tol) {
+            return false;
+        }
+        if (edgeLength > 0) {
+            double len = edgeLength * scale;
+            if (p00.distance(p10) > len || p00.distance(p01) > len
+                    || p11.distance(p10) > len || p11.distance(p01) > len) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //distance from p to the middle of the other points
+    private static double deviation(Point3D p, Point3D... q) {
+        double x = 0, y = 0, z = 0;
+        for (Point3D a : q) {
+            x += a.x;
+            y += a.y;
+            z += a.z;
+        }
+        x = x / q.length - p.x;
+        y = y / q.length - p.y;
+        z = z / q.length - p.z;
+        return Math.sqrt(x * x + y * y + z * z);
+    }
+
+    //index of the vertex at lattice point (i, j), adding it if it isn't there
+    private int vertex(int i, int j) {
+        long key = key(i, j);
+        Integer index = lattice.get(key);
+        if (index == null) {
+            index = mesh.vertices.size();
+            mesh.vertices.add(point(i, j));
+            mesh.normals.add(eq.getNormalAt(u(i), v(j)));
+            lattice.put(key, index);
+        }
+        return index;
+    }
+
+    //lattice key, closed sides wrap around
+    private long key(int i, int j) {
+        int mu = nu << MAX_DEPTH;
+        int mv = nv << MAX_DEPTH;
+        if (eq.isClosedU() && i == mu) {
+            i = 0;
+        }
+        if (eq.isClosedV() && j == mv) {
+            j = 0;
+        }
+        return (long) i * (mv + 1) + j;
+    }
+
+    private Point3D point(int i, int j) {
+        return eq.getPointAt(u(i), v(j));
+    }
+
+    private double u(int i) {
+        return eq.getMinU() + (eq.getMaxU() - eq.getMinU()) * i / (nu
+                << MAX_DEPTH);
+    }
+
+    private double v(int j) {
+        return eq.getMinV() + (eq.getMaxV() - eq.getMinV()) * j / (nv
+                << MAX_DEPTH);
+    }
+
+    //two triangles for a leaf whose edges have no other vertices, otherwise
+    //a fan from its middle around all the vertices on its edges
+    private void triangulate(int i, int j, int size, ArrayList<Integer> ring,
+            ArrayList<Integer> tris) {
+        ring.clear();
+        for (int k = 0; k < size; k++) {
+            onEdge(i, j + k, ring);
+        }
+        for (int k = 0; k < size; k++) {
+            onEdge(i + k, j + size, ring);
+        }
+        for (int k = size; k > 0; k--) {
+            onEdge(i + size, j + k, ring);
+        }
+        for (int k = size; k > 0; k--) {
+            onEdge(i + k, j, ring);
+        }
+        if (ring.size() == 4) {
+            int bl = ring.get(0);
+            int br = ring.get(1);
+            int tr = ring.get(2);
+            int tl = ring.get(3);
+            add(tris, bl, br, tl);
+            add(tris, tl, br, tr);
+            return;
+        }
+        int h = size / 2;
+        int c = mesh.vertices.size();
+        mesh.vertices.add(point(i + h, j + h));
+        mesh.normals.add(eq.getNormalAt(u(i + h), v(j + h)));
+        for (int k = 0; k < ring.size(); k++) {
+            add(tris, c, ring.get(k), ring.get((k + 1) % ring.size()));
+        }
+    }
+
+    private void onEdge(int i, int j, ArrayList<Integer> ring) {
+        Integer index = lattice.get(key(i, j));
+        if (index != null) {
+            ring.add(index);
+        }
+    }
+
+    private static void add(ArrayList<Integer> tris, int a, int b, int c) {
+        tris.add(a);
+        tris.add(b);
+        tris.add(c);
+    }
+
+    private static final Logger LOG
+            = Logger.getLogger(AdaptiveTessellation.class.getName());
+
+}
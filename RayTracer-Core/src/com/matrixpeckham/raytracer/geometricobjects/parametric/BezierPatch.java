@@ -17,17 +17,95 @@
  */
 package com.matrixpeckham.raytracer.geometricobjects.parametric;
 
+import com.matrixpeckham.raytracer.geometricobjects.csg.CSGShadeRec;
+import com.matrixpeckham.raytracer.materials.Material;
+import com.matrixpeckham.raytracer.util.BBox;
+import com.matrixpeckham.raytracer.util.DoubleRef;
 import com.matrixpeckham.raytracer.util.Normal;
 import com.matrixpeckham.raytracer.util.Point3D;
-import com.matrixpeckham.raytracer.util.Vector3D;
+import com.matrixpeckham.raytracer.util.Ray;
+import com.matrixpeckham.raytracer.util.RayPacket;
+import com.matrixpeckham.raytracer.util.ShadeRec;
+import com.matrixpeckham.raytracer.util.Utility;
+import java.util.ArrayList;
 
 /**
- * Torus class. Is a parametric object.
+ * Bicubic Bezier patch. Is a parametric object, but instead of tessellating
+ * the patch it keeps the 16 control points and intersects the surface
+ * directly, so it has no facets at any size.
+ * <p>
+ * The patch keeps a small tree of boxes, the bounds of its quarters, their
+ * quarters and so on down to an 8x8 grid of pieces, each made from the
+ * control points of the piece so it is tight. A ray walks the tree and, in
+ * each piece it passes through, runs Newton's method on the patch from the
+ * middle of the piece. The ray is written as the meeting line of two planes
+ * so the iteration is in u and v only.
+ * <p>
+ * Control point 4 * i + j is in row i and column j, u runs along the rows
+ * and v down the columns, and the outward side is the one the u derivative
+ * crossed with the v derivative points to.
  *
  * @author William Matrix Peckham
  */
 public class BezierPatch extends ParametricObject {
 
+    //levels of the box tree under the root, the leaves are LEAVES on a side
+    private static final int LEVELS = 3;
+
+    private static final int LEAVES = 1 << LEVELS;
+
+    //index of the first box of each level, boxes of a level are in rows of v
+    private static final int[] LEVEL_START = {0, 1, 5, 21};
+
+    private static final int NUM_BOXES = 85;
+
+    //Newton iterations allowed from each seed
+    private static final int MAX_ITERATIONS = 10;
+
+    //offsets into the scratch array: the point and its u and v derivatives,
+    //the inverse ray direction, the two planes of the ray, the result of the
+    //last Newton run and the closest hit so far
+    private static final int DU = 3;
+
+    private static final int DV = 6;
+
+    private static final int INV = 9;
+
+    private static final int PLANES = 12;
+
+    private static final int ROOT = 20;
+
+    private static final int BEST = 23;
+
+    //scratch for each thread
+    private static final ThreadLocal<double[]> SCRATCH
+            = new ThreadLocal<double[]>() {
+        @Override
+        protected double[] initialValue() {
+            return new double[25];
+        }
+    };
+
+    /**
+     * control points, x y z for each
+     */
+    private final double[] cp;
+
+    /**
+     * box tree, x0 y0 z0 x1 y1 z1 for each box
+     */
+    private final double[] boxes;
+
+    /**
+     * bounds of the whole patch
+     */
+    private final BBox bbox;
+
+    /**
+     * how far from the ray a converged point may be
+     */
+    private final double tolerance;
+
     /**
      * default constructor
      */
@@ -55,29 +133,497 @@ public class BezierPatch extends ParametricObject {
     /**
      * initializing constructor
      *
-     * @param a
-     * @param b
+     * @param points 16 control points
      */
     public BezierPatch(Point3D[] points) {
-        super(new BezierParametric(points));
+        this(new BezierParametric(points));
     }
 
     /**
-     * protected constructor, this is the workhorse constructor, calls
-     * superclass constructor that does the real work
+     * protected constructor, this is the workhorse constructor, builds the
+     * box tree from the equation's control points
      *
      * @param par
      */
     protected BezierPatch(BezierParametric par) {
-        super(par);
+        super(par, false);
+        cp = par.cp;
+        boxes = new double[6 * NUM_BOXES];
+        buildBoxes();
+        bbox = new BBox(boxes[0], boxes[3], boxes[1], boxes[4], boxes[2],
+                boxes[5]);
+        double size = Math.max(Math.max(boxes[3] - boxes[0], boxes[4]
+                - boxes[1]), boxes[5] - boxes[2]);
+        tolerance = 1e-9 * Math.max(size, 1e-9);
+    }
+
+    /**
+     * copy constructor, the control points and boxes never change so they
+     * are shared
+     *
+     * @param p
+     */
+    protected BezierPatch(BezierPatch p) {
+        super(p);
+        cp = p.cp;
+        boxes = p.boxes;
+        bbox = p.bbox;
+        tolerance = p.tolerance;
+        material = p.material;
+    }
+
+    /**
+     * clone
+     *
+     * @return
+     */
+    @Override
+    public BezierPatch cloneGeometry() {
+        return new BezierPatch(this);
+    }
+
+    /**
+     * the patch has no triangles, the material is its own
+     *
+     * @param mat
+     */
+    @Override
+    public void setMaterial(Material mat) {
+        material = mat;
+    }
+
+    @Override
+    public Material getMaterial() {
+        return material;
+    }
+
+    @Override
+    public BBox getBoundingBox() {
+        return bbox;
+    }
+
+    @Override
+    public boolean hitPacket(RayPacket packet) {
+        return hitEachRay(packet);
+    }
+
+    @Override
+    public boolean hit(Ray ray, ShadeRec sr) {
+        double[] s = SCRATCH.get();
+        setUp(ray, s);
+        double t = closest(0, 0, 0, ray, Utility.EPSILON, Utility.HUGE_VALUE,
+                s);
+        if (t >= Utility.HUGE_VALUE) {
+            return false;
+        }
+        sr.lastT = t;
+        sr.localHitPosition.setTo(ray.o.x + t * ray.d.x, ray.o.y + t
+                * ray.d.y, ray.o.z + t * ray.d.z);
+        shade(s[BEST], s[BEST + 1], s, sr);
+        switch (normType) {
+            case REGULAR://normal is correct
+                break;
+            case REVERSE:
+                sr.normal.setTo(sr.normal.neg());//reverse the normal
+                break;
+            case TWO_SIDE:
+                if (ray.d.dot(sr.normal) > 0.0) {
+                    //reverse only if we hit the back
+                    sr.normal.setTo(sr.normal.neg());
+                }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean hit(Ray ray, ArrayList<CSGShadeRec> hits, ShadeRec sr) {
+        double[] s = SCRATCH.get();
+        setUp(ray, s);
+        int start = hits.size();
+        all(0, 0, 0, ray, hits, start, sr, s);
+        return hits.size() > start;
+    }
+
+    @Override
+    public boolean shadowHit(Ray ray, DoubleRef tr) {
+        if (!shadows) {
+            return false;
+        }
+        double[] s = SCRATCH.get();
+        setUp(ray, s);
+        double t = closest(0, 0, 0, ray, Utility.EPSILON, Utility.HUGE_VALUE,
+                s);
+        if (t >= Utility.HUGE_VALUE) {
+            return false;
+        }
+        tr.d = t;
+        return true;
+    }
+
+    //inverse direction for the box tests, and two planes through the ray,
+    //unit length and at right angles to each other and the ray
+    private static void setUp(Ray ray, double[] s) {
+        double dx = ray.d.x, dy = ray.d.y, dz = ray.d.z;
+        s[INV] = 1 / dx;
+        s[INV + 1] = 1 / dy;
+        s[INV + 2] = 1 / dz;
+        double ax, ay, az;
+        if (Math.abs(dx) > Math.abs(dy) && Math.abs(dx) > Math.abs(dz)) {
+            ax = dy;
+            ay = -dx;
+            az = 0;
+        } else {
+            ax = 0;
+            ay = dz;
+            az = -dy;
+        }
+        double l = 1 / Math.sqrt(ax * ax + ay * ay + az * az);
+        ax *= l;
+        ay *= l;
+        az *= l;
+        double bx = ay * dz - az * dy;
+        double by = az * dx - ax * dz;
+        double bz = ax * dy - ay * dx;
+        l = 1 / Math.sqrt(bx * bx + by * by + bz * bz);
+        bx *= l;
+        by *= l;
+        bz *= l;
+        s[PLANES] = ax;
+        s[PLANES + 1] = ay;
+        s[PLANES + 2] = az;
+        s[PLANES + 3] = -(ax * ray.o.x + ay * ray.o.y + az * ray.o.z);
+        s[PLANES + 4] = bx;
+        s[PLANES + 5] = by;
+        s[PLANES + 6] = bz;
+        s[PLANES + 7] = -(bx * ray.o.x + by * ray.o.y + bz * ray.o.z);
+    }
+
+    //closest hit in (tmin, best) under a box of the tree, its u and v go in
+    //the scratch array, returns best if there isn't one
+    private double closest(int level, int i, int j, Ray ray, double tmin,
+            double best, double[] s) {
+        int n = 1 << level;
+        if (!(enter(LEVEL_START[level] + j * n + i, ray, tmin, s) < best)) {
+            return best;
+        }
+        if (level == LEVELS) {
+            //the middle of the piece, then the middles of its quarters if
+            //that doesn't find a root in the piece
+            for (int k = -1; k < 4; k++) {
+                double u = (i + (k < 0 ? 0.5 : 0.25 + 0.5 * (k & 1)))
+                        / LEAVES;
+                double v = (j + (k < 0 ? 0.5 : 0.25 + 0.5 * (k >> 1)))
+                        / LEAVES;
+                if (newton(u, v, ray, s)) {
+                    double t = s[ROOT + 2];
+                    if (t > tmin && t < best) {
+                        s[BEST] = s[ROOT];
+                        s[BEST + 1] = s[ROOT + 1];
+                        best = t;
+                    }
+                    if (k < 0 && inPiece(i, j, s)) {
+                        break;
+                    }
+                }
+            }
+            return best;
+        }
+        for (int k = 0; k < 4; k++) {
+            best = closest(level + 1, 2 * i + (k & 1), 2 * j + (k >> 1), ray,
+                    tmin, best, s);
+        }
+        return best;
+    }
+
+    //adds every hit under a box of the tree, skipping ones already added
+    private void all(int level, int i, int j, Ray ray,
+            ArrayList<CSGShadeRec> hits, int start, ShadeRec sr, double[] s) {
+        int n = 1 << level;
+        if (!(enter(LEVEL_START[level] + j * n + i, ray, -Utility.HUGE_VALUE,
+                s) < Utility.HUGE_VALUE)) {
+            return;
+        }
+        if (level < LEVELS) {
+            for (int k = 0; k < 4; k++) {
+                all(level + 1, 2 * i + (k & 1), 2 * j + (k >> 1), ray, hits,
+                        start, sr, s);
+            }
+            return;
+        }
+        for (int k = -1; k < 4; k++) {
+            double u = (i + (k < 0 ? 0.5 : 0.25 + 0.5 * (k & 1))) / LEAVES;
+            double v = (j + (k < 0 ? 0.5 : 0.25 + 0.5 * (k >> 1))) / LEAVES;
+            if (newton(u, v, ray, s)) {
+                add(ray, hits, start, sr, s);
+                if (k < 0 && inPiece(i, j, s)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    //true if the last root found is in leaf piece (i, j)
+    private static boolean inPiece(int i, int j, double[] s) {
+        double u = s[ROOT] * LEAVES - i;
+        double v = s[ROOT + 1] * LEAVES - j;
+        return u >= 0 && u <= 1 && v >= 0 && v <= 1;
+    }
+
+    //adds the last root found to the hits if it isn't there already
+    private void add(Ray ray, ArrayList<CSGShadeRec> hits, int start,
+            ShadeRec sr, double[] s) {
+        double u = s[ROOT];
+        double v = s[ROOT + 1];
+        double t = s[ROOT + 2];
+        for (int k = start; k < hits.size(); k++) {
+            CSGShadeRec h = hits.get(k);
+            if (Math.abs(h.u - u) + Math.abs(h.v - v) < 1e-6) {
+                return;
+            }
+        }
+        CSGShadeRec h = new CSGShadeRec(sr);
+        h.lastT = t;
+        h.localHitPosition.setTo(ray.o.x + t * ray.d.x, ray.o.y + t * ray.d.y,
+                ray.o.z + t * ray.d.z);
+        shade(u, v, s, h);
+        h.entering = ray.d.dot(h.normal) < 0;
+        hits.add(h);
+    }
+
+    //ray parameter where the ray enters box b, or HUGE_VALUE if it misses
+    //the box or leaves it before tmin
+    private double enter(int b, Ray ray, double tmin, double[] s) {
+        int o = 6 * b;
+        double t0 = tmin;
+        double t1 = Utility.HUGE_VALUE;
+        for (int k = 0; k < 3; k++) {
+            double org = k == 0 ? ray.o.x : k == 1 ? ray.o.y : ray.o.z;
+            double inv = s[INV + k];
+            double a = (boxes[o + k] - org) * inv;
+            double c = (boxes[o + 3 + k] - org) * inv;
+            if (a > c) {
+                double tmp = a;
+                a = c;
+                c = tmp;
+            }
+            if (a > t0) {
+                t0 = a;
+            }
+            if (c < t1) {
+                t1 = c;
+            }
+        }
+        return t0 <= t1 ? t0 : Utility.HUGE_VALUE;
+    }
+
+    //Newton's method on the distances of the patch point from the two planes
+    //of the ray, from (u, v). On success u, v and the ray parameter go in
+    //the scratch array.
+    private boolean newton(double u, double v, Ray ray, double[] s) {
+        double ax = s[PLANES], ay = s[PLANES + 1], az = s[PLANES + 2];
+        double ad = s[PLANES + 3];
+        double bx = s[PLANES + 4], by = s[PLANES + 5], bz = s[PLANES + 6];
+        double bd = s[PLANES + 7];
+        for (int it = 0; it < MAX_ITERATIONS; it++) {
+            evaluate(cp, u, v, s);
+            double fa = ax * s[0] + ay * s[1] + az * s[2] + ad;
+            double fb = bx * s[0] + by * s[1] + bz * s[2] + bd;
+            if (Math.abs(fa) + Math.abs(fb) < tolerance) {
+                if (u < -1e-9 || u > 1 + 1e-9 || v < -1e-9 || v > 1 + 1e-9) {
+                    return false;
+                }
+                double dd = ray.d.x * ray.d.x + ray.d.y * ray.d.y + ray.d.z
+                        * ray.d.z;
+                s[ROOT] = u;
+                s[ROOT + 1] = v;
+                s[ROOT + 2] = ((s[0] - ray.o.x) * ray.d.x + (s[1] - ray.o.y)
+                        * ray.d.y + (s[2] - ray.o.z) * ray.d.z) / dd;
+                return true;
+            }
+            double au = ax * s[DU] + ay * s[DU + 1] + az * s[DU + 2];
+            double av = ax * s[DV] + ay * s[DV + 1] + az * s[DV + 2];
+            double bu = bx * s[DU] + by * s[DU + 1] + bz * s[DU + 2];
+            double bv = bx * s[DV] + by * s[DV + 1] + bz * s[DV + 2];
+            double det = au * bv - av * bu;
+            if (det == 0) {
+                return false;
+            }
+            u -= (fa * bv - fb * av) / det;
+            v -= (au * fb - bu * fa) / det;
+            //far outside the patch, it won't come back
+            if (!(u > -0.5 && u < 1.5 && v > -0.5 && v < 1.5)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    //normal, texture coordinates and surface derivatives at (u, v)
+    private void shade(double u, double v, double[] s, ShadeRec sr) {
+        evaluate(cp, u, v, s);
+        sr.u = u;
+        sr.v = v;
+        sr.dpdu.setTo(s[DU], s[DU + 1], s[DU + 2]);
+        sr.dpdv.setTo(s[DV], s[DV + 1], s[DV + 2]);
+        normal(cp, u, v, s, sr.normal);
+    }
+
+    //outward normal at (u, v), the u derivative crossed with the v one. At
+    //collapsed edges, where one derivative is zero, the normal is taken a
+    //little way in from the edge
+    private static void normal(double[] cp, double u, double v, double[] s,
+            Normal n) {
+        evaluate(cp, u, v, s);
+        double x = s[DU + 1] * s[DV + 2] - s[DU + 2] * s[DV + 1];
+        double y = s[DU + 2] * s[DV] - s[DU] * s[DV + 2];
+        double z = s[DU] * s[DV + 1] - s[DU + 1] * s[DV];
+        double len = x * x + y * y + z * z;
+        double scale = (s[DU] * s[DU] + s[DU + 1] * s[DU + 1] + s[DU + 2]
+                * s[DU + 2]) + (s[DV] * s[DV] + s[DV + 1] * s[DV + 1] + s[DV
+                + 2] * s[DV + 2]);
+        if (len <= 1e-16 * scale * scale) {
+            evaluate(cp, u + (0.5 - u) * 1e-4, v + (0.5 - v) * 1e-4, s);
+            x = s[DU + 1] * s[DV + 2] - s[DU + 2] * s[DV + 1];
+            y = s[DU + 2] * s[DV] - s[DU] * s[DV + 2];
+            z = s[DU] * s[DV + 1] - s[DU + 1] * s[DV];
+        }
+        n.setTo(x, y, z);
+        n.normalize();
+    }
+
+    //point and u and v derivatives of the patch, into s[0..8]
+    static void evaluate(double[] cp, double u, double v, double[] s) {
+        double mu = 1 - u;
+        double mv = 1 - v;
+        double bu0 = mu * mu * mu, bu1 = 3 * u * mu * mu;
+        double bu2 = 3 * u * u * mu, bu3 = u * u * u;
+        double du0 = -3 * mu * mu, du1 = 3 * mu * mu - 6 * u * mu;
+        double du2 = 6 * u * mu - 3 * u * u, du3 = 3 * u * u;
+        double bv0 = mv * mv * mv, bv1 = 3 * v * mv * mv;
+        double bv2 = 3 * v * v * mv, bv3 = v * v * v;
+        double dv0 = -3 * mv * mv, dv1 = 3 * mv * mv - 6 * v * mv;
+        double dv2 = 6 * v * mv - 3 * v * v, dv3 = 3 * v * v;
+        for (int k = 0; k < 3; k++) {
+            double p = 0, pu = 0, pv = 0;
+            for (int i = 0; i < 4; i++) {
+                int o = 12 * i + k;
+                //the row as a curve in u, and its derivative
+                double r = bu0 * cp[o] + bu1 * cp[o + 3] + bu2 * cp[o + 6]
+                        + bu3 * cp[o + 9];
+                double ru = du0 * cp[o] + du1 * cp[o + 3] + du2 * cp[o + 6]
+                        + du3 * cp[o + 9];
+                double b = i == 0 ? bv0 : i == 1 ? bv1 : i == 2 ? bv2 : bv3;
+                double d = i == 0 ? dv0 : i == 1 ? dv1 : i == 2 ? dv2 : dv3;
+                p += b * r;
+                pu += b * ru;
+                pv += d * r;
+            }
+            s[k] = p;
+            s[DU + k] = pu;
+            s[DV + k] = pv;
+        }
+    }
+
+    //bounds of the control points of each leaf piece, and of the pieces
+    //under each box above the leaves
+    private void buildBoxes() {
+        double[] row = new double[16];
+        double[] piece = new double[16];
+        int leaf = LEVEL_START[LEVELS];
+        for (int j = 0; j < LEAVES; j++) {
+            for (int i = 0; i < LEAVES; i++) {
+                int o = 6 * (leaf + j * LEAVES + i);
+                for (int k = 0; k < 3; k++) {
+                    //cut the rows to the piece's u range, then the columns
+                    //to its v range
+                    for (int r = 0; r < 4; r++) {
+                        subCurve(cp, 12 * r + k, 3, (double) i / LEAVES,
+                                (double) (i + 1) / LEAVES, row, 4 * r, 1);
+                    }
+                    for (int c = 0; c < 4; c++) {
+                        subCurve(row, c, 4, (double) j / LEAVES,
+                                (double) (j + 1) / LEAVES, piece, c, 4);
+                    }
+                    double lo = piece[0];
+                    double hi = piece[0];
+                    for (int m = 1; m < 16; m++) {
+                        lo = Math.min(lo, piece[m]);
+                        hi = Math.max(hi, piece[m]);
+                    }
+                    boxes[o + k] = lo;
+                    boxes[o + 3 + k] = hi;
+                }
+            }
+        }
+        for (int level = LEVELS - 1; level >= 0; level--) {
+            int n = 1 << level;
+            for (int j = 0; j < n; j++) {
+                for (int i = 0; i < n; i++) {
+                    int o = 6 * (LEVEL_START[level] + j * n + i);
+                    for (int k = 0; k < 3; k++) {
+                        boxes[o + k] = Double.POSITIVE_INFINITY;
+                        boxes[o + 3 + k] = Double.NEGATIVE_INFINITY;
+                    }
+                    for (int c = 0; c < 4; c++) {
+                        int co = 6 * (LEVEL_START[level + 1] + (2 * j
+                                + (c >> 1)) * 2 * n + 2 * i + (c & 1));
+                        for (int k = 0; k < 3; k++) {
+                            boxes[o + k] = Math.min(boxes[o + k],
+                                    boxes[co + k]);
+                            boxes[o + 3 + k] = Math.max(boxes[o + 3 + k],
+                                    boxes[co + 3 + k]);
+                        }
+                    }
+                }
+            }
+        }
+        //pad so flat patches and pieces still have some thickness
+        double size = Math.max(Math.max(boxes[3] - boxes[0], boxes[4]
+                - boxes[1]), boxes[5] - boxes[2]);
+        double pad = 1e-7 * Math.max(size, 1e-9);
+        for (int b = 0; b < NUM_BOXES; b++) {
+            for (int k = 0; k < 3; k++) {
+                boxes[6 * b + k] -= pad;
+                boxes[6 * b + 3 + k] += pad;
+            }
+        }
+    }
+
+    //control points of the part of a cubic Bezier curve between a and b
+    private static void subCurve(double[] in, int io, int is, double a,
+            double b, double[] out, int oo, int os) {
+        double p0 = in[io], p1 = in[io + is], p2 = in[io + 2 * is];
+        double p3 = in[io + 3 * is];
+        double pa = curve(p0, p1, p2, p3, a);
+        double pb = curve(p0, p1, p2, p3, b);
+        double h = (b - a) / 3;
+        out[oo] = pa;
+        out[oo + os] = pa + h * derivative(p0, p1, p2, p3, a);
+        out[oo + 2 * os] = pb - h * derivative(p0, p1, p2, p3, b);
+        out[oo + 3 * os] = pb;
+    }
+
+    private static double curve(double p0, double p1, double p2, double p3,
+            double t) {
+        double m = 1 - t;
+        return m * m * m * p0 + 3 * t * m * m * p1 + 3 * t * t * m * p2 + t
+                * t * t * p3;
+    }
+
+    private static double derivative(double p0, double p1, double p2,
+            double p3, double t) {
+        double m = 1 - t;
+        return 3 * (m * m * (p1 - p0) + 2 * t * m * (p2 - p1) + t * t * (p3
+                - p2));
     }
 
     /**
-     * implementation of parametric equation for torus
+     * implementation of parametric equation for a bicubic Bezier patch
      */
     protected static class BezierParametric implements ParametricEquation {
 
-        Point3D[] points = new Point3D[16];
+        //control points, x y z for each
+        final double[] cp = new double[48];
 
         /**
          * initializing constructor
@@ -89,11 +635,13 @@ public class BezierPatch extends ParametricObject {
                 throw new IllegalArgumentException("Not Enouigh Points");
             }
             for (int i = 0; i < 16; i++) {
-                points[i] = new Point3D(p[i]);
+                cp[3 * i] = p[i].x;
+                cp[3 * i + 1] = p[i].y;
+                cp[3 * i + 2] = p[i].z;
             }
         }
 
-        //bounds of u and v are both 0-2pi
+        //bounds of u and v are both 0-1
         @Override
         public double getMinU() {
             return 0;
@@ -114,7 +662,7 @@ public class BezierPatch extends ParametricObject {
             return 1;
         }
 
-        //steps are arbitrarily 0.1
+        //steps are arbitrarily 0.05
         @Override
         public double getUStep() {
             return 0.05;
@@ -128,89 +676,19 @@ public class BezierPatch extends ParametricObject {
         //most important two methods here do the actual work
         @Override
         public Point3D getPointAt(double u, double v) {
-            Point3D[] Pu = new Point3D[4];
-            // compute 4 control points along u direction
-            for (int i = 0; i < 4; ++i) {
-                Point3D[] curveP = new Point3D[4];
-                curveP[0] = points[i * 4];
-                curveP[1] = points[i * 4 + 1];
-                curveP[2] = points[i * 4 + 2];
-                curveP[3] = points[i * 4 + 3];
-                Pu[i] = evalBezierCurve(curveP, u);
-            }
-            // compute final position on the surface using v
-            return evalBezierCurve(Pu, v);
-        }
-
-        Point3D evalBezierCurve(Point3D[] P, double t) {
-            double b0 = (1 - t) * (1 - t) * (1 - t);
-            double b1 = 3 * t * (1 - t) * (1 - t);
-            double b2 = 3 * t * t * (1 - t);
-            double b3 = t * t * t;
-            return P[0].mul(b0).add(
-                    new Vector3D(P[1].mul(b1))
-            ).add(
-                    new Vector3D((P[2].mul(b2))).add(new Vector3D(P[3].
-                            mul(b3)))
-            );
-        }
-
-        Vector3D dUBezier(Point3D[] controlPoints, double u, double v) {
-            Point3D[] P = new Point3D[4];
-            Point3D[] vCurve = new Point3D[4];
-            for (int i = 0; i < 4; ++i) {
-                P[0] = controlPoints[i];
-                P[1] = controlPoints[4 + i];
-                P[2] = controlPoints[8 + i];
-                P[3] = controlPoints[12 + i];
-                vCurve[i] = evalBezierCurve(P, v);
-            }
-            double b1 = -3 * (1 - u) * (1 - u);
-            double b2 = (3 * (1 - u) * (1 - u) - 6 * u * (1 - u));
-            double b3 = (6 * u * (1 - u) - 3 * u * u);
-            double b4 = 3 * u * u;
-            Point3D p1 = vCurve[0].mul(b1);
-            Point3D p2 = vCurve[1].mul(b2);
-            Point3D p3 = vCurve[2].mul(b3);
-            Point3D p4 = vCurve[3].mul(b4);
-            return new Vector3D(p1.add(new Vector3D(p2)).add(new Vector3D(p3)).
-                    add(
-                            new Vector3D(p4)));
-        }
-
-        Vector3D dVBezier(Point3D[] controlPoints, double u, double v) {
-            Point3D[] uCurve = new Point3D[4];
-            Point3D[] P = new Point3D[4];
-            for (int i = 0; i < 4; ++i) {
-                P[0] = controlPoints[i];
-                P[1] = controlPoints[1 + i];
-                P[2] = controlPoints[2 + i];
-                P[3] = controlPoints[3 + i];
-                uCurve[i] = evalBezierCurve(P, u);
-            }
-            double b1 = -3 * (1 - v) * (1 - v);
-            double b2 = (3 * (1 - v) * (1 - v) - 6 * v * (1 - v));
-            double b3 = (6 * v * (1 - v) - 3 * v * v);
-            double b4 = 3 * v * v;
-            Point3D p1 = uCurve[0].mul(b1);
-            Point3D p2 = uCurve[1].mul(b2);
-            Point3D p3 = uCurve[2].mul(b3);
-            Point3D p4 = uCurve[3].mul(b4);
-            return new Vector3D(p1.add(new Vector3D(p2)).add(new Vector3D(p3)).
-                    add(
-                            new Vector3D(p4)));
+            double[] s = SCRATCH.get();
+            evaluate(cp, u, v, s);
+            return new Point3D(s[0], s[1], s[2]);
         }
 
         @Override
         public Normal getNormalAt(double u, double v) {
-            Vector3D dv = dVBezier(points, u, v);
-            Vector3D du = dUBezier(points, u, v);
-            Normal n = new Normal(du.cross(dv)).neg();
-            n.normalize();
+            Normal n = new Normal();
+            normal(cp, u, v, SCRATCH.get(), n);
             return n;
         }
 
-        //both closed
+        //both open
         @Override
         public boolean isClosedU() {
             return false;
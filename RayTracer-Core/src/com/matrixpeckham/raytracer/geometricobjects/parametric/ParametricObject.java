@@ -22,8 +22,10 @@ import com.matrixpeckham.raytracer.geometricobjects.triangles.SmoothMeshTriangle
 import com.matrixpeckham.raytracer.util.Normal;
 import com.matrixpeckham.raytracer.util.Point3D;
 import com.matrixpeckham.raytracer.util.Ray;
+import com.matrixpeckham.raytracer.util.RayPacket;
 import com.matrixpeckham.raytracer.util.ShadeRec;
 import com.matrixpeckham.raytracer.util.Vector3D;
+import com.matrixpeckham.raytracer.world.World;
 import java.util.logging.Logger;
 
 /**
@@ -159,12 +161,81 @@ public class ParametricObject extends TriangleMesh {
     ParametricEquation.NormalType normType;
 
     /**
-     * Constructor that takes an equation. Only constructor.
+     * Constructor that takes an equation and tessellates it.
      *
      * @param p
      */
     public ParametricObject(ParametricEquation p) {
+        this(p, true);
+    }
+
+    /**
+     * Constructor that tessellates the equation adaptively, cells are split
+     * until the surface is within tolerance of them and, if edgeLength is more
+     * than 0, their edges are shorter than edgeLength, both in world units.
+     * The steps of the equation only set the size of the starting cells. The
+     * tessellation is shared with other objects made the same way from the
+     * same equation.
+     *
+     * @param p
+     * @param tolerance
+     * @param edgeLength
+     */
+    public ParametricObject(ParametricEquation p, double tolerance,
+            double edgeLength) {
+        this(p, false);
+        useTessellation(AdaptiveTessellation.get(p, tolerance, edgeLength,
+                null, null));
+    }
+
+    /**
+     * Constructor that tessellates the equation adaptively for the view of
+     * the world's camera, like the one above but with tolerance and
+     * edgeLength in pixels, so the parts of the surface far from the camera
+     * get fewer triangles. The object is assumed to be placed in the world
+     * untransformed, and the camera should be set up before this is called.
+     *
+     * @param p
+     * @param w
+     * @param tolerance
+     * @param edgeLength
+     */
+    public ParametricObject(ParametricEquation p, World w, double tolerance,
+            double edgeLength) {
+        this(p, false);
+        useTessellation(AdaptiveTessellation.get(p, tolerance, edgeLength,
+                w.camera, w.vp));
+    }
+
+    /**
+     * Constructor for subclasses that intersect their surface directly and
+     * override the hit functions, when tessellate is false the mesh is left
+     * empty.
+     *
+     * @param p
+     * @param tessellate
+     */
+    protected ParametricObject(ParametricEquation p, boolean tessellate) {
         super();//initializes the triangle mesh to an empty one
+        normType = p.getNormalType();//store for later
+        if (tessellate) {
+            tessellate(p);
+        }
+    }
+
+    /**
+     * copy constructor
+     *
+     * @param o
+     */
+    protected ParametricObject(ParametricObject o) {
+        super(o);
+        normType = o.normType;
+    }
+
+    //samples the equation on a grid and adds the triangles between the
+    //samples to the mesh
+    private void tessellate(ParametricEquation p) {
 
         //convienence variables
         double uMin = p.getMinU();
@@ -176,8 +247,6 @@ public class ParametricObject extends TriangleMesh {
         boolean closedU = p.isClosedU();
         boolean closedV = p.isClosedV();
 
-        normType = p.getNormalType();//store for later
-
         //u and v counts
         int numU = 0;
         int numV = 0;
@@ -264,6 +333,38 @@ public class ParametricObject extends TriangleMesh {
         setupCells();
     }
 
+    //makes triangles on a shared tessellation's mesh
+    private void useTessellation(AdaptiveTessellation t) {
+        mesh = t.mesh;
+        int[] tris = t.triangles;
+        for (int i = 0; i < tris.length; i += 3) {
+            objects.add(new SmoothMeshTriangle(mesh, tris[i], tris[i + 1],
+                    tris[i + 2]));
+        }
+        setupCells();
+    }
+
+    /**
+     * clone, keeps the normal type
+     *
+     * @return
+     */
+    @Override
+    public ParametricObject cloneGeometry() {
+        return new ParametricObject(this);
+    }
+
+    /**
+     * packet hit, one ray at a time so the normal fix up in hit is applied.
+     *
+     * @param packet
+     * @return
+     */
+    @Override
+    public boolean hitPacket(RayPacket packet) {
+        return hitEachRay(packet);
+    }
+
     /**
      * hit function.
      *
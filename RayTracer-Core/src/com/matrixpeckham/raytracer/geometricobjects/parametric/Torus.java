@@ -17,18 +17,58 @@
  */
 package com.matrixpeckham.raytracer.geometricobjects.parametric;
 
+import com.matrixpeckham.raytracer.geometricobjects.csg.CSGShadeRec;
+import com.matrixpeckham.raytracer.materials.Material;
+import com.matrixpeckham.raytracer.util.BBox;
+import com.matrixpeckham.raytracer.util.DoubleRef;
 import com.matrixpeckham.raytracer.util.Normal;
 import com.matrixpeckham.raytracer.util.Point3D;
+import com.matrixpeckham.raytracer.util.Ray;
+import com.matrixpeckham.raytracer.util.RayPacket;
+import com.matrixpeckham.raytracer.util.ShadeRec;
 import com.matrixpeckham.raytracer.util.Utility;
 import com.matrixpeckham.raytracer.util.Vector3D;
+import java.util.ArrayList;
 
 /**
- * Torus class. Is a parametric object.
+ * Torus class. Is a parametric object, but instead of tessellating the
+ * equation it intersects the torus directly with the quartic of the torus
+ * primitive and keeps the hits that are inside the equation's u and v range,
+ * so part tori are exact too.
  *
  * @author William Matrix Peckham
  */
 public class Torus extends ParametricObject {
 
+    /**
+     * the equation, for its radii and u and v range
+     */
+    private final TorusParametric par;
+
+    /**
+     * u and v range of the equation
+     */
+    private final double uMin, uMax, vMin, vMax;
+
+    /**
+     * true if the range covers the whole torus
+     */
+    private final boolean whole;
+
+    /**
+     * bounds of the whole torus
+     */
+    private final BBox bbox;
+
+    //roots and solver scratch for each thread
+    private static final ThreadLocal<double[]> ROOTS
+            = new ThreadLocal<double[]>() {
+        @Override
+        protected double[] initialValue() {
+            return new double[8];
+        }
+    };
+
     /**
      * default constructor
      */
@@ -43,17 +83,177 @@ public class Torus extends ParametricObject {
      * @param b
      */
     public Torus(double a, double b) {
-        super(new TorusParametric(a, b));
+        this(new TorusParametric(a, b));
     }
 
     /**
-     * protected constructor, this is the workhorse constructor, calls
-     * superclass constructor that does the real work
+     * protected constructor, this is the workhorse constructor, subclasses
+     * pass their own equations to limit the u and v ranges.
      *
      * @param par
      */
     protected Torus(TorusParametric par) {
-        super(par);
+        super(par, false);
+        this.par = par;
+        uMin = par.getMinU();
+        uMax = par.getMaxU();
+        vMin = par.getMinV();
+        vMax = par.getMaxV();
+        whole = uMax - uMin >= Utility.TWO_PI && vMax - vMin >= Utility.TWO_PI;
+        double r = par.a + par.b;
+        bbox = new BBox(-r, r, -par.b, par.b, -r, r);
+    }
+
+    /**
+     * copy constructor
+     *
+     * @param t
+     */
+    protected Torus(Torus t) {
+        super(t);
+        par = t.par;
+        uMin = t.uMin;
+        uMax = t.uMax;
+        vMin = t.vMin;
+        vMax = t.vMax;
+        whole = t.whole;
+        bbox = t.bbox;
+        material = t.material;
+    }
+
+    /**
+     * clone
+     *
+     * @return
+     */
+    @Override
+    public Torus cloneGeometry() {
+        return new Torus(this);
+    }
+
+    /**
+     * the torus has no triangles, the material is its own
+     *
+     * @param mat
+     */
+    @Override
+    public void setMaterial(Material mat) {
+        material = mat;
+    }
+
+    @Override
+    public Material getMaterial() {
+        return material;
+    }
+
+    @Override
+    public BBox getBoundingBox() {
+        return bbox;
+    }
+
+    @Override
+    public boolean hitPacket(RayPacket packet) {
+        return hitEachRay(packet);
+    }
+
+    @Override
+    public boolean hit(Ray ray, ShadeRec sr) {
+        double[] roots = ROOTS.get();
+        int n = com.matrixpeckham.raytracer.geometricobjects.primitives.Torus.
+                intersect(par.a, par.b, ray, Utility.EPSILON,
+                        Utility.HUGE_VALUE, roots);
+        for (int i = 0; i < n; i++) {
+            double t = roots[i];
+            Point3D p = sr.localHitPosition;
+            p.setTo(ray.o.x + t * ray.d.x, ray.o.y + t * ray.d.y, ray.o.z + t
+                    * ray.d.z);
+            if (inRange(p)) {
+                sr.lastT = t;
+                com.matrixpeckham.raytracer.geometricobjects.primitives.Torus.
+                        normal(par.a, par.b, p, sr.normal);
+                switch (normType) {
+                    case REGULAR://normal is correct
+                        break;
+                    case REVERSE:
+                        sr.normal.setTo(sr.normal.neg());//reverse the normal
+                        break;
+                    case TWO_SIDE:
+                        if (ray.d.dot(sr.normal) > 0.0) {
+                            //reverse only if we hit the back
+                            sr.normal.setTo(sr.normal.neg());
+                        }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean hit(Ray ray, ArrayList<CSGShadeRec> hits, ShadeRec sr) {
+        double[] roots = ROOTS.get();
+        int n = com.matrixpeckham.raytracer.geometricobjects.primitives.Torus.
+                intersect(par.a, par.b, ray, -Utility.HUGE_VALUE,
+                        Utility.HUGE_VALUE, roots);
+        boolean hit = false;
+        for (int i = 0; i < n; i++) {
+            double t = roots[i];
+            CSGShadeRec s = new CSGShadeRec(sr);
+            s.localHitPosition.setTo(ray.o.x + t * ray.d.x, ray.o.y + t
+                    * ray.d.y, ray.o.z + t * ray.d.z);
+            if (inRange(s.localHitPosition)) {
+                s.lastT = t;
+                com.matrixpeckham.raytracer.geometricobjects.primitives.Torus.
+                        normal(par.a, par.b, s.localHitPosition, s.normal);
+                s.entering = ray.d.dot(s.normal) < 0;
+                hits.add(s);
+                hit = true;
+            }
+        }
+        return hit;
+    }
+
+    @Override
+    public boolean shadowHit(Ray ray, DoubleRef tr) {
+        if (!shadows) {
+            return false;
+        }
+        double[] roots = ROOTS.get();
+        int n = com.matrixpeckham.raytracer.geometricobjects.primitives.Torus.
+                intersect(par.a, par.b, ray, Utility.EPSILON,
+                        Utility.HUGE_VALUE, roots);
+        for (int i = 0; i < n; i++) {
+            double t = roots[i];
+            if (whole || inRange(ray.o.x + t * ray.d.x, ray.o.y + t
+                    * ray.d.y, ray.o.z + t * ray.d.z)) {
+                tr.d = t;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //true if the point on the torus is in the equation's u and v range
+    private boolean inRange(Point3D p) {
+        return whole || inRange(p.x, p.y, p.z);
+    }
+
+    private boolean inRange(double x, double y, double z) {
+        //inverts getPointAt
+        double u = Math.atan2(x, z);
+        double v = Math.atan2(y, Math.sqrt(x * x + z * z) - par.a);
+        return angleInRange(u, uMin, uMax) && angleInRange(v, vMin, vMax);
+    }
+
+    //true if some turn of the angle is in [min, max]
+    private static boolean angleInRange(double angle, double min,
+            double max) {
+        if (max - min >= Utility.TWO_PI) {
+            return true;
+        }
+        double a = angle - min;
+        a -= Utility.TWO_PI * Math.floor(a / Utility.TWO_PI);
+        return a <= max - min;
     }
 
     /**
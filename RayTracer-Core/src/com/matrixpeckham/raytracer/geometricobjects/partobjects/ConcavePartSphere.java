@@ -269,4 +269,15 @@ public class ConcavePartSphere extends GeometricObject {
         return false;
     }
 
+    /**
+     * bounding box, bounds the whole sphere
+     *
+     * @return
+     */
+    @Override
+    public BBox getBoundingBox() {
+        return new BBox(center.x - radius, center.x + radius, center.y - radius,
+                center.y + radius, center.z - radius, center.z + radius);
+    }
+
 }
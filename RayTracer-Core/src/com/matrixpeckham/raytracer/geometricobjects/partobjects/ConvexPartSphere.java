@@ -268,4 +268,15 @@ public class ConvexPartSphere extends GeometricObject {
         return false;
     }
 
+    /**
+     * bounding box, bounds the whole sphere
+     *
+     * @return
+     */
+    @Override
+    public BBox getBoundingBox() {
+        return new BBox(center.x - radius, center.x + radius, center.y - radius,
+                center.y + radius, center.z - radius, center.z + radius);
+    }
+
 }
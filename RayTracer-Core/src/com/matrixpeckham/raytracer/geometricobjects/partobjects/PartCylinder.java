@@ -359,4 +359,14 @@ public class PartCylinder extends GeometricObject {
         return (false);
     }
 
+    /**
+     * bounding box, bounds the whole cylinder
+     *
+     * @return
+     */
+    @Override
+    public BBox getBoundingBox() {
+        return new BBox(-radius, radius, y0, y1, -radius, radius);
+    }
+
 }
@@ -296,4 +296,15 @@ public class PartSphere extends GeometricObject {
         return false;
     }
 
+    /**
+     * bounding box, bounds the whole sphere
+     *
+     * @return
+     */
+    @Override
+    public BBox getBoundingBox() {
+        return new BBox(center.x - radius, center.x + radius, center.y - radius,
+                center.y + radius, center.z - radius, center.z + radius);
+    }
+
 }
@@ -18,7 +18,9 @@
 package com.matrixpeckham.raytracer.geometricobjects.primitives;
 
 import com.matrixpeckham.raytracer.geometricobjects.GeometricObject;
+import com.matrixpeckham.raytracer.geometricobjects.csg.CSGHitList;
 import com.matrixpeckham.raytracer.geometricobjects.csg.CSGShadeRec;
+import com.matrixpeckham.raytracer.geometricobjects.csg.CSGSolid;
 import com.matrixpeckham.raytracer.util.*;
 import java.util.ArrayList;
 import java.util.logging.Logger;
@@ -28,7 +30,7 @@ import java.util.logging.Logger;
  *
  * @author William Matrix Peckham
  */
-public class Box extends GeometricObject {
+public class Box extends GeometricObject implements CSGSolid {
 
     /**
      * low x
@@ -329,6 +331,58 @@ public class Box extends GeometricObject {
         }
     }
 
+    /**
+     * adds where the ray goes in and out of the box, same slabs as the hit
+     * functions without making shade recs
+     *
+     * @param ray
+     * @param hits
+     */
+    @Override
+    public void addCSGHits(Ray ray, CSGHitList hits) {
+        double a = 1.0 / ray.d.x;
+        double b = 1.0 / ray.d.y;
+        double c = 1.0 / ray.d.z;
+        double tx0 = ((a >= 0 ? x0 : x1) - ray.o.x) * a;
+        double tx1 = ((a >= 0 ? x1 : x0) - ray.o.x) * a;
+        double ty0 = ((b >= 0 ? y0 : y1) - ray.o.y) * b;
+        double ty1 = ((b >= 0 ? y1 : y0) - ray.o.y) * b;
+        double tz0 = ((c >= 0 ? z0 : z1) - ray.o.z) * c;
+        double tz1 = ((c >= 0 ? z1 : z0) - ray.o.z) * c;
+
+        //axis of the faces the ray goes in and out through
+        int in = 0;
+        double t0 = tx0;
+        if (ty0 > t0) {
+            t0 = ty0;
+            in = 1;
+        }
+        if (tz0 > t0) {
+            t0 = tz0;
+            in = 2;
+        }
+        int out = 0;
+        double t1 = tx1;
+        if (ty1 < t1) {
+            t1 = ty1;
+            out = 1;
+        }
+        if (tz1 < t1) {
+            t1 = tz1;
+            out = 2;
+        }
+        if (t0 < t1) {
+            double sIn = in == 0 ? a : in == 1 ? b : c;
+            double sOut = out == 0 ? a : out == 1 ? b : c;
+            sIn = sIn >= 0 ? -1 : 1;
+            sOut = sOut >= 0 ? 1 : -1;
+            hits.add(t0, true, in == 0 ? sIn : 0, in == 1 ? sIn : 0,
+                    in == 2 ? sIn : 0, this);
+            hits.add(t1, false, out == 0 ? sOut : 0, out == 1 ? sOut : 0,
+                    out == 2 ? sOut : 0, this);
+        }
+    }
+
     /**
      * private method for transforming an integer index into the proper normal
      *
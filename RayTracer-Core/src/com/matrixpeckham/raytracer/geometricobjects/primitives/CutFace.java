@@ -19,6 +19,7 @@ package com.matrixpeckham.raytracer.geometricobjects.primitives;
 
 import com.matrixpeckham.raytracer.geometricobjects.GeometricObject;
 import com.matrixpeckham.raytracer.geometricobjects.csg.CSGShadeRec;
+import com.matrixpeckham.raytracer.util.BBox;
 import com.matrixpeckham.raytracer.util.DoubleRef;
 import com.matrixpeckham.raytracer.util.Ray;
 import com.matrixpeckham.raytracer.util.ShadeRec;
@@ -232,6 +233,18 @@ public class CutFace extends GeometricObject {
         return (false);
     }
 
+    /**
+     * bounding box, padded a little in y because the face is flat
+     *
+     * @return
+     */
+    @Override
+    public BBox getBoundingBox() {
+        double sizeOnTwo = 0.5 * size;
+        return new BBox(-sizeOnTwo, sizeOnTwo, -Utility.EPSILON,
+                Utility.EPSILON, -sizeOnTwo, sizeOnTwo);
+    }
+
     private static final Logger LOG = Logger.getLogger(CutFace.class
             .getName());
 
@@ -190,22 +190,60 @@ public class Disk extends GeometricObject {
      */
     @Override
     public boolean hit(Ray ray, ShadeRec s) {
+        double t = intersect(ray);
+        if (Double.isNaN(t)) {
+            return false;
+        }
+        fillShadeRec(ray, t, s);
+        return true;
+    }
+
+    /**
+     * splits its hit
+     *
+     * @return
+     */
+    @Override
+    public boolean splitsHit() {
+        return true;
+    }
+
+    /**
+     * intersection with the plane of the disk, if it is in front of the ray
+     * and inside the disk
+     *
+     * @param ray
+     *
+     * @return
+     */
+    @Override
+    public double intersect(Ray ray) {
         //get the intersection of the ray with the plane
         double t = (center.sub(ray.o).dot(normal) / (ray.d.dot(normal)));
         //prevent self intersection noise
         if (t < Utility.EPSILON) {
-            return false;
+            return Double.NaN;
         }
         //find point on plane and check it for distance from center point
         Point3D p = ray.o.add(ray.d.mul(t));
         if (center.distSquared(p) < radius * radius) {
-            s.lastT = t;
-            s.normal.setTo(normal);
-            s.localHitPosition.setTo(p);
-            return true;
-        } else {
-            return false;
+            return t;
         }
+        return Double.NaN;
+    }
+
+    /**
+     * normal and hit point
+     *
+     * @param ray
+     * @param t
+     * @param s
+     */
+    @Override
+    public void fillShadeRec(Ray ray, double t, ShadeRec s) {
+        s.lastT = t;
+        s.normal.setTo(normal);
+        s.localHitPosition.setTo(ray.o.add(ray.d.mul(t)));
     }
 
     /**
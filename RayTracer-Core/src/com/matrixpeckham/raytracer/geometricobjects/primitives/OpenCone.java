@@ -314,6 +314,16 @@ public class OpenCone extends GeometricObject {
         return n;
     }
 
+    /**
+     * bounding box, base on the xz plane, tip at h
+     *
+     * @return
+     */
+    @Override
+    public BBox getBoundingBox() {
+        return new BBox(-r, r, 0, h, -r, r);
+    }
+
     private static final Logger LOG = Logger.getLogger(OpenCone.class.getName());
 
 }
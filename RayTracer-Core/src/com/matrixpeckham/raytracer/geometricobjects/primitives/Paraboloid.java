@@ -378,6 +378,11 @@ public class Paraboloid extends GeometricObject {
         return new BBox();
     }
 
+    @Override
+    public boolean isBounded() {
+        return false;
+    }
+
     private static final Logger LOG = Logger.getLogger(Paraboloid.class.
             getName());
 
@@ -97,17 +97,51 @@ public class Plane extends GeometricObject {
      */
     @Override
     public boolean hit(Ray ray, ShadeRec s) {
-        //intersection point with plane
+        double t = intersect(ray);
+        if (Double.isNaN(t)) {
+            return false;
+        }
+        fillShadeRec(ray, t, s);
+        return true;
+    }
+
+    /**
+     * splits its hit
+     *
+     * @return
+     */
+    @Override
+    public boolean splitsHit() {
+        return true;
+    }
+
+    /**
+     * intersection with the plane, if it is in front of the ray
+     *
+     * @param ray
+     *
+     * @return
+     */
+    @Override
+    public double intersect(Ray ray) {
         double t = a.sub(ray.o).dot(new Vector3D(n)) / (ray.d.dot(
                 new Vector3D(n)));
         //t is greater than eps
-        if (t > EPSILON) {
-            s.lastT = t;
-            s.normal.setTo(n);
-            s.localHitPosition.setTo(ray.o.add(ray.d.mul(t)));
-            return true;
-        }
-        return false;
+        return t > EPSILON ? t : Double.NaN;
+    }
+
+    /**
+     * normal and hit point
+     *
+     * @param ray
+     * @param t
+     * @param s
+     */
+    @Override
+    public void fillShadeRec(Ray ray, double t, ShadeRec s) {
+        s.lastT = t;
+        s.normal.setTo(n);
+        s.localHitPosition.setTo(ray.o.add(ray.d.mul(t)));
     }
 
     /**
@@ -152,6 +186,16 @@ public class Plane extends GeometricObject {
         return t.d > EPSILON;
     }
 
+    /**
+     * planes go on forever, there is no box to cull with
+     *
+     * @return
+     */
+    @Override
+    public boolean isBounded() {
+        return false;
+    }
+
     private static final Logger LOG = Logger.getLogger(Plane.class.getName());
 
 }
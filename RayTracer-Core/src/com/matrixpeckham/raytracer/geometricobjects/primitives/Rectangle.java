@@ -150,7 +150,8 @@ public class Rectangle extends GeometricObject {
     }
 
     /**
-     * gets a bounding box
+     * gets a bounding box, over all four corners so it still holds the
+     * rectangle when a and b aren't along the axes
      *
      * @return
      */
@@ -158,12 +159,14 @@ public class Rectangle extends GeometricObject {
     public BBox getBoundingBox() {
         double delta = 0.0001;
 
-        return (new BBox(Math.min(p0.x, p0.x + a.x + b.x) - delta, Math.
-                max(p0.x, p0.x + a.x + b.x) + delta,
-                Math.min(p0.y, p0.y + a.y + b.y) - delta, Math.max(p0.y, p0.y
-                + a.y + b.y) + delta,
-                Math.min(p0.z, p0.z + a.z + b.z) - delta, Math.max(p0.z, p0.z
-                + a.z + b.z) + delta));
+        //a and b are each either added or not at the extreme corners
+        return (new BBox(
+                p0.x + Math.min(a.x, 0) + Math.min(b.x, 0) - delta,
+                p0.x + Math.max(a.x, 0) + Math.max(b.x, 0) + delta,
+                p0.y + Math.min(a.y, 0) + Math.min(b.y, 0) - delta,
+                p0.y + Math.max(a.y, 0) + Math.max(b.y, 0) + delta,
+                p0.z + Math.min(a.z, 0) + Math.min(b.z, 0) - delta,
+                p0.z + Math.max(a.z, 0) + Math.max(b.z, 0) + delta));
     }
 
     /**
@@ -186,44 +189,76 @@ public class Rectangle extends GeometricObject {
      */
     @Override
     public boolean hit(Ray ray, ShadeRec s) {
+        double t = intersect(ray);
+        if (Double.isNaN(t)) {
+            return false;
+        }
+        fillShadeRec(ray, t, s);
+        return true;
+    }
+
+    /**
+     * splits its hit
+     *
+     * @return
+     */
+    @Override
+    public boolean splitsHit() {
+        return true;
+    }
+
+    /**
+     * intersection with the plane of the rectangle, if it is in front of the
+     * ray and inside the rectangle
+     *
+     * @param ray
+     *
+     * @return
+     */
+    @Override
+    public double intersect(Ray ray) {
         //plane intersection parameter
         double t = p0.sub(ray.o).dot(normal) / ray.d.dot(normal);
         if (t <= Utility.EPSILON || Double.isInfinite(t)) {
-            return false;
+            return Double.NaN;
         }
 
-        //hit point
-        Point3D p = ray.o.add(ray.d.mul(t));
-
         //from point on plane to hit point
-        Vector3D d = p.sub(p0);
+        Vector3D d = ray.o.add(ray.d.mul(t)).sub(p0);
 
         //project onto a
         double ddota = d.dot(a);
         //we're outside of the a direction
         if (ddota < 0 || ddota > aLenSquared) {
-            return false;
+            return Double.NaN;
         }
 
         //project onto b
         double ddotb = d.dot(b);
         //we're outside of the b direction
         if (ddotb < 0 || ddotb > bLenSquared) {
-            return false;
+            return Double.NaN;
         }
-        //if we're here we hit and set shaderec up
+        return t;
+    }
+
+    /**
+     * normal, hit point and texture coordinates
+     *
+     * @param ray
+     * @param t
+     * @param s
+     */
+    @Override
+    public void fillShadeRec(Ray ray, double t, ShadeRec s) {
+        //hit point
+        Point3D p = ray.o.add(ray.d.mul(t));
+        Vector3D d = p.sub(p0);
         s.lastT = t;
-//        if (d.length() != 0) {
-        s.v = ddota / ((aLenSquared));
-        s.u = ddotb / ((bLenSquared));
-        //      } else {
-        //        s.v = 0;
-        //      s.u = 0;
-        //}
-//        System.out.println("UV: " + s.u + " " + s.v);
+        s.v = d.dot(a) / ((aLenSquared));
+        s.u = d.dot(b) / ((bLenSquared));
         s.normal.setTo(normal);
         s.localHitPosition.setTo(p);
-        return true;
     }
 
     /**
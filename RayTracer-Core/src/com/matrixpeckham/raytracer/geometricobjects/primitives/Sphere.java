@@ -18,7 +18,9 @@
 package com.matrixpeckham.raytracer.geometricobjects.primitives;
 
 import com.matrixpeckham.raytracer.geometricobjects.GeometricObject;
+import com.matrixpeckham.raytracer.geometricobjects.csg.CSGHitList;
 import com.matrixpeckham.raytracer.geometricobjects.csg.CSGShadeRec;
+import com.matrixpeckham.raytracer.geometricobjects.csg.CSGSolid;
 import com.matrixpeckham.raytracer.samplers.Sampler;
 import com.matrixpeckham.raytracer.util.*;
 import java.util.ArrayList;
@@ -29,7 +31,7 @@ import java.util.logging.Logger;
  *
  * @author William Matrix Peckham
  */
-public class Sphere extends GeometricObject {
+public class Sphere extends GeometricObject implements CSGSolid {
 
     /**
      * sphere center
@@ -112,38 +114,67 @@ public class Sphere extends GeometricObject {
      */
     @Override
     public boolean hit(Ray ray, ShadeRec sr) {
-        //intersect ray param
-        double t;
+        double t = intersect(ray);
+        if (Double.isNaN(t)) {
+            return false;
+        }
+        fillShadeRec(ray, t, sr);
+        return true;
+    }
+
+    /**
+     * splits its hit
+     *
+     * @return
+     */
+    @Override
+    public boolean splitsHit() {
+        return true;
+    }
 
+    /**
+     * nearest root of the quadratic in front of the ray
+     *
+     * @param ray
+     *
+     * @return
+     */
+    @Override
+    public double intersect(Ray ray) {
         //set up the quadratic for ray parameter
         Vector3D temp = ray.o.sub(center);
         double a = ray.d.dot(ray.d);
         double b = 2.0 * temp.dot(ray.d);
         double c = temp.dot(temp) - radius * radius;
         double disc = b * b - 4.0 * a * c;
-
-        //solves the quadratic equation and sets all the ShadeRec fields
         if (disc < 0) {
-            return false;
-        } else {
-            double e = Math.sqrt(disc);
-            double denom = 2.0 * a;
-            t = (-b - e) / denom;
-            if (t > EPSILON) {
-                sr.lastT = t;
-                sr.normal.setTo(temp.add(ray.d.mul(t)).div(radius));
-                sr.localHitPosition.setTo(ray.o.add(ray.d.mul(t)));
-                return true;
-            }
-            t = (-b + e) / denom;
-            if (t > EPSILON) {
-                sr.lastT = t;
-                sr.normal.setTo(temp.add(ray.d.mul(t)).div(radius));
-                sr.localHitPosition.setTo(ray.o.add(ray.d.mul(t)));
-                return true;
-            }
+            return Double.NaN;
         }
-        return false;
+        double e = Math.sqrt(disc);
+        double denom = 2.0 * a;
+        double t = (-b - e) / denom;
+        if (t > EPSILON) {
+            return t;
+        }
+        t = (-b + e) / denom;
+        if (t > EPSILON) {
+            return t;
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * normal and hit point
+     *
+     * @param ray
+     * @param t
+     * @param sr
+     */
+    @Override
+    public void fillShadeRec(Ray ray, double t, ShadeRec sr) {
+        sr.lastT = t;
+        sr.normal.setTo(ray.o.sub(center).add(ray.d.mul(t)).div(radius));
+        sr.localHitPosition.setTo(ray.o.add(ray.d.mul(t)));
     }
 
     @Override
@@ -181,6 +212,37 @@ public class Sphere extends GeometricObject {
         }
     }
 
+    /**
+     * adds both roots with normals pointing out of the sphere, without making
+     * shade recs
+     *
+     * @param ray
+     * @param hits
+     */
+    @Override
+    public void addCSGHits(Ray ray, CSGHitList hits) {
+        double ox = ray.o.x - center.x;
+        double oy = ray.o.y - center.y;
+        double oz = ray.o.z - center.z;
+        double dx = ray.d.x;
+        double dy = ray.d.y;
+        double dz = ray.d.z;
+        double a = dx * dx + dy * dy + dz * dz;
+        double b = 2.0 * (ox * dx + oy * dy + oz * dz);
+        double c = ox * ox + oy * oy + oz * oz - radius * radius;
+        double disc = b * b - 4.0 * a * c;
+        if (disc <= 0) {
+            return;
+        }
+        double e = Math.sqrt(disc);
+        double t = (-b - e) / (2.0 * a);
+        hits.add(t, true, (ox + t * dx) / radius, (oy + t * dy) / radius,
+                (oz + t * dz) / radius, this);
+        t = (-b + e) / (2.0 * a);
+        hits.add(t, false, (ox + t * dx) / radius, (oy + t * dy) / radius,
+                (oz + t * dz) / radius, this);
+    }
+
     /**
      * getter
      *
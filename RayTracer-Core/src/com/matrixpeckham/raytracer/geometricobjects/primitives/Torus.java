@@ -23,11 +23,11 @@ import com.matrixpeckham.raytracer.util.*;
 import java.util.ArrayList;
 
 /**
- * NOT PUBLIC UNTIL I CAN SPEED UP HIT FUNCTION This class should be the torus
- * primitive, but in porting the quartic solving code I ran into problems I
- * couldn't seem to fix. They appear to be due to roundoff errors. I tried many
- * different things, but the one I have that doesn't have artifacts is extremely
- * slow.
+ * Torus primitive centered on the origin around the y axis, with radius a from
+ * the axis to the middle of the tube and tube radius b. The quartic for the
+ * hits is set up from the point the ray enters the bounding box and solved
+ * with PolynomialSolver, which avoids the roundoff artifacts the closed form
+ * quartic solution had.
  *
  * @author William Matrix Peckham
  */
@@ -39,6 +39,15 @@ public class Torus extends GeometricObject {
 
     private BBox bbox;
 
+    //roots and solver scratch for each thread
+    private static final ThreadLocal<double[]> ROOTS
+            = new ThreadLocal<double[]>() {
+        @Override
+        protected double[] initialValue() {
+            return new double[8];
+        }
+    };
+
     public Torus() {
         this(2, 0.5);
     }
@@ -64,36 +73,108 @@ public class Torus extends GeometricObject {
 
     public Normal computeNormal(Point3D p) {
         Normal normal = new Normal();
+        normal(a, b, p, normal);
+        return (normal);
+    }
+
+    /**
+     * puts the outward unit normal at point p on the torus of radii a and b
+     * centered on the origin around the y axis into n
+     *
+     * @param a
+     * @param b
+     * @param p
+     * @param n
+     */
+    public static void normal(double a, double b, Point3D p, Normal n) {
         double param_squared = a * a + b * b;
 
         double x = p.x;
         double y = p.y;
         double z = p.z;
+        if (a == 0) {
+            //the torus is a sphere, and the gradient below vanishes on it
+            n.x = x;
+            n.y = y;
+            n.z = z;
+            n.normalize();
+            return;
+        }
         double sum_squared = x * x + y * y + z * z;
 
-        normal.x = 4.0 * x * (sum_squared - param_squared);
-        normal.y = 4.0 * y * (sum_squared - param_squared + 2.0 * a * a);
-        normal.z = 4.0 * z * (sum_squared - param_squared);
-        normal.normalize();
+        n.x = 4.0 * x * (sum_squared - param_squared);
+        n.y = 4.0 * y * (sum_squared - param_squared + 2.0 * a * a);
+        n.z = 4.0 * z * (sum_squared - param_squared);
+        n.normalize();
+    }
 
-        return (normal);
+    /**
+     * intersects a ray with the torus of radii a and b centered on the origin
+     * around the y axis. The ray parameters of the hits in [tmin, tmax] are
+     * put into s in increasing order. s must hold at least 8 doubles, the
+     * rest is scratch.
+     *
+     * @param a
+     * @param b
+     * @param ray
+     * @param tmin
+     * @param tmax
+     * @param s
+     * @return number of hits
+     */
+    public static int intersect(double a, double b, Ray ray, double tmin,
+            double tmax, double[] s) {
+        return intersect(a, b, ray.o.x, ray.o.y, ray.o.z, ray.d.x, ray.d.y,
+                ray.d.z, tmin, tmax, s);
     }
 
-    @Override
-    public boolean hit(Ray ray, ShadeRec s) {
-        if (!bbox.hit(ray)) {
-            return (false);
+    /**
+     * same as the ray version, with the ray origin and direction given
+     * separately, so objects made of tori can move the ray without making
+     * a new one
+     *
+     * @param a
+     * @param b
+     * @param x1
+     * @param y1
+     * @param z1
+     * @param d1
+     * @param d2
+     * @param d3
+     * @param tmin
+     * @param tmax
+     * @param s
+     * @return number of hits
+     */
+    public static int intersect(double a, double b, double x1, double y1,
+            double z1, double d1, double d2, double d3, double tmin,
+            double tmax, double[] s) {
+
+        //clip the interval to the bounding box, the roots can't be outside it
+        double r = (a + b) * (1 + 1e-9);
+        double h = b * (1 + 1e-9);
+        double inv = 1.0 / d1;
+        double tx0 = (-r - x1) * inv;
+        double tx1 = (r - x1) * inv;
+        inv = 1.0 / d2;
+        double ty0 = (-h - y1) * inv;
+        double ty1 = (h - y1) * inv;
+        inv = 1.0 / d3;
+        double tz0 = (-r - z1) * inv;
+        double tz1 = (r - z1) * inv;
+        double lo = Math.max(tmin, Math.max(Math.min(tx0, tx1), Math.max(
+                Math.min(ty0, ty1), Math.min(tz0, tz1))));
+        double hi = Math.min(tmax, Math.min(Math.max(tx0, tx1), Math.min(
+                Math.max(ty0, ty1), Math.max(tz0, tz1))));
+        if (!(lo < hi)) {
+            return 0;
         }
 
-        double x1 = ray.o.x;
-        double y1 = ray.o.y;
-        double z1 = ray.o.z;
-        double d1 = ray.d.x;
-        double d2 = ray.d.y;
-        double d3 = ray.d.z;
-
-        double[] coeffs = new double[5];	// coefficient array for the quartic equation
-        double[] roots = new double[4];	// solution array for the quartic equation
+        //move the origin to the start of the interval, the coefficients are
+        //much better conditioned near the torus than far from it
+        x1 += lo * d1;
+        y1 += lo * d2;
+        z1 += lo * d3;
 
         // define the coefficients of the quartic equation
         double sum_d_sqrd = d1 * d1 + d2 * d2 + d3 * d3;
@@ -106,118 +187,48 @@ public class Torus extends GeometricObject {
         double C = 2.0 * sum_d_sqrd * e + 4.0 * f * f + four_a_sqrd * d2 * d2;
         double B = 4.0 * sum_d_sqrd * f;
         double A = sum_d_sqrd * sum_d_sqrd; // coefficient of t^4
-        coeffs[0] = E;
-        coeffs[1] = D;
-        coeffs[2] = C;
-        coeffs[3] = B;
-        coeffs[4] = A;
-
-        boolean intersected = false;
-
-        // find roots of the quartic equation
-        int num_real_roots = Utility.solveQuartic(coeffs, roots);
-        //QuarticAnswer qa = Utility.solveQuartic(A, B,C,D,E);
-        //BruteForceSolver solver = new BruteForceSolver(A, B, C, D, E);
-        //int num_real_roots = solver.solveQuartic(roots);
-
-        double t = Utility.HUGE_VALUE;
 
-        //        if (qa.numRealRoots == 0) // ray misses the torus
-        if (num_real_roots == 0) {
-            return (false);
-        }
-
-        // find the smallest root greater than kEpsilon, if any
-        // the roots array is not sorted
-        //        for (int j = 0; j < qa.numRealRoots; j++) {
-        for (int j = 0; j < num_real_roots; j++) {
-            if (roots[j] > Utility.EPSILON) {
-                intersected = true;
-                if (roots[j] < t) {
-                    t = roots[j];
-                }
-            }
+        int n = PolynomialSolver.solveQuartic(A, B, C, D, E, 0, hi - lo, s);
+        for (int i = 0; i < n; i++) {
+            s[i] += lo;
         }
+        return n;
+    }
 
-        if (!intersected) {
+    @Override
+    public boolean hit(Ray ray, ShadeRec s) {
+        double[] roots = ROOTS.get();
+        if (intersect(a, b, ray, Utility.EPSILON, Utility.HUGE_VALUE, roots)
+                == 0) {
             return (false);
         }
+        double t = roots[0];
 
         s.lastT = t;
-        s.localHitPosition.setTo(ray.o.add(ray.d.mul(t)));
-        s.normal.setTo(computeNormal(s.localHitPosition));
+        s.localHitPosition.setTo(ray.o.x + t * ray.d.x, ray.o.y + t
+                * ray.d.y, ray.o.z + t * ray.d.z);
+        normal(a, b, s.localHitPosition, s.normal);
 
         return (true);
     }
 
     @Override
     public boolean hit(Ray ray, ArrayList<CSGShadeRec> hits, ShadeRec sr) {
-        if (!bbox.hit(ray)) {
-            return (false);
-        }
-
-        double x1 = ray.o.x;
-        double y1 = ray.o.y;
-        double z1 = ray.o.z;
-        double d1 = ray.d.x;
-        double d2 = ray.d.y;
-        double d3 = ray.d.z;
-
-        //double[] coeffs = new double[5];	// coefficient array for the quartic equation
-        double[] roots = new double[4];	// solution array for the quartic equation
-
-        // define the coefficients of the quartic equation
-        double sum_d_sqrd = d1 * d1 + d2 * d2 + d3 * d3;
-        double e = x1 * x1 + y1 * y1 + z1 * z1 - a * a - b * b;
-        double f = x1 * d1 + y1 * d2 + z1 * d3;
-        double four_a_sqrd = 4.0 * a * a;
-
-        double E = e * e - four_a_sqrd * (b * b - y1 * y1); 	// constant term
-        double D = 4.0 * f * e + 2.0 * four_a_sqrd * y1 * d2;
-        double C = 2.0 * sum_d_sqrd * e + 4.0 * f * f + four_a_sqrd * d2 * d2;
-        double B = 4.0 * sum_d_sqrd * f;
-        double A = sum_d_sqrd * sum_d_sqrd; // coefficient of t^4
-        /* coeffs[0] = E;
-         * coeffs[1] = D;
-         * coeffs[2] = C;
-         * coeffs[3] = B;
-         * coeffs[4] = A;
-         */
-        boolean intersected = false;
-
-        // find roots of the quartic equation
-        //int num_real_roots = Utility.solveQuartic(coeffs, roots);
-        //QuarticAnswer qa = Utility.solveQuartic(A, B,C,D,E);
-        BruteForceSolver solver = new BruteForceSolver(A, B, C, D, E);
-        int num_real_roots = solver.solveQuartic(roots);
-
-        double t = Utility.HUGE_VALUE;
-
-        //        if (qa.numRealRoots == 0) // ray misses the torus
-        if (num_real_roots == 0) {
-            return (false);
-        }
-
-        // find the smallest root greater than kEpsilon, if any
-        // the roots array is not sorted
-        //        for (int j = 0; j < qa.numRealRoots; j++) {
-        for (int j = 0; j < num_real_roots; j++) {
-            intersected = true;
+        double[] roots = ROOTS.get();
+        int num_roots = intersect(a, b, ray, -Utility.HUGE_VALUE,
+                Utility.HUGE_VALUE, roots);
+        //the ray goes in and out of the torus in turn
+        for (int j = 0; j < num_roots; j++) {
+            double t = roots[j];
             CSGShadeRec s = new CSGShadeRec(sr);
+            s.entering = j % 2 == 0;
             s.lastT = t;
-            s.localHitPosition.setTo(ray.o.add(ray.d.mul(t)));
-            s.normal.setTo(computeNormal(s.localHitPosition));
+            s.localHitPosition.setTo(ray.o.x + t * ray.d.x, ray.o.y + t
+                    * ray.d.y, ray.o.z + t * ray.d.z);
+            normal(a, b, s.localHitPosition, s.normal);
             hits.add(s);
         }
-        hits.sort((ShadeRec s1, ShadeRec s2) -> {
-            return (int) (s1.lastT - s2.lastT);
-        });
-
-        if (!intersected) {
-            return (false);
-        }
-
-        return (true);
+        return num_roots > 0;
     }
 
     @Override
@@ -225,66 +236,23 @@ public class Torus extends GeometricObject {
         if (!shadows) {
             return false;
         }
-        if (!bbox.hit(ray)) {
+        double[] roots = ROOTS.get();
+        if (intersect(a, b, ray, Utility.EPSILON, Utility.HUGE_VALUE, roots)
+                == 0) {
             return (false);
         }
-
-        double x1 = ray.o.x;
-        double y1 = ray.o.y;
-        double z1 = ray.o.z;
-        double d1 = ray.d.x;
-        double d2 = ray.d.y;
-        double d3 = ray.d.z;
-
-        //double[] coeffs = new double[5];	// coefficient array for the quartic equation
-        double[] roots = new double[4];	// solution array for the quartic equation
-
-        // define the coefficients of the quartic equation
-        double sum_d_sqrd = d1 * d1 + d2 * d2 + d3 * d3;
-        double e = x1 * x1 + y1 * y1 + z1 * z1 - a * a - b * b;
-        double f = x1 * d1 + y1 * d2 + z1 * d3;
-        double four_a_sqrd = 4.0 * a * a;
-
-        /* coeffs[0] = e * e - four_a_sqrd * (b * b - y1 * y1); // constant term
-         * coeffs[1] = 4.0 * f * e + 2.0 * four_a_sqrd * y1 * d2;
-         * coeffs[2] = 2.0 * sum_d_sqrd * e + 4.0 * f * f + four_a_sqrd * d2 *
-         * d2;
-         * coeffs[3] = 4.0 * sum_d_sqrd * f;
-         * coeffs[4] = sum_d_sqrd * sum_d_sqrd; */  					// coefficient of t^4
-        double E = e * e - four_a_sqrd * (b * b - y1 * y1); 	// constant term
-        double D = 4.0 * f * e + 2.0 * four_a_sqrd * y1 * d2;
-        double C = 2.0 * sum_d_sqrd * e + 4.0 * f * f + four_a_sqrd * d2 * d2;
-        double B = 4.0 * sum_d_sqrd * f;
-        double A = sum_d_sqrd * sum_d_sqrd;  					// coefficient of t^4
-
-        // find roots of the quartic equation
-        BruteForceSolver solver = new BruteForceSolver(A, B, C, D, E);
-        int num_real_roots = solver.solveQuartic(roots);
-        boolean intersected = false;
-        double t = Utility.HUGE_VALUE;
-        if (num_real_roots == 0) // ray misses the torus
-        {
-            return (false);
-        }
-
-        // find the smallest root greater than kEpsilon, if any
-        // the roots array is not sorted
-        for (int j = 0; j < num_real_roots; j++) {
-            if (roots[j] > Utility.EPSILON) {
-                intersected = true;
-                if (roots[j] < t) {
-                    t = roots[j];
-                }
-            }
-        }
-
-        if (!intersected) {
-            return (false);
-        }
-
-        tr.d = t;
-
+        tr.d = roots[0];
         return (true);
     }
 
+    /**
+     * returns cached bounding box
+     *
+     * @return
+     */
+    @Override
+    public BBox getBoundingBox() {
+        return bbox;
+    }
+
 }
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2016 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.geometricobjects.triangles;
+
+import com.matrixpeckham.raytracer.geometricobjects.GeometricObject;
+import com.matrixpeckham.raytracer.geometricobjects.csg.CSGShadeRec;
+import com.matrixpeckham.raytracer.util.BBox;
+import com.matrixpeckham.raytracer.util.DoubleRef;
+import com.matrixpeckham.raytracer.util.Point3D;
+import com.matrixpeckham.raytracer.util.Ray;
+import com.matrixpeckham.raytracer.util.RayPacket;
+import com.matrixpeckham.raytracer.util.ShadeRec;
+import com.matrixpeckham.raytracer.util.Utility;
+import java.util.ArrayList;
+import java.util.logging.Logger;
+
+/**
+ * Base of all the triangle classes. Keeps its own copy of the vertex
+ * coordinates and the bounding box, so testing a ray is just a call to
+ * TriangleKernel, and the subclasses only say what a hit looks like through
+ * fillHit: the normal, and texture coordinates if they have them.
+ * <p>
+ * Triangles split their hit, so only the closest triangle interpolates its
+ * normal and texture coordinates.
+ *
+ * @author William Matrix Peckham
+ */
+public abstract class AbstractTriangle extends GeometricObject {
+
+    /**
+     * vertex coordinates
+     */
+    protected double x0, y0, z0, x1, y1, z1, x2, y2, z2;
+
+    /**
+     * bounding box, made when the vertices are set
+     */
+    private BBox bbox = new BBox();
+
+    /**
+     * default constructor
+     */
+    public AbstractTriangle() {
+        super();
+    }
+
+    /**
+     * copy constructor
+     *
+     * @param t
+     */
+    public AbstractTriangle(AbstractTriangle t) {
+        super(t);
+        x0 = t.x0;
+        y0 = t.y0;
+        z0 = t.z0;
+        x1 = t.x1;
+        y1 = t.y1;
+        z1 = t.z1;
+        x2 = t.x2;
+        y2 = t.y2;
+        z2 = t.z2;
+        bbox = new BBox(t.bbox);
+    }
+
+    /**
+     * sets the vertices and the bounding box
+     *
+     * @param a
+     * @param b
+     * @param c
+     */
+    protected final void setVertices(Point3D a, Point3D b, Point3D c) {
+        x0 = a.x;
+        y0 = a.y;
+        z0 = a.z;
+        x1 = b.x;
+        y1 = b.y;
+        z1 = b.z;
+        x2 = c.x;
+        y2 = c.y;
+        z2 = c.z;
+        //padded so round off doesn't make it miss the triangle
+        double delta = padding();
+        bbox = new BBox(Math.min(Math.min(x0, x1), x2) - delta, Math.max(
+                Math.max(x0, x1), x2) + delta, Math.min(Math.min(y0, y1), y2)
+                - delta, Math.max(Math.max(y0, y1), y2) + delta, Math.min(
+                        Math.min(z0, z1), z2) - delta, Math.max(Math.max(z0,
+                                z1), z2) + delta);
+    }
+
+    /**
+     * how much bigger than the triangle the bounding box is
+     *
+     * @return
+     */
+    protected double padding() {
+        return 0.0001;
+    }
+
+    /**
+     * bounding box, made when the vertices were set
+     *
+     * @return
+     */
+    @Override
+    public BBox getBoundingBox() {
+        return bbox;
+    }
+
+    /**
+     * triangles split their hit
+     *
+     * @return
+     */
+    @Override
+    public boolean splitsHit() {
+        return true;
+    }
+
+    /**
+     * ray parameter where the ray crosses the triangle in front of its origin
+     *
+     * @param ray
+     * @return NaN if it doesn't
+     */
+    @Override
+    public final double intersect(Ray ray) {
+        double t = TriangleKernel.intersect(x0, y0, z0, x1, y1, z1, x2, y2, z2,
+                ray.o.x, ray.o.y, ray.o.z, ray.d.x, ray.d.y, ray.d.z, null);
+        return t >= Utility.EPSILON ? t : Double.NaN;
+    }
+
+    /**
+     * fills in a shaderec for a hit at t found by intersect, the barycentric
+     * coordinates are found again for just this one hit
+     *
+     * @param ray
+     * @param t
+     * @param sr
+     */
+    @Override
+    public final void fillShadeRec(Ray ray, double t, ShadeRec sr) {
+        double[] bg = new double[2];
+        TriangleKernel.intersect(x0, y0, z0, x1, y1, z1, x2, y2, z2, ray.o.x,
+                ray.o.y, ray.o.z, ray.d.x, ray.d.y, ray.d.z, bg);
+        fillShadeRec(ray, t, bg, sr);
+    }
+
+    //fills in a shade rec for a hit at t with barycentric coordinates bg
+    private void fillShadeRec(Ray ray, double t, double[] bg, ShadeRec sr) {
+        sr.lastT = t;
+        sr.localHitPosition.setTo(ray.o.x + ray.d.x * t, ray.o.y + ray.d.y * t,
+                ray.o.z + ray.d.z * t);
+        fillHit(sr, bg[0], bg[1]);
+    }
+
+    /**
+     * fills in the normal, and texture coordinates if the triangle has them,
+     * for a hit at the barycentric coordinates of vertex 1 and 2
+     *
+     * @param sr
+     * @param beta
+     * @param gamma
+     */
+    protected abstract void fillHit(ShadeRec sr, double beta, double gamma);
+
+    /**
+     * hit function
+     *
+     * @param ray
+     * @param sr
+     * @return
+     */
+    @Override
+    public boolean hit(Ray ray, ShadeRec sr) {
+        double[] bg = new double[2];
+        double t = TriangleKernel.intersect(x0, y0, z0, x1, y1, z1, x2, y2, z2,
+                ray.o.x, ray.o.y, ray.o.z, ray.d.x, ray.d.y, ray.d.z, bg);
+        if (!(t >= Utility.EPSILON)) {
+            return false;
+        }
+        fillShadeRec(ray, t, bg, sr);
+        return true;
+    }
+
+    /**
+     * adds the hit for CSG, wherever it is along the ray
+     *
+     * @param ray
+     * @param hits
+     * @param sr1
+     * @return
+     */
+    @Override
+    public boolean hit(Ray ray, ArrayList<CSGShadeRec> hits, ShadeRec sr1) {
+        double[] bg = new double[2];
+        double t = TriangleKernel.intersect(x0, y0, z0, x1, y1, z1, x2, y2, z2,
+                ray.o.x, ray.o.y, ray.o.z, ray.d.x, ray.d.y, ray.d.z, bg);
+        if (Double.isNaN(t)) {
+            return false;
+        }
+        CSGShadeRec sr = new CSGShadeRec(sr1);
+        fillShadeRec(ray, t, bg, sr);
+        hits.add(sr);
+        return true;
+    }
+
+    /**
+     * shadow hit
+     *
+     * @param ray
+     * @param tr
+     * @return
+     */
+    @Override
+    public boolean shadowHit(Ray ray, DoubleRef tr) {
+        //early bailout that all implementations have
+        if (!shadows) {
+            return false;
+        }
+        double t = intersect(ray);
+        if (Double.isNaN(t)) {
+            return false;
+        }
+        tr.d = t;
+        return true;
+    }
+
+    /**
+     * packet hit, the rays are read straight from the packet arrays
+     *
+     * @param packet
+     * @return
+     */
+    @Override
+    public boolean hitPacket(RayPacket packet) {
+        double[] bg = new double[2];
+        boolean hit = false;
+        for (long mask = packet.active; mask != 0; mask &= mask - 1) {
+            int lane = Long.numberOfTrailingZeros(mask);
+            double ox = packet.ox[lane];
+            double oy = packet.oy[lane];
+            double oz = packet.oz[lane];
+            double dx = packet.dx[lane];
+            double dy = packet.dy[lane];
+            double dz = packet.dz[lane];
+            double t = TriangleKernel.intersect(x0, y0, z0, x1, y1, z1, x2, y2,
+                    z2, ox, oy, oz, dx, dy, dz, bg);
+            if (!(t >= Utility.EPSILON) || t >= packet.records[lane].lastT) {
+                continue;
+            }
+            ShadeRec sr = packet.scratch();
+            sr.lastT = t;
+            sr.localHitPosition.setTo(ox + dx * t, oy + dy * t, oz + dz * t);
+            fillHit(sr, bg[0], bg[1]);
+            hit |= packet.record(lane, sr, getMaterial());
+        }
+        return hit;
+    }
+
+    private static final Logger LOG
+            = Logger.getLogger(AbstractTriangle.class.getName());
+
+}
@@ -17,27 +17,22 @@
  */
 package com.matrixpeckham.raytracer.geometricobjects.triangles;
 
-import com.matrixpeckham.raytracer.geometricobjects.GeometricObject;
-import com.matrixpeckham.raytracer.util.BBox;
-import com.matrixpeckham.raytracer.util.DoubleRef;
 import com.matrixpeckham.raytracer.util.Mesh;
 import com.matrixpeckham.raytracer.util.Normal;
-import com.matrixpeckham.raytracer.util.Point3D;
-import com.matrixpeckham.raytracer.util.Ray;
-import com.matrixpeckham.raytracer.util.Utility;
+import com.matrixpeckham.raytracer.util.ShadeRec;
 
 /**
  * Class that represents a triangle that is part of a mesh, saves on memory by
- * sharing vertices, normals, and uv coordinates for all vertices. Implements
- * all the methods of geometric object except hit(). Hit() itself is almost
- * nearly identical between implementations, the smooth triangles use
- * interpolate normals instead of using a single one, and the uv ones add uv
- * coordinates to the ShadeRec. unfortunately these two things are not easy to
- * add outside of the hit function.
+ * sharing normals and uv coordinates for all vertices. The vertex positions
+ * are copied out of the mesh when the triangle is made, so hitting it never
+ * goes through the mesh lists, only filling in the closest hit does. The
+ * subclasses only differ in fillHit, the smooth triangles interpolate normals
+ * instead of using a single one, and the uv ones add uv coordinates to the
+ * ShadeRec.
  *
  * @author William Matrix Peckham
  */
-public abstract class MeshTriangle extends GeometricObject {
+public abstract class MeshTriangle extends AbstractTriangle {
 
     /**
      * reference to a mesh that contains the information for the triangle
@@ -71,7 +66,8 @@ public abstract class MeshTriangle extends GeometricObject {
     public double area = 0;
 
     /**
-     * default constructor
+     * default constructor, call updateVertices once the mesh and indices are
+     * set
      */
     public MeshTriangle() {
     }
@@ -90,6 +86,7 @@ public abstract class MeshTriangle extends GeometricObject {
         index0 = i0;
         index1 = i1;
         index2 = i2;
+        updateVertices();
     }
 
     /**
@@ -136,83 +133,41 @@ public abstract class MeshTriangle extends GeometricObject {
     }
 
     /**
-     * bounding box method, calculates the bounding box. we get the coordinates
-     * from the mesh by using the image
-     *
-     * @return
+     * copies the vertex positions from the mesh, needed if the mesh, the
+     * indices, or the positions in the mesh change
      */
-    @Override
-    public BBox getBoundingBox() {
-        double delta = 0.0001;  // to avoid degenerate bounding boxes
-
-        Point3D v1 = new Point3D(mesh.vertices.get(index0));
-        Point3D v2 = new Point3D(mesh.vertices.get(index1));
-        Point3D v3 = new Point3D(mesh.vertices.get(index2));
-
-        return (new BBox(Math.min(Math.min(v1.x, v2.x), v3.x) - delta, Math.max(
-                Math.max(v1.x, v2.x), v3.x) + delta,
-                Math.min(Math.min(v1.y, v2.y), v3.y) - delta, Math.max(Math.max(
-                                v1.y, v2.y), v3.y) + delta,
-                Math.min(Math.min(v1.z, v2.z), v3.z) - delta, Math.max(Math.max(
-                                v1.z, v2.z), v3.z) + delta));
+    public final void updateVertices() {
+        setVertices(mesh.vertices.get(index0), mesh.vertices.get(index1),
+                mesh.vertices.get(index2));
     }
 
     /**
-     * shadow hit, works like Triangle.hit(), but we have to get the vertices
-     * from the indexes
+     * sets dpdu and dpdv of the shade rec from the vertices and texture
+     * coordinates of this triangle, for the ray differentials. Left zero if
+     * the texture coordinates are degenerate.
      *
-     * @param ray
-     * @param tr
-     * @return
+     * @param sr
      */
-    @Override
-    public boolean shadowHit(Ray ray, DoubleRef tr) {
-        //early bailout that all implementations have
-        if (!shadows) {
-            return false;
-        }
-        Point3D v0 = new Point3D(mesh.vertices.get(index0));
-        Point3D v1 = new Point3D(mesh.vertices.get(index1));
-        Point3D v2 = new Point3D(mesh.vertices.get(index2));
-
-        double a = v0.x - v1.x, b = v0.x - v2.x, c = ray.d.x, d = v0.x - ray.o.x;
-        double e = v0.y - v1.y, f = v0.y - v2.y, g = ray.d.y, h = v0.y - ray.o.y;
-        double i = v0.z - v1.z, j = v0.z - v2.z, k = ray.d.z, l = v0.z - ray.o.z;
-
-        double m = f * k - g * j, n = h * k - g * l, p = f * l - h * j;
-        double q = g * i - e * k, s = e * j - f * i;
-
-        double inv_denom = 1.0 / (a * m + b * q + c * s);
-
-        double e1 = d * m - b * n - c * p;
-        double beta = e1 * inv_denom;
-
-        if (beta < 0.0) {
-            return (false);
+    void setUVDerivatives(ShadeRec sr) {
+        double u2 = mesh.u.get(index2);
+        double v2 = mesh.v.get(index2);
+        double du02 = mesh.u.get(index0) - u2;
+        double du12 = mesh.u.get(index1) - u2;
+        double dv02 = mesh.v.get(index0) - v2;
+        double dv12 = mesh.v.get(index1) - v2;
+        double det = du02 * dv12 - dv02 * du12;
+        if (det == 0) {
+            sr.dpdu.setTo(0, 0, 0);
+            sr.dpdv.setTo(0, 0, 0);
+            return;
         }
-
-        double r = e * l - h * i;
-        double e2 = a * n + d * q + c * r;
-        double gamma = e2 * inv_denom;
-
-        if (gamma < 0.0) {
-            return (false);
-        }
-
-        if (beta + gamma > 1.0) {
-            return (false);
-        }
-
-        double e3 = a * p - b * r + d * s;
-        double t = e3 * inv_denom;
-
-        if (t < Utility.EPSILON) {
-            return (false);
-        }
-
-        tr.d = t;
-
-        return (true);
+        double inv = 1 / det;
+        double x02 = x0 - x2, y02 = y0 - y2, z02 = z0 - z2;
+        double x12 = x1 - x2, y12 = y1 - y2, z12 = z1 - z2;
+        sr.dpdu.setTo((dv12 * x02 - dv02 * x12) * inv, (dv12 * y02 - dv02
+                * y12) * inv, (dv12 * z02 - dv02 * z12) * inv);
+        sr.dpdv.setTo((du02 * x12 - du12 * x02) * inv, (du02 * y12 - du12
+                * y02) * inv, (du02 * z12 - du12 * z02) * inv);
     }
 
     /**
@@ -18,9 +18,7 @@
 package com.matrixpeckham.raytracer.geometricobjects.triangles;
 
 import com.matrixpeckham.raytracer.geometricobjects.GeometricObject;
-import com.matrixpeckham.raytracer.geometricobjects.csg.CSGShadeRec;
 import com.matrixpeckham.raytracer.util.*;
-import java.util.ArrayList;
 import java.util.logging.Logger;
 
 /**
@@ -29,7 +27,7 @@ import java.util.logging.Logger;
  *
  * @author William Matrix Peckham
  */
-public class SmoothTriangle extends GeometricObject {
+public class SmoothTriangle extends AbstractTriangle {
 
     /**
      * normal for point 1
@@ -46,26 +44,12 @@ public class SmoothTriangle extends GeometricObject {
      */
     public final Normal n2 = new Normal(0, 1, 0);
 
-    /**
-     * point 1
-     */
-    private final Point3D v0 = new Point3D(0);
-
-    /**
-     * point 2
-     */
-    private final Point3D v1 = new Point3D(0, 0, 1);
-
-    /**
-     * point 3
-     */
-    private final Point3D v2 = new Point3D(1, 0, 0);
-
     /**
      * default constructor
      */
     public SmoothTriangle() {
         super();
+        setVertices(new Point3D(0), new Point3D(0, 0, 1), new Point3D(1, 0, 0));
     }
 
     /**
@@ -77,9 +61,7 @@ public class SmoothTriangle extends GeometricObject {
      */
     public SmoothTriangle(Point3D a, Point3D b, Point3D c) {
         super();
-        v0.setTo(a);
-        v1.setTo(b);
-        v2.setTo(c);
+        setVertices(a, b, c);
     }
 
     /**
@@ -89,9 +71,6 @@ public class SmoothTriangle extends GeometricObject {
      */
     public SmoothTriangle(SmoothTriangle s) {
         super(s);
-        v0.setTo(s.v0);
-        v1.setTo(s.v1);
-        v2.setTo(s.v2);
         n0.setTo(s.n0);
         n1.setTo(s.n1);
         n2.setTo(s.n2);
@@ -108,189 +87,19 @@ public class SmoothTriangle extends GeometricObject {
     }
 
     /**
-     * method interpolates a normal based on the barycentric coordinates
+     * interpolates the vertex normals at the barycentric coordinates
      *
+     * @param sr
      * @param beta
      * @param gamma
-     *
-     * @return
-     */
-    private Normal interpolateNormal(double beta, double gamma) {
-        Normal normal = new Normal(n0.mul(1 - beta - gamma).add(n1.mul(beta)).
-                add(n2.mul(
-                        gamma)));
-        normal.normalize();
-        return normal;
-    }
-
-    /**
-     * bounding box method
-     *
-     * @return
-     */
-    @Override
-    public BBox getBoundingBox() {
-
-        //identical to Triangle.getBoundingBox()
-        double delta = 0.0001;
-
-        return (new BBox(Math.min(Math.min(v0.x, v1.x), v2.x) - delta, Math.max(
-                Math.max(v0.x, v1.x), v2.x) + delta,
-                Math.min(Math.min(v0.y, v1.y), v2.y) - delta, Math.max(Math.max(
-                v0.y, v1.y), v2.y) + delta,
-                Math.min(Math.min(v0.z, v1.z), v2.z) - delta, Math.max(Math.max(
-                v0.z, v1.z), v2.z) + delta));
-    }
-
-    /**
-     * hit function
-     *
-     * @param ray
-     * @param sr
-     *
-     * @return
-     */
-    @Override
-    public boolean hit(Ray ray, ShadeRec sr) {
-        //identical to Triangle.hit() except normal is set to interpolateNormal() instead of normal member.
-        double a = v0.x - v1.x, b = v0.x - v2.x, c = ray.d.x, d = v0.x - ray.o.x;
-        double e = v0.y - v1.y, f = v0.y - v2.y, g = ray.d.y, h = v0.y - ray.o.y;
-        double i = v0.z - v1.z, j = v0.z - v2.z, k = ray.d.z, l = v0.z - ray.o.z;
-
-        double m = f * k - g * j, n = h * k - g * l, p = f * l - h * j;
-        double q = g * i - e * k, s = e * j - f * i;
-
-        double inv_denom = 1.0 / (a * m + b * q + c * s);
-
-        double e1 = d * m - b * n - c * p;
-        double beta = e1 * inv_denom;
-
-        if (beta < 0.0) {
-            return (false);
-        }
-
-        double r = e * l - h * i;
-        double e2 = a * n + d * q + c * r;
-        double gamma = e2 * inv_denom;
-
-        if (gamma < 0.0) {
-            return (false);
-        }
-
-        if (beta + gamma > 1.0) {
-            return (false);
-        }
-
-        double e3 = a * p - b * r + d * s;
-        double t = e3 * inv_denom;
-
-        if (t < Utility.EPSILON) {
-            return (false);
-        }
-
-        sr.lastT = t;
-        sr.normal.setTo(interpolateNormal(beta, gamma));
-        sr.localHitPosition.setTo(ray.o.add(ray.d.mul(t)));
-
-        return (true);
-    }
-
-    @Override
-    public boolean hit(Ray ray, ArrayList<CSGShadeRec> hits, ShadeRec sr1) {
-        //identical to Triangle.hit() except normal is set to interpolateNormal() instead of normal member.
-        double a = v0.x - v1.x, b = v0.x - v2.x, c = ray.d.x, d = v0.x - ray.o.x;
-        double e = v0.y - v1.y, f = v0.y - v2.y, g = ray.d.y, h = v0.y - ray.o.y;
-        double i = v0.z - v1.z, j = v0.z - v2.z, k = ray.d.z, l = v0.z - ray.o.z;
-
-        double m = f * k - g * j, n = h * k - g * l, p = f * l - h * j;
-        double q = g * i - e * k, s = e * j - f * i;
-
-        double inv_denom = 1.0 / (a * m + b * q + c * s);
-
-        double e1 = d * m - b * n - c * p;
-        double beta = e1 * inv_denom;
-
-        if (beta < 0.0) {
-            return (false);
-        }
-
-        double r = e * l - h * i;
-        double e2 = a * n + d * q + c * r;
-        double gamma = e2 * inv_denom;
-
-        if (gamma < 0.0) {
-            return (false);
-        }
-
-        if (beta + gamma > 1.0) {
-            return (false);
-        }
-
-        double e3 = a * p - b * r + d * s;
-        double t = e3 * inv_denom;
-
-        CSGShadeRec sr = new CSGShadeRec(sr1);
-        sr.lastT = t;
-        sr.normal.setTo(interpolateNormal(beta, gamma));
-        sr.localHitPosition.setTo(ray.o.add(ray.d.mul(t)));
-        hits.add(sr);
-        return (true);
-    }
-
-    /**
-     * shadow hit
-     *
-     * @param ray
-     * @param tr
-     *
-     * @return
      */
     @Override
-    public boolean shadowHit(Ray ray, DoubleRef tr) {
-        //early bailout all implementations have.
-        if (!shadows) {
-            return false;
-        }
-
-        //identical to Triangle.shadowHit()
-        double a = v0.x - v1.x, b = v0.x - v2.x, c = ray.d.x, d = v0.x - ray.o.x;
-        double e = v0.y - v1.y, f = v0.y - v2.y, g = ray.d.y, h = v0.y - ray.o.y;
-        double i = v0.z - v1.z, j = v0.z - v2.z, k = ray.d.z, l = v0.z - ray.o.z;
-
-        double m = f * k - g * j, n = h * k - g * l, p = f * l - h * j;
-        double q = g * i - e * k, s = e * j - f * i;
-
-        double inv_denom = 1.0 / (a * m + b * q + c * s);
-
-        double e1 = d * m - b * n - c * p;
-        double beta = e1 * inv_denom;
-
-        if (beta < 0.0) {
-            return (false);
-        }
-
-        double r = e * l - h * i;
-        double e2 = a * n + d * q + c * r;
-        double gamma = e2 * inv_denom;
-
-        if (gamma < 0.0) {
-            return (false);
-        }
-
-        if (beta + gamma > 1.0) {
-            return (false);
-        }
-
-        double e3 = a * p - b * r + d * s;
-        double t = e3 * inv_denom;
-
-        if (t < Utility.EPSILON) {
-            return (false);
-        }
-
-        tr.d = t;
-
-        return (true);
+    protected void fillHit(ShadeRec sr, double beta, double gamma) {
+        double alpha = 1 - beta - gamma;
+        sr.normal.setTo(alpha * n0.x + beta * n1.x + gamma * n2.x, alpha * n0.y
+                + beta * n1.y + gamma * n2.y, alpha * n0.z + beta * n1.z + gamma
+                * n2.z);
+        sr.normal.normalize();
     }
 
     private static final Logger LOG
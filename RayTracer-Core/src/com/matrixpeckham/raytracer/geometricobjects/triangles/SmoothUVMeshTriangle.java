@@ -17,9 +17,7 @@
  */
 package com.matrixpeckham.raytracer.geometricobjects.triangles;
 
-import com.matrixpeckham.raytracer.geometricobjects.csg.CSGShadeRec;
 import com.matrixpeckham.raytracer.util.*;
-import java.util.ArrayList;
 import java.util.logging.Logger;
 
 /**
@@ -55,121 +53,18 @@ public class SmoothUVMeshTriangle extends SmoothMeshTriangle {
     }
 
     /**
-     * hit function, same as Triangle.hit() but looks up indices for vertices
-     * and interpolates both normals and uv coordinates
+     * adds the texture coordinates of a hit
      *
-     * @param ray
      * @param sr
-     *
-     * @return
-     */
-    @Override
-    public boolean hit(Ray ray, ShadeRec sr) {
-        Point3D v0 = new Point3D(mesh.vertices.get(index0));
-        Point3D v1 = new Point3D(mesh.vertices.get(index1));
-        Point3D v2 = new Point3D(mesh.vertices.get(index2));
-
-        double a = v0.x - v1.x, b = v0.x - v2.x, c = ray.d.x, d = v0.x - ray.o.x;
-        double e = v0.y - v1.y, f = v0.y - v2.y, g = ray.d.y, h = v0.y - ray.o.y;
-        double i = v0.z - v1.z, j = v0.z - v2.z, k = ray.d.z, l = v0.z - ray.o.z;
-
-        double m = f * k - g * j, n = h * k - g * l, p = f * l - h * j;
-        double q = g * i - e * k, s = e * j - f * i;
-
-        double inv_denom = 1.0 / (a * m + b * q + c * s);
-
-        double e1 = d * m - b * n - c * p;
-        double beta = e1 * inv_denom;
-
-        if (beta < 0.0) {
-            return (false);
-        }
-
-        double r = e * l - h * i;
-        double e2 = a * n + d * q + c * r;
-        double gamma = e2 * inv_denom;
-
-        if (gamma < 0.0) {
-            return (false);
-        }
-
-        if (beta + gamma > 1.0) {
-            return (false);
-        }
-
-        double e3 = a * p - b * r + d * s;
-        double t = e3 * inv_denom;
-
-        if (t < Utility.EPSILON) {
-            return (false);
-        }
-
-        sr.lastT = t;
-        sr.normal.setTo(interpolateNormal(beta, gamma)); // for smooth shading
-        sr.localHitPosition.setTo(ray.o.add(ray.d.mul(t)));
-        sr.u = interpolateU(beta, gamma);
-        sr.v = interpolateV(beta, gamma);
-
-        return (true);
-    }
-
-    /**
-     * hit function, same as Triangle.hit() but looks up indices for vertices
-     * and interpolates both normals and uv coordinates
-     *
-     * @param ray
-     * @param sr
-     *
-     * @return
+     * @param beta
+     * @param gamma
      */
     @Override
-    public boolean hit(Ray ray, ArrayList<CSGShadeRec> hits, ShadeRec shr) {
-        Point3D v0 = new Point3D(mesh.vertices.get(index0));
-        Point3D v1 = new Point3D(mesh.vertices.get(index1));
-        Point3D v2 = new Point3D(mesh.vertices.get(index2));
-
-        double a = v0.x - v1.x, b = v0.x - v2.x, c = ray.d.x, d = v0.x - ray.o.x;
-        double e = v0.y - v1.y, f = v0.y - v2.y, g = ray.d.y, h = v0.y - ray.o.y;
-        double i = v0.z - v1.z, j = v0.z - v2.z, k = ray.d.z, l = v0.z - ray.o.z;
-
-        double m = f * k - g * j, n = h * k - g * l, p = f * l - h * j;
-        double q = g * i - e * k, s = e * j - f * i;
-
-        double inv_denom = 1.0 / (a * m + b * q + c * s);
-
-        double e1 = d * m - b * n - c * p;
-        double beta = e1 * inv_denom;
-
-        if (beta < 0.0) {
-            return (false);
-        }
-
-        double r = e * l - h * i;
-        double e2 = a * n + d * q + c * r;
-        double gamma = e2 * inv_denom;
-
-        if (gamma < 0.0) {
-            return (false);
-        }
-
-        if (beta + gamma > 1.0) {
-            return (false);
-        }
-
-        double e3 = a * p - b * r + d * s;
-        double t = e3 * inv_denom;
-
-        CSGShadeRec sr = new CSGShadeRec(shr);
-
-        sr.lastT = t;
-        sr.normal.setTo(interpolateNormal(beta, gamma)); // for smooth shading
-        sr.localHitPosition.setTo(ray.o.add(ray.d.mul(t)));
+    protected void fillHit(ShadeRec sr, double beta, double gamma) {
+        super.fillHit(sr, beta, gamma);
         sr.u = interpolateU(beta, gamma);
         sr.v = interpolateV(beta, gamma);
-
-        hits.add(sr);
-
-        return (true);
+        setUVDerivatives(sr);
     }
 
     private static final Logger LOG
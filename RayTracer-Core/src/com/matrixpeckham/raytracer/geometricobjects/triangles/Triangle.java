@@ -18,9 +18,7 @@
 package com.matrixpeckham.raytracer.geometricobjects.triangles;
 
 import com.matrixpeckham.raytracer.geometricobjects.GeometricObject;
-import com.matrixpeckham.raytracer.geometricobjects.csg.CSGShadeRec;
 import com.matrixpeckham.raytracer.util.*;
-import java.util.ArrayList;
 import java.util.logging.Logger;
 
 /**
@@ -29,22 +27,7 @@ import java.util.logging.Logger;
  *
  * @author William Matrix Peckham
  */
-public class Triangle extends GeometricObject {
-
-    /**
-     * point 1
-     */
-    private final Point3D v0 = new Point3D(0, 0, 0);
-
-    /**
-     * point 2
-     */
-    private final Point3D v1 = new Point3D(0, 0, 1);
-
-    /**
-     * point 3
-     */
-    private final Point3D v2 = new Point3D(1, 0, 0);
+public class Triangle extends AbstractTriangle {
 
     /**
      * normal of the triangle
@@ -56,6 +39,8 @@ public class Triangle extends GeometricObject {
      */
     public Triangle() {
         super();
+        setVertices(new Point3D(0, 0, 0), new Point3D(0, 0, 1), new Point3D(1,
+                0, 0));
     }
 
     /**
@@ -67,9 +52,7 @@ public class Triangle extends GeometricObject {
      */
     public Triangle(Point3D a, Point3D b, Point3D c) {
         super();
-        v0.setTo(a);
-        v1.setTo(b);
-        v2.setTo(c);
+        setVertices(a, b, c);
         computeNormal();
     }
 
@@ -80,9 +63,6 @@ public class Triangle extends GeometricObject {
      */
     public Triangle(Triangle t) {
         super(t);
-        v0.setTo(t.v0);
-        v1.setTo(t.v1);
-        v2.setTo(t.v2);
         normal.setTo(t.normal);
     }
 
@@ -101,185 +81,31 @@ public class Triangle extends GeometricObject {
      */
     public final void computeNormal() {
         //cross product of the difference of the points
-        normal.setTo(v1.sub(v0).cross(v2.sub(v0)));
+        normal.setTo(new Vector3D(x1 - x0, y1 - y0, z1 - z0).cross(
+                new Vector3D(x2 - x0, y2 - y0, z2 - z0)));
         normal.normalize();
     }
 
     /**
-     * override the get bounds method
+     * bounds are only slightly larger than the triangle
      *
      * @return
      */
     @Override
-    public BBox getBoundingBox() {
-        //offset so that the bounds are slightly larger than the triangle
-        //prevents roundoff area causeing false negatives
-        double delta = 0.000001;
-        //we simply use the min/max of each of the coordinates of all points
-
-        return (new BBox(Math.min(Math.min(v0.x, v1.x), v2.x) - delta, Math.max(
-                Math.max(v0.x, v1.x), v2.x) + delta,
-                Math.min(Math.min(v0.y, v1.y), v2.y) - delta, Math.max(Math.max(
-                v0.y, v1.y), v2.y) + delta,
-                Math.min(Math.min(v0.z, v1.z), v2.z) - delta, Math.max(Math.max(
-                v0.z, v1.z), v2.z) + delta));
+    protected double padding() {
+        return 0.000001;
     }
 
     /**
-     * hit function
+     * the one normal everywhere
      *
-     * @param ray
      * @param sr
-     *
-     * @return
+     * @param beta
+     * @param gamma
      */
     @Override
-    public boolean hit(Ray ray, ShadeRec sr) {
-
-        //we find the barycentric coordinates where the ray crosses the triangle
-        //plane, then we ensure they are valid in-triangle coordinates
-        //compute locations.
-        double a = v0.x - v1.x, b = v0.x - v2.x, c = ray.d.x, d = v0.x - ray.o.x;
-        double e = v0.y - v1.y, f = v0.y - v2.y, g = ray.d.y, h = v0.y - ray.o.y;
-        double i = v0.z - v1.z, j = v0.z - v2.z, k = ray.d.z, l = v0.z - ray.o.z;
-
-        double m = f * k - g * j, n = h * k - g * l, p = f * l - h * j;
-        double q = g * i - e * k, s = e * j - f * i;
-
-        double inv_denom = 1.0 / (a * m + b * q + c * s);
-
-        double e1 = d * m - b * n - c * p;
-        double beta = e1 * inv_denom;
-
-        if (beta < 0.0) {
-            return (false);
-        }
-
-        double r = e * l - h * i;
-        double e2 = a * n + d * q + c * r;
-        double gamma = e2 * inv_denom;
-
-        if (gamma < 0.0) {
-            return (false);
-        }
-
-        if (beta + gamma > 1.0) {
-            return (false);
-        }
-
-        double e3 = a * p - b * r + d * s;
-        double t = e3 * inv_denom;
-
-        if (t < Utility.EPSILON) {
-            return (false);
-        }
-
-        sr.lastT = t;
-        sr.normal.setTo(normal);
-        sr.localHitPosition.setTo(ray.o.add(ray.d.mul(t)));
-
-        return (true);
-    }
-
-    @Override
-    public boolean hit(Ray ray, ArrayList<CSGShadeRec> hits, ShadeRec sr1) {
-
-        //we find the barycentric coordinates where the ray crosses the triangle
-        //plane, then we ensure they are valid in-triangle coordinates
-        //compute locations.
-        double a = v0.x - v1.x, b = v0.x - v2.x, c = ray.d.x, d = v0.x - ray.o.x;
-        double e = v0.y - v1.y, f = v0.y - v2.y, g = ray.d.y, h = v0.y - ray.o.y;
-        double i = v0.z - v1.z, j = v0.z - v2.z, k = ray.d.z, l = v0.z - ray.o.z;
-
-        double m = f * k - g * j, n = h * k - g * l, p = f * l - h * j;
-        double q = g * i - e * k, s = e * j - f * i;
-
-        double inv_denom = 1.0 / (a * m + b * q + c * s);
-
-        double e1 = d * m - b * n - c * p;
-        double beta = e1 * inv_denom;
-
-        if (beta < 0.0) {
-            return (false);
-        }
-
-        double r = e * l - h * i;
-        double e2 = a * n + d * q + c * r;
-        double gamma = e2 * inv_denom;
-
-        if (gamma < 0.0) {
-            return (false);
-        }
-
-        if (beta + gamma > 1.0) {
-            return (false);
-        }
-
-        double e3 = a * p - b * r + d * s;
-        double t = e3 * inv_denom;
-
-        CSGShadeRec sr = new CSGShadeRec(sr1);
-        sr.lastT = t;
+    protected void fillHit(ShadeRec sr, double beta, double gamma) {
         sr.normal.setTo(normal);
-        sr.localHitPosition.setTo(ray.o.add(ray.d.mul(t)));
-        hits.add(sr);
-        return (true);
-    }
-
-    /**
-     * shadow hit function
-     *
-     * @param ray
-     * @param tr
-     *
-     * @return
-     */
-    @Override
-    public boolean shadowHit(Ray ray, DoubleRef tr) {
-        //early bailout if we don't cast shadows, all shadowHit()'s do this
-        if (!shadows) {
-            return false;
-        }
-
-        //otherwise works the same as hit. doesn't compute hit point
-        double a = v0.x - v1.x, b = v0.x - v2.x, c = ray.d.x, d = v0.x - ray.o.x;
-        double e = v0.y - v1.y, f = v0.y - v2.y, g = ray.d.y, h = v0.y - ray.o.y;
-        double i = v0.z - v1.z, j = v0.z - v2.z, k = ray.d.z, l = v0.z - ray.o.z;
-
-        double m = f * k - g * j, n = h * k - g * l, p = f * l - h * j;
-        double q = g * i - e * k, s = e * j - f * i;
-
-        double inv_denom = 1.0 / (a * m + b * q + c * s);
-
-        double e1 = d * m - b * n - c * p;
-        double beta = e1 * inv_denom;
-
-        if (beta < 0.0) {
-            return (false);
-        }
-
-        double r = e * l - h * i;
-        double e2 = a * n + d * q + c * r;
-        double gamma = e2 * inv_denom;
-
-        if (gamma < 0.0) {
-            return (false);
-        }
-
-        if (beta + gamma > 1.0) {
-            return (false);
-        }
-
-        double e3 = a * p - b * r + d * s;
-        double t = e3 * inv_denom;
-
-        if (t < Utility.EPSILON) {
-            return (false);
-        }
-
-        tr.d = t;
-
-        return (true);
     }
 
     //TODO: this class could be used as an area light, implementation
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2016 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.geometricobjects.triangles;
+
+import java.util.logging.Logger;
+
+/**
+ * Ray triangle intersection shared by all the triangle classes and
+ * MappedTriangleMesh. It is the watertight test of Woop, Benthin and Wald
+ * (2013): the vertices are moved so the ray starts at the origin, then
+ * sheared so it points straight down the axis it goes furthest along, and the
+ * triangle is hit if the ray, now the origin of that plane, is on the same
+ * side of all three of its edges.
+ * <p>
+ * Each edge is tested with the same arithmetic on the same two transformed
+ * vertices whichever triangle it belongs to, just with the sign flipped, so a
+ * ray can't slip between two triangles that share an edge. Rays exactly on an
+ * edge hit both triangles.
+ *
+ * @author William Matrix Peckham
+ */
+public final class TriangleKernel {
+
+    /**
+     * no instances
+     */
+    private TriangleKernel() {
+    }
+
+    /**
+     * intersects a ray with a triangle, from either side
+     *
+     * @param x0
+     * @param y0
+     * @param z0
+     * @param x1
+     * @param y1
+     * @param z1
+     * @param x2
+     * @param y2
+     * @param z2
+     * @param ox
+     * @param oy
+     * @param oz
+     * @param dx
+     * @param dy
+     * @param dz
+     * @param bg gets the barycentric coordinates of vertex 1 and 2 (beta and
+     * gamma) of the hit, may be null
+     * @return ray parameter of the hit, NaN if there isn't one
+     */
+    public static double intersect(double x0, double y0, double z0, double x1,
+            double y1, double z1, double x2, double y2, double z2, double ox,
+            double oy, double oz, double dx, double dy, double dz,
+            double[] bg) {
+        //rotate the axes so z is the one the ray goes furthest along
+        double ax, ay, az, bx, by, bz, cx, cy, cz, rx, ry, rz;
+        double adx = Math.abs(dx);
+        double ady = Math.abs(dy);
+        double adz = Math.abs(dz);
+        if (adx > ady && adx > adz) {
+            ax = y0 - oy;
+            ay = z0 - oz;
+            az = x0 - ox;
+            bx = y1 - oy;
+            by = z1 - oz;
+            bz = x1 - ox;
+            cx = y2 - oy;
+            cy = z2 - oz;
+            cz = x2 - ox;
+            rx = dy;
+            ry = dz;
+            rz = dx;
+        } else if (ady > adz) {
+            ax = z0 - oz;
+            ay = x0 - ox;
+            az = y0 - oy;
+            bx = z1 - oz;
+            by = x1 - ox;
+            bz = y1 - oy;
+            cx = z2 - oz;
+            cy = x2 - ox;
+            cz = y2 - oy;
+            rx = dz;
+            ry = dx;
+            rz = dy;
+        } else {
+            ax = x0 - ox;
+            ay = y0 - oy;
+            az = z0 - oz;
+            bx = x1 - ox;
+            by = y1 - oy;
+            bz = z1 - oz;
+            cx = x2 - ox;
+            cy = y2 - oy;
+            cz = z2 - oz;
+            rx = dx;
+            ry = dy;
+            rz = dz;
+        }
+        if (rz == 0) {
+            //zero direction
+            return Double.NaN;
+        }
+        double sz = 1.0 / rz;
+        double sx = rx * sz;
+        double sy = ry * sz;
+        //shear so the ray is the z axis
+        ax -= sx * az;
+        ay -= sy * az;
+        bx -= sx * bz;
+        by -= sy * bz;
+        cx -= sx * cz;
+        cy -= sy * cz;
+        //edge functions, u for the edge across from vertex 0 and so on, the
+        //ray misses if any two have different signs
+        double u = cx * by - cy * bx;
+        double v = ax * cy - ay * cx;
+        if ((u < 0 && v > 0) || (u > 0 && v < 0)) {
+            return Double.NaN;
+        }
+        double w = bx * ay - by * ax;
+        if ((u < 0 || v < 0 || w < 0) && (u > 0 || v > 0 || w > 0)) {
+            return Double.NaN;
+        }
+        double det = u + v + w;
+        if (det == 0) {
+            //the ray is in the plane of the triangle
+            return Double.NaN;
+        }
+        double inv = 1.0 / det;
+        if (bg != null) {
+            bg[0] = v * inv;
+            bg[1] = w * inv;
+        }
+        return (u * az + v * bz + w * cz) * sz * inv;
+    }
+
+    private static final Logger LOG
+            = Logger.getLogger(TriangleKernel.class.getName());
+
+}
@@ -106,6 +106,7 @@ public class Dielectric extends Phong {
 
         //ray
         Ray reflectedRay = new Ray(sr.hitPoint, wi);
+        sr.reflectDifferentials(reflectedRay);
 
         //reflection color
         final RGBColor Lr = new RGBColor();
@@ -139,6 +140,7 @@ public class Dielectric extends Phong {
 
             //ray
             Ray transmittedRay = new Ray(sr.hitPoint, wt);
+            sr.refractDifferentials(transmittedRay, fresnelBTDF.eta(sr));
 
             //cosine term
             double ndotwt = sr.normal.dot(wt);
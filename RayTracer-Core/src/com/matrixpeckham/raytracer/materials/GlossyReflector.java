@@ -121,6 +121,7 @@ public class GlossyReflector extends Phong {
 
         //ray
         Ray reflectedRay = new Ray(sr.hitPoint, wi);
+        sr.reflectDifferentials(reflectedRay);
 
         //recursive trace and color computation
         L.addLocal(fr.mul(sr.w.tracer.traceRay(reflectedRay, sr.depth + 1)).mul(
@@ -144,6 +145,7 @@ public class GlossyReflector extends Phong {
         DoubleRef pdf = new DoubleRef();
         RGBColor fr = glossySpecularBrdf.sampleF(sr, wo, wi, pdf);
         Ray reflectedRay = new Ray(sr.hitPoint, wi);
+        sr.reflectDifferentials(reflectedRay);
         L.addLocal(fr.mul(sr.w.tracer.traceRay(reflectedRay, sr.depth + 1)).mul(
                 sr.normal.dot(wi) / pdf.d));
 
@@ -165,6 +167,7 @@ public class GlossyReflector extends Phong {
         DoubleRef pdf = new DoubleRef();
         RGBColor fr = glossySpecularBrdf.sampleF(sr, wo, wi, pdf);
         Ray reflectedRay = new Ray(sr.hitPoint, wi);
+        sr.reflectDifferentials(reflectedRay);
         L.addLocal(fr.mul(sr.w.tracer.traceRay(reflectedRay, sr.depth + 1)).mul(
                 sr.normal.dot(wi) / pdf.d));
 
@@ -104,6 +104,7 @@ public class Reflective extends Phong {
         RGBColor fr = perfectBRDF.sampleF(sr, wo, wi);
         //ray
         Ray reflectedRay = new Ray(sr.hitPoint, wi);
+        sr.reflectDifferentials(reflectedRay);
 
         //recurse and calculate color
         L.addLocal(fr.mul(sr.w.tracer.traceRay(reflectedRay, sr.depth + 1).mul(
@@ -134,6 +135,7 @@ public class Reflective extends Phong {
 
         //ray
         Ray reflectedRay = new Ray(sr.hitPoint, wi);
+        sr.reflectDifferentials(reflectedRay);
 
         //recurse and calculate color
         L.addLocal(fr.mul(sr.w.tracer.traceRay(reflectedRay, sr.depth + 1).mul(
@@ -164,6 +166,7 @@ public class Reflective extends Phong {
 
         //ray
         Ray reflectedRay = new Ray(sr.hitPoint, wi);
+        sr.reflectDifferentials(reflectedRay);
 
         //area light hack
         if (sr.depth == 0) {
@@ -108,6 +108,7 @@ public class SV_GlossyReflector extends SV_Phong {
         DoubleRef pdf = new DoubleRef();
         RGBColor fr = glossySpecularBrdf.sampleF(sr, wo, wi, pdf);
         Ray reflectedRay = new Ray(sr.hitPoint, wi);
+        sr.reflectDifferentials(reflectedRay);
         L.addLocal(fr.mul(sr.w.tracer.traceRay(reflectedRay, sr.depth + 1)).mul(
                 sr.normal.dot(wi) / pdf.d));
 
@@ -129,6 +130,7 @@ public class SV_GlossyReflector extends SV_Phong {
         DoubleRef pdf = new DoubleRef();
         RGBColor fr = glossySpecularBrdf.sampleF(sr, wo, wi, pdf);
         Ray reflectedRay = new Ray(sr.hitPoint, wi);
+        sr.reflectDifferentials(reflectedRay);
         L.addLocal(fr.mul(sr.w.tracer.traceRay(reflectedRay, sr.depth + 1)).mul(
                 sr.normal.dot(wi) / pdf.d));
 
@@ -150,6 +152,7 @@ public class SV_GlossyReflector extends SV_Phong {
         DoubleRef pdf = new DoubleRef();
         RGBColor fr = glossySpecularBrdf.sampleF(sr, wo, wi, pdf);
         Ray reflectedRay = new Ray(sr.hitPoint, wi);
+        sr.reflectDifferentials(reflectedRay);
         L.addLocal(fr.mul(sr.w.tracer.traceRay(reflectedRay, sr.depth + 1)).mul(
                 sr.normal.dot(wi) / pdf.d));
 
@@ -105,6 +105,7 @@ public class SV_Reflector extends Phong {
 
         //reflected ray
         Ray reflectedRay = new Ray(sr.hitPoint, wi);
+        sr.reflectDifferentials(reflectedRay);
 
         //trace ray and compute color
         L.addLocal(fr.mul(sr.w.tracer.traceRay(reflectedRay, sr.depth + 1).mul(
@@ -136,6 +137,7 @@ public class SV_Reflector extends Phong {
 
         //ray
         Ray reflectedRay = new Ray(sr.hitPoint, wi);
+        sr.reflectDifferentials(reflectedRay);
 
         //recursive trace and calculate color
         L.addLocal(fr.mul(sr.w.tracer.traceRay(reflectedRay, sr.depth + 1).mul(
@@ -159,6 +161,7 @@ public class SV_Reflector extends Phong {
 
         RGBColor fr = perfectBRDF.sampleF(sr, wo, wi);
         Ray reflectedRay = new Ray(sr.hitPoint, wi);
+        sr.reflectDifferentials(reflectedRay);
         //hack mentioned in book, because area lights have special case for
         //depth 1, we don't let depth one happen here
         if (sr.depth == 0) {
@@ -85,6 +85,7 @@ public class Transparent extends Phong {
         Vector3D wi = new Vector3D();
         RGBColor fr = reflectiveBRDF.sampleF(sr, wo, wi);
         Ray reflectedRay = new Ray(sr.hitPoint, wi);
+        sr.reflectDifferentials(reflectedRay);
         if (specularBTDF.tir(sr)) {
             L.addLocal(sr.w.tracer.traceRay(reflectedRay, sr.depth + 1));
             //kr=1;
@@ -92,6 +93,7 @@ public class Transparent extends Phong {
             Vector3D wt = new Vector3D();
             RGBColor ft = specularBTDF.sampleF(sr, wo, wt);
             Ray transmittedRay = new Ray(sr.hitPoint, wt);
+            sr.refractDifferentials(transmittedRay, specularBTDF.eta(sr));
             L.addLocal(fr.mul(sr.w.tracer.traceRay(reflectedRay, sr.depth + 1)).
                     mul(Math.abs(sr.normal.dot(wi))));
             L.addLocal(ft.
@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2016 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.textures;
+
+import com.matrixpeckham.raytracer.util.RGBColor;
+import com.matrixpeckham.raytracer.util.ShadeRec;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Texture that bakes another, usually procedural, texture into a grid of
+ * texels and interpolates between them. The grid is split into tiles that are
+ * filled the first time a sample lands in them and kept in a least recently
+ * used cache of bounded size shared by all threads, so repeated samples at
+ * nearby points (antialiasing, ambient occlusion, glossy samples) don't
+ * re-evaluate the noise.
+ * <p>
+ * In SPACE mode the texels sit on a 3D lattice in the local hit position with
+ * resolution texels per unit and are interpolated trilinearly. In UV mode they
+ * sit on a 2D lattice in (u, v) with resolution texels per unit of u and v and
+ * are interpolated bilinearly, the baked texture should then depend only on
+ * u and v.
+ *
+ * @author William Matrix Peckham
+ */
+public class BakedTexture implements Texture {
+
+    /**
+     * bake in the local hit position
+     */
+    public static final int SPACE = 0;
+
+    /**
+     * bake in the u, v texture coordinates
+     */
+    public static final int UV = 1;
+
+    /**
+     * cells along each side of a tile
+     */
+    public static final int TILE = 8;
+
+    //samples along each side of a tile, tiles share their border samples so
+    //a cell never needs a neighboring tile
+    private static final int SIDE = TILE + 1;
+
+    //bits for each tile coordinate in a cache key
+    private static final int KEY_BITS = 21;
+
+    private static final long KEY_MASK = (1L << KEY_BITS) - 1;
+
+    /**
+     * the texture that is baked
+     */
+    private final Texture texture;
+
+    /**
+     * SPACE or UV
+     */
+    private final int mode;
+
+    /**
+     * texels per unit
+     */
+    private final double resolution;
+
+    /**
+     * tiles, shared with copies of this texture
+     */
+    private final TileCache cache;
+
+    //last tile each thread used, most samples land in the same tile as the
+    //one before, this skips the lock on the shared cache
+    private final ThreadLocal<Tile> last = new ThreadLocal<Tile>() {
+        @Override
+        protected Tile initialValue() {
+            return new Tile(Long.MIN_VALUE, 0, null);
+        }
+    };
+
+    /**
+     * bakes texture in space at resolution texels per unit, keeping at most
+     * maxTiles tiles.
+     *
+     * @param texture
+     * @param resolution
+     * @param maxTiles
+     */
+    public BakedTexture(Texture texture, double resolution, int maxTiles) {
+        this(texture, SPACE, resolution, maxTiles);
+    }
+
+    /**
+     * bakes texture in the given mode at resolution texels per unit, keeping
+     * at most maxTiles tiles. A 3D tile takes 9*9*9*3 floats, about 8.5KB, a
+     * 2D tile 9*9*3 floats, about 1KB.
+     *
+     * @param texture
+     * @param mode
+     * @param resolution
+     * @param maxTiles
+     */
+    public BakedTexture(Texture texture, int mode, double resolution,
+            int maxTiles) {
+        if (mode != SPACE && mode != UV) {
+            throw new IllegalArgumentException("Unknown bake mode " + mode);
+        }
+        if (resolution <= 0 || maxTiles <= 0) {
+            throw new IllegalArgumentException(
+                    "Resolution and tile count must be positive");
+        }
+        this.texture = texture;
+        this.mode = mode;
+        this.resolution = resolution;
+        this.cache = new TileCache(maxTiles);
+    }
+
+    /**
+     * copy constructor, the copy shares the baked tiles.
+     *
+     * @param t
+     */
+    public BakedTexture(BakedTexture t) {
+        this.texture = t.texture;
+        this.mode = t.mode;
+        this.resolution = t.resolution;
+        this.cache = t.cache;
+    }
+
+    /**
+     * clone
+     *
+     * @return
+     */
+    @Override
+    public Texture cloneTexture() {
+        return new BakedTexture(this);
+    }
+
+    /**
+     * throws away all the baked tiles, to get the memory back. Tiles are
+     * baked again as they are needed. The last tile of every thread is
+     * dropped too, by moving the cache to a new generation.
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+            cache.generation++;
+        }
+    }
+
+    /**
+     * interpolates the baked texels around the hit point
+     *
+     * @param sr
+     * @return
+     */
+    @Override
+    public RGBColor getColor(ShadeRec sr) {
+        double x, y, z;
+        if (mode == UV) {
+            x = sr.u * resolution;
+            y = sr.v * resolution;
+            z = 0;
+        } else {
+            x = sr.localHitPosition.x * resolution;
+            y = sr.localHitPosition.y * resolution;
+            z = sr.localHitPosition.z * resolution;
+        }
+        int cx = (int) Math.floor(x);
+        int cy = (int) Math.floor(y);
+        int cz = (int) Math.floor(z);
+        double fx = x - cx;
+        double fy = y - cy;
+        double fz = z - cz;
+        int tx = Math.floorDiv(cx, TILE);
+        int ty = Math.floorDiv(cy, TILE);
+        int tz = Math.floorDiv(cz, TILE);
+        float[] t = tile(tx, ty, tz, sr);
+
+        int sx = 3;
+        int sy = 3 * SIDE;
+        int sz = 3 * SIDE * SIDE;
+        int i = 3 * (cx - tx * TILE) + sy * (cy - ty * TILE) + sz * (cz - tz
+                * TILE);
+        RGBColor c = new RGBColor();
+        if (mode == UV) {
+            c.r = bilerp(t, i, sx, sy, fx, fy);
+            c.g = bilerp(t, i + 1, sx, sy, fx, fy);
+            c.b = bilerp(t, i + 2, sx, sy, fx, fy);
+        } else {
+            c.r = lerp(fz, bilerp(t, i, sx, sy, fx, fy),
+                    bilerp(t, i + sz, sx, sy, fx, fy));
+            c.g = lerp(fz, bilerp(t, i + 1, sx, sy, fx, fy),
+                    bilerp(t, i + 1 + sz, sx, sy, fx, fy));
+            c.b = lerp(fz, bilerp(t, i + 2, sx, sy, fx, fy),
+                    bilerp(t, i + 2 + sz, sx, sy, fx, fy));
+        }
+        return c;
+    }
+
+    //gets the tile, baking it if it isn't in the cache
+    private float[] tile(int tx, int ty, int tz, ShadeRec sr) {
+        long key = (tx & KEY_MASK) | (ty & KEY_MASK) << KEY_BITS | (tz
+                & KEY_MASK) << 2 * KEY_BITS;
+        int generation = cache.generation;
+        Tile l = last.get();
+        if (l.key == key && l.generation == generation) {
+            return l.texels;
+        }
+        float[] texels;
+        synchronized (cache) {
+            texels = cache.get(key);
+        }
+        if (texels == null) {
+            //bake outside the lock, if two threads race for a tile they bake
+            //the same texels and the second just replaces the first
+            texels = bake(tx, ty, tz, sr);
+            synchronized (cache) {
+                cache.put(key, texels);
+            }
+        }
+        last.set(new Tile(key, generation, texels));
+        return texels;
+    }
+
+    //samples the texture at every lattice point of a tile
+    private float[] bake(int tx, int ty, int tz, ShadeRec sr) {
+        int sides = mode == UV ? 1 : SIDE;
+        float[] texels = new float[3 * SIDE * SIDE * sides];
+        ShadeRec s = new ShadeRec(sr);
+        int i = 0;
+        for (int k = 0; k < sides; k++) {
+            for (int j = 0; j < SIDE; j++) {
+                for (int n = 0; n < SIDE; n++) {
+                    double x = (tx * TILE + n) / resolution;
+                    double y = (ty * TILE + j) / resolution;
+                    if (mode == UV) {
+                        s.u = x;
+                        s.v = y;
+                    } else {
+                        double z = (tz * TILE + k) / resolution;
+                        s.localHitPosition.setTo(x, y, z);
+                    }
+                    RGBColor c = texture.getColor(s);
+                    texels[i++] = (float) c.r;
+                    texels[i++] = (float) c.g;
+                    texels[i++] = (float) c.b;
+                }
+            }
+        }
+        return texels;
+    }
+
+    //bilinear interpolation in one slice of a tile
+    private static double bilerp(float[] t, int i, int sx, int sy, double fx,
+            double fy) {
+        return lerp(fy, lerp(fx, t[i], t[i + sx]), lerp(fx, t[i + sy],
+                t[i + sy + sx]));
+    }
+
+    private static double lerp(double f, double a, double b) {
+        return a + f * (b - a);
+    }
+
+    /**
+     * a tile, its key and the cache generation it came from
+     */
+    private static final class Tile {
+
+        final long key;
+
+        final int generation;
+
+        final float[] texels;
+
+        Tile(long key, int generation, float[] texels) {
+            this.key = key;
+            this.generation = generation;
+            this.texels = texels;
+        }
+
+    }
+
+    /**
+     * least recently used tiles, must be locked to use
+     */
+    private static final class TileCache extends LinkedHashMap<Long, float[]> {
+
+        private final int maxTiles;
+
+        //bumped by clear, last tiles from an older generation are stale
+        volatile int generation = 0;
+
+        TileCache(int maxTiles) {
+            super(16, 0.75f, true);
+            this.maxTiles = maxTiles;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, float[]> eldest) {
+            return size() > maxTiles;
+        }
+
+    }
+
+    private static final Logger LOG
+            = Logger.getLogger(BakedTexture.class.getName());
+
+}
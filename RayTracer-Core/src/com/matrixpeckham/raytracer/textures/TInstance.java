@@ -81,6 +81,24 @@ public class TInstance implements Texture {
         texture = obj;
     }
 
+    /**
+     * getter for the inner texture
+     *
+     * @return
+     */
+    public Texture getTexture() {
+        return texture;
+    }
+
+    /**
+     * inverse of the current transform, for TextureCompiler
+     *
+     * @return
+     */
+    Matrix getInverseMatrix() {
+        return invMatrix;
+    }
+
     /**
      * clone
      *
@@ -274,20 +292,41 @@ public class TInstance implements Texture {
     }
 
     /**
-     * Sample texture
+     * Sample texture. The hit point is transformed in place and put back
+     * afterwards instead of copying the shaderec, so stacks of texture
+     * instances don't allocate anything per lookup.
      *
      * @param sr
      * @return
      */
     @Override
     public RGBColor getColor(ShadeRec sr) {
-        //copy shadrec
-        ShadeRec local = new ShadeRec(sr);
+        Point3D p = sr.localHitPosition;
+        double px = p.x, py = p.y, pz = p.z;
+        Vector3D dx = sr.dpdx;
+        Vector3D dy = sr.dpdy;
+        double dxx = dx.x, dxy = dx.y, dxz = dx.z;
+        double dyx = dy.x, dyy = dy.y, dyz = dy.z;
         //transform local hit point by inverse matrix
-        local.localHitPosition.setTo(Point3D.mul(invMatrix,
-                local.localHitPosition));
-        //forward translated shaderec to inner texture
-        return texture.getColor(local);
+        double[][] m = invMatrix.m;
+        p.setTo(m[0][0] * px + m[0][1] * py + m[0][2] * pz + m[0][3],
+                m[1][0] * px + m[1][1] * py + m[1][2] * pz + m[1][3],
+                m[2][0] * px + m[2][1] * py + m[2][2] * pz + m[2][3]);
+        //and the footprint, for filtered textures
+        dx.setTo(m[0][0] * dxx + m[0][1] * dxy + m[0][2] * dxz,
+                m[1][0] * dxx + m[1][1] * dxy + m[1][2] * dxz,
+                m[2][0] * dxx + m[2][1] * dxy + m[2][2] * dxz);
+        dy.setTo(m[0][0] * dyx + m[0][1] * dyy + m[0][2] * dyz,
+                m[1][0] * dyx + m[1][1] * dyy + m[1][2] * dyz,
+                m[2][0] * dyx + m[2][1] * dyy + m[2][2] * dyz);
+        try {
+            //forward translated shaderec to inner texture
+            return texture.getColor(sr);
+        } finally {
+            p.setTo(px, py, pz);
+            dx.setTo(dxx, dxy, dxz);
+            dy.setTo(dyx, dyy, dyz);
+        }
     }
 
     private static final Logger LOG
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2016 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.textures;
+
+import com.matrixpeckham.raytracer.textures.procedural.NestedNoisesTexture;
+import com.matrixpeckham.raytracer.textures.procedural.SphereTextures;
+import com.matrixpeckham.raytracer.util.Matrix;
+import com.matrixpeckham.raytracer.util.Point3D;
+import com.matrixpeckham.raytracer.util.RGBColor;
+import com.matrixpeckham.raytracer.util.ShadeRec;
+import com.matrixpeckham.raytracer.util.Vector3D;
+import java.util.logging.Logger;
+
+/**
+ * Flattens a finished texture tree into a smaller one that does the same
+ * thing with fewer calls per lookup. Call it in a build function once a
+ * texture is fully set up, and hand the result to the material:
+ * <ul>
+ * <li>chains of texture instances become one transform, with the composed
+ * inverse matrix stored as twelve doubles,</li>
+ * <li>identity transforms are dropped,</li>
+ * <li>transforms of a constant color become the constant color,</li>
+ * <li>the inner textures of nested noise and sphere textures are compiled
+ * too.</li>
+ * </ul>
+ * The result is a snapshot, later changes to the original tree don't reach it.
+ * Textures the compiler doesn't know are kept as they are.
+ *
+ * @author William Matrix Peckham
+ */
+public final class TextureCompiler {
+
+    private TextureCompiler() {
+    }
+
+    /**
+     * compiles a texture tree
+     *
+     * @param t
+     * @return
+     */
+    public static Texture compile(Texture t) {
+        if (t instanceof TInstance) {
+            return compileInstance((TInstance) t);
+        }
+        if (t instanceof Transform) {
+            return t;
+        }
+        if (t instanceof NestedNoisesTexture) {
+            NestedNoisesTexture n = (NestedNoisesTexture) t;
+            if (n.getTexture() == null) {
+                return t;
+            }
+            NestedNoisesTexture c = new NestedNoisesTexture(n);
+            c.setTexture(compile(n.getTexture()));
+            return c;
+        }
+        if (t instanceof SphereTextures) {
+            SphereTextures s = (SphereTextures) t;
+            SphereTextures c = new SphereTextures(s);
+            if (s.getTexture1() != null) {
+                c.setTexture1(compile(s.getTexture1()));
+            }
+            if (s.getTexture2() != null) {
+                c.setTexture2(compile(s.getTexture2()));
+            }
+            if (s.getLineColor() != null) {
+                c.setLineColor(compile(s.getLineColor()));
+            }
+            return c;
+        }
+        return t;
+    }
+
+    //composes the inverse matrices down a chain of instances and compiles
+    //the texture at the bottom
+    private static Texture compileInstance(TInstance t) {
+        Matrix m = new Matrix();
+        Texture inner = t;
+        while (inner instanceof TInstance) {
+            TInstance i = (TInstance) inner;
+            if (i.getTexture() == null) {
+                return t;
+            }
+            //the outer inverse is applied first
+            m = i.getInverseMatrix().mul(m);
+            inner = i.getTexture();
+        }
+        inner = compile(inner);
+        if (inner instanceof ConstantColor) {
+            return inner;
+        }
+        if (inner instanceof Transform) {
+            Transform i = (Transform) inner;
+            m = i.matrix().mul(m);
+            inner = i.texture;
+        }
+        if (isIdentity(m)) {
+            return inner;
+        }
+        return new Transform(m, inner);
+    }
+
+    private static boolean isIdentity(Matrix m) {
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                if (m.m[i][j] != (i == j ? 1 : 0)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * compiled texture instance, transforms the hit point and footprint in
+     * place by an affine matrix and restores them after the lookup.
+     */
+    private static final class Transform implements Texture {
+
+        //rows of the inverse matrix, the bottom row is always 0 0 0 1
+        private final double m00, m01, m02, m03;
+
+        private final double m10, m11, m12, m13;
+
+        private final double m20, m21, m22, m23;
+
+        private final Texture texture;
+
+        Transform(Matrix m, Texture texture) {
+            m00 = m.m[0][0];
+            m01 = m.m[0][1];
+            m02 = m.m[0][2];
+            m03 = m.m[0][3];
+            m10 = m.m[1][0];
+            m11 = m.m[1][1];
+            m12 = m.m[1][2];
+            m13 = m.m[1][3];
+            m20 = m.m[2][0];
+            m21 = m.m[2][1];
+            m22 = m.m[2][2];
+            m23 = m.m[2][3];
+            this.texture = texture;
+        }
+
+        Matrix matrix() {
+            Matrix m = new Matrix();
+            m.m[0][0] = m00;
+            m.m[0][1] = m01;
+            m.m[0][2] = m02;
+            m.m[0][3] = m03;
+            m.m[1][0] = m10;
+            m.m[1][1] = m11;
+            m.m[1][2] = m12;
+            m.m[1][3] = m13;
+            m.m[2][0] = m20;
+            m.m[2][1] = m21;
+            m.m[2][2] = m22;
+            m.m[2][3] = m23;
+            return m;
+        }
+
+        /**
+         * compiled textures don't change, so copies can share them
+         *
+         * @return
+         */
+        @Override
+        public Texture cloneTexture() {
+            return this;
+        }
+
+        @Override
+        public RGBColor getColor(ShadeRec sr) {
+            Point3D p = sr.localHitPosition;
+            double px = p.x, py = p.y, pz = p.z;
+            Vector3D dx = sr.dpdx;
+            Vector3D dy = sr.dpdy;
+            double dxx = dx.x, dxy = dx.y, dxz = dx.z;
+            double dyx = dy.x, dyy = dy.y, dyz = dy.z;
+            p.setTo(m00 * px + m01 * py + m02 * pz + m03,
+                    m10 * px + m11 * py + m12 * pz + m13,
+                    m20 * px + m21 * py + m22 * pz + m23);
+            dx.setTo(m00 * dxx + m01 * dxy + m02 * dxz,
+                    m10 * dxx + m11 * dxy + m12 * dxz,
+                    m20 * dxx + m21 * dxy + m22 * dxz);
+            dy.setTo(m00 * dyx + m01 * dyy + m02 * dyz,
+                    m10 * dyx + m11 * dyy + m12 * dyz,
+                    m20 * dyx + m21 * dyy + m22 * dyz);
+            try {
+                return texture.getColor(sr);
+            } finally {
+                p.setTo(px, py, pz);
+                dx.setTo(dxx, dxy, dxz);
+                dy.setTo(dyx, dyy, dyz);
+            }
+        }
+
+    }
+
+    private static final Logger LOG
+            = Logger.getLogger(TextureCompiler.class.getName());
+
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2016 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.textures.image;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Coverage texture holding the glyphs of one font. Each glyph is drawn through
+ * AWT once, the first time it is asked for, and packed into rows of a single
+ * float texture, 1 where the glyph is inked and 0 where it isn't. Atlases are
+ * shared by everything that uses the same font.
+ * <p>
+ * A glyph's cell is its advance wide and a line high, with a margin of PAD
+ * texels on every side so the parts of the glyph that hang past its advance
+ * or the line aren't cut off. Texel (x, y) of a cell is x - PAD texels right
+ * of the pen position and y - PAD texels down from the top of the line.
+ *
+ * @author William Matrix Peckham
+ */
+public final class GlyphAtlas {
+
+    //width of the texture in texels
+    private static final int WIDTH = 1024;
+
+    //atlases for each font
+    private static final ConcurrentHashMap<Font, GlyphAtlas> ATLASES
+            = new ConcurrentHashMap<>();
+
+    /**
+     * font the glyphs are drawn in
+     */
+    private final Font font;
+
+    /**
+     * metrics of the font
+     */
+    private final FontMetrics metrics;
+
+    /**
+     * margin around each cell
+     */
+    private final int pad;
+
+    /**
+     * glyphs drawn so far
+     */
+    private final HashMap<Character, Glyph> glyphs = new HashMap<>();
+
+    /**
+     * coverage texels, WIDTH to a row. Replaced by a taller copy when the
+     * rows fill up, so lookups never see a half built texture.
+     */
+    private volatile float[] texels = new float[0];
+
+    //top of the row being filled, its height, and the first free column
+    private int rowY = 0;
+
+    private int rowHeight = 0;
+
+    private int rowX = 0;
+
+    /**
+     * the atlas of a font
+     *
+     * @param font
+     * @return
+     */
+    public static GlyphAtlas get(Font font) {
+        GlyphAtlas a = ATLASES.get(font);
+        if (a == null) {
+            ATLASES.putIfAbsent(font, new GlyphAtlas(font));
+            a = ATLASES.get(font);
+        }
+        return a;
+    }
+
+    private GlyphAtlas(Font font) {
+        this.font = font;
+        Graphics2D g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).
+                createGraphics();
+        g.setFont(font);
+        metrics = g.getFontMetrics();
+        g.dispose();
+        pad = Math.max(1, font.getSize() / 4);
+    }
+
+    /**
+     * metrics of the atlas's font
+     *
+     * @return
+     */
+    public FontMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * height of a line of text
+     *
+     * @return
+     */
+    public int getLineHeight() {
+        return metrics.getHeight();
+    }
+
+    /**
+     * margin around each cell
+     *
+     * @return
+     */
+    public int getPad() {
+        return pad;
+    }
+
+    /**
+     * gets a glyph, drawing it into the atlas if this is the first time it is
+     * asked for
+     *
+     * @param c
+     * @return
+     */
+    public synchronized Glyph getGlyph(char c) {
+        Glyph g = glyphs.get(c);
+        if (g == null) {
+            g = draw(c);
+            glyphs.put(c, g);
+        }
+        return g;
+    }
+
+    /**
+     * coverage of texel (x, y) of a glyph's cell, 0 outside the glyph's ink
+     *
+     * @param g
+     * @param x
+     * @param y
+     * @return
+     */
+    public float coverage(Glyph g, int x, int y) {
+        if (x < g.inkLeft || x > g.inkRight || y < g.inkTop
+                || y > g.inkBottom) {
+            return 0;
+        }
+        return texels[(g.y + y) * WIDTH + g.x + x];
+    }
+
+    //draws a glyph through AWT and copies it into a free spot of the texture
+    private Glyph draw(char c) {
+        int advance = metrics.charWidth(c);
+        int w = Math.min(advance + 2 * pad, WIDTH);
+        int h = metrics.getHeight() + 2 * pad;
+        BufferedImage img = new BufferedImage(w, h,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D gr = img.createGraphics();
+        gr.setFont(font);
+        gr.setColor(Color.WHITE);
+        gr.fillRect(0, 0, w, h);
+        gr.setColor(Color.BLACK);
+        gr.drawString(String.valueOf(c), pad, pad + metrics.getAscent());
+        gr.dispose();
+
+        float[] cov = new float[w * h];
+        int left = w;
+        int right = -1;
+        int top = h;
+        int bottom = -1;
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int rgb = img.getRGB(x, y);
+                double avg = (((rgb >> 16) & 0xff) + ((rgb >> 8) & 0xff)
+                        + (rgb & 0xff)) / (3 * 255.0);
+                cov[y * w + x] = (float) (1 - avg);
+                if (avg < 1) {
+                    left = Math.min(left, x);
+                    right = Math.max(right, x);
+                    top = Math.min(top, y);
+                    bottom = Math.max(bottom, y);
+                }
+            }
+        }
+
+        if (rowX + w > WIDTH) {
+            rowY += rowHeight;
+            rowX = 0;
+            rowHeight = 0;
+        }
+        Glyph g = new Glyph(rowX, rowY, w, h, advance, left, right, top,
+                bottom);
+        rowX += w;
+        rowHeight = Math.max(rowHeight, h);
+        float[] t = texels;
+        if ((rowY + rowHeight) * WIDTH > t.length) {
+            float[] n = new float[Math.max(2 * t.length, (rowY + rowHeight)
+                    * WIDTH)];
+            System.arraycopy(t, 0, n, 0, t.length);
+            t = n;
+        }
+        for (int y = 0; y < h; y++) {
+            System.arraycopy(cov, y * w, t, (g.y + y) * WIDTH + g.x, w);
+        }
+        texels = t;
+        return g;
+    }
+
+    /**
+     * a glyph's cell in the atlas
+     */
+    public static final class Glyph {
+
+        //corner of the cell in the texture
+        final int x;
+
+        final int y;
+
+        /**
+         * size of the cell, the advance and line height plus the margins
+         */
+        public final int width;
+
+        public final int height;
+
+        /**
+         * how far the pen moves past this glyph
+         */
+        public final int advance;
+
+        /**
+         * bounds of the inked texels of the cell, inclusive. Left is past
+         * right for glyphs with no ink.
+         */
+        public final int inkLeft;
+
+        public final int inkRight;
+
+        public final int inkTop;
+
+        public final int inkBottom;
+
+        Glyph(int x, int y, int width, int height, int advance, int inkLeft,
+                int inkRight, int inkTop, int inkBottom) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.advance = advance;
+            this.inkLeft = inkLeft;
+            this.inkRight = inkRight;
+            this.inkTop = inkTop;
+            this.inkBottom = inkBottom;
+        }
+
+    }
+
+    private static final Logger LOG
+            = Logger.getLogger(GlyphAtlas.class.getName());
+
+}
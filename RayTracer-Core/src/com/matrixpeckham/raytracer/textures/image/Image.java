@@ -51,6 +51,12 @@ public class Image {
      */
     private final ArrayList<RGBColor> pixels = new ArrayList<>();
 
+    /**
+     * mip map pyramids for each way of wrapping, made the first time they're
+     * asked for
+     */
+    private final MipMap[] mipMaps = new MipMap[4];
+
     /**
      * default constructor (blank image, size (100,100) returns all RED.
      */
@@ -298,6 +304,34 @@ public class Image {
 	}
     }
 
+    /**
+     * gets the mip map pyramid of this image that clamps at the edges, shared
+     * by every texture that uses the image. The image must be loaded before
+     * this is called.
+     *
+     * @return
+     */
+    public MipMap getMipMap() {
+	return getMipMap(false, false);
+    }
+
+    /**
+     * gets the mip map pyramid of this image that wraps columns, rows or
+     * both around instead of clamping them, shared by every texture that
+     * uses the image the same way.
+     *
+     * @param wrapU
+     * @param wrapV
+     * @return
+     */
+    public synchronized MipMap getMipMap(boolean wrapU, boolean wrapV) {
+	int i = (wrapU ? 1 : 0) + (wrapV ? 2 : 0);
+	if (mipMaps[i] == null) {
+	    mipMaps[i] = new MipMap(this, wrapU, wrapV);
+	}
+	return mipMaps[i];
+    }
+
     /**
      * getter
      *
@@ -18,8 +18,10 @@
 package com.matrixpeckham.raytracer.textures.image;
 
 import com.matrixpeckham.raytracer.textures.Texture;
+import com.matrixpeckham.raytracer.util.Point3D;
 import com.matrixpeckham.raytracer.util.RGBColor;
 import com.matrixpeckham.raytracer.util.ShadeRec;
+import com.matrixpeckham.raytracer.util.Vector3D;
 import java.util.logging.Logger;
 
 /**
@@ -29,6 +31,33 @@ import java.util.logging.Logger;
  */
 public class ImageTexture implements Texture {
 
+    /**
+     * the texel the hit point falls in, the default
+     */
+    public static final int NEAREST = 0;
+
+    /**
+     * bilinear interpolation of the full size image
+     */
+    public static final int BILINEAR = 1;
+
+    /**
+     * bilinear interpolation of the two mip map levels nearest the size of
+     * the pixel footprint, blended
+     */
+    public static final int TRILINEAR = 2;
+
+    /**
+     * several trilinear probes along the long axis of the pixel footprint,
+     * at the level of the short axis, for surfaces seen at grazing angles
+     */
+    public static final int ANISOTROPIC = 3;
+
+    /**
+     * most probes an anisotropic lookup takes
+     */
+    private static final int MAX_PROBES = 8;
+
     /**
      * horizontal size of image (default 100)
      */
@@ -49,6 +78,32 @@ public class ImageTexture implements Texture {
      */
     private Mapping mapping = null;
 
+    /**
+     * how lookups are filtered
+     */
+    private int filter = NEAREST;
+
+    /**
+     * if filtered lookups wrap across the u edges of the image instead of
+     * clamping, also on when the mapping wraps in u
+     */
+    private boolean wrapU = false;
+
+    /**
+     * if filtered lookups wrap across the v edges of the image instead of
+     * clamping
+     */
+    private boolean wrapV = false;
+
+    //per thread uv and color sums for the filtered lookups
+    private static final ThreadLocal<double[]> SCRATCH
+            = new ThreadLocal<double[]>() {
+        @Override
+        protected double[] initialValue() {
+            return new double[5];
+        }
+    };
+
     /**
      * default constructor.
      */
@@ -84,6 +139,9 @@ public class ImageTexture implements Texture {
         if (i.mapping != null) {
             mapping = i.mapping.cloneMapping();
         }
+        filter = i.filter;
+        wrapU = i.wrapU;
+        wrapV = i.wrapV;
     }
 
     /**
@@ -106,6 +164,34 @@ public class ImageTexture implements Texture {
         mapping = map;
     }
 
+    /**
+     * sets how lookups are filtered, NEAREST, BILINEAR, TRILINEAR or
+     * ANISOTROPIC. The mip mapped filters size their footprint from the
+     * texture coordinate derivatives in the shade rec.
+     *
+     * @param filter
+     */
+    public void setFilter(int filter) {
+        if (filter < NEAREST || filter > ANISOTROPIC) {
+            throw new IllegalArgumentException("Unknown filter " + filter);
+        }
+        this.filter = filter;
+    }
+
+    /**
+     * sets if filtered lookups wrap around the edges of the image, for
+     * texture coordinates that tile the image, instead of clamping to them.
+     * Lookups clamp by default, a mapping that goes around a seam in u wraps
+     * in u whatever this says.
+     *
+     * @param u
+     * @param v
+     */
+    public void setWrap(boolean u, boolean v) {
+        wrapU = u;
+        wrapV = v;
+    }
+
     /**
      * clone
      *
@@ -124,18 +210,134 @@ public class ImageTexture implements Texture {
      */
     @Override
     public RGBColor getColor(ShadeRec sr) {
-        TexelCoord point = new TexelCoord();
+        if (filter != NEAREST) {
+            return filtered(sr);
+        }
+        int row;
+        int col;
 
         //if a mapping exists we get the texel coordinate from the mapping
         if (mapping != null) {
-            point.setTo(mapping.getTexelCoordinate(sr.localHitPosition, hRes,
-                    vRes));
+            double[] uv = SCRATCH.get();
+            mapping.getUV(sr.localHitPosition, uv);
+            col = (int) ((hRes - 1) * uv[0]);
+            row = (int) ((vRes - 1) * uv[1]);
         } else {
             //otherwise we use the u, v coordinates in the shade rec.
-            point.row = (int) (sr.v * (vRes - 1));
-            point.col = (int) (sr.u * (hRes - 1));
+            row = (int) (sr.v * (vRes - 1));
+            col = (int) (sr.u * (hRes - 1));
+        }
+        return image.getColor(row, col);
+    }
+
+    //filtered lookup through the mip map
+    private RGBColor filtered(ShadeRec sr) {
+        double[] s = SCRATCH.get();
+        double dudx = sr.dudx;
+        double dvdx = sr.dvdx;
+        double dudy = sr.dudy;
+        double dvdy = sr.dvdy;
+        if (mapping != null) {
+            mapping.getUV(sr.localHitPosition, s);
+            if (filter != BILINEAR && dudx == 0 && dvdx == 0 && dudy == 0
+                    && dvdy == 0) {
+                //mappings have no derivatives, difference the mapping across
+                //the footprint instead
+                double u = s[0];
+                double v = s[1];
+                footprint(sr.localHitPosition, sr.dpdx, s);
+                dudx = wrap(s[0] - u);
+                dvdx = wrap(s[1] - v);
+                footprint(sr.localHitPosition, sr.dpdy, s);
+                dudy = wrap(s[0] - u);
+                dvdy = wrap(s[1] - v);
+                s[0] = u;
+                s[1] = v;
+            }
+        } else {
+            s[0] = sr.u;
+            s[1] = sr.v;
+        }
+        double u = s[0];
+        double v = s[1];
+        s[2] = 0;
+        s[3] = 0;
+        s[4] = 0;
+        MipMap map = image.getMipMap(wrapU || mapping != null && mapping.
+                wrapsU(), wrapV);
+
+        //footprint axes in texels of the full size image
+        double ax = dudx * (hRes - 1);
+        double ay = dvdx * (vRes - 1);
+        double bx = dudy * (hRes - 1);
+        double by = dvdy * (vRes - 1);
+        double a = Math.sqrt(ax * ax + ay * ay);
+        double b = Math.sqrt(bx * bx + by * by);
+
+        if (filter == BILINEAR) {
+            probe(map, 0, u, v, 1, s);
+        } else if (filter == TRILINEAR || a == 0 || b == 0) {
+            probe(map, lod(map, Math.max(a, b)), u, v, 1, s);
+        } else {
+            //make a the long axis
+            if (a < b) {
+                double t = a;
+                a = b;
+                b = t;
+                ax = bx;
+                ay = by;
+            }
+            int n = Math.min(MAX_PROBES, (int) Math.ceil(a / b));
+            double lod = lod(map, a / n);
+            double du = ax / (hRes - 1);
+            double dv = ay / (vRes - 1);
+            for (int i = 0; i < n; i++) {
+                double t = (i + 0.5) / n - 0.5;
+                probe(map, lod, u + t * du, v + t * dv, 1.0 / n, s);
+            }
+        }
+        return new RGBColor(s[2], s[3], s[4]);
+    }
+
+    //mapped coordinates of p + d into uv, (0, 0) change when d is zero
+    private void footprint(Point3D p, Vector3D d, double[] uv) {
+        if (d.x == 0 && d.y == 0 && d.z == 0) {
+            mapping.getUV(p, uv);
+        } else {
+            mapping.getUV(new Point3D(p.x + d.x, p.y + d.y, p.z + d.z), uv);
         }
-        return image.getColor(point.row, point.col);
+    }
+
+    //shortest change across the seam of a mapping that wraps around
+    private static double wrap(double d) {
+        return d > 0.5 ? d - 1 : d < -0.5 ? d + 1 : d;
+    }
+
+    //mip map level for a footprint of width texels
+    private static double lod(MipMap map, double width) {
+        if (width <= 1) {
+            return 0;
+        }
+        return Math.min(Math.log(width) / Math.log(2), map.getLevels() - 1);
+    }
+
+    //adds weight times the trilinear lookup at (u, v) to s[2], s[3], s[4]
+    private static void probe(MipMap map, double lod, double u, double v,
+            double weight, double[] s) {
+        int l = (int) lod;
+        double t = lod - l;
+        bilinear(map, l, u, v, weight * (1 - t), s);
+        if (t > 0) {
+            bilinear(map, l + 1, u, v, weight * t, s);
+        }
+    }
+
+    //bilinear lookup of one level at normalized coordinates
+    private static void bilinear(MipMap map, int level, double u, double v,
+            double weight, double[] s) {
+        double x = u * (map.getWidth(level) - 1);
+        double y = v * (map.getHeight(level) - 1);
+        map.addBilinear(level, x, y, weight, s, 2);
     }
 
     private static final Logger LOG
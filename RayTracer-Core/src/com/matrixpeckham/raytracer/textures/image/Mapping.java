@@ -43,4 +43,23 @@ public interface Mapping {
      * @return
      */
     public TexelCoord getTexelCoordinate(Point3D hitPoint, int xRes, int yRes);
+
+    /**
+     * puts the normalized texture coordinates of the point, 0-1 across the
+     * image, in uv[0] and uv[1]. getTexelCoordinate picks the texel these
+     * fall in, filtered lookups interpolate around them.
+     *
+     * @param hitPoint
+     * @param uv
+     */
+    public void getUV(Point3D hitPoint, double[] uv);
+
+    /**
+     * true if u goes around a seam, like the angle around a sphere, so
+     * filtered lookups wrap across the u edges of the image instead of
+     * clamping to them.
+     *
+     * @return
+     */
+    public boolean wrapsU();
 }
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2016 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.textures.image;
+
+import com.matrixpeckham.raytracer.util.RGBColor;
+import java.util.logging.Logger;
+
+/**
+ * Mip map pyramid of an image. Level 0 is the image, every level after it is
+ * half the size of the one before, box filtered, down to a single texel.
+ * <p>
+ * Levels are stored as square tiles of float RGB texels that are built the
+ * first time they are used and kept in the TextureCache, so only the parts of
+ * the pyramid that are actually looked at take memory, and the texels of a
+ * lookup sit next to each other. Texel (x, y) of a level is column x, row y
+ * in the image's row order.
+ * <p>
+ * Each direction either clamps to the edge of the image, or wraps around to
+ * the other side for images that tile or close up along a seam. Lookups and
+ * the box filter of the smaller levels both follow it.
+ *
+ * @author William Matrix Peckham
+ */
+public final class MipMap {
+
+    /**
+     * texels along each side of a tile
+     */
+    public static final int TILE = 32;
+
+    //slots in each thread's table of recently used tiles
+    private static final int RECENT = 64;
+
+    /**
+     * image the pyramid is built from
+     */
+    private final Image image;
+
+    /**
+     * width of each level
+     */
+    private final int[] widths;
+
+    /**
+     * height of each level
+     */
+    private final int[] heights;
+
+    /**
+     * if columns wrap around instead of clamping
+     */
+    private final boolean wrapU;
+
+    /**
+     * if rows wrap around instead of clamping
+     */
+    private final boolean wrapV;
+
+    //recently used tiles of each thread, looked up by a hash of the tile so
+    //most texel fetches don't go to the shared cache
+    private final ThreadLocal<Recent[]> recent = new ThreadLocal<Recent[]>() {
+        @Override
+        protected Recent[] initialValue() {
+            Recent[] r = new Recent[RECENT];
+            for (int i = 0; i < RECENT; i++) {
+                r[i] = new Recent();
+            }
+            return r;
+        }
+    };
+
+    /**
+     * builds the level sizes for the image, texels are built as needed
+     *
+     * @param image
+     * @param wrapU
+     * @param wrapV
+     */
+    MipMap(Image image, boolean wrapU, boolean wrapV) {
+        this.image = image;
+        this.wrapU = wrapU;
+        this.wrapV = wrapV;
+        int w = Math.max(1, image.getHres());
+        int h = Math.max(1, image.getVres());
+        int n = 1;
+        while (w >> n > 0 || h >> n > 0) {
+            n++;
+        }
+        widths = new int[n];
+        heights = new int[n];
+        for (int l = 0; l < n; l++) {
+            widths[l] = Math.max(1, w >> l);
+            heights[l] = Math.max(1, h >> l);
+        }
+    }
+
+    /**
+     * number of levels
+     *
+     * @return
+     */
+    public int getLevels() {
+        return widths.length;
+    }
+
+    /**
+     * width of a level
+     *
+     * @param level
+     * @return
+     */
+    public int getWidth(int level) {
+        return widths[level];
+    }
+
+    /**
+     * height of a level
+     *
+     * @param level
+     * @return
+     */
+    public int getHeight(int level) {
+        return heights[level];
+    }
+
+    /**
+     * adds weight times the bilinear interpolation of the level at texel
+     * coordinates (x, y) to out[off], out[off+1], out[off+2]. Texel centers
+     * are at integer coordinates, lookups past the edge clamp or wrap the
+     * way this pyramid was made for.
+     *
+     * @param level
+     * @param x
+     * @param y
+     * @param weight
+     * @param out
+     * @param off
+     */
+    public void addBilinear(int level, double x, double y, double weight,
+            double[] out, int off) {
+        int w = widths[level];
+        int h = heights[level];
+        double xf = Math.floor(x);
+        double yf = Math.floor(y);
+        double fx = x - xf;
+        double fy = y - yf;
+        int x0 = texel((int) xf, w, wrapU);
+        int y0 = texel((int) yf, h, wrapV);
+        int x1 = texel((int) xf + 1, w, wrapU);
+        int y1 = texel((int) yf + 1, h, wrapV);
+        double w00 = weight * (1 - fx) * (1 - fy);
+        double w10 = weight * fx * (1 - fy);
+        double w01 = weight * (1 - fx) * fy;
+        double w11 = weight * fx * fy;
+        addTexel(level, x0, y0, w00, out, off);
+        addTexel(level, x1, y0, w10, out, off);
+        addTexel(level, x0, y1, w01, out, off);
+        addTexel(level, x1, y1, w11, out, off);
+    }
+
+    //index i of a row or column n texels long, wrapped or clamped into it
+    private static int texel(int i, int n, boolean wrap) {
+        if (wrap) {
+            return Math.floorMod(i, n);
+        }
+        return Math.min(Math.max(i, 0), n - 1);
+    }
+
+    //adds weight times a texel to out[off], out[off+1], out[off+2]
+    private void addTexel(int level, int x, int y, double weight,
+            double[] out, int off) {
+        if (weight == 0) {
+            return;
+        }
+        float[] t = tile(level, x / TILE, y / TILE);
+        int i = 3 * (x % TILE + TILE * (y % TILE));
+        out[off] += weight * t[i];
+        out[off + 1] += weight * t[i + 1];
+        out[off + 2] += weight * t[i + 2];
+    }
+
+    //gets a tile from this thread's recent tiles, then the shared cache, and
+    //builds it if neither has it
+    private float[] tile(int level, int tx, int ty) {
+        Recent[] r = recent.get();
+        Recent e = r[(((level * 31) + tx) * 31 + ty) & (RECENT - 1)];
+        if (e.texels != null && e.level == level && e.tx == tx
+                && e.ty == ty) {
+            return e.texels;
+        }
+        float[] texels = TextureCache.get(this, level, tx, ty);
+        if (texels == null) {
+            texels = build(level, tx, ty);
+            TextureCache.put(this, level, tx, ty, texels);
+        }
+        e.level = level;
+        e.tx = tx;
+        e.ty = ty;
+        e.texels = texels;
+        return texels;
+    }
+
+    //fills a tile, from the image for level 0 and from the level below for
+    //the rest. Texels of a partial tile past the edge of the level are left
+    //black, they are never read.
+    private float[] build(int level, int tx, int ty) {
+        float[] t = new float[3 * TILE * TILE];
+        int w = widths[level];
+        int h = heights[level];
+        int xEnd = Math.min(TILE, w - tx * TILE);
+        int yEnd = Math.min(TILE, h - ty * TILE);
+        double[] c = new double[3];
+        for (int j = 0; j < yEnd; j++) {
+            for (int i = 0; i < xEnd; i++) {
+                int x = tx * TILE + i;
+                int y = ty * TILE + j;
+                int k = 3 * (i + TILE * j);
+                if (level == 0) {
+                    RGBColor p = image.getColor(y, x);
+                    t[k] = (float) p.r;
+                    t[k + 1] = (float) p.g;
+                    t[k + 2] = (float) p.b;
+                } else {
+                    //average the 2x2 texels of the level below, clamped or
+                    //wrapped at its edge when it has an odd size
+                    int pw = widths[level - 1];
+                    int ph = heights[level - 1];
+                    int x0 = texel(2 * x, pw, wrapU);
+                    int x1 = texel(2 * x + 1, pw, wrapU);
+                    int y0 = texel(2 * y, ph, wrapV);
+                    int y1 = texel(2 * y + 1, ph, wrapV);
+                    c[0] = 0;
+                    c[1] = 0;
+                    c[2] = 0;
+                    addTexel(level - 1, x0, y0, 0.25, c, 0);
+                    addTexel(level - 1, x1, y0, 0.25, c, 0);
+                    addTexel(level - 1, x0, y1, 0.25, c, 0);
+                    addTexel(level - 1, x1, y1, 0.25, c, 0);
+                    t[k] = (float) c[0];
+                    t[k + 1] = (float) c[1];
+                    t[k + 2] = (float) c[2];
+                }
+            }
+        }
+        return t;
+    }
+
+    /**
+     * slot in a thread's table of recent tiles
+     */
+    private static final class Recent {
+
+        int level;
+
+        int tx;
+
+        int ty;
+
+        float[] texels;
+
+    }
+
+    private static final Logger LOG = Logger.getLogger(MipMap.class.getName());
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2016 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.textures.image;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Global cache of mip map tiles. Holds the most recently used tiles of all the
+ * mip maps up to a memory budget and drops the least recently used ones past
+ * it, dropped tiles are rebuilt from the image when they are needed again.
+ * <p>
+ * The budget is 64MB unless the raytracer.texturecache system property gives
+ * another size in megabytes, or setBudget is called.
+ *
+ * @author William Matrix Peckham
+ */
+public final class TextureCache {
+
+    /**
+     * tiles in least recently used order
+     */
+    private static final LinkedHashMap<Key, float[]> TILES
+            = new LinkedHashMap<>(256, 0.75f, true);
+
+    /**
+     * bytes the cache may hold
+     */
+    private static long budget = Long.getLong("raytracer.texturecache", 64)
+            * 1024 * 1024;
+
+    /**
+     * bytes the cache holds
+     */
+    private static long size = 0;
+
+    private TextureCache() {
+    }
+
+    /**
+     * sets the memory budget in bytes, drops tiles if the cache is over it.
+     *
+     * @param bytes
+     */
+    public static synchronized void setBudget(long bytes) {
+        budget = bytes;
+        trim();
+    }
+
+    /**
+     * memory budget in bytes
+     *
+     * @return
+     */
+    public static synchronized long getBudget() {
+        return budget;
+    }
+
+    /**
+     * bytes held by the cache
+     *
+     * @return
+     */
+    public static synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * drops all the tiles
+     */
+    public static synchronized void clear() {
+        TILES.clear();
+        size = 0;
+    }
+
+    /**
+     * gets a tile, null if it isn't cached
+     *
+     * @param map
+     * @param level
+     * @param tx
+     * @param ty
+     * @return
+     */
+    static synchronized float[] get(MipMap map, int level, int tx, int ty) {
+        return TILES.get(new Key(map, level, tx, ty));
+    }
+
+    /**
+     * adds a tile, dropping old ones if needed to stay in budget
+     *
+     * @param map
+     * @param level
+     * @param tx
+     * @param ty
+     * @param texels
+     */
+    static synchronized void put(MipMap map, int level, int tx, int ty,
+            float[] texels) {
+        float[] old = TILES.put(new Key(map, level, tx, ty), texels);
+        if (old != null) {
+            size -= 4L * old.length;
+        }
+        size += 4L * texels.length;
+        trim();
+    }
+
+    //drops least recently used tiles until the cache is in budget
+    private static void trim() {
+        Iterator<Map.Entry<Key, float[]>> it = TILES.entrySet().iterator();
+        while (size > budget && it.hasNext()) {
+            size -= 4L * it.next().getValue().length;
+            it.remove();
+        }
+    }
+
+    /**
+     * identifies a tile
+     */
+    private static final class Key {
+
+        final MipMap map;
+
+        final int level;
+
+        final int tx;
+
+        final int ty;
+
+        Key(MipMap map, int level, int tx, int ty) {
+            this.map = map;
+            this.level = level;
+            this.tx = tx;
+            this.ty = ty;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return map == k.map && level == k.level && tx == k.tx && ty
+                    == k.ty;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = System.identityHashCode(map);
+            h = 31 * h + level;
+            h = 31 * h + tx;
+            return 31 * h + ty;
+        }
+
+    }
+
+    private static final Logger LOG
+            = Logger.getLogger(TextureCache.class.getName());
+
+}
@@ -50,8 +50,24 @@ public class CylindricalMap implements Mapping {
      */
     @Override
     public TexelCoord getTexelCoordinate(Point3D hitPoint, int xRes, int yRes) {
+        double[] uv = new double[2];
+        getUV(hitPoint, uv);
+
+        //find texel based on normalized coordinates
         TexelCoord p = new TexelCoord();
+        p.col = (int) ((xRes - 1) * uv[0]);
+        p.row = (int) ((yRes - 1) * uv[1]);
+        return p;
+    }
 
+    /**
+     * normalized texture coordinates
+     *
+     * @param hitPoint
+     * @param uv
+     */
+    @Override
+    public void getUV(Point3D hitPoint, double[] uv) {
         //compute angle around cylinder
         double phi = Math.atan2(hitPoint.x, hitPoint.z);
         if (phi < 0) {
@@ -59,16 +75,22 @@ public class CylindricalMap implements Mapping {
         }
 
         //normalize angle
-        double u = phi * Utility.INV_2_PI;
+        uv[0] = phi * Utility.INV_2_PI;
 
         //generic cylinder goes from -1-1 normalize y coordinte
-        double v = (hitPoint.y + 1) / 2;//1.0 - theta*Utility.INV_PI;
+        uv[1] = (hitPoint.y + 1) / 2;
+    }
 
-        //get texel
-        p.col = (int) ((xRes - 1) * u);
-        p.row = (int) ((yRes - 1) * v);
-        return p;
+    /**
+     * u is the angle around the cylinder, it wraps at the seam
+     *
+     * @return
+     */
+    @Override
+    public boolean wrapsU() {
+        return true;
     }
+
     private static final Logger LOG
             = Logger.getLogger(CylindricalMap.class.getName());
 
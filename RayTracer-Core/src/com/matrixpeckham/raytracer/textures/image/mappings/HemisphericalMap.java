@@ -50,8 +50,24 @@ public class HemisphericalMap implements Mapping {
      */
     @Override
     public TexelCoord getTexelCoordinate(Point3D hitPoint, int xRes, int yRes) {
+        double[] uv = new double[2];
+        getUV(hitPoint, uv);
+
+        //find texel based on normalized coordinates
         TexelCoord p = new TexelCoord();
+        p.col = (int) ((xRes - 1) * uv[0]);
+        p.row = (int) ((yRes - 1) * uv[1]);
+        return p;
+    }
 
+    /**
+     * normalized texture coordinates
+     *
+     * @param hitPoint
+     * @param uv
+     */
+    @Override
+    public void getUV(Point3D hitPoint, double[] uv) {
         //calculate angles
         double theta = Math.acos(hitPoint.y);
         double phi = Math.atan2(hitPoint.x, hitPoint.z);
@@ -60,17 +76,23 @@ public class HemisphericalMap implements Mapping {
         }
 
         //normalize
-        double u = phi * Utility.INV_2_PI;
-        double v = 0;
+        uv[0] = phi * Utility.INV_2_PI;
+        uv[1] = 0;
         if (hitPoint.y > 0) {
-            v = 1 - theta / (Utility.PI / 2);
+            uv[1] = 1 - theta / (Utility.PI / 2);
         }
+    }
 
-        //look up texel
-        p.col = (int) ((xRes - 1) * u);
-        p.row = (int) ((yRes - 1) * v);
-        return p;
+    /**
+     * u is the angle around the hemisphere, it wraps at the seam
+     *
+     * @return
+     */
+    @Override
+    public boolean wrapsU() {
+        return true;
     }
+
     private static final Logger LOG
             = Logger.getLogger(HemisphericalMap.class.getName());
 
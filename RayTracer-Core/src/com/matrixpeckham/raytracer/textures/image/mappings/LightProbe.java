@@ -88,6 +88,24 @@ public class LightProbe implements Mapping {
     @Override
     public TexelCoord getTexelCoordinate(Point3D localHitPoint, int xRes,
             int yRes) {
+        double[] uv = new double[2];
+        getUV(localHitPoint, uv);
+
+        //find texel based on normalized coordinates
+        TexelCoord p = new TexelCoord();
+        p.col = (int) ((xRes - 1) * uv[0]);
+        p.row = (int) ((yRes - 1) * uv[1]);
+        return p;
+    }
+
+    /**
+     * normalized texture coordinates
+     *
+     * @param localHitPoint
+     * @param uv
+     */
+    @Override
+    public void getUV(Point3D localHitPoint, double[] uv) {
         //hit point
         double x = localHitPoint.x;
         double y = localHitPoint.y;
@@ -107,14 +125,22 @@ public class LightProbe implements Mapping {
             alpha = Math.acos(-z);
         }
 
-        //normalize and look up
+        //normalize
         double r = alpha * Utility.INV_PI;
-        double u = (1.0 + r * cosBeta) * 0.5;
-        double v = (1.0 + r * sinBeta) * 0.5;
-        int column = (int) ((xRes - 1) * u);
-        int row = (int) ((yRes - 1) * v);
-        return new TexelCoord(row, column);
+        uv[0] = (1.0 + r * cosBeta) * 0.5;
+        uv[1] = (1.0 + r * sinBeta) * 0.5;
     }
+
+    /**
+     * the probe is a disk in the image, it doesn't wrap
+     *
+     * @return
+     */
+    @Override
+    public boolean wrapsU() {
+        return false;
+    }
+
     private static final Logger LOG
             = Logger.getLogger(LightProbe.class.getName());
 
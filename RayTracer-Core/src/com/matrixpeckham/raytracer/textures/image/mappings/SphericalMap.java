@@ -50,7 +50,24 @@ public class SphericalMap implements Mapping {
      */
     @Override
     public TexelCoord getTexelCoordinate(Point3D hitPoint, int xRes, int yRes) {
+        double[] uv = new double[2];
+        getUV(hitPoint, uv);
+
+        //find texel based on normalized coordinates
         TexelCoord p = new TexelCoord();
+        p.col = (int) ((xRes - 1) * uv[0]);
+        p.row = (int) ((yRes - 1) * uv[1]);
+        return p;
+    }
+
+    /**
+     * normalized texture coordinates
+     *
+     * @param hitPoint
+     * @param uv
+     */
+    @Override
+    public void getUV(Point3D hitPoint, double[] uv) {
         //calculate angles of hit point
         double theta = Math.acos(hitPoint.y);
         double phi = Math.atan2(hitPoint.x, hitPoint.z);
@@ -59,14 +76,20 @@ public class SphericalMap implements Mapping {
         }
 
         //normalize angles
-        double u = phi * Utility.INV_2_PI;
-        double v = 1.0 - theta * Utility.INV_PI;
+        uv[0] = phi * Utility.INV_2_PI;
+        uv[1] = 1.0 - theta * Utility.INV_PI;
+    }
 
-        //calculate texel
-        p.col = (int) ((xRes - 1) * u);
-        p.row = (int) ((yRes - 1) * v);
-        return p;
+    /**
+     * u is the angle around the sphere, it wraps at the seam
+     *
+     * @return
+     */
+    @Override
+    public boolean wrapsU() {
+        return true;
     }
+
     private static final Logger LOG
             = Logger.getLogger(SphericalMap.class.getName());
 
@@ -49,16 +49,39 @@ public class SquareMap implements Mapping {
      */
     @Override
     public TexelCoord getTexelCoordinate(Point3D hitPoint, int xRes, int yRes) {
-        //generic rectangle is from -1-1 normalize to 0-1
-        TexelCoord p = new TexelCoord();
-        double u = (hitPoint.z + 1) / 2;
-        double v = (hitPoint.x + 1) / 2;
+        double[] uv = new double[2];
+        getUV(hitPoint, uv);
 
         //find texel based on normalized coordinates
-        p.col = (int) ((xRes - 1) * u);
-        p.row = (int) ((yRes - 1) * v);
+        TexelCoord p = new TexelCoord();
+        p.col = (int) ((xRes - 1) * uv[0]);
+        p.row = (int) ((yRes - 1) * uv[1]);
         return p;
     }
+
+    /**
+     * normalized texture coordinates
+     *
+     * @param hitPoint
+     * @param uv
+     */
+    @Override
+    public void getUV(Point3D hitPoint, double[] uv) {
+        //generic rectangle is from -1-1 normalize to 0-1
+        uv[0] = (hitPoint.z + 1) / 2;
+        uv[1] = (hitPoint.x + 1) / 2;
+    }
+
+    /**
+     * the square has edges, it doesn't wrap
+     *
+     * @return
+     */
+    @Override
+    public boolean wrapsU() {
+        return false;
+    }
+
     private static final Logger LOG
             = Logger.getLogger(SquareMap.class.getName());
 
@@ -29,6 +29,16 @@ import java.util.logging.Logger;
  */
 public class CubicNoise extends LatticeNoise {
 
+    //per thread knots for the vector noise, the four plane results followed
+    //by the four row results of the current plane
+    private static final ThreadLocal<double[]> SCRATCH
+            = new ThreadLocal<double[]>() {
+        @Override
+        protected double[] initialValue() {
+            return new double[24];
+        }
+    };
+
     /**
      * default constructor
      */
@@ -63,7 +73,7 @@ public class CubicNoise extends LatticeNoise {
      */
     @Override
     public LatticeNoise cloneNoise() {
-        return this;//new CubicNoise(this);
+        return new CubicNoise(this);
     }
 
     /**
@@ -85,31 +95,24 @@ public class CubicNoise extends LatticeNoise {
      */
     @Override
     public double valueNoise(Point3D p) {
-        int ix, iy, iz;
-        double fx, fy, fz;
-        double[] xknots = new double[4], yknots = new double[4], zknots
-                = new double[4];
-
-        ix = FLOOR(p.x);
-        fx = p.x - ix;
-
-        iy = FLOOR(p.y);
-        fy = p.y - iy;
-
-        iz = FLOOR(p.z);
-        fz = p.z - iz;
-
-        for (int k = -1; k <= 2; k++) {
-            for (int j = -1; j <= 2; j++) {
-                for (int i = -1; i <= 2; i++) {
-                    xknots[i + 1] = valueTable[INDEX(ix + i, iy + j, iz + k)];
-                }
-                yknots[j + 1] = four_knot_spline(fx, xknots);
-            }
-            zknots[k + 1] = four_knot_spline(fy, yknots);
-        }
+        return valueNoise(p.x, p.y, p.z);
+    }
 
-        return (Utility.clamp(four_knot_spline(fz, zknots), -1.0, 1.0));
+    /**
+     * Cubic interpolation of values, without allocating knot arrays
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @return
+     */
+    @Override
+    public double valueNoise(double x, double y, double z) {
+        int ix = FLOOR(x);
+        int iy = FLOOR(y);
+        int iz = FLOOR(z);
+        double v = splineZ(valueTable, x - ix, y - iy, z - iz, ix, iy, iz);
+        return (Utility.clamp(v, -1.0, 1.0));
     }
 
     /**
@@ -120,31 +123,84 @@ public class CubicNoise extends LatticeNoise {
      */
     @Override
     public Vector3D vectorNoise(Point3D p) {
-        int ix, iy, iz;
-        double fx, fy, fz;
-        Vector3D[] xknots = new Vector3D[4], yknots = new Vector3D[4], zknots
-                = new Vector3D[4];
-
-        ix = FLOOR(p.x);
-        fx = p.x - ix;
-
-        iy = FLOOR(p.y);
-        fy = p.y - iy;
-
-        iz = FLOOR(p.z);
-        fz = p.z - iz;
+        double[] out = new double[3];
+        vectorNoise(p.x, p.y, p.z, out);
+        return new Vector3D(out[0], out[1], out[2]);
+    }
 
-        for (int k = -1; k <= 2; k++) {
-            for (int j = -1; j <= 2; j++) {
-                for (int i = -1; i <= 2; i++) {
-                    xknots[i + 1] = vectorTable[INDEX(ix + i, iy + j, iz + k)];
+    /**
+     * cubic interpolation of vectors, all three components in one pass over
+     * the lattice
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @param amplitude
+     * @param out
+     */
+    @Override
+    public void addVectorNoise(double x, double y, double z, double amplitude,
+            double[] out) {
+        int ix = FLOOR(x);
+        int iy = FLOOR(y);
+        int iz = FLOOR(z);
+        double fx = x - ix;
+        double fy = y - iy;
+        double fz = z - iz;
+        double[] s = SCRATCH.get();
+        for (int k = 0; k < 4; k++) {
+            int pz = PERM(iz - 1 + k);
+            for (int j = 0; j < 4; j++) {
+                int pyz = PERM(iy - 1 + j + pz);
+                int a = 3 * PERM(ix - 1 + pyz);
+                int b = 3 * PERM(ix + pyz);
+                int c = 3 * PERM(ix + 1 + pyz);
+                int d = 3 * PERM(ix + 2 + pyz);
+                for (int e = 0; e < 3; e++) {
+                    s[12 + 3 * j + e] = four_knot_spline(fx, vectorData[a + e],
+                            vectorData[b + e], vectorData[c + e],
+                            vectorData[d + e]);
                 }
-                yknots[j + 1] = four_knot_spline(fx, xknots);
             }
-            zknots[k + 1] = four_knot_spline(fy, yknots);
+            for (int e = 0; e < 3; e++) {
+                s[3 * k + e] = four_knot_spline(fy, s[12 + e], s[15 + e],
+                        s[18 + e], s[21 + e]);
+            }
+        }
+        for (int e = 0; e < 3; e++) {
+            out[e] += four_knot_spline(fz, s[e], s[3 + e], s[6 + e], s[9 + e])
+                    * amplitude;
         }
+    }
 
-        return (four_knot_spline(fz, zknots));
+    //spline through the four planes around iz. The permutation of each plane
+    //and row is found once instead of for every lattice point.
+    private static double splineZ(double[] table, double fx, double fy,
+            double fz, int ix, int iy, int iz) {
+        return four_knot_spline(fz,
+                splineY(table, fx, fy, ix, iy, PERM(iz - 1)),
+                splineY(table, fx, fy, ix, iy, PERM(iz)),
+                splineY(table, fx, fy, ix, iy, PERM(iz + 1)),
+                splineY(table, fx, fy, ix, iy, PERM(iz + 2)));
+    }
+
+    //spline through the four rows around iy, pz is the plane permutation
+    private static double splineY(double[] table, double fx, double fy,
+            int ix, int iy, int pz) {
+        return four_knot_spline(fy,
+                splineX(table, fx, ix, PERM(iy - 1 + pz)),
+                splineX(table, fx, ix, PERM(iy + pz)),
+                splineX(table, fx, ix, PERM(iy + 1 + pz)),
+                splineX(table, fx, ix, PERM(iy + 2 + pz)));
+    }
+
+    //spline through the four lattice values around ix, pyz is the row
+    //permutation, so PERM(ix + pyz) is INDEX(ix, iy, iz)
+    private static double splineX(double[] table, double fx, int ix,
+            int pyz) {
+        return four_knot_spline(fx, table[PERM(ix - 1 + pyz)],
+                table[PERM(ix + pyz)], table[PERM(ix + 1 + pyz)],
+                table[PERM(ix + 2 + pyz)]);
     }
 
     /**
@@ -155,31 +211,27 @@ public class CubicNoise extends LatticeNoise {
      * @return
      */
     double four_knot_spline(double x, double[] knots) {
-        double c3 = -0.5 * knots[0] + 1.5 * knots[1] - 1.5 * knots[2] + 0.5
-                * knots[3];
-        double c2 = knots[0] - 2.5 * knots[1] + 2.0 * knots[2] - 0.5 * knots[3];
-        double c1 = 0.5 * (-knots[0] + knots[2]);
-        double c0 = knots[1];
-
-        return (((c3 * x + c2) * x + c1) * x + c0);
+        return four_knot_spline(x, knots[0], knots[1], knots[2], knots[3]);
     }
 
     /**
-     * does the cubic interpolation
+     * does the cubic interpolation through four knots
      *
      * @param x
-     * @param knots
+     * @param k0
+     * @param k1
+     * @param k2
+     * @param k3
      * @return
      */
-    Vector3D four_knot_spline(double x, Vector3D[] knots) {
-        Vector3D c3 = knots[0].mul(-0.5).add(knots[1].mul(1.5)).sub(knots[2].
-                mul(1.5)).add(knots[3].mul(0.5));
-        Vector3D c2 = knots[0].sub(knots[1].mul(2.5)).add(knots[2].mul(2.0)).
-                sub(knots[3].mul(0.5));
-        Vector3D c1 = (knots[0].neg().add(knots[2])).mul(0.5);
-        Vector3D c0 = knots[1];
-
-        return (((c3.mul(x).add(c2).mul(x)).add(c1)).mul(x).add(c0));
+    static double four_knot_spline(double x, double k0, double k1, double k2,
+            double k3) {
+        double c3 = -0.5 * k0 + 1.5 * k1 - 1.5 * k2 + 0.5 * k3;
+        double c2 = k0 - 2.5 * k1 + 2.0 * k2 - 0.5 * k3;
+        double c1 = 0.5 * (-k0 + k2);
+        double c0 = k1;
+
+        return (((c3 * x + c2) * x + c1) * x + c0);
     }
 
     private static final Logger LOG
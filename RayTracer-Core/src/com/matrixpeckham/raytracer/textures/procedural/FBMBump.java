@@ -20,7 +20,6 @@ package com.matrixpeckham.raytracer.textures.procedural;
 import com.matrixpeckham.raytracer.textures.Texture;
 import com.matrixpeckham.raytracer.util.RGBColor;
 import com.matrixpeckham.raytracer.util.ShadeRec;
-import com.matrixpeckham.raytracer.util.Vector3D;
 import java.util.logging.Logger;
 
 /**
@@ -100,10 +99,28 @@ public class FBMBump implements Texture {
      */
     @Override
     public RGBColor getColor(ShadeRec sr) {
-        Vector3D v = noise.vectorFBM(sr.localHitPosition);
-        v.normalize();
-        v = v.mul(perturbation);
-        return new RGBColor(v.x, v.y, v.z);
+        double[] d = new double[3];
+        getDisplacement(sr.localHitPosition.x, sr.localHitPosition.y,
+                sr.localHitPosition.z, d);
+        return new RGBColor(d[0], d[1], d[2]);
+    }
+
+    /**
+     * the vector getColor returns as r, g, b, put in out[0], out[1], out[2]
+     * without allocating.
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @param out
+     */
+    public void getDisplacement(double x, double y, double z, double[] out) {
+        noise.vectorFBM(x, y, z, out);
+        double len = Math.sqrt(out[0] * out[0] + out[1] * out[1] + out[2]
+                * out[2]);
+        out[0] = out[0] / len * perturbation;
+        out[1] = out[1] / len * perturbation;
+        out[2] = out[2] / len * perturbation;
     }
 
     private static final Logger LOG = Logger.getLogger(FBMBump.class.getName());
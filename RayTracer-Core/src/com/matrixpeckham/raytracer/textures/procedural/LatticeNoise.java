@@ -17,11 +17,6 @@
  */
 package com.matrixpeckham.raytracer.textures.procedural;
 
-import com.matrixpeckham.raytracer.samplers.MultiJittered;
-import com.matrixpeckham.raytracer.util.Point2D;
-import com.matrixpeckham.raytracer.util.Utility;
-import com.matrixpeckham.raytracer.util.Vector3D;
-
 /**
  * Class for location based noise functions.
  *
@@ -66,48 +61,15 @@ public abstract class LatticeNoise extends Noise {
     };
 
     /**
-     * value table
-     */
-    protected double valueTable[] = new double[kTableSize];
-
-    /**
-     * vector table
+     * value table, shared by all the noises with the same seed, don't write
+     * to it
      */
-    protected Vector3D vectorTable[] = new Vector3D[kTableSize];
+    protected final double valueTable[];
 
     /**
-     * initializes value table
-     *
-     * @param seed
+     * the vector table as x, y, z triples, shared like the value table
      */
-    private void initValueTable(long seed) {
-        Utility.setRandSeed(seed);
-        for (int i = 0; i < kTableSize; i++) {
-            valueTable[i] = 1 - 2 * Utility.randDouble();
-        }
-    }
-
-    /**
-     * fills the vector table
-     *
-     * @param seed
-     */
-    private void initVectorTable(long seed) {
-        double r1, r2, x, y, z, r, phi;
-        Utility.setRandSeed(seed);
-        MultiJittered sample = new MultiJittered(256, 1);
-        for (int j = 0; j < kTableSize; j++) {
-            Point2D samplePoint = sample.sampleOneSet();
-            r1 = samplePoint.x;
-            r2 = samplePoint.y;
-            z = 1.0 - 2.0 * r1;
-            r = Math.sqrt(1.0 - z * z);
-            phi = Utility.TWO_PI * r2;
-            x = r * Math.cos(phi);
-            y = r * Math.sin(phi);
-            vectorTable[j] = new Vector3D(x, y, z).hat();
-        }
-    }
+    protected final double vectorData[];
 
     /**
      * default constructor
@@ -116,8 +78,9 @@ public abstract class LatticeNoise extends Noise {
         numOctaves = 1;
         lacunarity = 2;
         gain = 0.5;
-        initValueTable(seed_value);
-        initVectorTable(seed_value);
+        NoiseTables tables = NoiseTables.get(seed_value);
+        valueTable = tables.values;
+        vectorData = tables.vectors;
         computeFBMBounds();
     }
 
@@ -130,8 +93,9 @@ public abstract class LatticeNoise extends Noise {
         numOctaves = octaves;
         lacunarity = 2;
         gain = 0.5;
-        initValueTable(seed_value);
-        initVectorTable(seed_value);
+        NoiseTables tables = NoiseTables.get(seed_value);
+        valueTable = tables.values;
+        vectorData = tables.vectors;
         computeFBMBounds();
     }
 
@@ -146,8 +110,9 @@ public abstract class LatticeNoise extends Noise {
         numOctaves = octaves;
         this.lacunarity = lacunarity;
         this.gain = gain;
-        initValueTable(seed_value);
-        initVectorTable(seed_value);
+        NoiseTables tables = NoiseTables.get(seed_value);
+        valueTable = tables.values;
+        vectorData = tables.vectors;
         computeFBMBounds();
     }
 
@@ -158,8 +123,8 @@ public abstract class LatticeNoise extends Noise {
      */
     public LatticeNoise(LatticeNoise n) {
         super(n);
-        initValueTable(seed_value);
-        initVectorTable(seed_value);
+        valueTable = n.valueTable;
+        vectorData = n.vectorData;
         computeFBMBounds();
     }
 
@@ -62,7 +62,7 @@ public class LinearNoise extends LatticeNoise {
      */
     @Override
     public LatticeNoise cloneNoise() {
-        return this;//new LinearNoise(this);
+        return new LinearNoise(this);
     }
 
     /**
@@ -84,38 +84,27 @@ public class LinearNoise extends LatticeNoise {
      */
     @Override
     public double valueNoise(Point3D p) {
+        return valueNoise(p.x, p.y, p.z);
+    }
 
-        int ix, iy, iz;
-        double fx, fy, fz;
-        double[][][] d = new double[2][2][2];
-        double x0, x1, x2, x3, y0, y1, z0;
-
-        ix = FLOOR(p.x);
-        fx = p.x - ix;
-
-        iy = FLOOR(p.y);
-        fy = p.y - iy;
-
-        iz = FLOOR(p.z);
-        fz = p.z - iz;
-
-        for (int k = 0; k <= 1; k++) {
-            for (int j = 0; j <= 1; j++) {
-                for (int i = 0; i <= 1; i++) {
-                    d[k][j][i] = valueTable[INDEX(ix + i, iy + j, iz + k)];
-                }
-            }
-        }
-
-        x0 = lerp(fx, d[0][0][0], d[0][0][1]);
-        x1 = lerp(fx, d[0][1][0], d[0][1][1]);
-        x2 = lerp(fx, d[1][0][0], d[1][0][1]);
-        x3 = lerp(fx, d[1][1][0], d[1][1][1]);
-        y0 = lerp(fy, x0, x1);
-        y1 = lerp(fy, x2, x3);
-        z0 = lerp(fz, y0, y1);
-
-        return (z0);
+    /**
+     * linear interpolation of values, without allocating the corner array
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @return
+     */
+    @Override
+    public double valueNoise(double x, double y, double z) {
+        int ix = FLOOR(x);
+        int iy = FLOOR(y);
+        int iz = FLOOR(z);
+        return trilerp(valueTable, 1, 0, x - ix, y - iy, z - iz,
+                INDEX(ix, iy, iz), INDEX(ix + 1, iy, iz),
+                INDEX(ix, iy + 1, iz), INDEX(ix + 1, iy + 1, iz),
+                INDEX(ix, iy, iz + 1), INDEX(ix + 1, iy, iz + 1),
+                INDEX(ix, iy + 1, iz + 1), INDEX(ix + 1, iy + 1, iz + 1));
     }
 
     /**
@@ -126,61 +115,72 @@ public class LinearNoise extends LatticeNoise {
      */
     @Override
     public Vector3D vectorNoise(Point3D p) {
-        int ix, iy, iz;
-        double fx, fy, fz;
-        Vector3D[][][] d = new Vector3D[2][2][2];
-        Vector3D x0, x1, x2, x3, y0, y1, z0;
-
-        ix = FLOOR(p.x);
-        fx = p.x - ix;
-
-        iy = FLOOR(p.y);
-        fy = p.y - iy;
-
-        iz = FLOOR(p.z);
-        fz = p.z - iz;
-
-        for (int k = 0; k <= 1; k++) {
-            for (int j = 0; j <= 1; j++) {
-                for (int i = 0; i <= 1; i++) {
-                    d[k][j][i] = vectorTable[INDEX(ix + i, iy + j, iz + k)];
-                }
-            }
-        }
-
-        x0 = lerp(fx, d[0][0][0], d[0][0][1]);
-        x1 = lerp(fx, d[0][1][0], d[0][1][1]);
-        x2 = lerp(fx, d[1][0][0], d[1][0][1]);
-        x3 = lerp(fx, d[1][1][0], d[1][1][1]);
-        y0 = lerp(fy, x0, x1);
-        y1 = lerp(fy, x2, x3);
-        z0 = lerp(fz, y0, y1);
-
-        return (z0);
+        double[] out = new double[3];
+        vectorNoise(p.x, p.y, p.z, out);
+        return new Vector3D(out[0], out[1], out[2]);
     }
 
     /**
-     * lerp from a-b as f from 0 to 1
+     * linear interpolation of vectors, the corner indices are found once and
+     * shared by the three components
      *
-     * @param f
-     * @param a
-     * @param b
-     * @return
+     * @param x
+     * @param y
+     * @param z
+     * @param amplitude
+     * @param out
      */
-    static double lerp(double f, double a, double b) {
-        return (a + f * (b - a));
+    @Override
+    public void addVectorNoise(double x, double y, double z, double amplitude,
+            double[] out) {
+        int ix = FLOOR(x);
+        int iy = FLOOR(y);
+        int iz = FLOOR(z);
+        double fx = x - ix;
+        double fy = y - iy;
+        double fz = z - iz;
+        int d000 = INDEX(ix, iy, iz);
+        int d001 = INDEX(ix + 1, iy, iz);
+        int d010 = INDEX(ix, iy + 1, iz);
+        int d011 = INDEX(ix + 1, iy + 1, iz);
+        int d100 = INDEX(ix, iy, iz + 1);
+        int d101 = INDEX(ix + 1, iy, iz + 1);
+        int d110 = INDEX(ix, iy + 1, iz + 1);
+        int d111 = INDEX(ix + 1, iy + 1, iz + 1);
+        for (int c = 0; c < 3; c++) {
+            out[c] += trilerp(vectorData, 3, c, fx, fy, fz, d000, d001, d010,
+                    d011, d100, d101, d110, d111) * amplitude;
+        }
+    }
+
+    //interpolates the eight corners, dkji is the table entry at
+    //(ix + i, iy + j, iz + k), entries are stride doubles and c picks one
+    private static double trilerp(double[] table, int stride, int c,
+            double fx, double fy, double fz, int d000, int d001, int d010,
+            int d011, int d100, int d101, int d110, int d111) {
+        double x0 = lerp(fx, table[d000 * stride + c],
+                table[d001 * stride + c]);
+        double x1 = lerp(fx, table[d010 * stride + c],
+                table[d011 * stride + c]);
+        double x2 = lerp(fx, table[d100 * stride + c],
+                table[d101 * stride + c]);
+        double x3 = lerp(fx, table[d110 * stride + c],
+                table[d111 * stride + c]);
+        double y0 = lerp(fy, x0, x1);
+        double y1 = lerp(fy, x2, x3);
+        return lerp(fz, y0, y1);
     }
 
     /**
-     * lerp vectors a-b from f 0 to 1
+     * lerp from a-b as f from 0 to 1
      *
      * @param f
      * @param a
      * @param b
      * @return
      */
-    static Vector3D lerp(double f, Vector3D a, Vector3D b) {
-        return a.add(b.sub(a).mul(f));
+    static double lerp(double f, double a, double b) {
+        return (a + f * (b - a));
     }
 
     private static final Logger LOG
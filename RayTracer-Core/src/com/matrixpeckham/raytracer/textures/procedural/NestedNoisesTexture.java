@@ -190,6 +190,15 @@ public class NestedNoisesTexture implements Texture {
         color2 = c2.cloneTexture();
     }
 
+    /**
+     * getter for the inner texture
+     *
+     * @return
+     */
+    public Texture getTexture() {
+        return color2;
+    }
+
     /**
      * setter
      *
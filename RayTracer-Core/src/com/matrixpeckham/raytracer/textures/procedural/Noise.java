@@ -141,12 +141,25 @@ public abstract class Noise {
      * @return
      */
     public double valueFBM(Point3D p) {
+        return valueFBM(p.x, p.y, p.z);
+    }
+
+    /**
+     * value FBM at the point (x, y, z), doesn't allocate.
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @return
+     */
+    public double valueFBM(double x, double y, double z) {
         double amplitude = 1;
         double frequency = 1;
         double fbm = 0;
         for (int j = 0; j < numOctaves;
                 j++) {
-            fbm += amplitude * valueNoise(p.mul(frequency));
+            fbm += amplitude * valueNoise(x * frequency, y * frequency, z
+                    * frequency);
             amplitude *= gain;
             frequency *= lacunarity;
         }
@@ -154,6 +167,44 @@ public abstract class Noise {
         return fbm;
     }
 
+    /**
+     * value FBM for many points at once. points holds count x, y, z triples,
+     * the results go in out[0] to out[count-1].
+     *
+     * @param points
+     * @param count
+     * @param out
+     */
+    public void valueFBM(double[] points, int count, double[] out) {
+        for (int i = 0; i < count; i++) {
+            out[i] = valueFBM(points[3 * i], points[3 * i + 1],
+                    points[3 * i + 2]);
+        }
+    }
+
+    /**
+     * fills out with the weighted octaves of the FBM at (x, y, z), out[j] is
+     * gain^j times the noise at lacunarity^j times the point. The sum of the
+     * first numOctaves entries is the FBM before it is scaled to [0,1]. out
+     * must hold at least numOctaves entries.
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @param out
+     */
+    public void valueOctaves(double x, double y, double z, double[] out) {
+        double amplitude = 1;
+        double frequency = 1;
+        for (int j = 0; j < numOctaves;
+                j++) {
+            out[j] = amplitude * valueNoise(x * frequency, y * frequency, z
+                    * frequency);
+            amplitude *= gain;
+            frequency *= lacunarity;
+        }
+    }
+
     /**
      * special case of FBM value noise
      *
@@ -161,12 +212,25 @@ public abstract class Noise {
      * @return
      */
     public double valueFractalSum(Point3D p) {
+        return valueFractalSum(p.x, p.y, p.z);
+    }
+
+    /**
+     * value fractal sum at the point (x, y, z), doesn't allocate.
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @return
+     */
+    public double valueFractalSum(double x, double y, double z) {
         double amplitude = 1.0;
         double frequency = 1.0;
         double fractalSum = 0;
         for (int j = 0; j < numOctaves;
                 j++) {
-            fractalSum += amplitude * valueNoise(p.mul(frequency));
+            fractalSum += amplitude * valueNoise(x * frequency, y * frequency,
+                    z * frequency);
             amplitude *= 0.5;
             frequency *= 2;
         }
@@ -183,6 +247,19 @@ public abstract class Noise {
      */
     public abstract double valueNoise(Point3D p);
 
+    /**
+     * value noise at the point (x, y, z). The default wraps the coordinates in
+     * a point, subclasses override this so the fractal sums don't allocate.
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @return
+     */
+    public double valueNoise(double x, double y, double z) {
+        return valueNoise(new Point3D(x, y, z));
+    }
+
     /**
      * same as value FBM, but the noise values are all absolute values
      *
@@ -190,13 +267,25 @@ public abstract class Noise {
      * @return
      */
     public double valueTurbulence(Point3D p) {
+        return valueTurbulence(p.x, p.y, p.z);
+    }
+
+    /**
+     * value turbulence at the point (x, y, z), doesn't allocate.
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @return
+     */
+    public double valueTurbulence(double x, double y, double z) {
         double amplitude = 1.0;
         double frequency = 1.0;
         double turbulence = 0;
         for (int j = 0; j < numOctaves;
                 j++) {
-            turbulence += amplitude * Math.abs(valueNoise(p.mul(frequency)));
-            //turbulence+=amplitude*Math.sqrt(Math.abs(valueNoise(p.mul(frequency)));
+            turbulence += amplitude * Math.abs(valueNoise(x * frequency, y
+                    * frequency, z * frequency));
             amplitude *= 0.5;
             frequency *= 2;
         }
@@ -211,16 +300,33 @@ public abstract class Noise {
      * @return
      */
     public Vector3D vectorFBM(Point3D p) {
+        double[] out = new double[3];
+        vectorFBM(p.x, p.y, p.z, out);
+        return new Vector3D(out[0], out[1], out[2]);
+    }
+
+    /**
+     * vector FBM at the point (x, y, z), the x, y, z of the vector go in
+     * out[0], out[1], out[2].
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @param out
+     */
+    public void vectorFBM(double x, double y, double z, double[] out) {
         double amplitude = 1;
         double frequency = 1;
-        Vector3D sum = new Vector3D(0, 0, 0);
+        out[0] = 0;
+        out[1] = 0;
+        out[2] = 0;
         for (int j = 0; j < numOctaves;
                 j++) {
-            sum.addLocal(vectorNoise(p.mul(frequency)).mul(amplitude));
+            addVectorNoise(x * frequency, y * frequency, z * frequency,
+                    amplitude, out);
             amplitude *= gain;
             frequency *= lacunarity;
         }
-        return sum;
     }
 
     /**
@@ -230,16 +336,33 @@ public abstract class Noise {
      * @return
      */
     public Vector3D vectorFractalSum(Point3D p) {
+        double[] out = new double[3];
+        vectorFractalSum(p.x, p.y, p.z, out);
+        return new Vector3D(out[0], out[1], out[2]);
+    }
+
+    /**
+     * vector fractal sum at the point (x, y, z), the x, y, z of the vector go
+     * in out[0], out[1], out[2].
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @param out
+     */
+    public void vectorFractalSum(double x, double y, double z, double[] out) {
         double amplitude = 1.0;
         double frequency = 1.0;
-        Vector3D fractalSum = new Vector3D(0, 0, 0);
+        out[0] = 0;
+        out[1] = 0;
+        out[2] = 0;
         for (int j = 0; j < numOctaves;
                 j++) {
-            fractalSum.addLocal(vectorNoise(p.mul(frequency)).mul(amplitude));
+            addVectorNoise(x * frequency, y * frequency, z * frequency,
+                    amplitude, out);
             amplitude *= 0.5;
             frequency *= 2;
         }
-        return fractalSum;
     }
 
     /**
@@ -251,4 +374,39 @@ public abstract class Noise {
      */
     public abstract Vector3D vectorNoise(Point3D p);
 
+    /**
+     * vector noise at the point (x, y, z), the x, y, z of the vector go in
+     * out[0], out[1], out[2].
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @param out
+     */
+    public void vectorNoise(double x, double y, double z, double[] out) {
+        out[0] = 0;
+        out[1] = 0;
+        out[2] = 0;
+        addVectorNoise(x, y, z, 1, out);
+    }
+
+    /**
+     * adds amplitude times the vector noise at (x, y, z) to out[0], out[1],
+     * out[2]. The default goes through vectorNoise(Point3D), subclasses
+     * override this so the fractal sums don't allocate.
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @param amplitude
+     * @param out
+     */
+    public void addVectorNoise(double x, double y, double z, double amplitude,
+            double[] out) {
+        Vector3D v = vectorNoise(new Point3D(x, y, z));
+        out[0] += v.x * amplitude;
+        out[1] += v.y * amplitude;
+        out[2] += v.z * amplitude;
+    }
+
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2016 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.textures.procedural;
+
+import com.matrixpeckham.raytracer.util.Utility;
+import com.matrixpeckham.raytracer.util.Vector3D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Value and gradient tables of the lattice noises, built once for each seed and
+ * shared by every noise with that seed. The arrays must not be written to.
+ * <p>
+ * The tables are built from a random generator of their own, so making a noise
+ * no longer reseeds Utility's generator, but they hold the same numbers the
+ * noises used to make for themselves: the values are the first numbers of the
+ * seeded generator and the gradients come from a 256 sample multi-jittered
+ * pattern made the way MultiJittered makes it.
+ *
+ * @author William Matrix Peckham
+ */
+final class NoiseTables {
+
+    //tables for each seed
+    private static final ConcurrentHashMap<Long, NoiseTables> TABLES
+            = new ConcurrentHashMap<>();
+
+    /**
+     * random values in [-1, 1]
+     */
+    final double[] values = new double[LatticeNoise.kTableSize];
+
+    /**
+     * random unit vectors as x, y, z triples
+     */
+    final double[] vectors = new double[3 * LatticeNoise.kTableSize];
+
+    /**
+     * the tables for a seed
+     *
+     * @param seed
+     * @return
+     */
+    static NoiseTables get(long seed) {
+        NoiseTables t = TABLES.get(seed);
+        if (t == null) {
+            TABLES.putIfAbsent(seed, new NoiseTables(seed));
+            t = TABLES.get(seed);
+        }
+        return t;
+    }
+
+    private NoiseTables(long seed) {
+        Random rand = new Random(seed);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1 - 2 * randDouble(rand);
+        }
+
+        rand.setSeed(seed);
+        int n = (int) Math.sqrt(LatticeNoise.kTableSize);
+        double[] x = new double[LatticeNoise.kTableSize];
+        double[] y = new double[LatticeNoise.kTableSize];
+        multiJittered(rand, n, x, y);
+        for (int j = 0; j < LatticeNoise.kTableSize; j++) {
+            double z = 1.0 - 2.0 * x[j];
+            double r = Math.sqrt(1.0 - z * z);
+            double phi = Utility.TWO_PI * y[j];
+            Vector3D v = new Vector3D(r * Math.cos(phi), r * Math.sin(phi), z).
+                    hat();
+            vectors[3 * j] = v.x;
+            vectors[3 * j + 1] = v.y;
+            vectors[3 * j + 2] = v.z;
+        }
+    }
+
+    //one set of n*n multi-jittered samples, consuming the generator the same
+    //way a new MultiJittered does, including the shuffle of its indices
+    private static void multiJittered(Random rand, int n, double[] x,
+            double[] y) {
+        int num = n * n;
+        ArrayList<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < num; i++) {
+            indices.add(i);
+        }
+        Collections.shuffle(indices, rand);
+
+        double subcellWidth = 1.0 / num;
+        for (int j = 0; j < n; j++) {
+            for (int i = 0; i < n; i++) {
+                x[j * n + i] = (i * n + j) * subcellWidth + randDouble(rand)
+                        * subcellWidth;
+                y[j * n + i] = (j * n + i) * subcellWidth + randDouble(rand)
+                        * subcellWidth;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                int k = (int) (randDouble(rand) * (n - 1 - j) + j);
+                double t = x[i * n + j];
+                x[i * n + j] = x[i * n + k];
+                x[i * n + k] = t;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                int k = (int) (randDouble(rand) * (n - 1 - j) + j);
+                double t = y[j * n + i];
+                y[j * n + i] = y[k * n + i];
+                y[k * n + i] = t;
+            }
+        }
+    }
+
+    //same as Utility.randDouble
+    private static double randDouble(Random rand) {
+        return (double) rand.nextInt(Integer.MAX_VALUE)
+                / (double) Integer.MAX_VALUE;
+    }
+
+    private static final Logger LOG
+            = Logger.getLogger(NoiseTables.class.getName());
+
+}
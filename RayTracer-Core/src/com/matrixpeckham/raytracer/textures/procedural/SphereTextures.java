@@ -159,6 +159,33 @@ public class SphereTextures implements Texture {
         this.lineColor = lineColor.cloneTexture();
     }
 
+    /**
+     * getter
+     *
+     * @return
+     */
+    public Texture getTexture1() {
+        return color1;
+    }
+
+    /**
+     * getter
+     *
+     * @return
+     */
+    public Texture getTexture2() {
+        return color2;
+    }
+
+    /**
+     * getter
+     *
+     * @return
+     */
+    public Texture getLineColor() {
+        return lineColor;
+    }
+
     /**
      * clone
      *
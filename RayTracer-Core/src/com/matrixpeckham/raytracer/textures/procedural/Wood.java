@@ -26,7 +26,6 @@ import static com.matrixpeckham.raytracer.util.Utility.clamp;
 import static com.matrixpeckham.raytracer.util.Utility.mixColor;
 import static com.matrixpeckham.raytracer.util.Utility.mixDouble;
 import static com.matrixpeckham.raytracer.util.Utility.smoothStep;
-import com.matrixpeckham.raytracer.util.Vector3D;
 import static java.lang.Math.max;
 import static java.lang.Math.pow;
 import static java.lang.Math.sqrt;
@@ -236,43 +235,40 @@ public class Wood implements Texture {
     public RGBColor getColor(ShadeRec sr
     ) {
         Point3D hitPoint = sr.localHitPosition;
+        double[] v = new double[3];
 
         // perturb the hit point
-        Vector3D offset = noisePtr.vectorFBM(hitPoint.mul(ringNoiseFrequency));
+        noisePtr.vectorFBM(hitPoint.x * ringNoiseFrequency, hitPoint.y
+                * ringNoiseFrequency, hitPoint.z * ringNoiseFrequency, v);
 
-        Point3D ringPoint = hitPoint.add(offset.mul(ringNoise));
+        double ringX = hitPoint.x + v[0] * ringNoise;
+        double ringY = hitPoint.y + v[1] * ringNoise;
+        double ringZ = hitPoint.z + v[2] * ringNoise;
 
         // perturb the trunk so that it's quite along the z axis
-        Vector3D tempVec = noisePtr.vectorNoise(new Point3D(0, 0,
-                hitPoint.y * trunkWobbleFrequency)).mul(trunkWobble);
-        ringPoint.x += tempVec.x;
-        ringPoint.z += tempVec.z;
+        noisePtr.vectorNoise(0, 0, hitPoint.y * trunkWobbleFrequency, v);
+        ringX += v[0] * trunkWobble;
+        ringZ += v[2] * trunkWobble;
 
         // distance from the y axis
-        double r = sqrt(ringPoint.x * ringPoint.x + ringPoint.z
-                * ringPoint.z) * ringFrequency;
+        double r = sqrt(ringX * ringX + ringZ * ringZ) * ringFrequency;
 
         // perturb r so that the rings aren't quite round
-        Point3D tempVec2 = new Point3D();
-        tempVec2.x = angularWobbleFrequency * ringPoint.x;
-        tempVec2.y = angularWobbleFrequency * ringPoint.y * 0.1;
-        tempVec2.z = angularWobbleFrequency * ringPoint.z;
-
         double deltaR = angularWobble * Utility.smoothStep(0.0, 5.0, r)
-                * noisePtr.
-                valueNoise(tempVec2);
+                * noisePtr.valueNoise(angularWobbleFrequency * ringX,
+                        angularWobbleFrequency * ringY * 0.1,
+                        angularWobbleFrequency * ringZ);
         r += deltaR;
 
         // add some noise so that the rings are not equally spaced and have different thicknesses
-        r += ringUneveness * noisePtr.valueNoise(new Point3D(r));
+        r += ringUneveness * noisePtr.valueNoise(r, r, r);
 
         double inRing = Utility.smoothPulseTrain(0.1, 0.55, 0.7, 0.95, 1.0, r);
 
         // the grain
-        Point3D grainPoint = new Point3D();
-        grainPoint.x = hitPoint.x * grainFrequency;
-        grainPoint.y = hitPoint.y * grainFrequency * 0.05;
-        grainPoint.z = hitPoint.z * grainFrequency;
+        double grainX = hitPoint.x * grainFrequency;
+        double grainY = hitPoint.y * grainFrequency * 0.05;
+        double grainZ = hitPoint.z * grainFrequency;
 
         double dpgrain = 0.2;
         double grain = 0.0;
@@ -281,7 +277,8 @@ public class Wood implements Texture {
         for (int i = 0; i < 2; i++) {
             double grainValid = 1.0 - smoothStep(0.2, 0.6, dpgrain);
             if (grainValid > 0.0) {
-                double g = grainValid * noisePtr.valueNoise(grainPoint);
+                double g = grainValid * noisePtr.valueNoise(grainX, grainY,
+                        grainZ);
                 g *= (0.3 + 0.7 * inRing);
                 g = pow(clamp(0.8 - g, 0.0, 1.0), 2.0);
                 g = grainy * smoothStep(0.5, 1.0, g);
@@ -290,7 +287,9 @@ public class Wood implements Texture {
                 }
                 grain = amplitude * max(grain, g);
             }
-            grainPoint = grainPoint.mul(2);
+            grainX *= 2;
+            grainY *= 2;
+            grainZ *= 2;
             dpgrain *= 2.0;
             amplitude *= 0.5;
         }
@@ -19,14 +19,18 @@ package com.matrixpeckham.raytracer.textures.procedural;
 
 import com.matrixpeckham.raytracer.util.Point3D;
 import com.matrixpeckham.raytracer.util.Vector3D;
-import java.util.Iterator;
-import java.util.Random;
-import java.util.TreeSet;
 
 /**
+ * Worley (cellular) noise. Space is split into blocks, each block has
+ * numPerBlock random feature points, and the noise is the distance to the
+ * nthDist closest feature point in the block around the sample point and its
+ * neighbors.
+ * <p>
+ * The feature points of a block come from an integer hash of the seed and the
+ * block coordinates, and the closest distances are kept sorted in a small
+ * array, so a lookup allocates nothing. Neighbor blocks that can't hold a
+ * point closer than the ones already found are skipped.
  *
- */
-/**
  * @author Wiliam Peckham
  *
  */
@@ -62,6 +66,21 @@ public class WorleyNoise extends Noise {
     //Quadratic distance
     public final static int QUADRA_DIST = 4;
 
+    //golden ratio increment for the hash sequence
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    //scales the top 53 bits of a long to [0,1)
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    //per thread scratch space, so lookups don't allocate
+    private static final ThreadLocal<Scratch> SCRATCH
+            = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
     public WorleyNoise() {
         this(1, 10, 1, EUCLID_DIST);
     }
@@ -76,6 +95,7 @@ public class WorleyNoise extends Noise {
 
     public WorleyNoise(WorleyNoise n) {
         super(n);
+        this.seed = n.seed;
         this.blockSize = n.blockSize;
         this.numPerBlock = n.numPerBlock;
         this.nthDist = n.nthDist;
@@ -84,316 +104,181 @@ public class WorleyNoise extends Noise {
 
     @Override
     public Noise cloneNoise() {
-        return this;//new WorleyNoise(this);
-    }
-
-    //gets the nth distance from the set
-    private double getNth(TreeSet<Double> set) {
-        int i = 0;
-        double ret = Double.NaN;
-        Iterator<Double> it = set.iterator();
-        while (it.hasNext() && i < nthDist) {
-            i++;
-            ret = it.next();
-        }
-        return ret;
+        return new WorleyNoise(this);
     }
 
     //one dimensional noise
     public double noise(double x) {
-
-        int ix = (int) Math.floor(x / blockSize);
-
-        TreeSet<Double> set = new TreeSet<>();
-
-        block1D(ix, x, set);
-        block1D(ix + 1, x, set);
-        block1D(ix - 1, x, set);
-
-        return getNth(set);
-    }
-
-    //calculate segment ix and add distances to set
-    void block1D(int ix, double x, TreeSet<Double> set) {
-        Random r = new Random((seed + "" + ix).hashCode());
-        for (int i = 0; i < numPerBlock; i++) {
-            double np = r.nextDouble() * blockSize + ix * blockSize;
-            set.add(abs(np - x));
-        }
+        Scratch s = SCRATCH.get();
+        s.p[0] = x;
+        return noise(seed, 1, s);
     }
 
     //two d noise
     public double noise(double x, double y) {
-        int ix = (int) Math.floor(x / blockSize);
-        int iy = (int) Math.floor(x / blockSize);
-
-        TreeSet<Double> set = new TreeSet<>();
-
-        //add all the surrounding grid cells points to the set if needed
-        block2D(ix, iy, x, y, set);
-
-        block2D(ix - 1, iy - 1, x, y, set);
-        block2D(ix - 1, iy, x, y, set);
-        block2D(ix - 1, iy + 1, x, y, set);
-        block2D(ix + 1, iy - 1, x, y, set);
-        block2D(ix + 1, iy, x, y, set);
-        block2D(ix + 1, iy + 1, x, y, set);
-        block2D(ix, iy + 1, x, y, set);
-        block2D(ix, iy - 1, x, y, set);
+        Scratch s = SCRATCH.get();
+        s.p[0] = x;
+        s.p[1] = y;
+        return noise(seed, 2, s);
+    }
 
-        return getNth(set);
+    public double noise(double x, double y, double z) {
+        return noise(seed, x, y, z);
     }
 
-    //gets the disnatances to x,y in box ix,iy and adds them to the set
-    void block2D(int ix, int iy, double x, double y, TreeSet<Double> set) {
-        Random r = new Random((seed + "" + ix + "" + iy).hashCode());
-        for (int i = 0; i < numPerBlock; i++) {
-            double nx = r.nextDouble() * blockSize + ix * blockSize;
-            double ny = r.nextDouble() * blockSize + iy * blockSize;
-            double dist2 = Double.NaN;
-            switch (this.dist) {
-                case EUCLID_DIST:
-                    dist2 = Math.hypot(x - nx, y - ny);
-                    break;
-                case MANHAT_DIST:
-                    dist2 = abs(nx - x) + abs(ny - y);
-                    break;
-                case CHEBYC_DIST:
-                    dist2 = max(abs(nx - x), abs(ny - y));
-                    break;
-                case SQUARE_DIST:
-                    dist2 = (nx - x) * (nx - x) + (ny - y) * (ny - y);
-                    break;
-                case QUADRA_DIST:
-                    dist2 = (nx - x) * (nx - x) + (nx - x) * (ny - y) + (ny - y)
-                            * (ny - y);
-                    break;
-                default:
-                    dist2 = Math.hypot(x - nx, y - ny);
-            }
-            set.add(dist2);
-        }
+    //three d noise with any seed, used for the vector noise
+    private double noise(long seed, double x, double y, double z) {
+        Scratch s = SCRATCH.get();
+        s.p[0] = x;
+        s.p[1] = y;
+        s.p[2] = z;
+        return noise(seed, 3, s);
     }
 
-    public double noise(double x, double y, double z) {
-        int ix = (int) Math.floor(x / blockSize);
-        int iy = (int) Math.floor(y / blockSize);
-        int iz = (int) Math.floor(z / blockSize);
-
-        TreeSet<Double> set = new TreeSet<>();
-
-        block3D(ix, iy, iz, x, y, z, set);
-        block3D(ix, iy, iz - 1, x, y, z, set);
-        block3D(ix, iy, iz + 1, x, y, z, set);
-        block3D(ix, iy - 1, iz - 1, x, y, z, set);
-        block3D(ix, iy - 1, iz, x, y, z, set);
-        block3D(ix, iy - 1, iz + 1, x, y, z, set);
-        block3D(ix, iy + 1, iz - 1, x, y, z, set);
-        block3D(ix, iy + 1, iz, x, y, z, set);
-        block3D(ix, iy + 1, iz + 1, x, y, z, set);
-
-        block3D(ix + 1, iy, iz, x, y, z, set);
-        block3D(ix + 1, iy, iz + 1, x, y, z, set);
-        block3D(ix + 1, iy, iz - 1, x, y, z, set);
-        block3D(ix + 1, iy + 1, iz - 1, x, y, z, set);
-        block3D(ix + 1, iy + 1, iz, x, y, z, set);
-        block3D(ix + 1, iy + 1, iz + 1, x, y, z, set);
-        block3D(ix + 1, iy - 1, iz - 1, x, y, z, set);
-        block3D(ix + 1, iy - 1, iz, x, y, z, set);
-        block3D(ix + 1, iy - 1, iz + 1, x, y, z, set);
-
-        block3D(ix - 1, iy, iz, x, y, z, set);
-        block3D(ix - 1, iy, iz + 1, x, y, z, set);
-        block3D(ix - 1, iy, iz - 1, x, y, z, set);
-        block3D(ix - 1, iy + 1, iz - 1, x, y, z, set);
-        block3D(ix - 1, iy + 1, iz, x, y, z, set);
-        block3D(ix - 1, iy + 1, iz + 1, x, y, z, set);
-        block3D(ix - 1, iy - 1, iz - 1, x, y, z, set);
-        block3D(ix - 1, iy - 1, iz, x, y, z, set);
-        block3D(ix - 1, iy - 1, iz + 1, x, y, z, set);
-
-        return getNth(set);
+    public double noise(double x, double y, double z, double w) {
+        Scratch s = SCRATCH.get();
+        s.p[0] = x;
+        s.p[1] = y;
+        s.p[2] = z;
+        s.p[3] = w;
+        return noise(seed, 4, s);
     }
 
-    //gets the disnatances to x,y,x in box ix,iy,iz and adds them to the set
-    void block3D(int ix, int iy, int iz, double x, double y, double z,
-            TreeSet<Double> set) {
-        Random r = new Random((seed + "" + ix + "" + iy + "" + iz).hashCode());
-        for (int i = 0; i < numPerBlock; i++) {
-            double nx = r.nextDouble() * blockSize + ix * blockSize;
-            double ny = r.nextDouble() * blockSize + iy * blockSize;
-            double nz = r.nextDouble() * blockSize + iz * blockSize;
-            double dist2 = Double.NaN;
-            double dx = nx - x;
-            double dy = ny - y;
-            double dz = nz - z;
-            switch (this.dist) {
-                case EUCLID_DIST:
-                    dist2 = Math.sqrt(dx * dx + dy * dy + dz * dz);
-                    break;
-                case MANHAT_DIST:
-                    dist2 = abs(dx) + abs(dy) + abs(dz);
-                    break;
-                case CHEBYC_DIST:
-                    dist2 = max(abs(dx), max(abs(dy), abs(dz)));
-                    break;
-                case SQUARE_DIST:
-                    dist2 = dx * dx + dy * dy + dz * dz;
-                    break;
-                case QUADRA_DIST:
-                    dist2 = dx * dx + 2 * dx * dy + 2 * dx * dz + 2 * dy * dz
-                            + dy * dy + dz * dz;
-                    break;
-                default:
-                    dist2 = Math.sqrt(dx * dx + dy * dy + dz * dz);
+    //noise for the point in s.p, the nth closest distance to the feature
+    //points in the block around the point and the blocks next to it
+    private double noise(long seed, int dims, Scratch s) {
+        if (nthDist <= 0) {
+            return Double.NaN;
+        }
+        if (s.nearest.length < nthDist) {
+            s.nearest = new double[nthDist];
+        }
+        double[] p = s.p;
+        int[] home = s.home;
+        int[] cell = s.cell;
+        double[] d = s.delta;
+        double[] nearest = s.nearest;
+        int count = 0;
+        int numNeighbors = 1;
+        for (int a = 0; a < dims; a++) {
+            home[a] = (int) Math.floor(p[a] / blockSize);
+            numNeighbors *= 3;
+        }
+        //neighbor 0 is the home block, so it fills the list before pruning
+        for (int n = 0; n < numNeighbors; n++) {
+            int digits = n;
+            for (int a = 0; a < dims; a++) {
+                int digit = digits % 3;
+                digits /= 3;
+                cell[a] = home[a] + (digit == 0 ? 0 : digit == 1 ? -1 : 1);
             }
-            if (set.size() == nthDist) {
-                if (set.last() > dist2) {
-                    set.remove(set.last());
-                    set.add(dist2);
+            if (count == nthDist && bound(dims, cell, p, d)
+                    >= nearest[nthDist - 1]) {
+                continue;
+            }
+            long state = mix(seed);
+            for (int a = 0; a < dims; a++) {
+                state = mix(state + cell[a]);
+            }
+            for (int i = 0; i < numPerBlock; i++) {
+                for (int a = 0; a < dims; a++) {
+                    state += GOLDEN;
+                    double r = (mix(state) >>> 11) * DOUBLE_UNIT;
+                    d[a] = r * blockSize + cell[a] * blockSize - p[a];
                 }
-            } else {
-                set.add(dist2);
+                count = insert(nearest, count, distance(dims, d));
             }
         }
+        return count == 0 ? Double.NaN : nearest[count - 1];
+    }
 
+    //adds a distance to the sorted list of the closest, returns the new count
+    private int insert(double[] nearest, int count, double dist) {
+        int i;
+        if (count < nthDist) {
+            i = count++;
+        } else if (dist < nearest[count - 1]) {
+            i = count - 1;
+        } else {
+            return count;
+        }
+        while (i > 0 && nearest[i - 1] > dist) {
+            nearest[i] = nearest[i - 1];
+            i--;
+        }
+        nearest[i] = dist;
+        return count;
     }
 
-    public double noise(double x, double y, double z, double w) {
-        int ix = (int) Math.floor(x / blockSize);
-        int iy = (int) Math.floor(y / blockSize);
-        int iz = (int) Math.floor(z / blockSize);
-        int iw = (int) Math.floor(w / blockSize);
-
-        TreeSet<Double> set = new TreeSet<>();
-
-        block4D(ix, iy, iz, iw, x, y, z, w, set);
-
-        block4D(ix + 1, iy, iz, iw, x, y, z, w, set);
-        block4D(ix + 1, iy + 1, iz - 1, iw, x, y, z, w, set);
-        block4D(ix + 1, iy + 1, iz, iw, x, y, z, w, set);
-        block4D(ix + 1, iy + 1, iz + 1, iw, x, y, z, w, set);
-        block4D(ix + 1, iy - 1, iz - 1, iw, x, y, z, w, set);
-        block4D(ix + 1, iy - 1, iz, iw, x, y, z, w, set);
-        block4D(ix + 1, iy - 1, iz + 1, iw, x, y, z, w, set);
-        block4D(ix + 1, iy, iz + 1, iw, x, y, z, w, set);
-        block4D(ix + 1, iy, iz - 1, iw, x, y, z, w, set);
-        block4D(ix - 1, iy, iz, iw, x, y, z, w, set);
-        block4D(ix - 1, iy + 1, iz - 1, iw, x, y, z, w, set);
-        block4D(ix - 1, iy + 1, iz, iw, x, y, z, w, set);
-        block4D(ix - 1, iy + 1, iz + 1, iw, x, y, z, w, set);
-        block4D(ix - 1, iy - 1, iz - 1, iw, x, y, z, w, set);
-        block4D(ix - 1, iy - 1, iz, iw, x, y, z, w, set);
-        block4D(ix - 1, iy - 1, iz + 1, iw, x, y, z, w, set);
-        block4D(ix - 1, iy, iz + 1, iw, x, y, z, w, set);
-        block4D(ix - 1, iy, iz - 1, iw, x, y, z, w, set);
-        block4D(ix, iy + 1, iz - 1, iw, x, y, z, w, set);
-        block4D(ix, iy + 1, iz, iw, x, y, z, w, set);
-        block4D(ix, iy + 1, iz + 1, iw, x, y, z, w, set);
-        block4D(ix, iy - 1, iz - 1, iw, x, y, z, w, set);
-        block4D(ix, iy - 1, iz, iw, x, y, z, w, set);
-        block4D(ix, iy - 1, iz + 1, iw, x, y, z, w, set);
-        block4D(ix, iy, iz + 1, iw, x, y, z, w, set);
-        block4D(ix, iy, iz - 1, iw, x, y, z, w, set);
-
-        block4D(ix, iy, iz, iw + 1, x, y, z, w, set);
-        block4D(ix + 1, iy, iz, iw + 1, x, y, z, w, set);
-        block4D(ix + 1, iy + 1, iz - 1, iw + 1, x, y, z, w, set);
-        block4D(ix + 1, iy + 1, iz, iw + 1, x, y, z, w, set);
-        block4D(ix + 1, iy + 1, iz + 1, iw + 1, x, y, z, w, set);
-        block4D(ix + 1, iy - 1, iz - 1, iw + 1, x, y, z, w, set);
-        block4D(ix + 1, iy - 1, iz, iw + 1, x, y, z, w, set);
-        block4D(ix + 1, iy - 1, iz + 1, iw + 1, x, y, z, w, set);
-        block4D(ix + 1, iy, iz + 1, iw + 1, x, y, z, w, set);
-        block4D(ix + 1, iy, iz - 1, iw + 1, x, y, z, w, set);
-        block4D(ix - 1, iy, iz, iw + 1, x, y, z, w, set);
-        block4D(ix - 1, iy + 1, iz - 1, iw + 1, x, y, z, w, set);
-        block4D(ix - 1, iy + 1, iz, iw + 1, x, y, z, w, set);
-        block4D(ix - 1, iy + 1, iz + 1, iw + 1, x, y, z, w, set);
-        block4D(ix - 1, iy - 1, iz - 1, iw + 1, x, y, z, w, set);
-        block4D(ix - 1, iy - 1, iz, iw + 1, x, y, z, w, set);
-        block4D(ix - 1, iy - 1, iz + 1, iw + 1, x, y, z, w, set);
-        block4D(ix - 1, iy, iz + 1, iw + 1, x, y, z, w, set);
-        block4D(ix - 1, iy, iz - 1, iw + 1, x, y, z, w, set);
-        block4D(ix, iy + 1, iz - 1, iw + 1, x, y, z, w, set);
-        block4D(ix, iy + 1, iz, iw + 1, x, y, z, w, set);
-        block4D(ix, iy + 1, iz + 1, iw + 1, x, y, z, w, set);
-        block4D(ix, iy - 1, iz - 1, iw + 1, x, y, z, w, set);
-        block4D(ix, iy - 1, iz, iw + 1, x, y, z, w, set);
-        block4D(ix, iy - 1, iz + 1, iw + 1, x, y, z, w, set);
-        block4D(ix, iy, iz + 1, iw + 1, x, y, z, w, set);
-        block4D(ix, iy, iz - 1, iw + 1, x, y, z, w, set);
-
-        block4D(ix, iy, iz, iw - 1, x, y, z, w, set);
-        block4D(ix + 1, iy, iz, iw - 1, x, y, z, w, set);
-        block4D(ix + 1, iy + 1, iz - 1, iw - 1, x, y, z, w, set);
-        block4D(ix + 1, iy + 1, iz, iw - 1, x, y, z, w, set);
-        block4D(ix + 1, iy + 1, iz + 1, iw - 1, x, y, z, w, set);
-        block4D(ix + 1, iy - 1, iz - 1, iw - 1, x, y, z, w, set);
-        block4D(ix + 1, iy - 1, iz, iw - 1, x, y, z, w, set);
-        block4D(ix + 1, iy - 1, iz + 1, iw - 1, x, y, z, w, set);
-        block4D(ix + 1, iy, iz + 1, iw - 1, x, y, z, w, set);
-        block4D(ix + 1, iy, iz - 1, iw - 1, x, y, z, w, set);
-        block4D(ix - 1, iy, iz, iw - 1, x, y, z, w, set);
-        block4D(ix - 1, iy + 1, iz - 1, iw - 1, x, y, z, w, set);
-        block4D(ix - 1, iy + 1, iz, iw - 1, x, y, z, w, set);
-        block4D(ix - 1, iy + 1, iz + 1, iw - 1, x, y, z, w, set);
-        block4D(ix - 1, iy - 1, iz - 1, iw - 1, x, y, z, w, set);
-        block4D(ix - 1, iy - 1, iz, iw - 1, x, y, z, w, set);
-        block4D(ix - 1, iy - 1, iz + 1, iw - 1, x, y, z, w, set);
-        block4D(ix - 1, iy, iz + 1, iw - 1, x, y, z, w, set);
-        block4D(ix - 1, iy, iz - 1, iw - 1, x, y, z, w, set);
-        block4D(ix, iy + 1, iz - 1, iw - 1, x, y, z, w, set);
-        block4D(ix, iy + 1, iz, iw - 1, x, y, z, w, set);
-        block4D(ix, iy + 1, iz + 1, iw - 1, x, y, z, w, set);
-        block4D(ix, iy - 1, iz - 1, iw - 1, x, y, z, w, set);
-        block4D(ix, iy - 1, iz, iw - 1, x, y, z, w, set);
-        block4D(ix, iy - 1, iz + 1, iw - 1, x, y, z, w, set);
-        block4D(ix, iy, iz + 1, iw - 1, x, y, z, w, set);
-        block4D(ix, iy, iz - 1, iw - 1, x, y, z, w, set);
-
-        return getNth(set);
+    //distance with the current metric, d holds the offset on each axis
+    private double distance(int dims, double[] d) {
+        if (dims == 1) {
+            return abs(d[0]);
+        }
+        double sum = 0;
+        switch (this.dist) {
+            case MANHAT_DIST:
+                for (int a = 0; a < dims; a++) {
+                    sum += abs(d[a]);
+                }
+                return sum;
+            case CHEBYC_DIST:
+                for (int a = 0; a < dims; a++) {
+                    sum = max(sum, abs(d[a]));
+                }
+                return sum;
+            case SQUARE_DIST:
+                for (int a = 0; a < dims; a++) {
+                    sum += d[a] * d[a];
+                }
+                return sum;
+            case QUADRA_DIST:
+                if (dims == 2) {
+                    return d[0] * d[0] + d[0] * d[1] + d[1] * d[1];
+                }
+                //the sum of squares plus twice every cross term
+                for (int a = 0; a < dims; a++) {
+                    sum += d[a];
+                }
+                return sum * sum;
+            default:
+                for (int a = 0; a < dims; a++) {
+                    sum += d[a] * d[a];
+                }
+                return Math.sqrt(sum);
+        }
     }
 
-    //gets the disnatances to x,y,z,w in box ix,iy,iz,iw and adds them to the set
-    void block4D(int ix, int iy, int iz, int iw, double x, double y, double z,
-            double w, TreeSet<Double> set) {
-        Random r = new Random((seed + "" + ix + "" + iy + "" + iz + "" + iw).
-                hashCode());
-        for (int i = 0; i < numPerBlock; i++) {
-            double nx = r.nextDouble() * blockSize + ix * blockSize;
-            double ny = r.nextDouble() * blockSize + iy * blockSize;
-            double nz = r.nextDouble() * blockSize + iz * blockSize;
-            double nw = r.nextDouble() * blockSize + iw * blockSize;
-            double dist2 = Double.NaN;
-            double dx = nx - x;
-            double dy = ny - y;
-            double dz = nz - z;
-            double dw = nw - w;
-            switch (this.dist) {
-                case EUCLID_DIST:
-                    dist2 = Math.sqrt(dx * dx + dy * dy + dz * dz + dw * dw);
-                    break;
-                case MANHAT_DIST:
-                    dist2 = abs(dx) + abs(dy) + abs(dz) + abs(dw);
-                    break;
-                case CHEBYC_DIST:
-                    dist2 = max(max(abs(dx), abs(dz)), max(abs(dy), abs(dz)));
-                    break;
-                case SQUARE_DIST:
-                    dist2 = dx * dx + dy * dy + dz * dz + dw * dw;
-                    break;
-                case QUADRA_DIST:
-                    dist2 = dx * dx + 2 * dx * dy + 2 * dx * dz + 2 * dx * dw
-                            + dy * dy + 2 * dy * dz + 2 * dy * dw + dz * dz + 2
-                            * dz * dw + dw * dw;
-                    break;
-                default:
-                    dist2 = Math.sqrt(dx * dx + dy * dy + dz * dz + dw * dw);
+    //lower bound of the distance from p to any point in a block, d is
+    //scratch space
+    private double bound(int dims, int[] cell, double[] p, double[] d) {
+        if (this.dist == QUADRA_DIST && dims > 2) {
+            //bound the sum of the offsets
+            double lo = 0;
+            double hi = 0;
+            for (int a = 0; a < dims; a++) {
+                lo += cell[a] * blockSize - p[a];
+                hi += (cell[a] + 1) * blockSize - p[a];
             }
-            set.add(dist2);
+            double m = lo > 0 ? lo : hi < 0 ? -hi : 0;
+            return m * m;
+        }
+        for (int a = 0; a < dims; a++) {
+            double lo = cell[a] * blockSize;
+            d[a] = p[a] < lo ? lo - p[a] : max(0, p[a] - lo - blockSize);
         }
+        if (this.dist == QUADRA_DIST && dims == 2) {
+            //the cross term is at least minus half the squares
+            return 0.5 * (d[0] * d[0] + d[1] * d[1]);
+        }
+        return distance(dims, d);
+    }
 
+    //64 bit hash finalizer, from splitmix64
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
     }
 
     private double abs(double d) {
@@ -409,6 +294,11 @@ public class WorleyNoise extends Noise {
         return noise(p.x, p.y, p.z) / blockSize;
     }
 
+    @Override
+    public double valueNoise(double x, double y, double z) {
+        return noise(x, y, z) / blockSize;
+    }
+
     @Override
     public Vector3D vectorNoise(Point3D p) {
         long classSeed = this.seed;
@@ -417,15 +307,34 @@ public class WorleyNoise extends Noise {
         long ySeed = classSeed * 887;
         long zSeed = classSeed * 997;
 
-        this.seed = xSeed;
-        double x = noise(p.x, p.y, p.z);
-        this.seed = ySeed;
-        double y = noise(p.x, p.y, p.z);
-        this.seed = zSeed;
-        double z = noise(p.x, p.y, p.z);
-
-        this.seed = classSeed;
+        double x = noise(xSeed, p.x, p.y, p.z);
+        double y = noise(ySeed, p.x, p.y, p.z);
+        double z = noise(zSeed, p.x, p.y, p.z);
 
         return new Vector3D(x, y, z);
     }
+
+    @Override
+    public void addVectorNoise(double x, double y, double z, double amplitude,
+            double[] out) {
+        long classSeed = this.seed;
+        out[0] += noise(classSeed * 317, x, y, z) * amplitude;
+        out[1] += noise(classSeed * 887, x, y, z) * amplitude;
+        out[2] += noise(classSeed * 997, x, y, z) * amplitude;
+    }
+
+    //scratch arrays for one thread, sized for up to four dimensions
+    private static final class Scratch {
+
+        final double[] p = new double[4];
+
+        final double[] delta = new double[4];
+
+        final int[] home = new int[4];
+
+        final int[] cell = new int[4];
+
+        double[] nearest = new double[1];
+
+    }
 }
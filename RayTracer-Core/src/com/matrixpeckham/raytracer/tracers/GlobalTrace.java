@@ -57,10 +57,28 @@ public class GlobalTrace extends Tracer {
             return Utility.BLACK;
         } else {
             //closest intersection
-            ShadeRec sr = new ShadeRec(world.hitObjects(ray));
+            return traceRay(ray, world.hitObjects(ray), depth);
+        }
+    }
+
+    /**
+     * Shade a ray whose closest intersection is already known.
+     *
+     * @param ray
+     * @param hit
+     * @param depth
+     * @return
+     */
+    @Override
+    public RGBColor traceRay(Ray ray, ShadeRec hit, int depth) {
+        if (depth > world.vp.maxDepth) {//depth bail out
+            return Utility.BLACK;
+        } else {
+            ShadeRec sr = new ShadeRec(hit);
             if (sr.hitAnObject) {//book keep and shade.
                 sr.depth = depth;
                 sr.ray.setTo(ray);
+                sr.computeDifferentials(ray);
                 return sr.material.globalShade(sr);
             } else {
                 return world.backgroundColor;
@@ -68,6 +86,16 @@ public class GlobalTrace extends Tracer {
         }
     }
 
+    /**
+     * shades the hits it is given
+     *
+     * @return
+     */
+    @Override
+    public boolean usesHits() {
+        return true;
+    }
+
     private static final Logger LOG
             = Logger.getLogger(GlobalTrace.class.getName());
 
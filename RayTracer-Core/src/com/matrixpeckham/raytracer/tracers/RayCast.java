@@ -72,9 +72,26 @@ public class RayCast extends Tracer {
             return Utility.BLACK;
         }
         //gets closest intersection
-        ShadeRec sr = new ShadeRec(world.hitObjects(ray));
+        return traceRay(ray, world.hitObjects(ray), depth);
+    }
+
+    /**
+     * Shade a ray whose closest intersection is already known.
+     *
+     * @param ray
+     * @param hit
+     * @param depth
+     * @return
+     */
+    @Override
+    public RGBColor traceRay(Ray ray, ShadeRec hit, int depth) {
+        if (depth > world.vp.maxDepth) {//depth bailout
+            return Utility.BLACK;
+        }
+        ShadeRec sr = new ShadeRec(hit);
         if (sr.hitAnObject) {//book keep and shade
             sr.ray.setTo(ray);
+            sr.computeDifferentials(ray);
             sr.depth = depth;
             return sr.material.shade(sr);
         } else {
@@ -82,6 +99,16 @@ public class RayCast extends Tracer {
         }
     }
 
+    /**
+     * shades the hits it is given
+     *
+     * @return
+     */
+    @Override
+    public boolean usesHits() {
+        return true;
+    }
+
     private static final Logger LOG = Logger.getLogger(RayCast.class.getName());
 
 }
@@ -20,6 +20,7 @@ package com.matrixpeckham.raytracer.tracers;
 import com.matrixpeckham.raytracer.util.DoubleRef;
 import com.matrixpeckham.raytracer.util.RGBColor;
 import com.matrixpeckham.raytracer.util.Ray;
+import com.matrixpeckham.raytracer.util.ShadeRec;
 import com.matrixpeckham.raytracer.util.Utility;
 import com.matrixpeckham.raytracer.world.World;
 import java.util.logging.Logger;
@@ -87,6 +88,31 @@ public class Tracer {
         return traceRay(ray, depth);
     }
 
+    /**
+     * Trace a ray whose closest hit has already been found, like the rays of a
+     * packet. sr is what world.hitObjects(ray) would return and is not
+     * changed. tracers that don't use world.hitObjects just trace the ray.
+     *
+     * @param ray ray to trace
+     * @param sr closest hit of the ray
+     * @param depth depth
+     * @return
+     */
+    public RGBColor traceRay(Ray ray, ShadeRec sr, int depth) {
+        return traceRay(ray, depth);
+    }
+
+    /**
+     * true if traceRay(Ray, ShadeRec, int) shades the hit it is given instead
+     * of intersecting the ray again. cameras only find the hits of packets of
+     * rays up front for tracers that do.
+     *
+     * @return
+     */
+    public boolean usesHits() {
+        return false;
+    }
+
     private static final Logger LOG = Logger.getLogger(Tracer.class.getName());
 
 }
@@ -65,12 +65,54 @@ public class Whitted extends Tracer {
             return Utility.BLACK;
         } else {
             //get the shaderec from the nearest hit object
-            ShadeRec sr = new ShadeRec(world.hitObjects(ray));
+            return traceRay(ray, world.hitObjects(ray), t, depth);
+        }
+    }
+
+    /**
+     * Shade a ray whose closest intersection is already known.
+     *
+     * @param ray
+     * @param hit
+     * @param depth
+     * @return
+     */
+    @Override
+    public RGBColor traceRay(Ray ray, ShadeRec hit, int depth) {
+        return traceRay(ray, hit, new DoubleRef(), depth);
+    }
+
+    /**
+     * shades the hits it is given
+     *
+     * @return
+     */
+    @Override
+    public boolean usesHits() {
+        return true;
+    }
+
+    /**
+     * shades the closest intersection and sets t to its ray parameter
+     *
+     * @param ray
+     * @param hit
+     * @param t
+     * @param depth
+     * @return
+     */
+    private RGBColor traceRay(Ray ray, ShadeRec hit, DoubleRef t, int depth) {
+        //bail out for depth
+        if (depth > world.vp.maxDepth) {
+            return Utility.BLACK;
+        } else {
+            ShadeRec sr = new ShadeRec(hit);
             //book keep the shaderec for shading, updates
             //ray, depth, and edits the reference parameter.
             if (sr.hitAnObject) {
                 sr.depth = depth;
                 sr.ray.setTo(ray);
+                sr.computeDifferentials(ray);
                 t.d = sr.lastT;
                 //shade point
                 return sr.material.shade(sr);
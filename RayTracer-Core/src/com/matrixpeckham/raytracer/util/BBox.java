@@ -117,6 +117,19 @@ public class BBox {
      * @return
      */
     public boolean hit(Ray ray) {
+        return hit(ray, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Checks ray/box intersection, only reports a hit if the ray enters the
+     * box before tmax. used by the compound hierarchies to skip boxes that lie
+     * behind the closest hit found so far.
+     *
+     * @param ray
+     * @param tmax
+     * @return
+     */
+    public boolean hit(Ray ray, double tmax) {
         double ox = ray.o.x;
         double oy = ray.o.y;
         double oz = ray.o.z;
@@ -178,7 +191,19 @@ public class BBox {
             t1 = tz_max;
         }
 
-        return (t0 < t1 && t1 > Utility.EPSILON);
+        return (t0 < t1 && t1 > Utility.EPSILON && t0 < tmax);
+    }
+
+    /**
+     * makes an empty, inverted box, expanding it to fit another box results in
+     * exactly that box.
+     *
+     * @return
+     */
+    public static BBox empty() {
+        return new BBox(Utility.HUGE_VALUE, -Utility.HUGE_VALUE,
+                Utility.HUGE_VALUE, -Utility.HUGE_VALUE, Utility.HUGE_VALUE,
+                -Utility.HUGE_VALUE);
     }
 
     /**
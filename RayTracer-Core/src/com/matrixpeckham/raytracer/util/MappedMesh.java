@@ -0,0 +1,646 @@
+/*
+ * Copyright (C) 2015 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Logger;
+
+/**
+ * Mesh stored in a memory mapped file instead of on the heap. Works like Mesh,
+ * but the vertices, normals, uvs and the three vertex indices of each triangle
+ * are kept in buffers mapped from a file, so meshes much larger than the heap
+ * can be rendered and the operating system decides which parts stay in
+ * memory. Used by MappedTriangleMesh.
+ * <p>
+ * Components are read by flat index: vertex i is vertex(3i..3i+2), its normal
+ * normal(3i..3i+2) and its uv uv(2i..2i+1). Triangle t uses the vertices
+ * index(3t..3t+2). Each buffer is mapped on its own, so each must be under
+ * 2GB.
+ * <p>
+ * A compact mesh stores the same data in about a quarter of the space: float
+ * positions, normals octahedral encoded into 32 bits, uvs quantized to 16 bits
+ * over the range given by setUVRange, and 16 bit indices if there are few
+ * enough vertices. The values read back are the decoded ones, so the
+ * intersection code is the same for both.
+ *
+ * @author William Matrix Peckham
+ */
+public class MappedMesh {
+
+    /**
+     * first int of every mapped mesh file
+     */
+    private static final int MAGIC = 0x52544d4d;
+
+    private static final int VERSION = 3;
+
+    /**
+     * byte order of the header and every buffer, fixed so a file written on
+     * one machine maps the same on any other
+     */
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    /**
+     * header bytes before the first buffer
+     */
+    private static final int HEADER = 64;
+
+    /**
+     * where the uv range is in the header
+     */
+    private static final int UV_RANGE = 24;
+
+    private static final int HAS_NORMALS = 1;
+
+    private static final int HAS_UV = 2;
+
+    private static final int COMPACT = 4;
+
+    /**
+     * most vertices a compact mesh can have with 16 bit indices
+     */
+    private static final int SHORT_INDEX_LIMIT = 1 << 16;
+
+    /**
+     * largest value of a 16 bit snorm or unorm
+     */
+    private static final double SNORM = Short.MAX_VALUE;
+
+    private static final double UNORM = 0xffff;
+
+    /**
+     * number of vertices.
+     */
+    public final int numVertices;
+
+    /**
+     * number of triangles.
+     */
+    public final int numTriangles;
+
+    /**
+     * true if the mesh uses the compact encoding
+     */
+    private final boolean compact;
+
+    /**
+     * full precision buffers, null for compact meshes
+     */
+    private final DoubleBuffer vertices;
+
+    private final DoubleBuffer normals;
+
+    private final DoubleBuffer uvs;
+
+    /**
+     * compact buffers, null for full precision meshes
+     */
+    private final FloatBuffer floatVertices;
+
+    private final IntBuffer octNormals;
+
+    private final ShortBuffer shortUVs;
+
+    /**
+     * 16 bit indices, used by compact meshes with few enough vertices
+     */
+    private final ShortBuffer shortIndices;
+
+    /**
+     * 32 bit indices, null when shortIndices is used
+     */
+    private final IntBuffer indices;
+
+    /**
+     * normals and uvs present
+     */
+    private final boolean hasNormals;
+
+    private final boolean hasUVs;
+
+    /**
+     * uv range used to quantize compact uvs, u0 u1 v0 v1
+     */
+    private final double[] uvRange = {0, 1, 0, 1};
+
+    /**
+     * mapped header, kept to store the uv range
+     */
+    private final ByteBuffer header;
+
+    /**
+     * the file the buffers are mapped from
+     */
+    private final File file;
+
+    /**
+     * maps the buffers of a mesh file
+     *
+     * @param file
+     * @param write
+     * @param nv number of vertices, only used for new files
+     * @param nt number of triangles, only used for new files
+     * @param flags only used for new files
+     * @throws IOException
+     */
+    private MappedMesh(File file, boolean write, int nv, int nt, int flags)
+            throws IOException {
+        this.file = file;
+        try (RandomAccessFile raf = new RandomAccessFile(file, write ? "rw"
+                : "r")) {
+            FileChannel ch = raf.getChannel();
+            FileChannel.MapMode mode = write ? FileChannel.MapMode.READ_WRITE
+                    : FileChannel.MapMode.READ_ONLY;
+            header = map(ch, mode, 0, HEADER);
+            if (write) {
+                header.putInt(MAGIC).putInt(VERSION).putInt(nv).putInt(nt).
+                        putInt(flags);
+                for (int i = 0; i < 4; i++) {
+                    header.putDouble(UV_RANGE + 8 * i, uvRange[i]);
+                }
+            } else {
+                if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                    throw new IOException(file + " is not a mapped mesh file");
+                }
+                nv = header.getInt();
+                nt = header.getInt();
+                flags = header.getInt();
+                for (int i = 0; i < 4; i++) {
+                    uvRange[i] = header.getDouble(UV_RANGE + 8 * i);
+                }
+            }
+            numVertices = nv;
+            numTriangles = nt;
+            compact = (flags & COMPACT) != 0;
+            hasNormals = (flags & HAS_NORMALS) != 0;
+            hasUVs = (flags & HAS_UV) != 0;
+            long pos = HEADER;
+            if (compact) {
+                floatVertices = map(ch, mode, pos, 3L * nv * 4).asFloatBuffer();
+                pos += 3L * nv * 4;
+                octNormals = hasNormals ? map(ch, mode, pos, nv * 4L).
+                        asIntBuffer() : null;
+                pos += hasNormals ? nv * 4L : 0;
+                shortUVs = hasUVs ? map(ch, mode, pos, 2L * nv * 2).
+                        asShortBuffer() : null;
+                pos += hasUVs ? 2L * nv * 2 : 0;
+                vertices = null;
+                normals = null;
+                uvs = null;
+            } else {
+                vertices = map(ch, mode, pos, 3L * nv * 8).asDoubleBuffer();
+                pos += 3L * nv * 8;
+                normals = hasNormals ? map(ch, mode, pos, 3L * nv * 8).
+                        asDoubleBuffer() : null;
+                pos += hasNormals ? 3L * nv * 8 : 0;
+                uvs = hasUVs ? map(ch, mode, pos, 2L * nv * 8).asDoubleBuffer()
+                        : null;
+                pos += hasUVs ? 2L * nv * 8 : 0;
+                floatVertices = null;
+                octNormals = null;
+                shortUVs = null;
+            }
+            if (compact && nv <= SHORT_INDEX_LIMIT) {
+                shortIndices = map(ch, mode, pos, 3L * nt * 2).asShortBuffer();
+                indices = null;
+            } else {
+                indices = map(ch, mode, pos, 3L * nt * 4).asIntBuffer();
+                shortIndices = null;
+            }
+        }
+    }
+
+    /**
+     * maps one buffer of the file
+     *
+     * @param ch
+     * @param mode
+     * @param pos
+     * @param size
+     * @return
+     * @throws IOException
+     */
+    private static ByteBuffer map(FileChannel ch, FileChannel.MapMode mode,
+            long pos, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("mesh buffer of " + size
+                    + " bytes is too large to map");
+        }
+        return ch.map(mode, pos, size).order(ORDER);
+    }
+
+    /**
+     * opens an existing mapped mesh file for reading
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static MappedMesh open(File file) throws IOException {
+        return new MappedMesh(file, false, 0, 0, 0);
+    }
+
+    /**
+     * creates a full precision mapped mesh file of the given size, replacing
+     * the file if it exists. fill it in with setVertex and setTriangle, and
+     * for smooth meshes call computeNormals once the triangles are set. The
+     * mesh can be built a piece at a time this way without ever being on the
+     * heap.
+     *
+     * @param file
+     * @param numVertices
+     * @param numTriangles
+     * @param normals true if the mesh needs vertex normals
+     * @param uv true if the mesh has texture coordinates
+     * @return
+     * @throws IOException
+     */
+    public static MappedMesh create(File file, int numVertices,
+            int numTriangles, boolean normals, boolean uv) throws IOException {
+        return create(file, numVertices, numTriangles, normals, uv, false);
+    }
+
+    /**
+     * creates a mapped mesh file, like create above, optionally with the
+     * compact encoding. compact meshes with uvs should have setUVRange called
+     * before the uvs are set.
+     *
+     * @param file
+     * @param numVertices
+     * @param numTriangles
+     * @param normals
+     * @param uv
+     * @param compact
+     * @return
+     * @throws IOException
+     */
+    public static MappedMesh create(File file, int numVertices,
+            int numTriangles, boolean normals, boolean uv, boolean compact)
+            throws IOException {
+        file.delete();
+        return new MappedMesh(file, true, numVertices, numTriangles,
+                (normals ? HAS_NORMALS : 0) | (uv ? HAS_UV : 0)
+                | (compact ? COMPACT : 0));
+    }
+
+    /**
+     * the file this mesh is stored in
+     *
+     * @return
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * if the mesh uses the compact encoding
+     *
+     * @return
+     */
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * if the mesh has vertex normals
+     *
+     * @return
+     */
+    public boolean hasNormals() {
+        return hasNormals;
+    }
+
+    /**
+     * if the mesh has texture coordinates
+     *
+     * @return
+     */
+    public boolean hasUVs() {
+        return hasUVs;
+    }
+
+    /**
+     * position component k, vertex k/3 axis k%3
+     *
+     * @param k
+     * @return
+     */
+    public double vertex(int k) {
+        return compact ? floatVertices.get(k) : vertices.get(k);
+    }
+
+    /**
+     * normal component k, vertex k/3 axis k%3. compact normals are decoded
+     * and normalized.
+     *
+     * @param k
+     * @return
+     */
+    public double normal(int k) {
+        if (!compact) {
+            return normals.get(k);
+        }
+        int oct = octNormals.get(k / 3);
+        double x = (short) (oct >> 16) / SNORM;
+        double y = (short) oct / SNORM;
+        double z = 1 - Math.abs(x) - Math.abs(y);
+        if (z < 0) {
+            //lower half of the octahedron is folded over the diagonals
+            double fx = (1 - Math.abs(y)) * sign(x);
+            double fy = (1 - Math.abs(x)) * sign(y);
+            x = fx;
+            y = fy;
+        }
+        double len = Math.sqrt(x * x + y * y + z * z);
+        switch (k % 3) {
+            case 0:
+                return x / len;
+            case 1:
+                return y / len;
+            default:
+                return z / len;
+        }
+    }
+
+    /**
+     * sign for the octahedral folding, zero counts as positive
+     */
+    private static double sign(double x) {
+        return x < 0 ? -1 : 1;
+    }
+
+    /**
+     * texture coordinate k, u of vertex k/2 if k is even, v if odd
+     *
+     * @param k
+     * @return
+     */
+    public double uv(int k) {
+        if (!compact) {
+            return uvs.get(k);
+        }
+        double lo = uvRange[2 * (k & 1)];
+        double hi = uvRange[2 * (k & 1) + 1];
+        return lo + (shortUVs.get(k) & 0xffff) / UNORM * (hi - lo);
+    }
+
+    /**
+     * vertex index k, vertex k%3 of triangle k/3
+     *
+     * @param k
+     * @return
+     */
+    public int index(int k) {
+        return shortIndices != null ? shortIndices.get(k) & 0xffff : indices.
+                get(k);
+    }
+
+    /**
+     * sets the range compact uvs are quantized over, uvs outside it are
+     * clamped. the default is 0 to 1. Has no effect on full precision meshes.
+     *
+     * @param u0
+     * @param u1
+     * @param v0
+     * @param v1
+     */
+    public void setUVRange(double u0, double u1, double v0, double v1) {
+        uvRange[0] = u0;
+        uvRange[1] = u1;
+        uvRange[2] = v0;
+        uvRange[3] = v1;
+        for (int i = 0; i < 4; i++) {
+            header.putDouble(UV_RANGE + 8 * i, uvRange[i]);
+        }
+    }
+
+    /**
+     * sets the position of vertex i
+     *
+     * @param i
+     * @param p
+     */
+    public void setVertex(int i, Point3D p) {
+        if (compact) {
+            floatVertices.put(3 * i, (float) p.x);
+            floatVertices.put(3 * i + 1, (float) p.y);
+            floatVertices.put(3 * i + 2, (float) p.z);
+        } else {
+            vertices.put(3 * i, p.x);
+            vertices.put(3 * i + 1, p.y);
+            vertices.put(3 * i + 2, p.z);
+        }
+    }
+
+    /**
+     * gets the position of vertex i
+     *
+     * @param i
+     * @param p point to store it in
+     * @return p
+     */
+    public Point3D getVertex(int i, Point3D p) {
+        p.setTo(vertex(3 * i), vertex(3 * i + 1), vertex(3 * i + 2));
+        return p;
+    }
+
+    /**
+     * sets the normal of vertex i
+     *
+     * @param i
+     * @param n
+     */
+    public void setNormal(int i, Normal n) {
+        setNormal(i, n.x, n.y, n.z);
+    }
+
+    /**
+     * sets the normal of vertex i from its components
+     */
+    private void setNormal(int i, double x, double y, double z) {
+        if (!compact) {
+            normals.put(3 * i, x);
+            normals.put(3 * i + 1, y);
+            normals.put(3 * i + 2, z);
+            return;
+        }
+        double len = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        if (len == 0) {
+            x = 0;
+            y = 1;
+        } else {
+            x /= len;
+            y /= len;
+            if (z < 0) {
+                double fx = (1 - Math.abs(y)) * sign(x);
+                double fy = (1 - Math.abs(x)) * sign(y);
+                x = fx;
+                y = fy;
+            }
+        }
+        int ox = (int) Math.round(Utility.clamp(x, -1, 1) * SNORM);
+        int oy = (int) Math.round(Utility.clamp(y, -1, 1) * SNORM);
+        octNormals.put(i, (ox << 16) | (oy & 0xffff));
+    }
+
+    /**
+     * sets the texture coordinates of vertex i
+     *
+     * @param i
+     * @param u
+     * @param v
+     */
+    public void setUV(int i, double u, double v) {
+        if (compact) {
+            shortUVs.put(2 * i, quantize(u, uvRange[0], uvRange[1]));
+            shortUVs.put(2 * i + 1, quantize(v, uvRange[2], uvRange[3]));
+        } else {
+            uvs.put(2 * i, u);
+            uvs.put(2 * i + 1, v);
+        }
+    }
+
+    /**
+     * 16 bit unorm of a value in a range
+     */
+    private static short quantize(double x, double lo, double hi) {
+        double f = hi > lo ? (x - lo) / (hi - lo) : 0;
+        return (short) Math.round(Utility.clamp(f, 0, 1) * UNORM);
+    }
+
+    /**
+     * sets the vertex indices of triangle t
+     *
+     * @param t
+     * @param i0
+     * @param i1
+     * @param i2
+     */
+    public void setTriangle(int t, int i0, int i1, int i2) {
+        if (shortIndices != null) {
+            shortIndices.put(3 * t, (short) i0);
+            shortIndices.put(3 * t + 1, (short) i1);
+            shortIndices.put(3 * t + 2, (short) i2);
+        } else {
+            indices.put(3 * t, i0);
+            indices.put(3 * t + 1, i1);
+            indices.put(3 * t + 2, i2);
+        }
+    }
+
+    /**
+     * computes the vertex normals as the normalized sum of the plane normals
+     * of the triangles around each vertex, like TriangleMesh.computeMeshNormals
+     * does. The sums go straight into the normal buffer, or for compact meshes
+     * into a mapped temporary file, since encoded normals can't be summed.
+     *
+     * @param reverseNormal
+     * @throws IOException
+     */
+    public void computeNormals(boolean reverseNormal) throws IOException {
+        DoubleBuffer sums = normals;
+        File tmp = null;
+        RandomAccessFile raf = null;
+        try {
+            if (compact) {
+                tmp = File.createTempFile("normals", ".tmp");
+                raf = new RandomAccessFile(tmp, "rw");
+                sums = map(raf.getChannel(), FileChannel.MapMode.READ_WRITE, 0,
+                        3L * numVertices * 8).asDoubleBuffer();
+            }
+            sumNormals(sums, reverseNormal);
+            for (int i = 0; i < numVertices; i++) {
+                double x = sums.get(3 * i);
+                double y = sums.get(3 * i + 1);
+                double z = sums.get(3 * i + 2);
+                double len = Math.sqrt(x * x + y * y + z * z);
+                if (len == 0) {
+                    setNormal(i, 0, 1, 0);
+                } else {
+                    setNormal(i, x / len, y / len, z / len);
+                }
+            }
+        } finally {
+            if (raf != null) {
+                raf.close();
+            }
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * adds the unit plane normal of each triangle to its three vertices
+     *
+     * @param sums zeroed or fresh buffer with three doubles per vertex
+     * @param reverseNormal
+     */
+    private void sumNormals(DoubleBuffer sums, boolean reverseNormal) {
+        for (int i = 0; i < 3 * numVertices; i++) {
+            sums.put(i, 0);
+        }
+        for (int t = 0; t < numTriangles; t++) {
+            int i0 = 3 * index(3 * t);
+            int i1 = 3 * index(3 * t + 1);
+            int i2 = 3 * index(3 * t + 2);
+            double ax = vertex(i1) - vertex(i0);
+            double ay = vertex(i1 + 1) - vertex(i0 + 1);
+            double az = vertex(i1 + 2) - vertex(i0 + 2);
+            double bx = vertex(i2) - vertex(i0);
+            double by = vertex(i2 + 1) - vertex(i0 + 1);
+            double bz = vertex(i2 + 2) - vertex(i0 + 2);
+            double nx = ay * bz - az * by;
+            double ny = az * bx - ax * bz;
+            double nz = ax * by - ay * bx;
+            double len = Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (len == 0) {
+                continue;
+            }
+            if (reverseNormal) {
+                len = -len;
+            }
+            add(sums, i0, nx / len, ny / len, nz / len);
+            add(sums, i1, nx / len, ny / len, nz / len);
+            add(sums, i2, nx / len, ny / len, nz / len);
+        }
+    }
+
+    /**
+     * adds to the three doubles starting at buffer index i
+     */
+    private static void add(DoubleBuffer b, int i, double x, double y,
+            double z) {
+        b.put(i, b.get(i) + x);
+        b.put(i + 1, b.get(i + 1) + y);
+        b.put(i + 2, b.get(i + 2) + z);
+    }
+
+    private static final Logger LOG
+            = Logger.getLogger(MappedMesh.class.getName());
+
+}
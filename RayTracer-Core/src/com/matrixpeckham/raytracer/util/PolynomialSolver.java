@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2016 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.util;
+
+import java.util.logging.Logger;
+
+/**
+ * Root finders for ray intersection polynomials that only look for roots in
+ * an interval of the ray, and write into arrays the caller supplies so
+ * nothing is allocated per ray.
+ * <p>
+ * Instead of closed form formulas, which lose the roots of ray/torus
+ * polynomials to roundoff, the interval is split at the points where the
+ * polynomial turns around (found the same way from its derivative), so each
+ * piece holds at most one root. A piece only holds a root if the polynomial
+ * changes sign across it, so most pieces are rejected after two evaluations,
+ * and the rest are refined by Newton steps kept inside the piece, falling
+ * back to bisection when a step leaves it or the steps stop at least halving,
+ * so even a piece that reaches far past the root closes in on it. Roots where the polynomial only
+ * touches zero without crossing are found at the turning points, when the
+ * value there is zero to within roundoff.
+ *
+ * @author William Matrix Peckham
+ */
+public final class PolynomialSolver {
+
+    //iterations allowed to refine a root beyond two for each halving the
+    //piece needs to get down to the tolerance
+    private static final int EXTRA_ITERATIONS = 16;
+
+    //refining stops when steps get this small relative to the root
+    private static final double TOLERANCE = 1e-12;
+
+    //values this small relative to the size of the terms count as zero when
+    //looking for double roots
+    private static final double TOUCH = 1e-10;
+
+    private PolynomialSolver() {
+    }
+
+    /**
+     * finds the roots in [tmin, tmax] of a*t^4 + b*t^3 + c*t^2 + d*t + e.
+     * s must hold at least 8 doubles, the roots are put in the first ones in
+     * increasing order and the rest is scratch.
+     *
+     * @param a
+     * @param b
+     * @param c
+     * @param d
+     * @param e
+     * @param tmin
+     * @param tmax
+     * @param s
+     * @return number of roots
+     */
+    public static int solveQuartic(double a, double b, double c, double d,
+            double e, double tmin, double tmax, double[] s) {
+        if (!(tmin < tmax)) {
+            return 0;
+        }
+        //inflection points, where the derivative turns around, are the roots
+        //of 12a t^2 + 6b t + 2c
+        double i0 = Double.NaN;
+        double i1 = Double.NaN;
+        if (a != 0) {
+            double p = b / (4 * a);
+            double q = c / (6 * a);
+            double disc = p * p - q;
+            if (disc > 0) {
+                double r = Math.sqrt(disc);
+                i0 = -p - r;
+                i1 = -p + r;
+            }
+        } else if (b != 0) {
+            i0 = -c / (3 * b);
+        }
+
+        //critical points, one at most between each pair of inflection points
+        int nk = 0;
+        double l = tmin;
+        for (int i = 0; i < 3; i++) {
+            double r = i == 0 ? i0 : i == 1 ? i1 : tmax;
+            if (!(r > l && r <= tmax)) {
+                continue;
+            }
+            double k = root(0, 4 * a, 3 * b, 2 * c, d, l, r);
+            if (k == k && k < tmax) {
+                s[4 + nk++] = k;
+            }
+            l = r;
+        }
+
+        //roots, one at most between each pair of critical points. A critical
+        //point where the polynomial is zero to within roundoff is a double
+        //root if there are no roots on either side of it.
+        int n = 0;
+        if (eval(a, b, c, d, e, tmin) == 0) {
+            s[n++] = tmin;
+        }
+        l = tmin;
+        double touch = Double.NaN;
+        for (int i = 0; i <= nk; i++) {
+            double r = i < nk ? s[4 + i] : tmax;
+            double t = root(a, b, c, d, e, l, r);
+            if (t == t) {
+                s[n++] = t;
+            } else if (touch == touch) {
+                s[n++] = touch;
+            }
+            touch = Double.NaN;
+            if (i < nk && t != r && nearZero(a, b, c, d, e, r)) {
+                touch = r;
+            }
+            if (t == t) {
+                //the root in front of r rules it out
+                touch = Double.NaN;
+            }
+            l = r;
+        }
+        return n;
+    }
+
+    /**
+     * value of a*t^4 + b*t^3 + c*t^2 + d*t + e
+     *
+     * @param a
+     * @param b
+     * @param c
+     * @param d
+     * @param e
+     * @param t
+     * @return
+     */
+    public static double eval(double a, double b, double c, double d,
+            double e, double t) {
+        return (((a * t + b) * t + c) * t + d) * t + e;
+    }
+
+    //true if the value at t is zero to within the roundoff of its terms
+    private static boolean nearZero(double a, double b, double c, double d,
+            double e, double t) {
+        double at = Math.abs(t);
+        double size = (((Math.abs(a) * at + Math.abs(b)) * at + Math.abs(c))
+                * at + Math.abs(d)) * at + Math.abs(e);
+        return Math.abs(eval(a, b, c, d, e, t)) <= TOUCH * size;
+    }
+
+    //root of the polynomial in (l, r], NaN if it doesn't change sign across
+    //the interval. The polynomial must be monotonic in the interval.
+    private static double root(double a, double b, double c, double d,
+            double e, double l, double r) {
+        double fl = eval(a, b, c, d, e, l);
+        double fr = eval(a, b, c, d, e, r);
+        if (fr == 0) {
+            return r;
+        }
+        if (fl == 0 || (fl < 0) == (fr < 0)) {
+            return Double.NaN;
+        }
+        boolean rising = fl < 0;
+        //bisection halves the piece at least every other step, so the steps
+        //needed grow with the number of halvings down to the tolerance
+        double eps = TOLERANCE * Math.max(1, Math.min(Math.abs(l), Math.abs(
+                r)));
+        int steps = 2 * Math.max(0, Math.getExponent((r - l) / eps) + 1)
+                + EXTRA_ITERATIONS;
+        //start where the chord crosses zero
+        double t = l - fl * (r - l) / (fr - fl);
+        double dx = r - l;
+        double dxOld = dx;
+        for (int i = 0; i < steps; i++) {
+            double f = eval(a, b, c, d, e, t);
+            if (f == 0) {
+                return t;
+            }
+            if ((f < 0) == rising) {
+                l = t;
+            } else {
+                r = t;
+            }
+            double df = ((4 * a * t + 3 * b) * t + 2 * c) * t + d;
+            double nt = t - f / df;
+            //Newton steps far from a root of a steep polynomial only shrink
+            //by a quarter or so, bisect when they stop halving
+            if (!(nt > l && nt < r) || Math.abs(nt - t) > 0.5 * Math.abs(
+                    dxOld)) {
+                nt = 0.5 * (l + r);
+            }
+            dxOld = dx;
+            dx = nt - t;
+            if (Math.abs(nt - t) <= TOLERANCE * Math.max(1, Math.abs(nt))
+                    || r - l <= TOLERANCE * Math.max(1, Math.abs(l))) {
+                return nt;
+            }
+            t = nt;
+        }
+        return t;
+    }
+
+    private static final Logger LOG
+            = Logger.getLogger(PolynomialSolver.class.getName());
+
+}
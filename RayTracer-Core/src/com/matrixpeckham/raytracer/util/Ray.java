@@ -36,6 +36,12 @@ public class Ray {
      */
     public final Vector3D d;
 
+    /**
+     * offset rays for the neighboring pixels, null for rays that don't track
+     * their footprint, like shadow rays
+     */
+    public RayDifferential differential = null;
+
     /**
      * for debugging
      *
@@ -72,6 +78,9 @@ public class Ray {
      */
     public Ray(Ray r) {
         this(r.o, r.d);
+        if (r.differential != null) {
+            differential = new RayDifferential(r.differential);
+        }
     }
 
     /**
@@ -83,9 +92,43 @@ public class Ray {
     public Ray setTo(Ray r) {
         o.setTo(r.o);
         d.setTo(r.d);
+        if (r.differential == null) {
+            differential = null;
+        } else {
+            differential().setTo(r.differential);
+        }
         return this;
     }
 
+    /**
+     * gets the differentials of this ray, creating them if it has none
+     *
+     * @return
+     */
+    public RayDifferential differential() {
+        if (differential == null) {
+            differential = new RayDifferential();
+        }
+        return differential;
+    }
+
+    /**
+     * sets the offset rays
+     *
+     * @param rxo
+     * @param rxd
+     * @param ryo
+     * @param ryd
+     */
+    public void setDifferentials(Point3D rxo, Vector3D rxd, Point3D ryo,
+            Vector3D ryd) {
+        RayDifferential rd = differential();
+        rd.rxOrigin.setTo(rxo);
+        rd.rxDirection.setTo(rxd);
+        rd.ryOrigin.setTo(ryo);
+        rd.ryDirection.setTo(ryd);
+    }
+
     private static final Logger LOG = Logger.getLogger(Ray.class.getName());
 
 }
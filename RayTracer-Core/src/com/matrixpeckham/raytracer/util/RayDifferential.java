@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2016 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.util;
+
+import java.util.logging.Logger;
+
+/**
+ * Differentials of a ray, stored as the two offset rays through the next
+ * pixel over in x and in y. Where the offset rays hit the surface around the
+ * main hit point gives the footprint of the pixel there.
+ *
+ * @author William Matrix Peckham
+ */
+public class RayDifferential {
+
+    /**
+     * origin of the ray offset in x
+     */
+    public final Point3D rxOrigin = new Point3D();
+
+    /**
+     * direction of the ray offset in x
+     */
+    public final Vector3D rxDirection = new Vector3D(0, 0, 1);
+
+    /**
+     * origin of the ray offset in y
+     */
+    public final Point3D ryOrigin = new Point3D();
+
+    /**
+     * direction of the ray offset in y
+     */
+    public final Vector3D ryDirection = new Vector3D(0, 0, 1);
+
+    /**
+     * default constructor
+     */
+    public RayDifferential() {
+    }
+
+    /**
+     * copy constructor
+     *
+     * @param r
+     */
+    public RayDifferential(RayDifferential r) {
+        setTo(r);
+    }
+
+    /**
+     * equals replacement
+     *
+     * @param r
+     * @return
+     */
+    public RayDifferential setTo(RayDifferential r) {
+        rxOrigin.setTo(r.rxOrigin);
+        rxDirection.setTo(r.rxDirection);
+        ryOrigin.setTo(r.ryOrigin);
+        ryDirection.setTo(r.ryDirection);
+        return this;
+    }
+
+    private static final Logger LOG
+            = Logger.getLogger(RayDifferential.class.getName());
+
+}
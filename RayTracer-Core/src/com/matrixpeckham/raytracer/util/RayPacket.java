@@ -0,0 +1,435 @@
+/*
+ * Copyright (C) 2015 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.util;
+
+import com.matrixpeckham.raytracer.materials.Material;
+import com.matrixpeckham.raytracer.world.World;
+
+/**
+ * Packet of rays traced together, used for coherent primary rays, like a tile
+ * of pixels from a pinhole camera. Origins and directions are stored as
+ * separate arrays so the objects that handle packets can loop over them
+ * without touching Ray objects. Each ray (lane) has a ShadeRec that keeps the
+ * closest hit found so far, the same values World.hitObjects would return for
+ * that ray. Which lanes an object should intersect is kept as a bit mask, so
+ * compounds can narrow it down and put it back cheaply.
+ *
+ * @author William Matrix Peckham
+ */
+public class RayPacket {
+
+    /**
+     * most rays a packet can hold, one bit of the active mask per ray
+     */
+    public static final int MAX_SIZE = 64;
+
+    /**
+     * origin x components
+     */
+    public final double[] ox;
+
+    /**
+     * origin y components
+     */
+    public final double[] oy;
+
+    /**
+     * origin z components
+     */
+    public final double[] oz;
+
+    /**
+     * direction x components
+     */
+    public final double[] dx;
+
+    /**
+     * direction y components
+     */
+    public final double[] dy;
+
+    /**
+     * direction z components
+     */
+    public final double[] dz;
+
+    /**
+     * inverse direction components, set by reset
+     */
+    private final double[] ix;
+
+    private final double[] iy;
+
+    private final double[] iz;
+
+    /**
+     * active mask, bit i set means objects should intersect lane i
+     */
+    public long active = 0;
+
+    /**
+     * closest hit for each lane, lastT holds the closest ray parameter
+     */
+    public final ShadeRec[] records;
+
+    /**
+     * number of rays in the packet
+     */
+    public int size = 0;
+
+    /**
+     * scratch ray for objects that intersect lanes one at a time
+     */
+    public final Ray ray = new Ray();
+
+    /**
+     * scratch shaderec for objects that intersect lanes one at a time, use
+     * scratch() to get it
+     */
+    private final ShadeRec scratch;
+
+    /**
+     * true if every direction has the same non zero sign in each axis, only
+     * then are the bounds below usable for culling. set by reset.
+     */
+    private boolean coherent = false;
+
+    /**
+     * bounds on origins and inverse directions of the lanes, index 0 is x, 1
+     * is y, 2 is z. set by reset.
+     */
+    private final double[] minO = new double[3];
+
+    private final double[] maxO = new double[3];
+
+    private final double[] minInvD = new double[3];
+
+    private final double[] maxInvD = new double[3];
+
+    /**
+     * creates a packet that can hold capacity rays
+     *
+     * @param w
+     * @param capacity at most MAX_SIZE
+     */
+    public RayPacket(World w, int capacity) {
+        if (capacity > MAX_SIZE) {
+            throw new IllegalArgumentException("packets hold at most "
+                    + MAX_SIZE + " rays");
+        }
+        ox = new double[capacity];
+        oy = new double[capacity];
+        oz = new double[capacity];
+        dx = new double[capacity];
+        dy = new double[capacity];
+        dz = new double[capacity];
+        ix = new double[capacity];
+        iy = new double[capacity];
+        iz = new double[capacity];
+        records = new ShadeRec[capacity];
+        for (int i = 0; i < capacity; i++) {
+            records[i] = new ShadeRec(w);
+        }
+        scratch = new ShadeRec(w);
+    }
+
+    /**
+     * max number of rays
+     *
+     * @return
+     */
+    public int capacity() {
+        return ox.length;
+    }
+
+    /**
+     * empties the packet
+     */
+    public void clear() {
+        size = 0;
+        active = 0;
+    }
+
+    /**
+     * adds a ray to the end of the packet
+     *
+     * @param o
+     * @param d
+     * @return lane index of the ray
+     */
+    public int addRay(Point3D o, Vector3D d) {
+        int i = size++;
+        ox[i] = o.x;
+        oy[i] = o.y;
+        oz[i] = o.z;
+        dx[i] = d.x;
+        dy[i] = d.y;
+        dz[i] = d.z;
+        return i;
+    }
+
+    /**
+     * copies lane i into the ray
+     *
+     * @param i
+     * @param r
+     * @return the ray
+     */
+    public Ray getRay(int i, Ray r) {
+        r.o.setTo(ox[i], oy[i], oz[i]);
+        r.d.setTo(dx[i], dy[i], dz[i]);
+        return r;
+    }
+
+    /**
+     * makes every lane active and clears the hit records, then computes the
+     * inverse directions and culling bounds. call after the rays are added
+     * and before intersecting.
+     */
+    public void reset() {
+        active = size == MAX_SIZE ? -1L : (1L << size) - 1;
+        for (int i = 0; i < size; i++) {
+            ShadeRec sr = records[i];
+            sr.hitAnObject = false;
+            sr.lastT = Utility.HUGE_VALUE;
+            sr.material = null;
+            sr.u = 0;
+            sr.v = 0;
+            sr.dpdu.setTo(0, 0, 0);
+            sr.dpdv.setTo(0, 0, 0);
+            ix[i] = 1.0 / dx[i];
+            iy[i] = 1.0 / dy[i];
+            iz[i] = 1.0 / dz[i];
+        }
+        coherent = size > 0 && prepareAxis(0, ox, dx, ix) && prepareAxis(1,
+                oy, dy, iy) && prepareAxis(2, oz, dz, iz);
+    }
+
+    /**
+     * bounds for a single axis
+     *
+     * @param axis
+     * @param o
+     * @param d
+     * @param inv
+     * @return false if the directions don't share a sign
+     */
+    private boolean prepareAxis(int axis, double[] o, double[] d,
+            double[] inv) {
+        double lo = Double.POSITIVE_INFINITY;
+        double hi = Double.NEGATIVE_INFINITY;
+        double ilo = Double.POSITIVE_INFINITY;
+        double ihi = Double.NEGATIVE_INFINITY;
+        boolean positive = d[0] > 0;
+        for (int i = 0; i < size; i++) {
+            if (d[i] == 0 || (d[i] > 0) != positive) {
+                return false;
+            }
+            lo = Math.min(lo, o[i]);
+            hi = Math.max(hi, o[i]);
+            ilo = Math.min(ilo, inv[i]);
+            ihi = Math.max(ihi, inv[i]);
+        }
+        minO[axis] = lo;
+        maxO[axis] = hi;
+        minInvD[axis] = ilo;
+        maxInvD[axis] = ihi;
+        return true;
+    }
+
+    /**
+     * if every ray goes the same way along each axis
+     *
+     * @return
+     */
+    public boolean isCoherent() {
+        return coherent;
+    }
+
+    /**
+     * finds the active lanes that hit a box in front of their closest hit.
+     * coherent packets are first tested as a whole, using interval arithmetic
+     * on the origin and direction bounds, so packets that miss the box
+     * entirely are thrown out with a single test.
+     *
+     * @param box
+     * @return mask of the lanes that hit the box
+     */
+    public long cull(BBox box) {
+        if (active == 0 || (coherent && !mayHit(box))) {
+            return 0;
+        }
+        long mask = 0;
+        for (long m = active; m != 0; m &= m - 1) {
+            int i = Long.numberOfTrailingZeros(m);
+            if (hits(i, box)) {
+                mask |= 1L << i;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * slab test of lane i against a box, same as BBox.hit(ray, tmax) with the
+     * lane's closest hit as tmax
+     *
+     * @param i
+     * @param box
+     * @return
+     */
+    private boolean hits(int i, BBox box) {
+        double tx0 = (box.x0 - ox[i]) * ix[i];
+        double tx1 = (box.x1 - ox[i]) * ix[i];
+        double ty0 = (box.y0 - oy[i]) * iy[i];
+        double ty1 = (box.y1 - oy[i]) * iy[i];
+        double tz0 = (box.z0 - oz[i]) * iz[i];
+        double tz1 = (box.z1 - oz[i]) * iz[i];
+        double t0 = Math.max(Math.max(Math.min(tx0, tx1), Math.min(ty0, ty1)),
+                Math.min(tz0, tz1));
+        double t1 = Math.min(Math.min(Math.max(tx0, tx1), Math.max(ty0, ty1)),
+                Math.max(tz0, tz1));
+        return t0 < t1 && t1 > Utility.EPSILON && t0 < records[i].lastT;
+    }
+
+    /**
+     * conservative test of the whole packet against a box, if this returns
+     * false no lane hits the box. only valid for coherent packets.
+     *
+     * @param box
+     * @return
+     */
+    private boolean mayHit(BBox box) {
+        double near = Math.max(Math.max(nearT(0, box.x0, box.x1), nearT(1,
+                box.y0, box.y1)), nearT(2, box.z0, box.z1));
+        double far = Math.min(Math.min(farT(0, box.x0, box.x1), farT(1, box.y0,
+                box.y1)), farT(2, box.z0, box.z1));
+        return near <= far && far > Utility.EPSILON && near < maxT();
+    }
+
+    /**
+     * lower bound on the ray parameter where any lane enters the slab for an
+     * axis
+     *
+     * @param a
+     * @param lo
+     * @param hi
+     * @return
+     */
+    private double nearT(int a, double lo, double hi) {
+        double p = minInvD[a] > 0 ? lo : hi;
+        return minProduct(p - maxO[a], p - minO[a], minInvD[a], maxInvD[a]);
+    }
+
+    /**
+     * upper bound on the ray parameter where any lane leaves the slab for an
+     * axis
+     *
+     * @param a
+     * @param lo
+     * @param hi
+     * @return
+     */
+    private double farT(int a, double lo, double hi) {
+        double p = minInvD[a] > 0 ? hi : lo;
+        return maxProduct(p - maxO[a], p - minO[a], minInvD[a], maxInvD[a]);
+    }
+
+    /**
+     * largest closest hit of the active lanes
+     *
+     * @return
+     */
+    public double maxT() {
+        double t = Double.NEGATIVE_INFINITY;
+        for (long m = active; m != 0; m &= m - 1) {
+            t = Math.max(t, records[Long.numberOfTrailingZeros(m)].lastT);
+        }
+        return t;
+    }
+
+    /**
+     * smallest product of two intervals
+     */
+    private static double minProduct(double a0, double a1, double b0,
+            double b1) {
+        return Math.min(Math.min(a0 * b0, a0 * b1), Math.min(a1 * b0, a1 * b1));
+    }
+
+    /**
+     * largest product of two intervals
+     */
+    private static double maxProduct(double a0, double a1, double b0,
+            double b1) {
+        return Math.max(Math.max(a0 * b0, a0 * b1), Math.max(a1 * b0, a1 * b1));
+    }
+
+    /**
+     * the scratch shaderec with its texture coordinates cleared, like a new
+     * shaderec would have, for an object to fill in a hit for one lane.
+     *
+     * @return
+     */
+    public ShadeRec scratch() {
+        scratch.u = 0;
+        scratch.v = 0;
+        scratch.dpdu.setTo(0, 0, 0);
+        scratch.dpdv.setTo(0, 0, 0);
+        return scratch;
+    }
+
+    /**
+     * keeps the hit in s for lane i if it is closer than the current one, the
+     * same way World.hitObjects keeps the closest hit.
+     *
+     * @param i
+     * @param s
+     * @param mat
+     * @return true if the hit was kept
+     */
+    public boolean record(int i, ShadeRec s, Material mat) {
+        ShadeRec sr = records[i];
+        if (s.lastT >= sr.lastT) {
+            return false;
+        }
+        sr.lastT = s.lastT;
+        sr.normal.setTo(s.normal);
+        sr.localHitPosition.setTo(s.localHitPosition);
+        sr.u = s.u;
+        sr.v = s.v;
+        sr.dpdu.setTo(s.dpdu);
+        sr.dpdv.setTo(s.dpdv);
+        sr.material = mat;
+        return true;
+    }
+
+    /**
+     * marks lanes that hit something and computes their world hit points,
+     * called once every object has been intersected.
+     */
+    public void finish() {
+        for (int i = 0; i < size; i++) {
+            ShadeRec sr = records[i];
+            sr.hitAnObject = sr.lastT < Utility.HUGE_VALUE;
+            if (sr.hitAnObject) {
+                sr.hitPoint.setTo(ox[i] + dx[i] * sr.lastT, oy[i] + dy[i]
+                        * sr.lastT, oz[i] + dz[i] * sr.lastT);
+            }
+        }
+    }
+
+}
@@ -72,6 +72,48 @@ public class ShadeRec {
      */
     public double v = 0;
 
+    /**
+     * change in the hit point from this pixel to the next one in x, zero when
+     * the ray has no differentials
+     */
+    public final Vector3D dpdx = new Vector3D(0, 0, 0);
+
+    /**
+     * change in the hit point from this pixel to the next one in y
+     */
+    public final Vector3D dpdy = new Vector3D(0, 0, 0);
+
+    /**
+     * change in the hit point with u, set by objects that have texture
+     * coordinates, zero otherwise
+     */
+    public final Vector3D dpdu = new Vector3D(0, 0, 0);
+
+    /**
+     * change in the hit point with v
+     */
+    public final Vector3D dpdv = new Vector3D(0, 0, 0);
+
+    /**
+     * change in u from this pixel to the next one in x, zero when not known
+     */
+    public double dudx = 0;
+
+    /**
+     * change in v from this pixel to the next one in x, zero when not known
+     */
+    public double dvdx = 0;
+
+    /**
+     * change in u from this pixel to the next one in y, zero when not known
+     */
+    public double dudy = 0;
+
+    /**
+     * change in v from this pixel to the next one in y, zero when not known
+     */
+    public double dvdy = 0;
+
     /**
      * depth
      */
@@ -117,6 +159,171 @@ public class ShadeRec {
         normal.setTo(r.normal);
         this.u = r.u;
         this.v = r.v;
+        dpdx.setTo(r.dpdx);
+        dpdy.setTo(r.dpdy);
+        dpdu.setTo(r.dpdu);
+        dpdv.setTo(r.dpdv);
+        this.dudx = r.dudx;
+        this.dvdx = r.dvdx;
+        this.dudy = r.dudy;
+        this.dvdy = r.dvdy;
+    }
+
+    /**
+     * computes dpdx and dpdy from the differentials of ray, and dudx, dvdx,
+     * dudy and dvdy from those if the hit object set dpdu and dpdv. The
+     * offset rays are intersected with the tangent plane at the hit point.
+     * Everything is left zero if ray has no differentials. Call once the hit
+     * point and normal are final.
+     *
+     * @param ray
+     */
+    public void computeDifferentials(Ray ray) {
+        dpdx.setTo(0, 0, 0);
+        dpdy.setTo(0, 0, 0);
+        dudx = 0;
+        dvdx = 0;
+        dudy = 0;
+        dvdy = 0;
+        RayDifferential rd = ray.differential;
+        if (rd == null || !offset(rd.rxOrigin, rd.rxDirection, dpdx)
+                || !offset(rd.ryOrigin, rd.ryDirection, dpdy)) {
+            dpdx.setTo(0, 0, 0);
+            dpdy.setTo(0, 0, 0);
+            return;
+        }
+
+        //solve dpdx = dudx * dpdu + dvdx * dpdv in the two axes the normal
+        //is smallest along, the third is the least well conditioned
+        double ax = Math.abs(normal.x);
+        double ay = Math.abs(normal.y);
+        double az = Math.abs(normal.z);
+        int i0, i1;
+        if (ax > ay && ax > az) {
+            i0 = 1;
+            i1 = 2;
+        } else if (ay > az) {
+            i0 = 0;
+            i1 = 2;
+        } else {
+            i0 = 0;
+            i1 = 1;
+        }
+        double a00 = component(dpdu, i0), a01 = component(dpdv, i0);
+        double a10 = component(dpdu, i1), a11 = component(dpdv, i1);
+        double det = a00 * a11 - a01 * a10;
+        if (det == 0 || Double.isNaN(det)) {
+            return;
+        }
+        double invDet = 1 / det;
+        dudx = (a11 * component(dpdx, i0) - a01 * component(dpdx, i1)) * invDet;
+        dvdx = (a00 * component(dpdx, i1) - a10 * component(dpdx, i0)) * invDet;
+        dudy = (a11 * component(dpdy, i0) - a01 * component(dpdy, i1)) * invDet;
+        dvdy = (a00 * component(dpdy, i1) - a10 * component(dpdy, i0)) * invDet;
+    }
+
+    //x, y or z of v for i 0, 1 or 2
+    private static double component(Vector3D v, int i) {
+        return i == 0 ? v.x : i == 1 ? v.y : v.z;
+    }
+
+    //intersects the offset ray with the tangent plane and puts the offset
+    //from the hit point in dp, false if the ray is parallel to the plane
+    private boolean offset(Point3D o, Vector3D d, Vector3D dp) {
+        double dn = d.x * normal.x + d.y * normal.y + d.z * normal.z;
+        if (dn == 0) {
+            return false;
+        }
+        double t = ((hitPoint.x - o.x) * normal.x + (hitPoint.y - o.y)
+                * normal.y + (hitPoint.z - o.z) * normal.z) / dn;
+        dp.setTo(o.x + t * d.x - hitPoint.x, o.y + t * d.y - hitPoint.y, o.z
+                + t * d.z - hitPoint.z);
+        return true;
+    }
+
+    /**
+     * sets the differentials of a ray reflected off this hit point. r.o
+     * should be the hit point and r.d the reflected direction, the offset
+     * rays start at the offset hit points and turn by the change in the
+     * mirror direction of the incoming offset rays. The normal is taken as
+     * constant over the pixel footprint. Does nothing if the incoming ray had
+     * no differentials.
+     *
+     * @param r
+     */
+    public void reflectDifferentials(Ray r) {
+        RayDifferential in = ray.differential;
+        if (in == null || (dpdx.x == 0 && dpdx.y == 0 && dpdx.z == 0)) {
+            r.differential = null;
+            return;
+        }
+        RayDifferential out = r.differential();
+        out.rxOrigin.setTo(r.o.x + dpdx.x, r.o.y + dpdx.y, r.o.z + dpdx.z);
+        out.ryOrigin.setTo(r.o.x + dpdy.x, r.o.y + dpdy.y, r.o.z + dpdy.z);
+        reflect(in.rxDirection, r.d, out.rxDirection);
+        reflect(in.ryDirection, r.d, out.ryDirection);
+    }
+
+    //out = wi plus the change in mirror direction from ray.d to d
+    private void reflect(Vector3D d, Vector3D wi, Vector3D out) {
+        double ddx = d.x - ray.d.x;
+        double ddy = d.y - ray.d.y;
+        double ddz = d.z - ray.d.z;
+        double dn = 2 * (ddx * normal.x + ddy * normal.y + ddz * normal.z);
+        out.setTo(wi.x + ddx - dn * normal.x, wi.y + ddy - dn * normal.y, wi.z
+                + ddz - dn * normal.z);
+    }
+
+    /**
+     * sets the differentials of a ray refracted through this hit point. r.o
+     * should be the hit point and r.d the transmitted direction, eta is the
+     * index of refraction on the transmitted side over the one on the
+     * incoming side, as the BTDFs use it. As with reflection the normal is
+     * taken as constant over the footprint.
+     *
+     * @param r
+     * @param eta
+     */
+    public void refractDifferentials(Ray r, double eta) {
+        RayDifferential in = ray.differential;
+        if (in == null || (dpdx.x == 0 && dpdx.y == 0 && dpdx.z == 0)) {
+            r.differential = null;
+            return;
+        }
+        //normal on the incoming side
+        double nx = normal.x, ny = normal.y, nz = normal.z;
+        double cosI = -(ray.d.x * nx + ray.d.y * ny + ray.d.z * nz);
+        if (cosI < 0) {
+            nx = -nx;
+            ny = -ny;
+            nz = -nz;
+            cosI = -cosI;
+        }
+        double cosT = -(r.d.x * nx + r.d.y * ny + r.d.z * nz);
+        if (cosT <= 0) {
+            r.differential = null;
+            return;
+        }
+        //with e = 1 / eta, wt = e d + (e cosI - cosT) n, so with n constant
+        //dwt = e dd + (e - e^2 cosI / cosT) dcosI n, dcosI = -dd.n
+        eta = 1 / eta;
+        double k = eta - eta * eta * cosI / cosT;
+        RayDifferential out = r.differential();
+        out.rxOrigin.setTo(r.o.x + dpdx.x, r.o.y + dpdx.y, r.o.z + dpdx.z);
+        out.ryOrigin.setTo(r.o.x + dpdy.x, r.o.y + dpdy.y, r.o.z + dpdy.z);
+        refract(in.rxDirection, r.d, eta, k, nx, ny, nz, out.rxDirection);
+        refract(in.ryDirection, r.d, eta, k, nx, ny, nz, out.ryDirection);
+    }
+
+    //out = wt plus the change in transmitted direction from ray.d to d
+    private void refract(Vector3D d, Vector3D wt, double eta, double k,
+            double nx, double ny, double nz, Vector3D out) {
+        double ddx = d.x - ray.d.x;
+        double ddy = d.y - ray.d.y;
+        double ddz = d.z - ray.d.z;
+        double dcos = -(ddx * nx + ddy * ny + ddz * nz);
+        out.setTo(wt.x + eta * ddx + k * dcos * nx, wt.y + eta * ddy + k
+                * dcos * ny, wt.z + eta * ddz + k * dcos * nz);
     }
 
     private static final Logger LOG = Logger.getLogger(ShadeRec.class.getName());
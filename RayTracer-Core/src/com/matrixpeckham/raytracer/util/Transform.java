@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2016 William Matrix Peckham
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.matrixpeckham.raytracer.util;
+
+import java.util.logging.Logger;
+
+/**
+ * Affine transform and its inverse, each kept as the top three rows of the
+ * matrix in twelve doubles, row by row. Points, vectors, normals and rays are
+ * transformed in place, so nothing is allocated per call. Transforms are
+ * immutable and can be shared between threads and objects.
+ * <p>
+ * The transform notes when its matrix is the identity, a translation or a
+ * uniform scale and translation, and skips the terms that are zero in those
+ * cases. The results are the same as the full multiply.
+ *
+ * @author William Matrix Peckham
+ */
+public final class Transform {
+
+    //kinds of matrix, each one is also all the ones after it
+    private static final int IDENTITY = 0;
+
+    private static final int TRANSLATION = 1;
+
+    private static final int UNIFORM_SCALE = 2;
+
+    private static final int GENERAL = 3;
+
+    /**
+     * the transform
+     */
+    private final double[] m = new double[12];
+
+    /**
+     * the inverse, its top left 3x3 transposed is the normal matrix
+     */
+    private final double[] inv = new double[12];
+
+    private final int kind;
+
+    private final int invKind;
+
+    /**
+     * identity transform
+     */
+    public Transform() {
+        m[0] = m[5] = m[10] = 1;
+        inv[0] = inv[5] = inv[10] = 1;
+        kind = IDENTITY;
+        invKind = IDENTITY;
+    }
+
+    /**
+     * transform from a matrix and its inverse, the bottom rows are ignored
+     *
+     * @param matrix
+     * @param inverse
+     */
+    public Transform(Matrix matrix, Matrix inverse) {
+        for (int r = 0; r < 3; r++) {
+            System.arraycopy(matrix.m[r], 0, m, 4 * r, 4);
+            System.arraycopy(inverse.m[r], 0, inv, 4 * r, 4);
+        }
+        kind = kind(m);
+        invKind = kind(inv);
+    }
+
+    /**
+     * transform from a matrix, the inverse is computed
+     *
+     * @param matrix
+     */
+    public Transform(Matrix matrix) {
+        for (int r = 0; r < 3; r++) {
+            System.arraycopy(matrix.m[r], 0, m, 4 * r, 4);
+        }
+        invert(m, inv);
+        kind = kind(m);
+        invKind = kind(inv);
+    }
+
+    /**
+     * true if this is the identity
+     *
+     * @return
+     */
+    public boolean isIdentity() {
+        return kind == IDENTITY;
+    }
+
+    /**
+     * the transform as a matrix
+     *
+     * @return
+     */
+    public Matrix getMatrix() {
+        return toMatrix(m);
+    }
+
+    /**
+     * the inverse as a matrix
+     *
+     * @return
+     */
+    public Matrix getInverse() {
+        return toMatrix(inv);
+    }
+
+    /**
+     * transforms a point in place
+     *
+     * @param p
+     * @return p
+     */
+    public Point3D transformPoint(Point3D p) {
+        point(m, kind, p);
+        return p;
+    }
+
+    /**
+     * transforms a vector in place
+     *
+     * @param v
+     * @return v
+     */
+    public Vector3D transformVector(Vector3D v) {
+        vector(m, kind, v);
+        return v;
+    }
+
+    /**
+     * transforms a normal in place by the inverse transpose, the normal is
+     * not normalized
+     *
+     * @param n
+     * @return n
+     */
+    public Normal transformNormal(Normal n) {
+        if (invKind == IDENTITY || invKind == TRANSLATION) {
+            return n;
+        }
+        if (invKind == UNIFORM_SCALE) {
+            n.x = inv[0] * n.x;
+            n.y = inv[0] * n.y;
+            n.z = inv[0] * n.z;
+            return n;
+        }
+        double x = n.x, y = n.y, z = n.z;
+        n.x = inv[0] * x + inv[4] * y + inv[8] * z;
+        n.y = inv[1] * x + inv[5] * y + inv[9] * z;
+        n.z = inv[2] * x + inv[6] * y + inv[10] * z;
+        return n;
+    }
+
+    /**
+     * transforms a ray's origin and direction in place
+     *
+     * @param r
+     * @return r
+     */
+    public Ray transformRay(Ray r) {
+        point(m, kind, r.o);
+        vector(m, kind, r.d);
+        return r;
+    }
+
+    /**
+     * transforms a point in place by the inverse
+     *
+     * @param p
+     * @return p
+     */
+    public Point3D inversePoint(Point3D p) {
+        point(inv, invKind, p);
+        return p;
+    }
+
+    /**
+     * transforms a vector in place by the inverse
+     *
+     * @param v
+     * @return v
+     */
+    public Vector3D inverseVector(Vector3D v) {
+        vector(inv, invKind, v);
+        return v;
+    }
+
+    /**
+     * transforms a ray's origin and direction in place by the inverse
+     *
+     * @param r
+     * @return r
+     */
+    public Ray inverseRay(Ray r) {
+        point(inv, invKind, r.o);
+        vector(inv, invKind, r.d);
+        return r;
+    }
+
+    private static void point(double[] a, int kind, Point3D p) {
+        switch (kind) {
+            case IDENTITY:
+                return;
+            case TRANSLATION:
+                p.x = p.x + a[3];
+                p.y = p.y + a[7];
+                p.z = p.z + a[11];
+                return;
+            case UNIFORM_SCALE:
+                p.x = a[0] * p.x + a[3];
+                p.y = a[0] * p.y + a[7];
+                p.z = a[0] * p.z + a[11];
+                return;
+            default:
+                double x = p.x, y = p.y, z = p.z;
+                p.x = a[0] * x + a[1] * y + a[2] * z + a[3];
+                p.y = a[4] * x + a[5] * y + a[6] * z + a[7];
+                p.z = a[8] * x + a[9] * y + a[10] * z + a[11];
+        }
+    }
+
+    private static void vector(double[] a, int kind, Vector3D v) {
+        switch (kind) {
+            case IDENTITY:
+            case TRANSLATION:
+                return;
+            case UNIFORM_SCALE:
+                v.x = a[0] * v.x;
+                v.y = a[0] * v.y;
+                v.z = a[0] * v.z;
+                return;
+            default:
+                double x = v.x, y = v.y, z = v.z;
+                v.x = a[0] * x + a[1] * y + a[2] * z;
+                v.y = a[4] * x + a[5] * y + a[6] * z;
+                v.z = a[8] * x + a[9] * y + a[10] * z;
+        }
+    }
+
+    //works out which kind of matrix a is
+    private static int kind(double[] a) {
+        if (a[1] != 0 || a[2] != 0 || a[4] != 0 || a[6] != 0 || a[8] != 0
+                || a[9] != 0 || a[0] != a[5] || a[0] != a[10]) {
+            return GENERAL;
+        }
+        if (a[0] != 1) {
+            return UNIFORM_SCALE;
+        }
+        if (a[3] != 0 || a[7] != 0 || a[11] != 0) {
+            return TRANSLATION;
+        }
+        return IDENTITY;
+    }
+
+    //inverts the affine matrix a into out
+    private static void invert(double[] a, double[] out) {
+        double c00 = a[5] * a[10] - a[6] * a[9];
+        double c01 = a[2] * a[9] - a[1] * a[10];
+        double c02 = a[1] * a[6] - a[2] * a[5];
+        double c10 = a[6] * a[8] - a[4] * a[10];
+        double c11 = a[0] * a[10] - a[2] * a[8];
+        double c12 = a[2] * a[4] - a[0] * a[6];
+        double c20 = a[4] * a[9] - a[5] * a[8];
+        double c21 = a[1] * a[8] - a[0] * a[9];
+        double c22 = a[0] * a[5] - a[1] * a[4];
+        double d = 1 / (a[0] * c00 + a[1] * c10 + a[2] * c20);
+        out[0] = c00 * d;
+        out[1] = c01 * d;
+        out[2] = c02 * d;
+        out[4] = c10 * d;
+        out[5] = c11 * d;
+        out[6] = c12 * d;
+        out[8] = c20 * d;
+        out[9] = c21 * d;
+        out[10] = c22 * d;
+        out[3] = -(out[0] * a[3] + out[1] * a[7] + out[2] * a[11]);
+        out[7] = -(out[4] * a[3] + out[5] * a[7] + out[6] * a[11]);
+        out[11] = -(out[8] * a[3] + out[9] * a[7] + out[10] * a[11]);
+    }
+
+    private static Matrix toMatrix(double[] a) {
+        Matrix r = new Matrix();
+        for (int i = 0; i < 3; i++) {
+            System.arraycopy(a, 4 * i, r.m[i], 0, 4);
+        }
+        return r;
+    }
+
+    private static final Logger LOG
+            = Logger.getLogger(Transform.class.getName());
+
+}
@@ -18,7 +18,6 @@
 package com.matrixpeckham.raytracer.util;
 
 import java.util.Random;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -391,7 +390,8 @@ public class Utility {
     }
 
     /**
-     * solve a quartic
+     * solve a quartic in closed form, the roots are not sorted. Loses roots to
+     * roundoff for ray/torus equations, PolynomialSolver finds those reliably.
      *
      * @param c
      * @param s
@@ -437,12 +437,7 @@ public class Utility {
             coeffs[2] = -1.0 / 2 * p;
             coeffs[3] = 1;
 
-            int shouldBeOne = solveCubic(coeffs, s);
-
-            if (shouldBeOne != 0) {
-                LOG.log(Level.WARNING,
-                        "Quartic equation got unusual result from solveCubic.");
-            }
+            solveCubic(coeffs, s);
 
             /* ... and take the one real solution ... */
             z = s[0];
@@ -473,16 +468,18 @@ public class Utility {
 
             num = solveQuadric(coeffs, s);
 
-            coeffs[0] = z + u;
-            coeffs[1] = q < 0 ? v : -v;
-            coeffs[2] = 1;
-
-            int tempNum;
-            double[] tempSols = new double[2];
-            tempNum = solveQuadric(coeffs, tempSols);
-
-            System.arraycopy(tempSols, 0, s, num, tempNum);
-            num += tempNum;
+            /* the second one is solved straight into s after the first's
+             * roots, the same way solveQuadric does */
+            double p2 = (q < 0 ? v : -v) / 2;
+            double q2 = z + u;
+            double D2 = p2 * p2 - q2;
+            if (isZero(D2)) {
+                s[num++] = -p2;
+            } else if (D2 > 0) {
+                double sqrt_D = Math.sqrt(D2);
+                s[num++] = sqrt_D - p2;
+                s[num++] = -sqrt_D - p2;
+            }
         }
 
         /* resubstitute */
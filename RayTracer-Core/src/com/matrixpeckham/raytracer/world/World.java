@@ -24,6 +24,7 @@ import com.matrixpeckham.raytracer.geometricobjects.GeometricObject;
 import com.matrixpeckham.raytracer.geometricobjects.primitives.Sphere;
 import com.matrixpeckham.raytracer.lights.Ambient;
 import com.matrixpeckham.raytracer.lights.Light;
+import com.matrixpeckham.raytracer.materials.Material;
 import com.matrixpeckham.raytracer.tracers.Tracer;
 import com.matrixpeckham.raytracer.util.*;
 import java.util.ArrayList;
@@ -221,31 +222,67 @@ public class World {
         Normal normal = new Normal();
         //local hit position.
         Point3D localHitPoint = new Point3D();
+        //material, hits further away may change sr.material
+        Material material = null;
+        //closest object if it splits its hit, only it fills in the shaderec
+        GeometricObject deferred = null;
         double tmin = Utility.HUGE_VALUE;
         int numObjects = objects.size();
         //test the ray with all objects store values in temporary variables when they
         //are the lowest
         for (int j = 0; j < numObjects; j++) {
-            if (objects.get(j).hit(ray, sr) && sr.lastT < tmin) {
+            GeometricObject obj = objects.get(j);
+            if (obj.splitsHit()) {
+                double t = obj.intersect(ray);
+                if (t < tmin) {
+                    sr.hitAnObject = true;
+                    tmin = t;
+                    deferred = obj;
+                }
+            } else if (obj.hit(ray, sr) && sr.lastT < tmin) {
                 sr.hitAnObject = true;
                 tmin = sr.lastT;//changes at call to hit, so we must preserve lowest
-                sr.material = objects.get(j).getMaterial();
-                sr.hitPoint.setTo(ray.o.add(ray.d.mul(sr.lastT)));//only calculated at this point
-                normal.setTo(sr.normal);//ditto
+                material = obj.getMaterial(sr);
+                normal.setTo(sr.normal);//only copied at this point
                 localHitPoint.setTo(sr.localHitPosition);//ditto
+                deferred = null;
             }
         }
         //restore the saved lowest values
-        if (sr.hitAnObject) {
+        if (deferred != null) {
+            deferred.fillShadeRec(ray, tmin, sr);
+            sr.material = deferred.getMaterial();
+        } else if (sr.hitAnObject) {
             //sr.t=tmin;
             sr.lastT = tmin;
+            sr.material = material;
             sr.normal.setTo(normal);
             sr.localHitPosition.setTo(localHitPoint);
         }
+        if (sr.hitAnObject) {
+            sr.hitPoint.setTo(ray.o.x + ray.d.x * tmin, ray.o.y + ray.d.y
+                    * tmin, ray.o.z + ray.d.z * tmin);
+        }
 
         return sr;
     }
 
+    /**
+     * Intersects a packet of rays with the objects in the scene, leaving the
+     * nearest hit for each ray in the packet's records, the same values
+     * hitObjects(Ray) would give for that ray.
+     *
+     * @param packet
+     */
+    public void hitObjects(RayPacket packet) {
+        packet.reset();
+        int numObjects = objects.size();
+        for (int j = 0; j < numObjects; j++) {
+            objects.get(j).hitPacket(packet);
+        }
+        packet.finish();
+    }
+
     /**
      * Simplistic hit function, no normals no local position, pretty much just
      * color.